@@ -19,3 +19,10 @@
 
 ## additional java options
 # export ASAKUSA_M3BP_OPTS=
+
+## endpoint file of the resident M3BP daemon (see bin/daemon)
+# export ASAKUSA_M3BP_DAEMON=
+
+## directory of application class-data sharing archives (requires Java 13 or later)
+## the first launch of each jobflow (including simulation runs) generates the archive
+# export ASAKUSA_M3BP_APPCDS=
@@ -0,0 +1,53 @@
+#
+# Copyright 2011-2021 Asakusa Framework Team.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+
+# Enables application class-data sharing (AppCDS) for the M3BP launcher class-path.
+# The first launch for each class-path works as the training run, and it dumps the loaded classes into
+# "$ASAKUSA_M3BP_APPCDS"; the succeeding launches map the archive.
+# This requires Java 13 or later, and is ignored on the older JVMs.
+
+_APPCDS_TEMPORARY=""
+
+if [ "$ASAKUSA_M3BP_APPCDS" != "" ]
+then
+    if [ "$_JAVA_CMD" != "" ]
+    then
+        _APPCDS_JAVA="$_JAVA_CMD"
+    elif [ "$JAVA_HOME" != "" ]
+    then
+        _APPCDS_JAVA="$JAVA_HOME/bin/java"
+    else
+        _APPCDS_JAVA="java"
+    fi
+    _APPCDS_VERSION="$("$_APPCDS_JAVA" -version 2>&1 | sed -n 's/.* version "\([0-9][0-9]*\).*/\1/p' | head -n 1)"
+    if [ "$_APPCDS_VERSION" != "" ] && [ "$_APPCDS_VERSION" -ge 13 ] && mkdir -p "$ASAKUSA_M3BP_APPCDS" 2>/dev/null
+    then
+        _APPCDS_KEY="$(IFS=:; echo "${_CLASSPATH[*]}" | cksum | cut -d ' ' -f 1)"
+        _APPCDS_FILE="$ASAKUSA_M3BP_APPCDS/m3bp-$_APPCDS_KEY-$_APPCDS_VERSION.jsa"
+        if [ "$_APPCDS_VERSION" -ge 19 ]
+        then
+            ASAKUSA_M3BP_OPTS="$ASAKUSA_M3BP_OPTS -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=$_APPCDS_FILE"
+        elif [ -e "$_APPCDS_FILE" ]
+        then
+            ASAKUSA_M3BP_OPTS="$ASAKUSA_M3BP_OPTS -XX:SharedArchiveFile=$_APPCDS_FILE"
+        else
+            # dumps into a temporary file, and then publishes it atomically after the launch
+            _APPCDS_TEMPORARY="$_APPCDS_FILE.$$"
+            ASAKUSA_M3BP_OPTS="$ASAKUSA_M3BP_OPTS -XX:ArchiveClassesAtExit=$_APPCDS_TEMPORARY"
+        fi
+    fi
+fi
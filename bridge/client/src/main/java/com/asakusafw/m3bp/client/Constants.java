@@ -18,7 +18,7 @@ package com.asakusafw.m3bp.client;
 /**
  * Constants for M3BP client.
  * @since 0.1.0
- * @version 0.1.2
+ * @version 0.3.5
  */
 public final class Constants {
 
@@ -95,12 +95,74 @@ public final class Constants {
      */
     public static final String KEY_NATIVE_LIBRARY = KEY_ENGINE_PREFIX + "application.library"; //$NON-NLS-1$
 
+    /**
+     * The configuration key of the directory which caches extracted native application libraries.
+     * @since 0.3.5
+     */
+    public static final String KEY_NATIVE_LIBRARY_CACHE = KEY_NATIVE_LIBRARY + ".cache"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of the max number of native application libraries in the cache directory.
+     * @since 0.3.5
+     */
+    public static final String KEY_NATIVE_LIBRARY_CACHE_LIMIT = KEY_NATIVE_LIBRARY_CACHE + ".limit"; //$NON-NLS-1$
+
     /**
      * The configuration key of whether mock engine implementation is allowed or not.
      * @see Capability
      */
     public static final String KEY_ENGINE_MOCK = KEY_ENGINE_PREFIX + "engine.mock"; //$NON-NLS-1$
 
+    /**
+     * The configuration key prefix of mock engine settings.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_PREFIX = KEY_ENGINE_PREFIX + "mock."; //$NON-NLS-1$
+
+    /**
+     * The configuration key of max bytes of each scatter-gather edge on memory in the mock engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_MEMORY_BUDGET = KEY_MOCK_PREFIX + "memory.budget"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of directory for spilling edge contents in the mock engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_SPILL_DIRECTORY = KEY_MOCK_PREFIX + "spill.directory"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of target bytes of each task which consumes one-to-one edges in the mock engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_TASK_SIZE = KEY_MOCK_PREFIX + "task.size"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of the max number of hot keys to track on each scatter-gather edge in the mock engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_HOT_KEYS = KEY_MOCK_PREFIX + "statistics.keys"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of the directory for caching edge outputs across executions in the mock engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_CACHE_DIRECTORY = KEY_MOCK_PREFIX + "cache.directory"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of the additional tag of cached edge outputs in the mock engine.
+     * It should identify the input data sets, which are not visible from the engine.
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_CACHE_TAG = KEY_MOCK_PREFIX + "cache.tag"; //$NON-NLS-1$
+
+    /**
+     * The configuration key of the comma separated movements whose edges are compressed in memory
+     * in the mock engine ({@code one_to_one} or {@code broadcast}).
+     * @since 0.3.5
+     */
+    public static final String KEY_MOCK_COMPRESSION = KEY_MOCK_PREFIX + "compression"; //$NON-NLS-1$
+
     /**
      * The configuration key of whether or not using Vanilla instead of M3BP.
      * @see Capability
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The wire protocol between {@link M3bpDaemon} and {@link M3bpDaemonClient}.
+ * <p>
+ * Each connection carries just one request and its response:
+ * </p>
+<pre>
+request  := MAGIC VERSION token:UTF kind:UTF count:INT classpath:UTF* count:INT arguments:UTF*
+            count:INT (name:STRING value:STRING)*
+response := MAGIC status:INT
+STRING   := length:INT bytes:BYTE*
+</pre>
+ * <p>
+ * The trailing name-value pairs are the environment variables of the client process.
+ * The daemon builds the runtime context of each request from them instead of its own environment.
+ * </p>
+ */
+final class DaemonProtocol {
+
+    /**
+     * The protocol magic number.
+     */
+    static final int MAGIC = 0x4d334250;
+
+    /**
+     * The protocol version.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * The request kind of {@link M3bpLauncher}.
+     */
+    static final String KIND_LAUNCHER = "launcher"; //$NON-NLS-1$
+
+    /**
+     * The request kind of {@link M3bpDirect}.
+     */
+    static final String KIND_DIRECT = "direct"; //$NON-NLS-1$
+
+    /**
+     * The request kind of shutting down the daemon.
+     */
+    static final String KIND_SHUTDOWN = "shutdown"; //$NON-NLS-1$
+
+    /**
+     * The exit status which represents the daemon is not available.
+     */
+    static final int EXIT_UNAVAILABLE = 75;
+
+    private static final String KEY_PORT = "port"; //$NON-NLS-1$
+
+    private static final String KEY_TOKEN = "token"; //$NON-NLS-1$
+
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private DaemonProtocol() {
+        return;
+    }
+
+    /**
+     * Writes a request.
+     * @param output the target output
+     * @param request the request
+     * @throws IOException if I/O error was occurred while writing the request
+     */
+    static void writeRequest(DataOutput output, Request request) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(request.token);
+        output.writeUTF(request.kind);
+        writeStrings(output, request.classpath);
+        writeStrings(output, request.arguments);
+        writeMap(output, request.environment);
+    }
+
+    /**
+     * Reads a request.
+     * @param input the source input
+     * @return the request
+     * @throws IOException if I/O error was occurred while reading the request
+     */
+    static Request readRequest(DataInput input) throws IOException {
+        checkMagic(input);
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException(MessageFormat.format(
+                    "unsupported daemon protocol version: {0}",
+                    version));
+        }
+        String token = input.readUTF();
+        String kind = input.readUTF();
+        List<String> classpath = readStrings(input);
+        List<String> arguments = readStrings(input);
+        Map<String, String> environment = readMap(input);
+        return new Request(token, kind, classpath, arguments, environment);
+    }
+
+    /**
+     * Writes a response.
+     * @param output the target output
+     * @param status the exit status
+     * @throws IOException if I/O error was occurred while writing the response
+     */
+    static void writeResponse(DataOutput output, int status) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(status);
+    }
+
+    /**
+     * Reads a response.
+     * @param input the source input
+     * @return the exit status
+     * @throws IOException if I/O error was occurred while reading the response
+     */
+    static int readResponse(DataInput input) throws IOException {
+        checkMagic(input);
+        return input.readInt();
+    }
+
+    /**
+     * Publishes the daemon endpoint into the given file.
+     * The file is readable only from the owner if the file system supports POSIX permissions.
+     * @param file the target file
+     * @param endpoint the endpoint
+     * @throws IOException if I/O error was occurred while writing the file
+     */
+    static void writeEndpoint(File file, Endpoint endpoint) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent.mkdirs() == false && parent.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "failed to create directory: {0}",
+                    parent));
+        }
+        File temporary = File.createTempFile(file.getName(), ".tmp", parent); //$NON-NLS-1$
+        try {
+            try {
+                Files.setPosixFilePermissions(temporary.toPath(), PosixFilePermissions.fromString("rw-------")); //$NON-NLS-1$
+            } catch (UnsupportedOperationException e) {
+                // non-POSIX file systems
+            }
+            Properties properties = new Properties();
+            properties.setProperty(KEY_PORT, String.valueOf(endpoint.port));
+            properties.setProperty(KEY_TOKEN, endpoint.token);
+            try (OutputStream output = Files.newOutputStream(temporary.toPath())) {
+                properties.store(output, null);
+            }
+            Files.move(temporary.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Reads the daemon endpoint from the given file.
+     * @param file the source file
+     * @return the endpoint
+     * @throws IOException if I/O error was occurred while reading the file
+     */
+    static Endpoint readEndpoint(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            properties.load(input);
+        }
+        String port = properties.getProperty(KEY_PORT);
+        String token = properties.getProperty(KEY_TOKEN);
+        if (port == null || token == null) {
+            throw new IOException(MessageFormat.format(
+                    "invalid daemon endpoint file: {0}",
+                    file));
+        }
+        try {
+            return new Endpoint(Integer.parseInt(port.trim()), token);
+        } catch (NumberFormatException e) {
+            throw new IOException(MessageFormat.format(
+                    "invalid daemon port: {0} ({1})",
+                    port, file), e);
+        }
+    }
+
+    private static void checkMagic(DataInput input) throws IOException {
+        int magic = input.readInt();
+        if (magic != MAGIC) {
+            throw new IOException(MessageFormat.format(
+                    "invalid daemon protocol header: {0}",
+                    Integer.toHexString(magic)));
+        }
+    }
+
+    private static void writeStrings(DataOutput output, List<String> values) throws IOException {
+        output.writeInt(values.size());
+        for (String value : values) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput input) throws IOException {
+        int count = readCount(input);
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(input.readUTF());
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    private static int readCount(DataInput input) throws IOException {
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException(MessageFormat.format(
+                    "invalid daemon protocol element count: {0}",
+                    count));
+        }
+        return count;
+    }
+
+    private static void writeMap(DataOutput output, Map<String, String> values) throws IOException {
+        output.writeInt(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInput input) throws IOException {
+        int count = readCount(input);
+        Map<String, String> results = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(input);
+            String value = readString(input);
+            results.put(key, value);
+        }
+        return Collections.unmodifiableMap(results);
+    }
+
+    // environment variables may exceed the limit of DataOutput.writeUTF()
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException(MessageFormat.format(
+                    "invalid daemon protocol string length: {0}",
+                    length));
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Represents a daemon endpoint.
+     */
+    static final class Endpoint {
+
+        final int port;
+
+        final String token;
+
+        Endpoint(int port, String token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+
+    /**
+     * Represents a jobflow execution request.
+     */
+    static final class Request {
+
+        final String token;
+
+        final String kind;
+
+        final List<String> classpath;
+
+        final List<String> arguments;
+
+        final Map<String, String> environment;
+
+        Request(
+                String token, String kind,
+                List<String> classpath, List<String> arguments, Map<String, String> environment) {
+            this.token = token;
+            this.kind = kind;
+            this.classpath = classpath;
+            this.arguments = arguments;
+            this.environment = environment;
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format(
+                    "Request(kind={0}, classpath={1}, arguments={2})", //$NON-NLS-1$
+                    kind, classpath, arguments);
+        }
+    }
+}
@@ -20,8 +20,14 @@ import static com.asakusafw.m3bp.client.Constants.*;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.function.LongConsumer;
@@ -41,6 +47,8 @@ import com.asakusafw.m3bp.mirror.ConfigurationMirror;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror.AffinityMode;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror.BufferAccessMode;
 import com.asakusafw.m3bp.mirror.EngineMirror;
+import com.asakusafw.m3bp.mirror.Movement;
+import com.asakusafw.m3bp.mirror.jna.EdgeConfiguration;
 import com.asakusafw.m3bp.mirror.jni.EngineMirrorImpl;
 import com.asakusafw.m3bp.mirror.mock.MockEngineMirror;
 import com.asakusafw.runtime.core.context.RuntimeContext;
@@ -49,7 +57,7 @@ import com.asakusafw.vanilla.client.LaunchUtil;
 /**
  * Executes {@link GraphInfo} using M3BP.
  * @since 0.1.0
- * @version 0.1.2
+ * @version 0.3.5
  */
 public final class GraphExecutor {
 
@@ -69,18 +77,130 @@ public final class GraphExecutor {
     public static void execute(ProcessorContext context, GraphInfo graph) throws IOException, InterruptedException {
         Arguments.requireNonNull(context);
         Arguments.requireNonNull(graph);
-        String libraryPath = context.getProperty(KEY_NATIVE_LIBRARY).orElse(NATIVE_LIBRARY_PATH);
-        try (NativeLibraryHolder holder = NativeLibraryHolder.extract(context.getClassLoader(), libraryPath);
-                ResourceSession session = LaunchUtil.attachSession(context, ResourceBroker.Scope.VM);
-                EngineMirror engine = newEngine(context, holder.getFile())) {
-            engine.getGraph().drive(graph);
+        try (NativeLibraryHolder holder = extractLibrary(context)) {
+            execute(context, graph, holder);
+        }
+    }
+
+    /**
+     * Executes DAG with the extracted native application library.
+     * @param context the current processor context
+     * @param graph the target DAG
+     * @param library the native application library, which will not be closed in this method
+     * @throws IOException if I/O error was occurred while executing
+     * @throws InterruptedException if interrupted while executing
+     */
+    static void execute(
+            ProcessorContext context, GraphInfo graph,
+            NativeLibraryHolder library) throws IOException, InterruptedException {
+        Arguments.requireNonNull(graph);
+        execute(context, CompletableFuture.completedFuture(graph), library);
+    }
+
+    /**
+     * Executes DAG with the extracted native application library.
+     * The engine is constructed while the DAG is still being prepared, and then this waits for the DAG.
+     * @param context the current processor context
+     * @param graph the target DAG, which may be still in preparation
+     * @param library the native application library, which will not be closed in this method
+     * @throws IOException if I/O error was occurred while executing
+     * @throws InterruptedException if interrupted while executing
+     */
+    static void execute(
+            ProcessorContext context, Future<GraphInfo> graph,
+            NativeLibraryHolder library) throws IOException, InterruptedException {
+        Arguments.requireNonNull(context);
+        Arguments.requireNonNull(graph);
+        Arguments.requireNonNull(library);
+        try (ResourceSession session = LaunchUtil.attachSession(context, ResourceBroker.Scope.VM);
+                EngineMirror engine = newEngine(context, library.getFile())) {
+            engine.getGraph().drive(join(graph));
             configure(engine.getConfiguration(), context);
+            if (engine instanceof MockEngineMirror) {
+                configure(((MockEngineMirror) engine).getEdgeConfiguration(), context);
+            }
             if (RuntimeContext.get().isSimulation() == false) {
                 engine.run(context);
             }
         }
     }
 
+    /**
+     * Waits for the completion of the future, and then returns its result.
+     * @param <T> the result type
+     * @param future the target future
+     * @return the result
+     * @throws IOException if the computation was failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static <T> T join(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Extracts the native application library for the context.
+     * @param context the current processor context
+     * @return the library holder
+     * @throws IOException if I/O error was occurred while extracting the library
+     */
+    static NativeLibraryHolder extractLibrary(ProcessorContext context) throws IOException {
+        String libraryPath = getLibraryPath(context);
+        File cacheDirectory = getLibraryCacheDirectory(context);
+        int cacheLimit = getLibraryCacheLimit(context);
+        return NativeLibraryHolder.extract(context.getClassLoader(), libraryPath, cacheDirectory, cacheLimit);
+    }
+
+    /**
+     * Returns a key which identifies the native application library for the context.
+     * @param context the current processor context
+     * @return the library key
+     */
+    static List<Object> getLibraryKey(ProcessorContext context) {
+        return Arrays.asList(
+                context.getClassLoader(),
+                getLibraryPath(context),
+                getLibraryCacheDirectory(context),
+                getLibraryCacheLimit(context));
+    }
+
+    private static String getLibraryPath(ProcessorContext context) {
+        return context.getProperty(KEY_NATIVE_LIBRARY).orElse(NATIVE_LIBRARY_PATH);
+    }
+
+    private static File getLibraryCacheDirectory(ProcessorContext context) {
+        return context.getProperty(KEY_NATIVE_LIBRARY_CACHE)
+                .map(s -> resolve(context, s))
+                .map(File::new)
+                .orElse(null);
+    }
+
+    private static int getLibraryCacheLimit(ProcessorContext context) {
+        int cacheLimit = context.getProperty(KEY_NATIVE_LIBRARY_CACHE_LIMIT)
+                .map(value -> Arguments.safe(() -> Integer.parseInt(value), () -> MessageFormat.format(
+                        "{0} must be an integer: {1}",
+                        KEY_NATIVE_LIBRARY_CACHE_LIMIT, value)))
+                .orElse(NativeLibraryHolder.DEFAULT_CACHE_LIMIT);
+        Arguments.require(cacheLimit > 0, () -> MessageFormat.format(
+                "{0} must be > 0: {1}",
+                KEY_NATIVE_LIBRARY_CACHE_LIMIT, cacheLimit));
+        return cacheLimit;
+    }
+
     private static EngineMirror newEngine(ProcessorContext context, File nativeLibrary) {
         Capability mock = parseEnum(Capability.class, context, KEY_ENGINE_MOCK).orElse(Capability.NEVER);
         if (mock == Capability.ALWAYS) {
@@ -132,6 +252,57 @@ public final class GraphExecutor {
         }
     }
 
+    private static void configure(EdgeConfiguration configuration, ProcessorContext context) {
+        configureLong(configuration::withMemoryBudget, context, KEY_MOCK_MEMORY_BUDGET);
+        configureFile(configuration::withSpillDirectory, context, KEY_MOCK_SPILL_DIRECTORY, true);
+        configureLong(configuration::withTaskSize, context, KEY_MOCK_TASK_SIZE);
+        configureInt(configuration::withHotKeyCount, context, KEY_MOCK_HOT_KEYS);
+        configureFile(configuration::withCacheDirectory, context, KEY_MOCK_CACHE_DIRECTORY, true);
+        configureCompression(configuration, context, KEY_MOCK_COMPRESSION);
+        if (configuration.getCacheDirectory() != null) {
+            configuration.withCacheTag(getCacheTag(context));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_MEMORY_BUDGET, configuration.getMemoryBudget()));
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_SPILL_DIRECTORY, configuration.getSpillDirectory()));
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_TASK_SIZE, configuration.getTaskSize()));
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_HOT_KEYS, configuration.getHotKeyCount()));
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_CACHE_DIRECTORY, configuration.getCacheDirectory()));
+            LOG.debug(MessageFormat.format("{0}: {1}", //$NON-NLS-1$
+                    KEY_MOCK_COMPRESSION, Stream.of(Movement.ONE_TO_ONE, Movement.BROADCAST)
+                        .filter(configuration::isCompressed)
+                        .map(v -> v.name().toLowerCase(Locale.ENGLISH))
+                        .collect(Collectors.joining(",")))); //$NON-NLS-1$
+        }
+    }
+
+    private static String getCacheTag(ProcessorContext context) {
+        StageInfo info = context.getResource(StageInfo.class).get();
+        return MessageFormat.format(
+                "{0}/{1}/{2}/{3}", //$NON-NLS-1$
+                info.getBatchId(),
+                info.getFlowId(),
+                new TreeMap<>(info.getBatchArguments()),
+                context.getProperty(KEY_MOCK_CACHE_TAG).map(s -> resolve(context, s)).orElse("")); //$NON-NLS-1$
+    }
+
+    private static void configureCompression(EdgeConfiguration configuration, ProcessorContext context, String key) {
+        context.getProperty(key).ifPresent(value -> Stream.of(value.split(",")) //$NON-NLS-1$
+                .map(String::trim)
+                .filter(s -> s.isEmpty() == false)
+                .map(s -> s.toUpperCase(Locale.ENGLISH))
+                .forEach(s -> Arguments.safe(
+                        () -> configuration.withCompressed(Movement.valueOf(s), true),
+                        () -> MessageFormat.format(
+                                "{0} must be a comma separated list of [one_to_one, broadcast]: {1}",
+                                key, value))));
+    }
+
     private static void configureInt(IntConsumer target, ProcessorContext context, String key) {
         context.getProperty(key)
                 .map(value -> Arguments.safe(() -> Integer.parseInt(value), () -> MessageFormat.format(
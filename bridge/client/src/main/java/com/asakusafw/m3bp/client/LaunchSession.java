@@ -0,0 +1,127 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.bridge.launch.LaunchInfo;
+import com.asakusafw.dag.api.model.GraphInfo;
+import com.asakusafw.dag.api.processor.ProcessorContext;
+import com.asakusafw.dag.api.processor.extension.ProcessorContextExtension;
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.vanilla.client.LaunchUtil;
+
+/**
+ * Holds round-independent resources, which are shared between successive DAG executions in the same process.
+ * <p>
+ * This is thread-safe, because {@link M3bpLauncher} prepares the resources on multiple threads.
+ * </p>
+ * @see M3bpDirect
+ */
+class LaunchSession implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(LaunchSession.class);
+
+    private final Map<Class<?>, GraphInfo> graphs = new ConcurrentHashMap<>();
+
+    private final Map<ClassLoader, ProcessorContextExtension> extensions = new ConcurrentHashMap<>();
+
+    private final Map<List<Object>, NativeLibraryHolder> libraries = new HashMap<>();
+
+    /**
+     * Returns the DAG of the target stage.
+     * @param configuration the launching configuration
+     * @return the DAG
+     */
+    GraphInfo getGraph(LaunchInfo configuration) {
+        Arguments.requireNonNull(configuration);
+        return graphs.computeIfAbsent(configuration.getStageClient(), LaunchUtil::extract);
+    }
+
+    /**
+     * Returns the processor context extension.
+     * @param loader the application class loader
+     * @return the extension
+     */
+    ProcessorContextExtension getExtension(ClassLoader loader) {
+        Arguments.requireNonNull(loader);
+        return extensions.computeIfAbsent(loader, ProcessorContextExtension::load);
+    }
+
+    /**
+     * Returns the native application library for the context.
+     * The returned holder is owned by this session, and clients must not close it.
+     * If the library file of the previous round has been removed, for example, by other processes which share the
+     * same library cache directory, this extracts the library again.
+     * @param context the current context
+     * @return the library holder
+     * @throws IOException if I/O error was occurred while extracting the library
+     */
+    NativeLibraryHolder getLibrary(ProcessorContext context) throws IOException {
+        Arguments.requireNonNull(context);
+        List<Object> key = GraphExecutor.getLibraryKey(context);
+        synchronized (libraries) {
+            NativeLibraryHolder holder = libraries.get(key);
+            if (holder != null) {
+                if (holder.refresh()) {
+                    LOG.debug("reusing native application library: {}", holder.getFile()); //$NON-NLS-1$
+                    return holder;
+                }
+                LOG.debug("native application library was removed: {}", holder.getFile()); //$NON-NLS-1$
+                libraries.remove(key);
+                holder.close();
+            }
+            holder = GraphExecutor.extractLibrary(context);
+            libraries.put(key, holder);
+            return holder;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<NativeLibraryHolder> holders;
+        synchronized (libraries) {
+            holders = new ArrayList<>(libraries.values());
+            libraries.clear();
+        }
+        graphs.clear();
+        extensions.clear();
+        IOException occurred = null;
+        for (NativeLibraryHolder holder : holders) {
+            try {
+                holder.close();
+            } catch (IOException e) {
+                if (occurred == null) {
+                    occurred = e;
+                } else {
+                    occurred.addSuppressed(e);
+                }
+            }
+        }
+        if (occurred != null) {
+            throw occurred;
+        }
+    }
+}
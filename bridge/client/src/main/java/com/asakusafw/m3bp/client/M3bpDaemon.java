@@ -0,0 +1,262 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.bridge.launch.LaunchConfigurationException;
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.runtime.core.context.RuntimeContext;
+import com.asakusafw.vanilla.client.LaunchUtil;
+
+/**
+ * A resident daemon which executes jobflows on behalf of {@link M3bpDaemonClient}.
+ * <p>
+ * The daemon keeps the framework classes, the engine library, and the Hadoop initialization loaded between
+ * jobflow executions. It only accepts connections from the loopback address, and each request must provide
+ * the access token in the endpoint file. Requests are executed one by one, and the application classes of each
+ * request are loaded in a dedicated class loader. The runtime context of each request, including its execution
+ * mode, is built from the environment variables of the client instead of the ones of the daemon.
+ * </p>
+ * @since 0.3.5
+ */
+public final class M3bpDaemon implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(M3bpDaemon.class);
+
+    private static final int TOKEN_BYTES = 16;
+
+    static final int DEFAULT_REQUEST_TIMEOUT = 60_000;
+
+    private final ServerSocket socket;
+
+    private final String token;
+
+    private final ClassLoader parent;
+
+    private final Launcher launcher;
+
+    private volatile boolean running = true;
+
+    private volatile int requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+    M3bpDaemon(ServerSocket socket, String token, ClassLoader parent, Launcher launcher) {
+        Arguments.requireNonNull(socket);
+        Arguments.requireNonNull(token);
+        Arguments.requireNonNull(parent);
+        Arguments.requireNonNull(launcher);
+        this.socket = socket;
+        this.token = token;
+        this.parent = parent;
+        this.launcher = launcher;
+    }
+
+    /**
+     * Program entry.
+     * @param args {@code endpoint-file [port]}
+     * @throws IOException if I/O error was occurred while running the daemon
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 1 && args.length != 2) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "usage: java {0} endpoint-file [port]",
+                    M3bpDaemon.class.getName()));
+        }
+        File endpoint = new File(args[0]);
+        int port = args.length >= 2 ? Integer.parseInt(args[1]) : 0;
+        ClassLoader loader = M3bpDaemon.class.getClassLoader();
+        try (M3bpDaemon daemon = open(port, loader, M3bpDaemon::launch)) {
+            DaemonProtocol.writeEndpoint(endpoint, daemon.getEndpoint());
+            LOG.info("M3BP daemon started: port={}, endpoint={}", daemon.getPort(), endpoint);
+            try {
+                daemon.serve();
+            } finally {
+                Files.deleteIfExists(endpoint.toPath());
+            }
+        }
+    }
+
+    static M3bpDaemon open(int port, ClassLoader parent, Launcher launcher) throws IOException {
+        ServerSocket socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+        }
+        return new M3bpDaemon(socket, buf.toString(), parent, launcher);
+    }
+
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    DaemonProtocol.Endpoint getEndpoint() {
+        return new DaemonProtocol.Endpoint(getPort(), token);
+    }
+
+    /**
+     * Sets the timeout of reading each request.
+     * @param millis the timeout in milliseconds, or {@code 0} to wait forever
+     */
+    void setRequestTimeout(int millis) {
+        Arguments.require(millis >= 0);
+        this.requestTimeout = millis;
+    }
+
+    /**
+     * Accepts requests until the daemon is closed or a shutdown request is received.
+     * @throws IOException if I/O error was occurred while accepting requests
+     */
+    void serve() throws IOException {
+        while (running) {
+            Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                if (running == false || socket.isClosed()) {
+                    break;
+                }
+                throw e;
+            }
+            // a broken or stalled client must not stop serving the other requests
+            try (Socket s = client) {
+                s.setSoTimeout(requestTimeout);
+                handle(s);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("failed to handle daemon request", e);
+            }
+        }
+    }
+
+    private void handle(Socket client) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+        DaemonProtocol.Request request = DaemonProtocol.readRequest(input);
+        if (MessageDigest.isEqual(token.getBytes("UTF-8"), request.token.getBytes("UTF-8")) == false) { //$NON-NLS-1$ //$NON-NLS-2$
+            LOG.warn(MessageFormat.format(
+                    "rejected daemon request with invalid token: {0}",
+                    client.getRemoteSocketAddress()));
+            DaemonProtocol.writeResponse(output, LaunchUtil.EXEC_ERROR);
+            output.flush();
+            return;
+        }
+        int status;
+        if (request.kind.equals(DaemonProtocol.KIND_SHUTDOWN)) {
+            LOG.info("M3BP daemon is shutting down");
+            running = false;
+            status = LaunchUtil.EXEC_SUCCESS;
+        } else {
+            status = execute(request);
+        }
+        DaemonProtocol.writeResponse(output, status);
+        output.flush();
+    }
+
+    private int execute(DaemonProtocol.Request request) {
+        LOG.info("executing daemon request: {}", request);
+        Thread current = Thread.currentThread();
+        ClassLoader context = current.getContextClassLoader();
+        try (URLClassLoader loader = new URLClassLoader(toUrls(request.classpath), parent)) {
+            current.setContextClassLoader(loader);
+            return launcher.launch(
+                    request.kind, loader, request.environment, request.arguments.toArray(new String[0]));
+        } catch (Throwable e) {
+            // also reports linkage errors from the application classes instead of terminating the daemon
+            LOG.error(MessageFormat.format(
+                    "failed to execute daemon request: {0}",
+                    request), e);
+            return LaunchUtil.EXEC_ERROR;
+        } finally {
+            current.setContextClassLoader(context);
+        }
+    }
+
+    private static URL[] toUrls(List<String> classpath) throws MalformedURLException {
+        List<URL> results = new ArrayList<>();
+        for (String entry : classpath) {
+            results.add(new File(entry).toURI().toURL());
+        }
+        return results.toArray(new URL[results.size()]);
+    }
+
+    private static int launch(
+            String kind, ClassLoader loader,
+            Map<String, String> environment, String... args) throws LaunchConfigurationException {
+        // the execution mode comes from the client, because the daemon may be started in another mode
+        RuntimeContext context = RuntimeContext.DEFAULT.apply(environment);
+        switch (kind) {
+        case DaemonProtocol.KIND_LAUNCHER:
+            return M3bpLauncher.exec(loader, context, args);
+        case DaemonProtocol.KIND_DIRECT:
+            RuntimeContext.set(context);
+            RuntimeContext.get().verifyApplication(loader);
+            return M3bpDirect.exec(loader, args);
+        default:
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "unknown daemon request kind: {0}",
+                    kind));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        socket.close();
+    }
+
+    /**
+     * Launches a jobflow.
+     */
+    @FunctionalInterface
+    interface Launcher {
+
+        /**
+         * Launches a jobflow.
+         * @param kind the request kind
+         * @param loader the application class loader
+         * @param environment the environment variables of the client
+         * @param args the launching arguments
+         * @return the exit status
+         * @throws LaunchConfigurationException if launching configuration is something wrong
+         */
+        int launch(
+                String kind, ClassLoader loader,
+                Map<String, String> environment, String... args) throws LaunchConfigurationException;
+    }
+}
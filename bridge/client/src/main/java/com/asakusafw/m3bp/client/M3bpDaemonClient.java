@@ -0,0 +1,138 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A thin client of {@link M3bpDaemon}.
+ * <p>
+ * This class only depends on the standard library, so that it can start quickly.
+ * If the daemon is not available, this exits with {@code 75} without executing anything,
+ * and then the caller can fall back to {@link M3bpLauncher} or {@link M3bpDirect}.
+ * </p>
+ * @since 0.3.5
+ */
+public final class M3bpDaemonClient {
+
+    private M3bpDaemonClient() {
+        return;
+    }
+
+    /**
+     * Program entry.
+     * @param args {@code endpoint-file (launcher|direct|shutdown) application-classpath [launcher-arguments...]}
+     */
+    public static void main(String... args) {
+        if (args.length < 3) {
+            System.err.println(MessageFormat.format(
+                    "usage: java {0} endpoint-file (launcher|direct|shutdown) application-classpath [arguments...]",
+                    M3bpDaemonClient.class.getName()));
+            System.exit(DaemonProtocol.EXIT_UNAVAILABLE);
+        }
+        File endpoint = new File(args[0]);
+        String kind = args[1];
+        List<String> classpath = split(args[2]);
+        List<String> arguments = Arrays.asList(args).subList(3, args.length);
+        int status = exec(endpoint, kind, classpath, arguments);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Requests the daemon to execute a jobflow in the current environment.
+     * @param endpoint the daemon endpoint file
+     * @param kind the request kind
+     * @param classpath the application class path
+     * @param arguments the launcher arguments
+     * @return the exit status, or {@code 75} if the daemon is not available
+     */
+    static int exec(File endpoint, String kind, List<String> classpath, List<String> arguments) {
+        return exec(endpoint, kind, classpath, arguments, System.getenv());
+    }
+
+    /**
+     * Requests the daemon to execute a jobflow.
+     * @param endpoint the daemon endpoint file
+     * @param kind the request kind
+     * @param classpath the application class path
+     * @param arguments the launcher arguments
+     * @param environment the environment variables for the jobflow execution
+     * @return the exit status, or {@code 75} if the daemon is not available
+     */
+    static int exec(
+            File endpoint, String kind,
+            List<String> classpath, List<String> arguments, Map<String, String> environment) {
+        if (endpoint.isFile() == false) {
+            System.err.println(MessageFormat.format(
+                    "M3BP daemon is not running: {0}",
+                    endpoint));
+            return DaemonProtocol.EXIT_UNAVAILABLE;
+        }
+        DaemonProtocol.Endpoint info;
+        Socket socket;
+        try {
+            info = DaemonProtocol.readEndpoint(endpoint);
+            socket = new Socket(InetAddress.getLoopbackAddress(), info.port);
+        } catch (IOException e) {
+            System.err.println(MessageFormat.format(
+                    "M3BP daemon is not available: {0} ({1})",
+                    endpoint, e));
+            return DaemonProtocol.EXIT_UNAVAILABLE;
+        }
+        try (Socket s = socket) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            DaemonProtocol.writeRequest(output,
+                    new DaemonProtocol.Request(info.token, kind, classpath, arguments, environment));
+            output.flush();
+            DataInputStream input = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            return DaemonProtocol.readResponse(input);
+        } catch (IOException e) {
+            // the request may have been executed partially, so that we must not fall back
+            System.err.println(MessageFormat.format(
+                    "M3BP daemon request was failed: {0} ({1})",
+                    endpoint, e));
+            return 1;
+        }
+    }
+
+    private static List<String> split(String classpath) {
+        if (classpath.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> results = new ArrayList<>();
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (entry.isEmpty() == false) {
+                results.add(entry);
+            }
+        }
+        return results;
+    }
+}
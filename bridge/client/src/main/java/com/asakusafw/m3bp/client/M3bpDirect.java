@@ -15,6 +15,7 @@
  */
 package com.asakusafw.m3bp.client;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import org.apache.hadoop.conf.Configuration;
@@ -22,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.bridge.launch.LaunchConfigurationException;
+import com.asakusafw.bridge.launch.LaunchInfo;
 import com.asakusafw.dag.iterative.DirectLaunchConfiguration;
 import com.asakusafw.runtime.core.context.RuntimeContext;
 import com.asakusafw.vanilla.client.LaunchUtil;
@@ -29,6 +31,7 @@ import com.asakusafw.vanilla.client.LaunchUtil;
 /**
  * Direct program entry of Asakusa on M3BP.
  * @since 0.2.1
+ * @version 0.3.5
  * @see M3bpLauncher
  */
 public final class M3bpDirect {
@@ -69,16 +72,49 @@ public final class M3bpDirect {
         DirectLaunchConfiguration conf = DirectLaunchConfiguration.parse(loader, Arrays.asList(args));
         Configuration hadoop = new Configuration();
         hadoop.setClassLoader(loader);
-        int numberOfRounds = conf.getStageInfo().getRoundCount();
-        int currentRound = 0;
         DirectLaunchConfiguration.Cursor cursor = conf.newCursor();
-        while (cursor.next()) {
-            LOG.info("Round: {}/{}", ++currentRound, numberOfRounds);
-            int result = new M3bpLauncher(cursor.get(), hadoop).exec();
-            if (result != LaunchUtil.EXEC_SUCCESS) {
-                return result;
+        return exec(hadoop, conf.getStageInfo().getRoundCount(), () -> cursor.next() ? cursor.get() : null,
+                new LaunchSession());
+    }
+
+    /**
+     * Executes the rounds in order.
+     * @param hadoop the Hadoop configuration, which is shared between rounds
+     * @param numberOfRounds the number of rounds
+     * @param rounds the round configurations
+     * @param session the launch session, which will be closed in this method
+     * @return the exit code
+     * @throws LaunchConfigurationException if launching configuration is something wrong
+     */
+    static int exec(
+            Configuration hadoop, int numberOfRounds,
+            Rounds rounds, LaunchSession session) throws LaunchConfigurationException {
+        int currentRound = 0;
+        try (LaunchSession s = session) {
+            for (LaunchInfo round = rounds.next(); round != null; round = rounds.next()) {
+                LOG.info("Round: {}/{}", ++currentRound, numberOfRounds);
+                int result = new M3bpLauncher(round, hadoop, s).exec();
+                if (result != LaunchUtil.EXEC_SUCCESS) {
+                    return result;
+                }
             }
+        } catch (IOException e) {
+            LOG.warn("failed to release launch session", e);
         }
         return LaunchUtil.EXEC_SUCCESS;
     }
+
+    /**
+     * Provides launching configurations of each round.
+     */
+    @FunctionalInterface
+    interface Rounds {
+
+        /**
+         * Returns the launching configuration of the next round.
+         * @return the next launching configuration, or {@code null} if there are no more rounds
+         * @throws LaunchConfigurationException if launching configuration is something wrong
+         */
+        LaunchInfo next() throws LaunchConfigurationException;
+    }
 }
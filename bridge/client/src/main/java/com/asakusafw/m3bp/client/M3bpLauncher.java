@@ -20,8 +20,12 @@ import static com.asakusafw.m3bp.client.Constants.*;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +45,7 @@ import com.asakusafw.vanilla.client.VanillaLauncher;
 /**
  * M3BP application entry.
  * @since 0.1.0
- * @version 0.2.2
+ * @version 0.3.5
  */
 public class M3bpLauncher {
 
@@ -53,6 +57,8 @@ public class M3bpLauncher {
 
     private final Configuration hadoop;
 
+    private final LaunchSession session;
+
     /**
      * Creates a new instance.
      * @param configuration the launching configuration
@@ -73,14 +79,20 @@ public class M3bpLauncher {
         this.applicationLoader = classLoader;
         this.hadoop = new Configuration();
         this.hadoop.setClassLoader(classLoader);
+        this.session = null;
     }
 
     M3bpLauncher(LaunchInfo configuration, Configuration hadoop) {
+        this(configuration, hadoop, null);
+    }
+
+    M3bpLauncher(LaunchInfo configuration, Configuration hadoop, LaunchSession session) {
         Arguments.requireNonNull(configuration);
         Arguments.requireNonNull(hadoop);
         this.configuration = configuration;
         this.hadoop = hadoop;
         this.applicationLoader = hadoop.getClassLoader();
+        this.session = session;
     }
 
     /**
@@ -91,28 +103,46 @@ public class M3bpLauncher {
      * @see LaunchUtil#EXEC_INTERRUPTED
      */
     public int exec() {
-        BasicProcessorContext context =
-                LaunchUtil.createProcessorContext(applicationLoader, configuration, hadoop);
-        GraphInfo graph = LaunchUtil.extract(configuration.getStageClient());
-        try (InterruptibleIo extension = applyExtensions(context)) {
-            long start = System.currentTimeMillis();
-            LOG.info(MessageFormat.format(
-                    "DAG starting: {0}, vertices={1}",
-                    configuration.getStageInfo(),
-                    graph.getVertices().size()));
-            if (isVanilla(context)) {
-                LOG.info("using Vanilla engine");
-                VanillaLauncher.execute(context, graph);
-            } else {
-                GraphExecutor.execute(context, graph);
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "m3bp-launch"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<NativeLibraryHolder> library = null;
+        try {
+            // Hadoop security and DAG deserialization are independent from the processor context
+            Future<?> security = executor.submit(M3bpLauncher::wakeUpSecurity);
+            Future<GraphInfo> graph = executor.submit(() -> session == null
+                    ? LaunchUtil.extract(configuration.getStageClient())
+                    : session.getGraph(configuration));
+            BasicProcessorContext context =
+                    LaunchUtil.createProcessorContext(applicationLoader, configuration, hadoop);
+            boolean vanilla = isVanilla(context);
+            if (vanilla == false) {
+                library = executor.submit(() -> session == null
+                        ? GraphExecutor.extractLibrary(context)
+                        : session.getLibrary(context));
+            }
+            try (InterruptibleIo extension = applyExtensions(context)) {
+                GraphExecutor.join(security);
+                long start = System.currentTimeMillis();
+                LOG.info(MessageFormat.format(
+                        "DAG starting: {0}",
+                        configuration.getStageInfo()));
+                if (vanilla) {
+                    LOG.info("using Vanilla engine");
+                    VanillaLauncher.execute(context, GraphExecutor.join(graph));
+                } else {
+                    GraphExecutor.execute(context, graph, GraphExecutor.join(library));
+                }
+                long finish = System.currentTimeMillis();
+                LOG.info(MessageFormat.format(
+                        "DAG finished: {0}, vertices={1}, elapsed={2}ms",
+                        configuration.getStageInfo(),
+                        GraphExecutor.join(graph).getVertices().size(),
+                        finish - start));
+                return LaunchUtil.EXEC_SUCCESS;
             }
-            long finish = System.currentTimeMillis();
-            LOG.info(MessageFormat.format(
-                    "DAG finished: {0}, vertices={1}, elapsed={2}ms",
-                    configuration.getStageInfo(),
-                    graph.getVertices().size(),
-                    finish - start));
-            return LaunchUtil.EXEC_SUCCESS;
         } catch (IOException e) {
             LOG.error(MessageFormat.format(
                     "DAG failed: {0}",
@@ -123,12 +153,49 @@ public class M3bpLauncher {
                     "DAG interrupted: {0}",
                     configuration.getStageInfo()), e);
             return LaunchUtil.EXEC_INTERRUPTED;
+        } finally {
+            if (session == null) {
+                release(library);
+            }
+            executor.shutdownNow();
         }
     }
 
-    private static InterruptibleIo applyExtensions(
+    private static void wakeUpSecurity() {
+        LOG.debug("warming up Hadoop security"); //$NON-NLS-1$
+        UserGroupInformation.isSecurityEnabled();
+    }
+
+    private void release(Future<NativeLibraryHolder> library) {
+        if (library == null) {
+            return;
+        }
+        NativeLibraryHolder holder;
+        try {
+            holder = GraphExecutor.join(library);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to extract native library: {0}",
+                    configuration.getStageInfo()), e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            holder.close();
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to release native library: {0}",
+                    configuration.getStageInfo()), e);
+        }
+    }
+
+    private InterruptibleIo applyExtensions(
             BasicProcessorContext context) throws IOException, InterruptedException {
-        ProcessorContextExtension extension = ProcessorContextExtension.load(context.getClassLoader());
+        ProcessorContextExtension extension = session == null
+                ? ProcessorContextExtension.load(context.getClassLoader())
+                : session.getExtension(context.getClassLoader());
         return extension.install(context, context.getEditor());
     }
 
@@ -159,7 +226,19 @@ public class M3bpLauncher {
      * @throws LaunchConfigurationException if launching configuration is something wrong
      */
     public static int exec(ClassLoader loader, String... args) throws LaunchConfigurationException {
-        RuntimeContext.set(RuntimeContext.DEFAULT.apply(System.getenv()));
+        return exec(loader, RuntimeContext.DEFAULT.apply(System.getenv()), args);
+    }
+
+    /**
+     * Program entry.
+     * @param loader the launch class loader
+     * @param context the runtime context
+     * @param args launching configurations
+     * @return the exit code
+     * @throws LaunchConfigurationException if launching configuration is something wrong
+     */
+    static int exec(ClassLoader loader, RuntimeContext context, String... args) throws LaunchConfigurationException {
+        RuntimeContext.set(context);
         RuntimeContext.get().verifyApplication(loader);
 
         LaunchConfiguration conf = LaunchConfiguration.parse(loader, Arrays.asList(args));
@@ -20,9 +20,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,14 +40,28 @@ import com.asakusafw.lang.utils.common.Arguments;
  */
 public class NativeLibraryHolder implements Closeable {
 
+    /**
+     * The default max number of library files in each cache directory.
+     * @since 0.3.5
+     */
+    public static final int DEFAULT_CACHE_LIMIT = 16;
+
     private static final Logger LOG = LoggerFactory.getLogger(NativeLibraryHolder.class);
 
+    private static final String CACHE_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private static final String CACHE_FILE_SUFFIX = "-" + System.mapLibraryName("app"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    private static final String CACHE_TEMPORARY_PREFIX = ".tmp-"; //$NON-NLS-1$
+
     private static final NativeLibraryHolder NULL = new NativeLibraryHolder(null, false);
 
     private final File file;
 
     private final boolean deleteOnClose;
 
+    private final boolean cached;
+
     /**
      * Creates a new instance.
      * @param file the target library file (nullable)
@@ -49,8 +69,13 @@ public class NativeLibraryHolder implements Closeable {
      *     or {@code false} to keep it
      */
     public NativeLibraryHolder(File file, boolean deleteOnClose) {
+        this(file, deleteOnClose, false);
+    }
+
+    private NativeLibraryHolder(File file, boolean deleteOnClose, boolean cached) {
         this.file = file;
         this.deleteOnClose = deleteOnClose;
+        this.cached = cached;
     }
 
     /**
@@ -61,7 +86,27 @@ public class NativeLibraryHolder implements Closeable {
      * @throws IOException if I/O error was occurred while extracting the library
      */
     public static NativeLibraryHolder extract(ClassLoader loader, String path) throws IOException {
+        return extract(loader, path, null, DEFAULT_CACHE_LIMIT);
+    }
+
+    /**
+     * Extracts a library file on the class-path.
+     * If the cache directory is specified, the extracted library file is stored into the directory under its
+     * content hash, and it is shared with the other processes which use the same cache directory.
+     * The least recently used library files are removed if the directory has more than {@code cacheLimit} files.
+     * @param loader the resource loader
+     * @param path the library file path
+     * @param cacheDirectory the library cache directory (nullable)
+     * @param cacheLimit the max number of library files in the cache directory
+     * @return the holder
+     * @throws IOException if I/O error was occurred while extracting the library
+     * @since 0.3.5
+     */
+    public static NativeLibraryHolder extract(
+            ClassLoader loader, String path,
+            File cacheDirectory, int cacheLimit) throws IOException {
         Arguments.requireNonNull(loader);
+        Arguments.require(cacheLimit > 0);
         if (path == null) {
             return NULL;
         }
@@ -72,6 +117,9 @@ public class NativeLibraryHolder implements Closeable {
             return new NativeLibraryHolder(f, false);
         }
 
+        if (cacheDirectory != null) {
+            return extractToCache(loader, path, cacheDirectory, cacheLimit);
+        }
         LOG.debug("extracting native application library: {}", path); //$NON-NLS-1$
         try (InputStream in = loader.getResourceAsStream(path)) {
             if (in == null) {
@@ -90,6 +138,101 @@ public class NativeLibraryHolder implements Closeable {
         }
     }
 
+    private static NativeLibraryHolder extractToCache(
+            ClassLoader loader, String path,
+            File directory, int limit) throws IOException {
+        String hash;
+        try (InputStream in = loader.getResourceAsStream(path)) {
+            if (in == null) {
+                LOG.debug("missing native application library: path={}", path); //$NON-NLS-1$
+                return NULL;
+            }
+            hash = digest(in);
+        }
+        File target = new File(directory, hash + CACHE_FILE_SUFFIX);
+        if (target.isFile()) {
+            LOG.debug("reusing cached native application library: {}", target); //$NON-NLS-1$
+            touch(target);
+        } else {
+            if (directory.mkdirs() == false && directory.isDirectory() == false) {
+                throw new IOException(MessageFormat.format(
+                        "failed to create native library cache directory: {0}",
+                        directory));
+            }
+            File temporary = File.createTempFile(CACHE_TEMPORARY_PREFIX, CACHE_FILE_SUFFIX, directory);
+            try {
+                try (InputStream in = loader.getResourceAsStream(path)) {
+                    if (in == null) {
+                        throw new IOException(MessageFormat.format(
+                                "native application library was lost: {0}",
+                                path));
+                    }
+                    Files.copy(in, temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                LOG.debug("storing native application library into cache: {}", target); //$NON-NLS-1$
+                Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // another process has stored the same library
+                LOG.trace("native application library is already cached: {}", target, e); //$NON-NLS-1$
+            } finally {
+                Files.deleteIfExists(temporary.toPath());
+            }
+        }
+        cleanup(directory, target, limit);
+        if (LOG.isDebugEnabled()) {
+            URL url = loader.getResource(path);
+            LOG.debug("using internal native application library: {} ({})", url, target); //$NON-NLS-1$
+        }
+        return new NativeLibraryHolder(target, false, true);
+    }
+
+    private static String digest(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(CACHE_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buf = new byte[8192];
+        try (DigestInputStream input = new DigestInputStream(in, digest)) {
+            while (input.read(buf) >= 0) {
+                continue;
+            }
+        }
+        StringBuilder results = new StringBuilder();
+        for (byte b : digest.digest()) {
+            results.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+        }
+        return results.toString();
+    }
+
+    private static void touch(File file) {
+        if (file.setLastModified(System.currentTimeMillis()) == false) {
+            LOG.debug("failed to update last modified time: {}", file); //$NON-NLS-1$
+        }
+    }
+
+    private static void cleanup(File directory, File current, int limit) {
+        File[] files = directory.listFiles(f -> f.isFile()
+                && f.getName().endsWith(CACHE_FILE_SUFFIX)
+                && f.getName().startsWith(CACHE_TEMPORARY_PREFIX) == false);
+        if (files == null || files.length <= limit) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = limit; i < files.length; i++) {
+            File file = files[i];
+            if (file.equals(current)) {
+                continue;
+            }
+            // processes which have already loaded the library can keep using it
+            LOG.debug("removing least recently used native library: {}", file); //$NON-NLS-1$
+            if (file.delete() == false && file.exists()) {
+                LOG.debug("failed to remove cached native library: {}", file); //$NON-NLS-1$
+            }
+        }
+    }
+
     /**
      * Returns the library file.
      * @return the file, or {@code null} if this does not hold anything
@@ -98,6 +241,24 @@ public class NativeLibraryHolder implements Closeable {
         return file;
     }
 
+    /**
+     * Returns whether the library file is still available.
+     * If the library file is in a cache directory, this also marks it as recently used, because other processes
+     * may remove the least recently used library files from the directory.
+     * @return {@code true} if the library file is available or this does not hold anything,
+     *     or {@code false} if the library file has been removed
+     * @since 0.3.5
+     */
+    public boolean refresh() {
+        if (file == null) {
+            return true;
+        }
+        if (cached) {
+            touch(file);
+        }
+        return file.isFile();
+    }
+
     @Override
     public void close() throws IOException {
         if (deleteOnClose && file.exists()) {
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.bridge.stage.StageInfo;
+import com.asakusafw.dag.api.processor.ProcessorContext;
+
+/**
+ * Test for {@link LaunchSession}.
+ */
+public class LaunchSessionTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * reuses the cached native library between rounds.
+     * @throws Exception if failed
+     */
+    @Test
+    public void library_cache() throws Exception {
+        File cache = temporary.newFolder();
+        try (URLClassLoader loader = loader("lib", "Hello, world!");
+                LaunchSession session = new LaunchSession()) {
+            ProcessorContext context = context(loader, cache);
+            NativeLibraryHolder first = session.getLibrary(context);
+            File file = first.getFile();
+            assertThat(file.getParentFile(), is(cache));
+
+            long past = System.currentTimeMillis() - 60_000L;
+            assertThat(file.setLastModified(past), is(true));
+            NativeLibraryHolder second = session.getLibrary(context);
+            assertThat(second, is(sameInstance(first)));
+            assertThat(file.lastModified(), is(greaterThan(past)));
+        }
+    }
+
+    /**
+     * extracts the native library again if the cached file was removed between rounds.
+     * @throws Exception if failed
+     */
+    @Test
+    public void library_cache_removed() throws Exception {
+        File cache = temporary.newFolder();
+        try (URLClassLoader loader = loader("lib", "Hello, world!");
+                LaunchSession session = new LaunchSession()) {
+            ProcessorContext context = context(loader, cache);
+            File file = session.getLibrary(context).getFile();
+            assertThat(file.delete(), is(true));
+
+            NativeLibraryHolder second = session.getLibrary(context);
+            assertThat(second.getFile(), is(file));
+            assertThat(file.isFile(), is(true));
+            assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("Hello, world!"));
+            assertThat(session.getLibrary(context), is(sameInstance(second)));
+        }
+    }
+
+    /**
+     * shares the native library between concurrent requests.
+     * @throws Exception if failed
+     */
+    @Test
+    public void library_concurrent() throws Exception {
+        File cache = temporary.newFolder();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (URLClassLoader loader = loader("lib", "Hello, world!");
+                LaunchSession session = new LaunchSession()) {
+            ProcessorContext context = context(loader, cache);
+            CyclicBarrier barrier = new CyclicBarrier(4);
+            List<Future<NativeLibraryHolder>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await(10, TimeUnit.SECONDS);
+                    return session.getLibrary(context);
+                }));
+            }
+            NativeLibraryHolder first = futures.get(0).get();
+            for (Future<NativeLibraryHolder> future : futures) {
+                assertThat(future.get(), is(sameInstance(first)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private URLClassLoader loader(String path, String contents) throws Exception {
+        File root = temporary.newFolder();
+        Files.write(new File(root, path).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return new URLClassLoader(new URL[] { root.toURI().toURL() }, null);
+    }
+
+    private static ProcessorContext context(ClassLoader loader, File cache) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(Constants.KEY_NATIVE_LIBRARY, "lib");
+        properties.put(Constants.KEY_NATIVE_LIBRARY_CACHE, cache.getAbsolutePath());
+        StageInfo stage = new StageInfo("testing", "b", "f", null, "e", Collections.emptyMap());
+        return (ProcessorContext) Proxy.newProxyInstance(
+                ProcessorContext.class.getClassLoader(),
+                new Class<?>[] { ProcessorContext.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getClassLoader":
+                        return loader;
+                    case "getProperty":
+                        return Optional.ofNullable(properties.get(args[0]));
+                    case "getResource":
+                        return args[0] == StageInfo.class ? Optional.of(stage) : Optional.empty();
+                    default:
+                        throw new UnsupportedOperationException(method.toString());
+                    }
+                });
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asakusafw.vanilla.client.LaunchUtil;
+
+/**
+ * Test for {@link M3bpDaemon} and {@link M3bpDaemonClient}.
+ */
+public class M3bpDaemonTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final List<Object> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Cleanup.
+     */
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        File lib = temporary.newFolder();
+        File endpoint = new File(temporary.getRoot(), "daemon.properties");
+        try (M3bpDaemon daemon = M3bpDaemon.open(0, getClass().getClassLoader(), (kind, loader, env, args) -> {
+            requests.add(kind);
+            requests.add(Arrays.asList(((URLClassLoader) loader).getURLs()));
+            requests.add(Arrays.asList(args));
+            return 3;
+        })) {
+            DaemonProtocol.writeEndpoint(endpoint, daemon.getEndpoint());
+            Future<?> serving = executor.submit(() -> {
+                daemon.serve();
+                return null;
+            });
+            int status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Arrays.asList(lib.getPath()),
+                    Arrays.asList("--client", "testing"));
+            assertThat(status, is(3));
+            assertThat(requests, contains(
+                    DaemonProtocol.KIND_LAUNCHER,
+                    Arrays.asList(new URL[] { lib.toURI().toURL() }),
+                    Arrays.asList("--client", "testing")));
+
+            status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_SHUTDOWN,
+                    Collections.emptyList(), Collections.emptyList());
+            assertThat(status, is(0));
+            serving.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * requests carry the client environment.
+     * @throws Exception if failed
+     */
+    @Test
+    public void environment() throws Exception {
+        File endpoint = new File(temporary.getRoot(), "daemon.properties");
+        try (M3bpDaemon daemon = M3bpDaemon.open(0, getClass().getClassLoader(), (kind, loader, env, args) -> {
+            requests.add(env);
+            return 0;
+        })) {
+            DaemonProtocol.writeEndpoint(endpoint, daemon.getEndpoint());
+            executor.submit(() -> {
+                daemon.serve();
+                return null;
+            });
+            Map<String, String> env = new LinkedHashMap<>();
+            env.put("ASAKUSA_TESTING", "simulation");
+            env.put("LONG", String.join("", Collections.nCopies(100_000, "x")));
+            int status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Collections.emptyList(), Collections.emptyList(), env);
+            assertThat(status, is(0));
+
+            status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Collections.emptyList(), Collections.emptyList(), Collections.emptyMap());
+            assertThat(status, is(0));
+            assertThat(requests, contains(env, Collections.emptyMap()));
+        }
+    }
+
+    /**
+     * launcher raises an error.
+     * @throws Exception if failed
+     */
+    @Test
+    public void launcher_error() throws Exception {
+        File endpoint = new File(temporary.getRoot(), "daemon.properties");
+        try (M3bpDaemon daemon = M3bpDaemon.open(0, getClass().getClassLoader(), (kind, loader, env, args) -> {
+            requests.add(kind);
+            if (requests.size() == 1) {
+                throw new NoClassDefFoundError("testing");
+            }
+            return 0;
+        })) {
+            DaemonProtocol.writeEndpoint(endpoint, daemon.getEndpoint());
+            executor.submit(() -> {
+                daemon.serve();
+                return null;
+            });
+            int status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Collections.emptyList(), Collections.emptyList());
+            assertThat(status, is(LaunchUtil.EXEC_ERROR));
+
+            status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Collections.emptyList(), Collections.emptyList());
+            assertThat(status, is(0));
+            assertThat(requests, hasSize(2));
+        }
+    }
+
+    /**
+     * stalled clients are disconnected.
+     * @throws Exception if failed
+     */
+    @Test
+    public void stalled_client() throws Exception {
+        File endpoint = new File(temporary.getRoot(), "daemon.properties");
+        try (M3bpDaemon daemon = M3bpDaemon.open(0, getClass().getClassLoader(), (kind, loader, env, args) -> {
+            requests.add(kind);
+            return 0;
+        })) {
+            daemon.setRequestTimeout(100);
+            DaemonProtocol.writeEndpoint(endpoint, daemon.getEndpoint());
+            executor.submit(() -> {
+                daemon.serve();
+                return null;
+            });
+            try (Socket stalled = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+                int status = M3bpDaemonClient.exec(
+                        endpoint, DaemonProtocol.KIND_LAUNCHER,
+                        Collections.emptyList(), Collections.emptyList());
+                assertThat(status, is(0));
+                assertThat(requests, hasSize(1));
+            }
+        }
+    }
+
+    /**
+     * daemon is not running.
+     */
+    @Test
+    public void unavailable() {
+        File endpoint = new File(temporary.getRoot(), "missing.properties");
+        int status = M3bpDaemonClient.exec(
+                endpoint, DaemonProtocol.KIND_LAUNCHER,
+                Collections.emptyList(), Collections.emptyList());
+        assertThat(status, is(DaemonProtocol.EXIT_UNAVAILABLE));
+    }
+
+    /**
+     * requests with invalid token are rejected.
+     * @throws Exception if failed
+     */
+    @Test
+    public void invalid_token() throws Exception {
+        File endpoint = new File(temporary.getRoot(), "daemon.properties");
+        try (M3bpDaemon daemon = M3bpDaemon.open(0, getClass().getClassLoader(), (kind, loader, env, args) -> {
+            requests.add(kind);
+            return 0;
+        })) {
+            DaemonProtocol.writeEndpoint(endpoint, new DaemonProtocol.Endpoint(daemon.getPort(), "INVALID"));
+            executor.submit(() -> {
+                daemon.serve();
+                return null;
+            });
+            int status = M3bpDaemonClient.exec(
+                    endpoint, DaemonProtocol.KIND_LAUNCHER,
+                    Collections.emptyList(), Collections.emptyList());
+            assertThat(status, is(not(0)));
+            assertThat(requests, is(empty()));
+        }
+    }
+}
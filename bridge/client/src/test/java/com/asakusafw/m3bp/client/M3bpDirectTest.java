@@ -0,0 +1,207 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+
+import com.asakusafw.bridge.launch.LaunchConfiguration;
+import com.asakusafw.bridge.launch.LaunchInfo;
+import com.asakusafw.bridge.stage.StageInfo;
+import com.asakusafw.dag.api.model.GraphInfo;
+import com.asakusafw.dag.api.processor.ProcessorContext;
+import com.asakusafw.dag.api.processor.extension.ProcessorContextExtension;
+import com.asakusafw.lang.utils.common.Lang;
+import com.asakusafw.m3bp.descriptor.Descriptors;
+
+/**
+ * Test for {@link M3bpDirect}.
+ */
+public class M3bpDirectTest {
+
+    /**
+     * Detects native library file or skip tests.
+     */
+    @ClassRule
+    public static final ExternalResource CHECKER = new ExternalResource() {
+        @Override
+        protected void before() throws Throwable {
+            File f = new File(M3bpLauncherTest.NATIVE_DIR, System.mapLibraryName(M3bpLauncherTest.LIBRARY_NAME));
+            Assume.assumeTrue(f.getPath(), f.isFile());
+            nativeLibrary = f;
+        }
+    };
+
+    /**
+     * Cleaning each test.
+     */
+    @Rule
+    public final ExternalResource CLEANER = new ExternalResource() {
+        @Override
+        protected void before() throws Throwable {
+            clean0();
+            properties.put(Constants.KEY_NATIVE_LIBRARY, nativeLibrary.getAbsolutePath());
+            properties.put(Constants.KEY_ENGINE_MOCK, Capability.POSSIBLE.name());
+        }
+        @Override
+        protected void after() {
+            clean0();
+        }
+        private void clean0() {
+            App.target = null;
+            App.COUNT.set(0);
+            M3bpLauncherTest.Single.reset();
+        }
+    };
+
+    static File nativeLibrary;
+
+    final Map<String, String> properties = new HashMap<>();
+
+    /**
+     * round-independent resources are shared between rounds, and released after the last round.
+     * @throws Exception if failed
+     */
+    @Test
+    public void rounds() throws Exception {
+        GraphInfo graph = new GraphInfo();
+        graph.addVertex("v", Descriptors.newVertex(M3bpLauncherTest.Single.class));
+        App.target = graph;
+        Collections.addAll(M3bpLauncherTest.Single.INPUT, "A");
+
+        List<LaunchInfo> configurations = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            configurations.add(new LaunchConfiguration(
+                    App.class,
+                    new StageInfo("testing", "b", "f", null, "e" + i, Collections.emptyMap()),
+                    Collections.emptyMap(),
+                    properties));
+        }
+        Iterator<LaunchInfo> rounds = configurations.iterator();
+        Configuration hadoop = new Configuration();
+        hadoop.setClassLoader(getClass().getClassLoader());
+        RecordingSession session = new RecordingSession();
+
+        int exit = M3bpDirect.exec(hadoop, configurations.size(), () -> rounds.hasNext() ? rounds.next() : null,
+                session);
+        assertThat(exit, is(0));
+        assertThat(M3bpLauncherTest.Single.OUTPUT, contains("A", "A", "A"));
+
+        assertThat(App.COUNT.get(), is(1));
+        assertThat(session.graphs, hasSize(3));
+        assertThat(distinct(session.graphs), hasSize(1));
+        assertThat(session.extensions, hasSize(3));
+        assertThat(distinct(session.extensions), hasSize(1));
+        assertThat(session.libraries, hasSize(3));
+        assertThat(distinct(session.libraries), hasSize(1));
+        assertThat(session.libraries.get(0).getFile(), is(nativeLibrary.getAbsoluteFile()));
+        assertThat(session.closed, is(true));
+    }
+
+    private static Set<Object> distinct(Collection<?> values) {
+        Set<Object> results = Collections.newSetFromMap(new IdentityHashMap<>());
+        results.addAll(values);
+        return results;
+    }
+
+    /**
+     * Records the shared resources.
+     */
+    static class RecordingSession extends LaunchSession {
+
+        final List<GraphInfo> graphs = Collections.synchronizedList(new ArrayList<>());
+
+        final List<ProcessorContextExtension> extensions = Collections.synchronizedList(new ArrayList<>());
+
+        final List<NativeLibraryHolder> libraries = Collections.synchronizedList(new ArrayList<>());
+
+        volatile boolean closed;
+
+        @Override
+        GraphInfo getGraph(LaunchInfo configuration) {
+            assertThat(closed, is(false));
+            GraphInfo result = super.getGraph(configuration);
+            graphs.add(result);
+            return result;
+        }
+
+        @Override
+        ProcessorContextExtension getExtension(ClassLoader loader) {
+            assertThat(closed, is(false));
+            ProcessorContextExtension result = super.getExtension(loader);
+            extensions.add(result);
+            return result;
+        }
+
+        @Override
+        NativeLibraryHolder getLibrary(ProcessorContext context) throws IOException {
+            assertThat(closed, is(false));
+            NativeLibraryHolder result = super.getLibrary(context);
+            libraries.add(result);
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            closed = true;
+        }
+    }
+
+    /**
+     * Dummy application entry.
+     */
+    public static class App implements Supplier<GraphInfo> {
+
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        static GraphInfo target;
+
+        @Override
+        public GraphInfo get() {
+            assertThat(target, is(notNullValue()));
+            COUNT.incrementAndGet();
+            return Lang.safe(() -> {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                GraphInfo.save(output, target);
+                return GraphInfo.load(new ByteArrayInputStream(output.toByteArray()));
+            });
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.client;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link NativeLibraryHolder}.
+ */
+public class NativeLibraryHolderTest {
+
+    /**
+     * A temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * extract into temporary file.
+     * @throws Exception if failed
+     */
+    @Test
+    public void extract() throws Exception {
+        try (URLClassLoader loader = loader("a", "Hello, world!")) {
+            File file;
+            try (NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a")) {
+                file = holder.getFile();
+                assertThat(read(file), is("Hello, world!"));
+            }
+            assertThat(file.exists(), is(false));
+        }
+    }
+
+    /**
+     * extract missing library.
+     * @throws Exception if failed
+     */
+    @Test
+    public void extract_missing() throws Exception {
+        File cache = temporary.newFolder();
+        try (URLClassLoader loader = loader("a", "Hello, world!");
+                NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "b", cache, 1)) {
+            assertThat(holder.getFile(), is(nullValue()));
+        }
+    }
+
+    /**
+     * extract into cache directory.
+     * @throws Exception if failed
+     */
+    @Test
+    public void extract_cache() throws Exception {
+        File cache = temporary.newFolder();
+        File first;
+        try (URLClassLoader loader = loader("a", "Hello, world!")) {
+            try (NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a", cache, 2)) {
+                first = holder.getFile();
+                assertThat(first.getParentFile(), is(cache));
+                assertThat(read(first), is("Hello, world!"));
+            }
+            assertThat(first.isFile(), is(true));
+            try (NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a", cache, 2)) {
+                assertThat(holder.getFile(), is(first));
+            }
+        }
+        try (URLClassLoader loader = loader("a", "Hello, world!")) {
+            try (NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a", cache, 2)) {
+                assertThat(holder.getFile(), is(first));
+            }
+        }
+        assertThat(cache.list().length, is(1));
+    }
+
+    /**
+     * cache directory drops least recently used libraries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void extract_cache_limit() throws Exception {
+        File cache = temporary.newFolder();
+        File a = cached(cache, "A");
+        File b = cached(cache, "B");
+        assertThat(a, is(not(b)));
+        assertThat(a.setLastModified(System.currentTimeMillis() - 60_000L), is(true));
+        File c = cached(cache, "C");
+        assertThat(a.exists(), is(false));
+        assertThat(b.isFile(), is(true));
+        assertThat(c.isFile(), is(true));
+        assertThat(cache.list().length, is(2));
+    }
+
+    /**
+     * refresh cached libraries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void refresh_cache() throws Exception {
+        File cache = temporary.newFolder();
+        try (URLClassLoader loader = loader("a", "Hello, world!");
+                NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a", cache, 2)) {
+            File file = holder.getFile();
+            long past = System.currentTimeMillis() - 60_000L;
+            assertThat(file.setLastModified(past), is(true));
+            assertThat(holder.refresh(), is(true));
+            assertThat(file.lastModified(), is(greaterThan(past)));
+
+            assertThat(file.delete(), is(true));
+            assertThat(holder.refresh(), is(false));
+        }
+    }
+
+    private File cached(File cache, String contents) throws IOException {
+        try (URLClassLoader loader = loader("a", contents);
+                NativeLibraryHolder holder = NativeLibraryHolder.extract(loader, "a", cache, 2)) {
+            return holder.getFile();
+        }
+    }
+
+    private URLClassLoader loader(String path, String contents) throws IOException {
+        File root = temporary.newFolder();
+        Files.write(new File(root, path).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return new URLClassLoader(new URL[] { root.toURI().toURL() }, null);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77-family block codec.
+ * Each compressed block is a series of sequences, which consist of a token, literals, and a back reference.
+ * The token holds the literal length in its upper 4 bits and the match length in its lower 4 bits,
+ * and both lengths are extended by the following {@code 255}-terminated bytes if they do not fit in 4 bits.
+ * The last sequence only has literals.
+ */
+final class BlockCodec {
+
+    private static final int MIN_MATCH = 4;
+
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MAX_OFFSET = 0xffff;
+
+    private static final int HASH_LOG = 14;
+
+    private static final int RUN_MASK = 0x0f;
+
+    private BlockCodec() {
+        return;
+    }
+
+    /**
+     * Returns the max compressed size.
+     * @param length the source length
+     * @return the max compressed size
+     */
+    static int getMaxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block.
+     * @param src the source bytes
+     * @param srcOffset the source offset
+     * @param srcLength the source length
+     * @param dst the destination bytes, which must have at least {@link #getMaxCompressedLength(int)} bytes
+     * @param dstOffset the destination offset
+     * @return the compressed length
+     */
+    static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+        int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+        int end = srcOffset + srcLength;
+        int limit = end - LAST_LITERALS;
+        int anchor = srcOffset;
+        int ip = srcOffset;
+        int op = dstOffset;
+        while (ip + MIN_MATCH <= limit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+            int ref = table[hash];
+            table[hash] = ip;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < limit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeLiterals(src, anchor, ip - anchor, matchLength - MIN_MATCH, dst, op);
+            int offset = ip - ref;
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            op = writeLength(matchLength - MIN_MATCH, dst, op);
+            ip += matchLength;
+            anchor = ip;
+        }
+        op = writeLiterals(src, anchor, end - anchor, 0, dst, op);
+        return op - dstOffset;
+    }
+
+    /**
+     * Decompresses a block.
+     * @param src the compressed bytes
+     * @param srcOffset the compressed offset
+     * @param srcLength the compressed length
+     * @param dst the destination bytes
+     * @param dstOffset the destination offset
+     * @param dstLength the original length
+     * @throws IllegalStateException if the compressed block is broken
+     */
+    static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+        int ip = srcOffset;
+        int end = srcOffset + srcLength;
+        int op = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xff;
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        literalLength += b;
+                    } while (b == 0xff);
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip >= end) {
+                    break;
+                }
+                int offset = (src[ip++] & 0xff) | (src[ip++] & 0xff) << 8;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xff;
+                        matchLength += b;
+                    } while (b == 0xff);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - offset;
+                if (ref < dstOffset || offset == 0 || op + matchLength > dstEnd) {
+                    throw new IllegalStateException("invalid back reference"); //$NON-NLS-1$
+                }
+                for (int i = 0; i < matchLength; i++) {
+                    dst[op + i] = dst[ref + i];
+                }
+                op += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException(MessageFormat.format(
+                    "broken compressed block: position={0}",
+                    ip - srcOffset), e);
+        }
+        if (ip != end || op != dstEnd) {
+            throw new IllegalStateException(MessageFormat.format(
+                    "broken compressed block: length={0}, expected={1}",
+                    op - dstOffset,
+                    dstLength));
+        }
+    }
+
+    private static int writeLiterals(byte[] src, int offset, int length, int matchRun, byte[] dst, int position) {
+        int op = position;
+        int token = (Math.min(length, RUN_MASK) << 4) | Math.min(matchRun, RUN_MASK);
+        dst[op++] = (byte) token;
+        if (length >= RUN_MASK) {
+            op = writeExtension(length - RUN_MASK, dst, op);
+        }
+        System.arraycopy(src, offset, dst, op, length);
+        return op + length;
+    }
+
+    private static int writeLength(int matchRun, byte[] dst, int position) {
+        if (matchRun >= RUN_MASK) {
+            return writeExtension(matchRun - RUN_MASK, dst, position);
+        }
+        return position;
+    }
+
+    private static int writeExtension(int rest, byte[] dst, int position) {
+        int op = position;
+        int r = rest;
+        while (r >= 0xff) {
+            dst[op++] = (byte) 0xff;
+            r -= 0xff;
+        }
+        dst[op++] = (byte) r;
+        return op;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.util.List;
+
+/**
+ * An {@link EdgeProcessor} which accepts sealed {@link BufferBlock blocks}.
+ */
+interface BlockEdgeProcessor extends EdgeProcessor {
+
+    /**
+     * Adds the upstream blocks.
+     * @param blocks the upstream blocks
+     */
+    void addBlocks(List<BufferBlock> blocks);
+}
@@ -19,22 +19,25 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import com.asakusafw.lang.utils.common.Suppliers;
-
 /**
  * one-to-one and broadcast edge processor.
  */
-public class BroadcastEdgeProcessor implements EdgeProcessor {
+public class BroadcastEdgeProcessor implements BlockEdgeProcessor {
 
-    private final List<InputBufferFragment> candidates = new ArrayList<>();
+    private final List<BufferBlock> candidates = new ArrayList<>();
 
     @Override
     public void add(Iterable<? extends OutputBufferFragment> fragments) {
-        candidates.addAll(MoveEdgeProcessor.extract(fragments));
+        candidates.addAll(MoveEdgeProcessor.wrap(fragments));
+    }
+
+    @Override
+    public void addBlocks(List<BufferBlock> blocks) {
+        candidates.addAll(blocks);
     }
 
     @Override
     public List<InputBufferCursor> process() {
-        return Collections.singletonList(new InputBufferCursor(Suppliers.fromIterable(candidates)));
+        return Collections.singletonList(new InputBufferCursor(BufferBlock.supplier(candidates)));
     }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.sun.jna.Memory;
+
+/**
+ * A sealed fragment in edges, which may be compressed in memory.
+ * @see BlockCodec
+ */
+final class BufferBlock {
+
+    /**
+     * Fragments are kept as is unless compression saves at least {@code 1 / COMPRESSION_GAIN} of them.
+     */
+    static final int COMPRESSION_GAIN = 8;
+
+    private final InputBufferFragment fragment;
+
+    private final Memory compressed;
+
+    private final int compressedSize;
+
+    private final int contentsSize;
+
+    private final long entryCount;
+
+    private final long size;
+
+    private BufferBlock(InputBufferFragment fragment) {
+        this.fragment = fragment;
+        this.compressed = null;
+        this.compressedSize = 0;
+        this.contentsSize = 0;
+        this.entryCount = fragment.getEntryCount();
+        this.size = getSize(fragment.getEntryOffsets(), entryCount);
+    }
+
+    private BufferBlock(Memory compressed, int compressedSize, int contentsSize, long entryCount, long size) {
+        this.fragment = null;
+        this.compressed = compressed;
+        this.compressedSize = compressedSize;
+        this.contentsSize = contentsSize;
+        this.entryCount = entryCount;
+        this.size = size;
+    }
+
+    /**
+     * Returns a block which holds the fragment as is.
+     * @param fragment the source fragment
+     * @return the created block
+     */
+    static BufferBlock of(OutputBufferFragment fragment) {
+        return new BufferBlock(new InputBufferFragment(
+                fragment.getContents(),
+                fragment.getEntryOffsets(),
+                fragment.getEntryCount()));
+    }
+
+    /**
+     * Returns a block which holds the compressed fragment.
+     * If the fragment is not compressible, this returns a block which holds it as is.
+     * @param fragment the source fragment
+     * @return the created block
+     */
+    static BufferBlock compress(OutputBufferFragment fragment) {
+        long count = fragment.getEntryCount();
+        long contentsSize = count == 0 ? 0 : fragment.getEntryOffsets().getLong(count * Long.BYTES);
+        long offsetsSize = (count + 1) * Long.BYTES;
+        long total = contentsSize + offsetsSize;
+        if (count == 0 || total > Integer.MAX_VALUE / 2) {
+            return of(fragment);
+        }
+        byte[] source = new byte[(int) total];
+        fragment.getContents().read(0, source, 0, (int) contentsSize);
+        fragment.getEntryOffsets().read(0, source, (int) contentsSize, (int) offsetsSize);
+        byte[] buffer = new byte[BlockCodec.getMaxCompressedLength(source.length)];
+        int compressedSize = BlockCodec.compress(source, 0, source.length, buffer, 0);
+        if (compressedSize > total - total / COMPRESSION_GAIN) {
+            return of(fragment);
+        }
+        Memory memory = new Memory(compressedSize);
+        memory.write(0, buffer, 0, compressedSize);
+        return new BufferBlock(
+                memory, compressedSize,
+                (int) contentsSize, count,
+                getSize(fragment.getEntryOffsets(), count));
+    }
+
+    /**
+     * Returns whether or not this block is compressed.
+     * @return {@code true} if this is compressed, otherwise {@code false}
+     */
+    boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * Returns the number of bytes of the contents in this block, which is not compressed.
+     * @return the number of bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes which this block occupies.
+     * @return the number of bytes
+     */
+    long getFootprint() {
+        if (compressed != null) {
+            return compressedSize;
+        }
+        return fragment.getContents().size() + fragment.getEntryOffsets().size();
+    }
+
+    /**
+     * Returns the fragment in this block.
+     * If this block is compressed, this decompresses it into a new fragment.
+     * @return the fragment
+     */
+    InputBufferFragment open() {
+        if (compressed == null) {
+            return fragment;
+        }
+        long offsetsSize = (entryCount + 1) * Long.BYTES;
+        byte[] source = compressed.getByteArray(0, compressedSize);
+        byte[] results = new byte[(int) (contentsSize + offsetsSize)];
+        BlockCodec.decompress(source, 0, source.length, results, 0, results.length);
+        Memory contents = new Memory(Math.max(contentsSize, 1));
+        contents.write(0, results, 0, contentsSize);
+        Memory offsets = new Memory(offsetsSize);
+        offsets.write(0, results, contentsSize, (int) offsetsSize);
+        return new InputBufferFragment(contents, offsets, entryCount);
+    }
+
+    private static long getSize(Memory offsets, long count) {
+        if (count == 0) {
+            return 0;
+        }
+        return offsets.getLong(count * Long.BYTES) - offsets.getLong(0);
+    }
+
+    /**
+     * Returns a supplier which opens each block lazily.
+     * @param blocks the blocks
+     * @return the supplier, which returns {@code null} after all fragments were provided
+     */
+    static Supplier<InputBufferFragment> supplier(List<BufferBlock> blocks) {
+        Iterator<BufferBlock> iter = blocks.iterator();
+        return () -> iter.hasNext() ? iter.next().open() : null;
+    }
+}
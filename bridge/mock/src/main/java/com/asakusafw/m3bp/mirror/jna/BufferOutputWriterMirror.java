@@ -80,7 +80,8 @@ public class BufferOutputWriterMirror implements OutputWriterMirror {
         ByteBuffer contents = toBuffer(current.getContents());
         ByteBuffer entries = toBuffer(current.getEntryOffsets());
         ByteBuffer keys = current.hasKey() ? toBuffer(current.getKeyLengths()) : null;
-        output.reset(0, contents, entries, keys);
+        ByteBuffer hashes = current.hasKeyHash() ? toBuffer(current.getKeyHashes()) : null;
+        output.reset(0, contents, entries, keys, hashes);
     }
 
     @Override
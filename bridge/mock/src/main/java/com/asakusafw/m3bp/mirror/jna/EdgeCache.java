@@ -0,0 +1,584 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dag.api.processor.VertexProcessor;
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.lang.utils.common.Invariants;
+import com.asakusafw.m3bp.mirror.PortMirror;
+import com.asakusafw.m3bp.mirror.VertexMirror;
+
+/**
+ * Stores outputs of vertices into a local directory, and restores them in the later executions.
+ * Each entry is identified by the fingerprint of its vertex, which consists of the vertex processor code,
+ * the vertex ports, the {@link RecordDigest digests of the input records}, and the cache tag.
+ * Each entry also keeps the digests of its output records, so that the downstream vertices can compute
+ * their fingerprints without restoring the entry.
+ * @see EdgeConfiguration#getCacheDirectory()
+ */
+class EdgeCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(EdgeCache.class);
+
+    private static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private static final String TEMPORARY_PREFIX = ".tmp-"; //$NON-NLS-1$
+
+    private static final String FILE_SUFFIX = ".bin"; //$NON-NLS-1$
+
+    private static final String DIGESTS_FILE = "digests.txt"; //$NON-NLS-1$
+
+    private static final int MAGIC = 0x4d334543;
+
+    private static final int HEADER_SIZE = Long.BYTES * 2 + 2;
+
+    private final File directory;
+
+    private final String tag;
+
+    private final Map<String, String> codeDigests = new HashMap<>();
+
+    /**
+     * Creates a new instance.
+     * @param directory the cache directory
+     * @param tag the cache tag
+     */
+    EdgeCache(File directory, String tag) {
+        Arguments.requireNonNull(directory);
+        Arguments.requireNonNull(tag);
+        this.directory = directory;
+        this.tag = tag;
+    }
+
+    /**
+     * Computes the fingerprint of the vertex.
+     * @param vertex the target vertex
+     * @param loader the class loader to load the vertex processor
+     * @param digests provides the {@link RecordDigest record digest} of each upstream output port
+     * @return the fingerprint
+     * @throws IOException if I/O error was occurred while computing the fingerprint
+     * @throws InterruptedException if interrupted while computing the fingerprint
+     */
+    String getFingerprint(
+            VertexMirror vertex, ClassLoader loader,
+            Function<? super PortMirror, String> digests) throws IOException, InterruptedException {
+        MessageDigest digest = newDigest();
+        update(digest, tag);
+        update(digest, vertex.getName());
+        try (VertexProcessor processor = vertex.newProcessor(loader)) {
+            Class<?> aClass = processor.getClass();
+            update(digest, aClass.getName());
+            update(digest, getCodeDigest(aClass));
+        }
+        for (PortMirror port : vertex.getInputs()) {
+            update(digest, port.getName());
+            update(digest, port.getMovement().name());
+            // opposites are unordered
+            List<String> upstreams = new ArrayList<>();
+            for (PortMirror opposite : port.getOpposites()) {
+                String upstream = digests.apply(opposite);
+                Invariants.requireNonNull(upstream, () -> opposite.getOwner().getName());
+                upstreams.add(upstream);
+            }
+            Collections.sort(upstreams);
+            upstreams.forEach(it -> update(digest, it));
+        }
+        for (PortMirror port : vertex.getOutputs()) {
+            update(digest, port.getName());
+            update(digest, port.getMovement().name());
+        }
+        return toString(digest.digest());
+    }
+
+    /**
+     * Returns whether or not this cache contains outputs for the fingerprint.
+     * @param fingerprint the vertex fingerprint
+     * @return {@code true} if this contains such outputs, otherwise {@code false}
+     */
+    boolean contains(String fingerprint) {
+        return new File(new File(directory, fingerprint), DIGESTS_FILE).isFile();
+    }
+
+    /**
+     * Returns the {@link RecordDigest record digests} of the cached outputs.
+     * @param fingerprint the vertex fingerprint
+     * @param vertex the target vertex
+     * @return the record digest of each output port
+     * @throws IOException if I/O error was occurred while reading digests
+     */
+    Map<PortMirror, String> getDigests(String fingerprint, VertexMirror vertex) throws IOException {
+        File file = new File(new File(directory, fingerprint), DIGESTS_FILE);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        List<? extends PortMirror> outputs = vertex.getOutputs();
+        if (lines.size() != outputs.size()) {
+            throw new IOException(MessageFormat.format(
+                    "broken edge cache file: {0}",
+                    file));
+        }
+        Map<PortMirror, String> results = new LinkedHashMap<>();
+        for (int i = 0, n = outputs.size(); i < n; i++) {
+            results.put(outputs.get(i), lines.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Restores outputs of the vertex.
+     * @param fingerprint the vertex fingerprint
+     * @param vertex the target vertex
+     * @param sinks provides the destination of each output port
+     * @throws IOException if I/O error was occurred while restoring outputs
+     */
+    void restore(
+            String fingerprint, VertexMirror vertex,
+            Function<PortMirror, Consumer<OutputBufferFragment>> sinks) throws IOException {
+        File entry = new File(directory, fingerprint);
+        List<? extends PortMirror> outputs = vertex.getOutputs();
+        for (int i = 0, n = outputs.size(); i < n; i++) {
+            File file = new File(entry, i + FILE_SUFFIX);
+            Consumer<OutputBufferFragment> sink = sinks.apply(outputs.get(i));
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                readMagic(channel, file);
+                while (true) {
+                    OutputBufferFragment fragment = read(channel, file);
+                    if (fragment == null) {
+                        break;
+                    }
+                    sink.accept(fragment);
+                }
+            }
+        }
+        touch(entry);
+    }
+
+    /**
+     * Starts computing {@link RecordDigest record digests} of the vertex outputs, without storing them.
+     * @param vertex the target vertex
+     * @return the session
+     */
+    static Session observe(VertexMirror vertex) {
+        return new Session(vertex, null, null);
+    }
+
+    /**
+     * Starts storing outputs of the vertex.
+     * @param fingerprint the vertex fingerprint
+     * @param vertex the target vertex
+     * @return the session
+     * @throws IOException if I/O error was occurred while initializing the session
+     */
+    Session store(String fingerprint, VertexMirror vertex) throws IOException {
+        if (directory.mkdirs() == false && directory.isDirectory() == false) {
+            throw new IOException(MessageFormat.format(
+                    "failed to create edge cache directory: {0}",
+                    directory));
+        }
+        Path temporary = Files.createTempDirectory(directory.toPath(), TEMPORARY_PREFIX);
+        Session session = new Session(vertex, new File(directory, fingerprint).toPath(), temporary);
+        try {
+            List<? extends PortMirror> outputs = vertex.getOutputs();
+            for (int i = 0, n = outputs.size(); i < n; i++) {
+                session.open(outputs.get(i), temporary.resolve(i + FILE_SUFFIX));
+            }
+        } catch (IOException e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    private String getCodeDigest(Class<?> aClass) throws IOException {
+        File file = findCodeFile(aClass);
+        if (file != null) {
+            String key = file.getAbsolutePath();
+            String cached = codeDigests.get(key);
+            if (cached == null) {
+                try (InputStream in = Files.newInputStream(file.toPath())) {
+                    cached = digest(in);
+                }
+                codeDigests.put(key, cached);
+            }
+            return cached;
+        }
+        String path = aClass.getName().replace('.', '/') + ".class"; //$NON-NLS-1$
+        ClassLoader loader = aClass.getClassLoader();
+        try (InputStream in = loader == null
+                ? ClassLoader.getSystemResourceAsStream(path)
+                : loader.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException(MessageFormat.format(
+                        "failed to load class file: {0}",
+                        aClass.getName()));
+            }
+            return digest(in);
+        }
+    }
+
+    private static File findCodeFile(Class<?> aClass) {
+        CodeSource source = aClass.getProtectionDomain().getCodeSource();
+        URL location = source == null ? null : source.getLocation();
+        if (location == null || location.getProtocol().equals("file") == false) { //$NON-NLS-1$
+            return null;
+        }
+        try {
+            File file = new File(location.toURI());
+            return file.isFile() ? file : null;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOG.trace("unrecognized code source: {}", location, e); //$NON-NLS-1$
+            return null;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static String digest(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buf = new byte[8192];
+        try (DigestInputStream input = new DigestInputStream(in, digest)) {
+            while (input.read(buf) >= 0) {
+                continue;
+            }
+        }
+        return toString(digest.digest());
+    }
+
+    private static String toString(byte[] bytes) {
+        StringBuilder results = new StringBuilder();
+        for (byte b : bytes) {
+            results.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+        }
+        return results.toString();
+    }
+
+    private static void touch(File file) {
+        if (file.setLastModified(System.currentTimeMillis()) == false) {
+            LOG.debug("failed to update last modified time: {}", file); //$NON-NLS-1$
+        }
+    }
+
+    static void write(FileChannel channel, OutputBufferFragment fragment) throws IOException {
+        long count = fragment.getEntryCount();
+        if (count == 0) {
+            return;
+        }
+        long size = fragment.getEntryOffsets().getLong(count * Long.BYTES);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(count);
+        header.putLong(size);
+        header.put((byte) (fragment.hasKey() ? 1 : 0));
+        header.put((byte) (fragment.hasKeyHash() ? 1 : 0));
+        header.flip();
+        writeFully(channel, header);
+        writeFully(channel, fragment.getContents().getByteBuffer(0, size));
+        writeFully(channel, fragment.getEntryOffsets().getByteBuffer(0, (count + 1) * Long.BYTES));
+        if (fragment.hasKey()) {
+            writeFully(channel, fragment.getKeyLengths().getByteBuffer(0, count * Long.BYTES));
+        }
+        if (fragment.hasKeyHash()) {
+            writeFully(channel, fragment.getKeyHashes().getByteBuffer(0, count * Integer.BYTES));
+        }
+    }
+
+    static OutputBufferFragment read(FileChannel channel, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.read(header) < 0) {
+            return null;
+        }
+        readFully(channel, header, file);
+        header.flip();
+        long count = header.getLong();
+        long size = header.getLong();
+        boolean hasKey = header.get() != 0;
+        boolean hasKeyHash = header.get() != 0;
+        if (count <= 0 || size < 0 || (hasKeyHash && hasKey == false)) {
+            throw new IOException(MessageFormat.format(
+                    "broken edge cache file: {0}",
+                    file));
+        }
+        OutputBufferFragment fragment = new OutputBufferFragment(Math.max(size, 1), count, hasKey, hasKeyHash);
+        readFully(channel, fragment.getContents().getByteBuffer(0, size), file);
+        readFully(channel, fragment.getEntryOffsets().getByteBuffer(0, (count + 1) * Long.BYTES), file);
+        if (hasKey) {
+            readFully(channel, fragment.getKeyLengths().getByteBuffer(0, count * Long.BYTES), file);
+        }
+        if (hasKeyHash) {
+            readFully(channel, fragment.getKeyHashes().getByteBuffer(0, count * Integer.BYTES), file);
+        }
+        fragment.setEntryCount(count);
+        return fragment;
+    }
+
+    private static void writeMagic(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt(MAGIC);
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void readMagic(FileChannel channel, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, buffer, file);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(MessageFormat.format(
+                    "unrecognized edge cache file: {0}",
+                    file));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, File file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException(MessageFormat.format(
+                        "unexpected end of edge cache file: {0}",
+                        file));
+            }
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (Files.exists(path) == false) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) stream.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Computes digests of the outputs of a vertex, and stores them if it is required.
+     */
+    static final class Session implements AutoCloseable {
+
+        private final List<? extends PortMirror> ports;
+
+        private final Path target;
+
+        private final Path temporary;
+
+        private final Map<PortMirror, RecordDigest> digests = new LinkedHashMap<>();
+
+        private final Map<PortMirror, FileChannel> channels = new HashMap<>();
+
+        private final List<FileChannel> opened = new ArrayList<>();
+
+        private boolean committed;
+
+        Session(VertexMirror vertex, Path target, Path temporary) {
+            this.ports = vertex.getOutputs();
+            this.target = target;
+            this.temporary = temporary;
+            for (PortMirror port : ports) {
+                digests.put(port, new RecordDigest());
+            }
+        }
+
+        void open(PortMirror port, Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            opened.add(channel);
+            writeMagic(channel);
+            channels.put(port, channel);
+        }
+
+        /**
+         * Returns a sink which digests and stores output fragments, and then passes them to the given sink.
+         * @param port the output port
+         * @param sink the original sink
+         * @return the decorated sink
+         */
+        Consumer<OutputBufferFragment> tap(PortMirror port, Consumer<OutputBufferFragment> sink) {
+            RecordDigest digest = digests.get(port);
+            if (digest == null) {
+                return sink;
+            }
+            FileChannel channel = channels.get(port);
+            return fragment -> {
+                digest.add(fragment);
+                if (channel != null) {
+                    synchronized (channel) {
+                        try {
+                            write(channel, fragment);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(MessageFormat.format(
+                                    "error occurred while storing edge outputs: {0}",
+                                    port), e);
+                        }
+                    }
+                }
+                sink.accept(fragment);
+            };
+        }
+
+        /**
+         * Returns the {@link RecordDigest record digests} of the outputs.
+         * This is only available after all outputs were passed to the {@link #tap(PortMirror, Consumer) taps}.
+         * @return the record digest of each output port
+         */
+        Map<PortMirror, String> getDigests() {
+            Map<PortMirror, String> results = new LinkedHashMap<>();
+            digests.forEach((k, v) -> results.put(k, v.get()));
+            return results;
+        }
+
+        /**
+         * Publishes the stored outputs.
+         * @throws IOException if I/O error was occurred while publishing outputs
+         */
+        void commit() throws IOException {
+            if (target == null) {
+                committed = true;
+                return;
+            }
+            for (FileChannel channel : opened) {
+                channel.close();
+            }
+            List<String> lines = new ArrayList<>();
+            for (PortMirror port : ports) {
+                lines.add(digests.get(port).get());
+            }
+            Files.write(temporary.resolve(DIGESTS_FILE), lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                LOG.debug("stored edge outputs: {}", target); //$NON-NLS-1$
+            } catch (IOException e) {
+                if (Files.isDirectory(target) == false) {
+                    throw e;
+                }
+                // another execution has stored the same outputs
+                LOG.trace("edge outputs are already cached: {}", target, e); //$NON-NLS-1$
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (temporary == null) {
+                return;
+            }
+            for (FileChannel channel : opened) {
+                channel.close();
+            }
+            delete(temporary);
+            if (committed == false) {
+                LOG.debug("discarded edge outputs: {}", target); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * An order-insensitive digest of records.
+     * Each record is hashed individually, so that the digest does not depend on how tasks are scheduled.
+     */
+    static final class RecordDigest {
+
+        private long count;
+
+        private long sum0;
+
+        private long sum1;
+
+        /**
+         * Adds records in the fragment.
+         * @param fragment the fragment
+         */
+        void add(OutputBufferFragment fragment) {
+            MessageDigest digest = newDigest();
+            ByteBuffer keyLength = ByteBuffer.allocate(Long.BYTES);
+            long n = fragment.getEntryCount();
+            long s0 = 0;
+            long s1 = 0;
+            for (long i = 0; i < n; i++) {
+                long begin = fragment.getEntryOffsets().getLong(i * Long.BYTES);
+                long end = fragment.getEntryOffsets().getLong((i + 1) * Long.BYTES);
+                if (fragment.hasKey()) {
+                    keyLength.clear();
+                    keyLength.putLong(fragment.getKeyLengths().getLong(i * Long.BYTES));
+                    keyLength.flip();
+                    digest.update(keyLength);
+                }
+                digest.update(fragment.getContents().getByteBuffer(begin, end - begin));
+                ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+                s0 += hash.getLong();
+                s1 += hash.getLong();
+            }
+            synchronized (this) {
+                count += n;
+                sum0 += s0;
+                sum1 += s1;
+            }
+        }
+
+        /**
+         * Returns the digest string.
+         * @return the digest string
+         */
+        synchronized String get() {
+            return String.format("%016x%016x%016x", count, sum0, sum1); //$NON-NLS-1$
+        }
+    }
+}
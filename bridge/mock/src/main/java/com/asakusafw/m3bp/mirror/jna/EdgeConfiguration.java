@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.m3bp.mirror.Movement;
+
+/**
+ * Configuration of edge operations in the JNA-based engine.
+ * @since 0.3.5
+ */
+public class EdgeConfiguration {
+
+    /**
+     * The default value of {@link #getTaskSize()}.
+     */
+    public static final long DEFAULT_TASK_SIZE = 64L * 1024 * 1024;
+
+    private long memoryBudget = Long.MAX_VALUE;
+
+    private long taskSize = DEFAULT_TASK_SIZE;
+
+    private File spillDirectory;
+
+    private int hotKeyCount = 0;
+
+    private File cacheDirectory;
+
+    private String cacheTag = ""; //$NON-NLS-1$
+
+    private final Set<Movement> compressedMovements = EnumSet.noneOf(Movement.class);
+
+    /**
+     * Returns the max number of bytes which each scatter-gather edge can hold on memory.
+     * The default value is {@link Long#MAX_VALUE}, which means edges never spill out their contents.
+     * @return the memory budget in bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the max number of bytes which each scatter-gather edge can hold on memory.
+     * If the edge contents exceed this, they will be spilled out into temporary files.
+     * @param newValue the memory budget in bytes
+     * @return this
+     */
+    public EdgeConfiguration withMemoryBudget(long newValue) {
+        Arguments.require(newValue > 0);
+        memoryBudget = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the directory for spilling edge contents.
+     * @return the spill directory, or {@code null} if it is the system default temporary directory
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory for spilling edge contents.
+     * @param newValue the spill directory (nullable)
+     * @return this
+     */
+    public EdgeConfiguration withSpillDirectory(File newValue) {
+        spillDirectory = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the target number of bytes of each task which consumes one-to-one edges.
+     * @return the target task size in bytes
+     */
+    public long getTaskSize() {
+        return taskSize;
+    }
+
+    /**
+     * Sets the target number of bytes of each task which consumes one-to-one edges.
+     * Small upstream fragments are coalesced into a task until their total size reaches this.
+     * @param newValue the target task size in bytes
+     * @return this
+     */
+    public EdgeConfiguration withTaskSize(long newValue) {
+        Arguments.require(newValue > 0);
+        taskSize = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the max number of hot keys to track on each scatter-gather edge.
+     * @return the max number of hot keys, or {@code 0} if tracking keys is disabled
+     * @see EdgeStatistics#getHotKeys()
+     */
+    public int getHotKeyCount() {
+        return hotKeyCount;
+    }
+
+    /**
+     * Sets the max number of hot keys to track on each scatter-gather edge.
+     * @param newValue the max number of hot keys, or {@code 0} to disable tracking keys
+     * @return this
+     */
+    public EdgeConfiguration withHotKeyCount(int newValue) {
+        Arguments.require(newValue >= 0);
+        hotKeyCount = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the directory for caching edge outputs across executions.
+     * @return the cache directory, or {@code null} if caching edge outputs is disabled
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Sets the directory for caching edge outputs across executions.
+     * If this is set, outputs of each vertex are stored with the fingerprint of the vertex,
+     * and the next execution restores them instead of running the vertex if the fingerprint is not changed.
+     * @param newValue the cache directory, or {@code null} to disable caching edge outputs
+     * @return this
+     * @see #withCacheTag(String)
+     */
+    public EdgeConfiguration withCacheDirectory(File newValue) {
+        cacheDirectory = newValue;
+        return this;
+    }
+
+    /**
+     * Returns the tag which is included in fingerprints of the cached edge outputs.
+     * @return the cache tag
+     */
+    public String getCacheTag() {
+        return cacheTag;
+    }
+
+    /**
+     * Sets the tag which is included in fingerprints of the cached edge outputs.
+     * The tag must identify the input data of the flow graph,
+     * because the engine cannot inspect data sets which the vertices read by themselves.
+     * @param newValue the cache tag
+     * @return this
+     */
+    public EdgeConfiguration withCacheTag(String newValue) {
+        Arguments.requireNonNull(newValue);
+        cacheTag = newValue;
+        return this;
+    }
+
+    /**
+     * Returns whether or not the contents of the edges are compressed in memory.
+     * @param movement the edge movement
+     * @return {@code true} if they are compressed, otherwise {@code false}
+     */
+    public boolean isCompressed(Movement movement) {
+        return compressedMovements.contains(movement);
+    }
+
+    /**
+     * Sets whether or not the contents of the edges are compressed in memory.
+     * This is only available for {@link Movement#ONE_TO_ONE one-to-one} and
+     * {@link Movement#BROADCAST broadcast} edges, because scatter-gather edges are
+     * {@link #withMemoryBudget(long) spilled out} instead.
+     * @param movement the edge movement
+     * @param newValue {@code true} to compress them, otherwise {@code false}
+     * @return this
+     */
+    public EdgeConfiguration withCompressed(Movement movement, boolean newValue) {
+        Arguments.requireNonNull(movement);
+        Arguments.require(movement == Movement.ONE_TO_ONE || movement == Movement.BROADCAST);
+        if (newValue) {
+            compressedMovements.add(movement);
+        } else {
+            compressedMovements.remove(movement);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.asakusafw.lang.utils.common.Arguments;
+
+/**
+ * Statistics of records on a scatter-gather edge.
+ * Key frequencies are tracked by the Misra-Gries summary,
+ * so that each reported frequency is a lower bound of the actual one.
+ * @since 0.3.5
+ */
+public class EdgeStatistics {
+
+    private final long[] partitionRecords;
+
+    private final long[] partitionBytes;
+
+    private final int hotKeyCount;
+
+    private final int capacity;
+
+    private final Map<ByteBuffer, long[]> counters;
+
+    /**
+     * Creates a new instance.
+     * @param partitions the number of partitions
+     * @param hotKeyCount the max number of hot keys to track, or {@code 0} to disable tracking keys
+     */
+    public EdgeStatistics(int partitions, int hotKeyCount) {
+        Arguments.require(partitions > 0);
+        Arguments.require(hotKeyCount >= 0);
+        this.partitionRecords = new long[partitions];
+        this.partitionBytes = new long[partitions];
+        this.hotKeyCount = hotKeyCount;
+        this.capacity = hotKeyCount * 4;
+        this.counters = new HashMap<>();
+    }
+
+    /**
+     * Records an entry.
+     * @param partition the partition index
+     * @param key the entry key
+     * @param size the entry size in bytes
+     */
+    public void add(int partition, ByteBuffer key, long size) {
+        partitionRecords[partition]++;
+        partitionBytes[partition] += size;
+        if (capacity == 0) {
+            return;
+        }
+        long[] counter = counters.get(key);
+        if (counter != null) {
+            counter[0]++;
+        } else if (counters.size() < capacity) {
+            ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+            copy.put(key.duplicate());
+            copy.flip();
+            counters.put(copy, new long[] { 1 });
+        } else {
+            for (Iterator<long[]> iter = counters.values().iterator(); iter.hasNext();) {
+                long[] c = iter.next();
+                if (--c[0] == 0) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of records in each partition.
+     * @return the number of records
+     */
+    public long[] getPartitionRecords() {
+        return partitionRecords.clone();
+    }
+
+    /**
+     * Returns the number of bytes in each partition.
+     * @return the number of bytes
+     */
+    public long[] getPartitionBytes() {
+        return partitionBytes.clone();
+    }
+
+    /**
+     * Returns the total number of records.
+     * @return the total number of records
+     */
+    public long getTotalRecords() {
+        return Arrays.stream(partitionRecords).sum();
+    }
+
+    /**
+     * Returns the ratio of the largest partition to the average one, in number of records.
+     * @return the skew ratio, or {@code 1.0} if there are no records
+     */
+    public double getSkew() {
+        long total = getTotalRecords();
+        if (total == 0) {
+            return 1.0;
+        }
+        long max = Arrays.stream(partitionRecords).max().getAsLong();
+        return (double) max * partitionRecords.length / total;
+    }
+
+    /**
+     * Returns the most frequent keys in descending order of their frequency.
+     * @return the hot keys, or an empty list if tracking keys is disabled
+     */
+    public List<KeyFrequency> getHotKeys() {
+        List<KeyFrequency> results = new ArrayList<>();
+        counters.forEach((k, v) -> results.add(new KeyFrequency(k.duplicate(), v[0])));
+        Collections.sort(results, (a, b) -> Long.compare(b.count, a.count));
+        return results.size() <= hotKeyCount ? results : new ArrayList<>(results.subList(0, hotKeyCount));
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+                "EdgeStatistics(records={0}, partitions={1}, skew={2,number,0.00})", //$NON-NLS-1$
+                getTotalRecords(),
+                Arrays.toString(partitionRecords),
+                getSkew());
+    }
+
+    /**
+     * Frequency of a key.
+     * @since 0.3.5
+     */
+    public static final class KeyFrequency {
+
+        final ByteBuffer key;
+
+        final long count;
+
+        KeyFrequency(ByteBuffer key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        /**
+         * Returns the key contents.
+         * @return the key contents
+         */
+        public ByteBuffer getKey() {
+            return key.duplicate();
+        }
+
+        /**
+         * Returns the lower bound of the number of records with the key.
+         * @return the number of records
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            for (int i = key.position(), n = key.limit(); i < n; i++) {
+                buf.append(String.format("%02x", key.get(i))); //$NON-NLS-1$
+            }
+            return MessageFormat.format(
+                    "{0}x{1}", //$NON-NLS-1$
+                    buf,
+                    count);
+        }
+    }
+}
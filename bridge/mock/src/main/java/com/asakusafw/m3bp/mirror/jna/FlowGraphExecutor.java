@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,6 +40,7 @@ import com.asakusafw.lang.utils.common.Invariants;
 import com.asakusafw.lang.utils.common.Lang;
 import com.asakusafw.lang.utils.common.Optionals;
 import com.asakusafw.lang.utils.common.RunnableWithException;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror;
 import com.asakusafw.m3bp.mirror.FlowGraphMirror;
 import com.asakusafw.m3bp.mirror.Movement;
@@ -49,11 +51,28 @@ import com.asakusafw.utils.graph.Graphs;
 
 /**
  * Executes {@link FlowGraphMirror}.
+ * If {@link EdgeConfiguration#getCacheDirectory() edge cache} is enabled, this reuses the outputs of
+ * the side-effect free vertices whose code and input records are not changed from the previous executions.
  */
 public class FlowGraphExecutor implements RunnableWithException<Exception> {
 
     static final Logger LOG = LoggerFactory.getLogger(FlowGraphExecutor.class);
 
+    /**
+     * The ratio of the max entry count to the expected number of records in each output buffer.
+     * Records are often shorter than the expected size, so that we keep some headroom in the offset tables.
+     */
+    static final long ENTRY_COUNT_HEADROOM = 2;
+
+    static final long MIN_ENTRY_COUNT = 16;
+
+    /**
+     * The ratio of the largest partition to the average one, which is reported as a skewed edge.
+     */
+    static final double SKEW_REPORT_THRESHOLD = 4.0;
+
+    static final long SKEW_REPORT_MIN_RECORDS = 10_000;
+
     private final ProcessorContext context;
 
     private final FlowGraphMirror graph;
@@ -62,6 +81,8 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
 
     final Function<String, ? extends BufferComparator> comparators;
 
+    final EdgeConfiguration edgeConfiguration;
+
     /**
      * Creates a new instance.
      * @param context the root context
@@ -74,13 +95,33 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
             FlowGraphMirror graph,
             ConfigurationMirror configuration,
             Function<String, ? extends BufferComparator> comparators) {
+        this(context, graph, configuration, comparators, new EdgeConfiguration());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param context the root context
+     * @param graph the target flow graph
+     * @param configuration the current configuration
+     * @param comparators the comparators
+     * @param edgeConfiguration the edge configuration
+     * @since 0.3.5
+     */
+    public FlowGraphExecutor(
+            ProcessorContext context,
+            FlowGraphMirror graph,
+            ConfigurationMirror configuration,
+            Function<String, ? extends BufferComparator> comparators,
+            EdgeConfiguration edgeConfiguration) {
         Arguments.requireNonNull(context);
         Arguments.requireNonNull(graph);
         Arguments.requireNonNull(configuration);
+        Arguments.requireNonNull(edgeConfiguration);
         this.context = context;
         this.graph = graph;
         this.configuration = configuration;
         this.comparators = comparators;
+        this.edgeConfiguration = edgeConfiguration;
     }
 
     @Override
@@ -91,16 +132,108 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
                         .forEach(p -> p.getOpposites().stream()
                                 .map(o -> o.getOwner())
                                 .forEach(o -> g.addEdge(v, o)))));
+        List<VertexMirror> vertices = Graphs.sortPostOrder(dependencies);
+        EdgeCache cache = Optionals.of(edgeConfiguration.getCacheDirectory())
+                .map(d -> new EdgeCache(d, edgeConfiguration.getCacheTag()))
+                .orElse(null);
         try (ThreadPool threads = new ThreadPool();
                 IO io = new IO()) {
-            for (VertexMirror vertex : Graphs.sortPostOrder(dependencies)) {
-                VertexExecutor executor = new VertexExecutor(
-                        context, vertex, io,
-                        threads.executor, configuration.getMaxConcurrency());
-                executor.run();
-                io.resolve(vertex);
+            if (cache == null) {
+                for (VertexMirror vertex : vertices) {
+                    run(vertex, io, threads);
+                    io.resolve(vertex);
+                }
+            } else {
+                run(vertices, cache, io, threads);
+            }
+        }
+    }
+
+    private void run(
+            List<VertexMirror> vertices, EdgeCache cache,
+            IO io, ThreadPool threads) throws IOException, InterruptedException {
+        Map<PortMirror, String> digests = new HashMap<>();
+        Map<VertexMirror, String> deferred = new LinkedHashMap<>();
+        for (VertexMirror vertex : vertices) {
+            String fingerprint = isCacheable(vertex)
+                    ? cache.getFingerprint(vertex, context.getClassLoader(), digests::get)
+                    : null;
+            if (fingerprint != null && cache.contains(fingerprint)) {
+                // restores the outputs only if some downstream vertices actually run
+                LOG.debug("found cached outputs: {} ({})", vertex.getName(), fingerprint); //$NON-NLS-1$
+                digests.putAll(cache.getDigests(fingerprint, vertex));
+                deferred.put(vertex, fingerprint);
+                io.resolveInputs(vertex);
+                continue;
+            }
+            for (PortMirror port : vertex.getInputs()) {
+                for (PortMirror opposite : port.getOpposites()) {
+                    VertexMirror upstream = opposite.getOwner();
+                    String cached = deferred.remove(upstream);
+                    if (cached != null) {
+                        LOG.info("restoring cached outputs: {} ({})", upstream.getName(), cached); //$NON-NLS-1$
+                        cache.restore(cached, upstream, io::getOutputSink);
+                        io.resolveOutputs(upstream);
+                    }
+                }
+            }
+            try (EdgeCache.Session session = fingerprint == null
+                    ? EdgeCache.observe(vertex)
+                    : cache.store(fingerprint, vertex)) {
+                io.session = session;
+                run(vertex, io, threads);
+                io.session = null;
+                session.commit();
+                digests.putAll(session.getDigests());
             }
+            io.resolve(vertex);
+        }
+        for (VertexMirror vertex : deferred.keySet()) {
+            LOG.info("skipping vertex: {}", vertex.getName()); //$NON-NLS-1$
+        }
+    }
+
+    private void run(VertexMirror vertex, IO io, ThreadPool threads) throws IOException, InterruptedException {
+        VertexExecutor executor = new VertexExecutor(
+                context, vertex, io,
+                threads.executor, configuration.getMaxConcurrency());
+        executor.run();
+    }
+
+    /**
+     * Returns whether or not the outputs of the vertex can be reused from the edge cache.
+     * The vertex must consume only its upstream outputs and must not have any side effects:
+     * source vertices may read external inputs, vertices without downstream vertices may write external outputs,
+     * and vertices with {@link Movement#NOTHING} ports may depend on the side effects of the other vertices.
+     * @param vertex the target vertex
+     * @return {@code true} if it is cacheable, otherwise {@code false}
+     */
+    static boolean isCacheable(VertexMirror vertex) {
+        List<? extends PortMirror> inputs = vertex.getInputs();
+        List<? extends PortMirror> outputs = vertex.getOutputs();
+        return inputs.isEmpty() == false
+                && outputs.isEmpty() == false
+                && inputs.stream().allMatch(p -> p.getMovement() != Movement.NOTHING)
+                && outputs.stream().allMatch(p -> p.getMovement() != Movement.NOTHING
+                        && p.getOpposites().isEmpty() == false);
+    }
+
+    /**
+     * Returns the max number of entries in each output buffer.
+     * @param bufferSize the output buffer size in bytes
+     * @param defaultEntryCount the configured max number of entries
+     * @param recordSizeHint the expected record size in bytes, or {@code 0} if it is unknown
+     * @return the max number of entries
+     */
+    static long getMaxEntryCount(long bufferSize, long defaultEntryCount, long recordSizeHint) {
+        if (recordSizeHint <= 0) {
+            return defaultEntryCount;
         }
+        long expected = Math.max(bufferSize / recordSizeHint, 1L);
+        long count = expected > Long.MAX_VALUE / ENTRY_COUNT_HEADROOM
+                ? Long.MAX_VALUE
+                : expected * ENTRY_COUNT_HEADROOM;
+        return Math.max(Math.min(count, bufferSize), Math.min(MIN_ENTRY_COUNT, defaultEntryCount));
     }
 
     private class ThreadPool implements AutoCloseable {
@@ -127,32 +260,71 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
 
         final Map<PortMirror, EdgeProcessor> inputs = new HashMap<>();
 
-        final Map<PortMirror, List<OutputBufferFragment>> outputs = new HashMap<>();
+        final Map<PortMirror, List<BufferBlock>> outputs = new HashMap<>();
 
         private final Set<PortMirror> finishedInputs = new HashSet<>();
 
         private final Set<PortMirror> finishedOutputs = new HashSet<>();
 
+        volatile EdgeCache.Session session;
+
         IO() {
             return;
         }
 
         @Override
         public Supplier<OutputBufferFragment> getOutputSource(PortMirror port) {
-            return () -> new OutputBufferFragment(
-                    configuration.getOutputBufferSize(),
+            long bufferSize = configuration.getOutputBufferSize();
+            long entryCount = getMaxEntryCount(
+                    bufferSize,
                     configuration.getOutputRecordsPerBuffer(),
+                    port.getRecordSizeHint());
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("output buffer: {}.{} (size={}, records={}, hint={})", //$NON-NLS-1$
+                        port.getOwner().getName(), port.getName(),
+                        bufferSize, entryCount, port.getRecordSizeHint());
+            }
+            return () -> new OutputBufferFragment(
+                    bufferSize,
+                    entryCount,
+                    port.hasKey(),
                     port.hasKey());
         }
 
         @Override
         public Consumer<OutputBufferFragment> getOutputSink(PortMirror port) {
-            List<OutputBufferFragment> buffers;
+            EdgeCache.Session current = session;
+            Consumer<OutputBufferFragment> sink = getOutputSink0(port);
+            return current == null ? sink : current.tap(port, sink);
+        }
+
+        private Consumer<OutputBufferFragment> getOutputSink0(PortMirror port) {
+            if (port.getMovement() == Movement.SCATTER_GATHER) {
+                // passes through fragments so that the downstream edges can spill them out while running
+                synchronized (outputs) {
+                    Invariants.require(finishedOutputs.contains(port) == false);
+                }
+                List<EdgeProcessor> processors = new ArrayList<>();
+                synchronized (inputs) {
+                    for (PortMirror input : port.getOpposites()) {
+                        // the downstream vertex may have been restored from the edge cache
+                        if (finishedInputs.contains(input) == false) {
+                            processors.add(getEdgeProcessor(port, input));
+                        }
+                    }
+                }
+                return fragment -> processors.forEach(p -> p.add(fragment));
+            }
+            List<BufferBlock> blocks;
             synchronized (outputs) {
                 Invariants.require(finishedOutputs.contains(port) == false);
-                buffers = outputs.computeIfAbsent(port, p -> Collections.synchronizedList(new ArrayList<>()));
+                blocks = outputs.computeIfAbsent(port, p -> Collections.synchronizedList(new ArrayList<>()));
+            }
+            if (edgeConfiguration.isCompressed(port.getMovement())) {
+                // compresses sealed fragments on the worker threads
+                return fragment -> blocks.add(BufferBlock.compress(fragment));
             }
-            return buffers::add;
+            return fragment -> blocks.add(BufferBlock.of(fragment));
         }
 
         @Override
@@ -163,10 +335,34 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
                 Invariants.require(inputs.containsKey(port));
                 edge = inputs.get(port);
             }
-            return edge.process();
+            List<InputBufferCursor> results = edge.process();
+            if (edge instanceof ScatterGatherProcessor) {
+                report(port, ((ScatterGatherProcessor) edge).getStatistics());
+            }
+            return results;
+        }
+
+        private void report(PortMirror port, EdgeStatistics statistics) {
+            if (statistics.getTotalRecords() >= SKEW_REPORT_MIN_RECORDS
+                    && statistics.getSkew() >= SKEW_REPORT_THRESHOLD) {
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("skewed scatter-gather edge: {}.{} ({}, hot-keys={})", //$NON-NLS-1$
+                            port.getOwner().getName(), port.getName(),
+                            statistics, statistics.getHotKeys());
+                }
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("scatter-gather edge: {}.{} ({}, hot-keys={})", //$NON-NLS-1$
+                        port.getOwner().getName(), port.getName(),
+                        statistics, statistics.getHotKeys());
+            }
         }
 
         void resolve(VertexMirror vertex) {
+            resolveInputs(vertex);
+            resolveOutputs(vertex);
+        }
+
+        void resolveInputs(VertexMirror vertex) {
             synchronized (inputs) {
                 vertex.getInputs().stream()
                     .filter(p -> p.getMovement() != Movement.NOTHING)
@@ -176,7 +372,10 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
                         inputs.remove(p);
                     });
             }
-            Map<PortMirror, List<OutputBufferFragment>> scoped = Lang.let(new HashMap<>(), map -> {
+        }
+
+        void resolveOutputs(VertexMirror vertex) {
+            Map<PortMirror, List<BufferBlock>> scoped = Lang.let(new HashMap<>(), map -> {
                 synchronized (outputs) {
                     vertex.getOutputs().stream()
                         .filter(p -> p.getMovement() != Movement.NOTHING)
@@ -190,41 +389,64 @@ public class FlowGraphExecutor implements RunnableWithException<Exception> {
             scoped.forEach(this::resolve);
         }
 
-        private void resolve(PortMirror output, List<OutputBufferFragment> results) {
+        private void resolve(PortMirror output, List<BufferBlock> results) {
             synchronized (inputs) {
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("resolving edge: {}.{} ({})", //$NON-NLS-1$
-                            output.getOwner().getName(), output.getName(), output.getMovement());
+                    LOG.debug("resolving edge: {}.{} ({}, size={}, footprint={})", //$NON-NLS-1$
+                            output.getOwner().getName(), output.getName(), output.getMovement(),
+                            results.stream().mapToLong(BufferBlock::getSize).sum(),
+                            results.stream().mapToLong(BufferBlock::getFootprint).sum());
                 }
                 for (PortMirror input : output.getOpposites()) {
+                    if (finishedInputs.contains(input)) {
+                        continue;
+                    }
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("  -> {}.{}", //$NON-NLS-1$
                                 input.getOwner().getName(), input.getName());
                     }
-                    Invariants.require(finishedInputs.contains(input) == false);
-                    EdgeProcessor processor = inputs.computeIfAbsent(input, p -> {
-                        switch (output.getMovement()) {
-                        case ONE_TO_ONE:
-                            return new MoveEdgeProcessor();
-                        case BROADCAST:
-                            return new BroadcastEdgeProcessor();
-                        case SCATTER_GATHER:
-                            return new ScatterGatherProcessor(
-                                    configuration.getPartitionCount(),
-                                    resolveComparator(output.getValueComparatorName()));
-                        default:
-                            throw new AssertionError(output);
-                        }
-                    });
-                    processor.add(results);
+                    EdgeProcessor processor = getEdgeProcessor(output, input);
+                    if (processor instanceof BlockEdgeProcessor) {
+                        ((BlockEdgeProcessor) processor).addBlocks(results);
+                    } else {
+                        // scatter-gather edges have already received the fragments
+                        Invariants.require(results.isEmpty());
+                    }
                 }
             }
         }
 
+        private EdgeProcessor getEdgeProcessor(PortMirror output, PortMirror input) {
+            assert Thread.holdsLock(inputs);
+            Invariants.require(finishedInputs.contains(input) == false);
+            return inputs.computeIfAbsent(input, p -> {
+                switch (output.getMovement()) {
+                case ONE_TO_ONE:
+                    return new MoveEdgeProcessor(edgeConfiguration);
+                case BROADCAST:
+                    return new BroadcastEdgeProcessor();
+                case SCATTER_GATHER:
+                    return new ScatterGatherProcessor(
+                            configuration.getPartitionCount(),
+                            output.getPartitioning(),
+                            Optionals.of(output.getKeySchemaName())
+                                    .map(ValueComparatorSchema::parse)
+                                    .orElse(null),
+                            resolveComparator(output.getValueComparatorName()),
+                            edgeConfiguration);
+                default:
+                    throw new AssertionError(output);
+                }
+            });
+        }
+
         private BufferComparator resolveComparator(String functionName) {
             if (functionName == null) {
                 return null;
             }
+            if (ValueComparatorSchema.isSchema(functionName)) {
+                return SchemaBufferComparator.of(functionName);
+            }
             Invariants.requireNonNull(comparators);
             return comparators.apply(functionName);
         }
@@ -17,36 +17,74 @@ package com.asakusafw.m3bp.mirror.jna;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Lang;
-import com.asakusafw.lang.utils.common.Suppliers;
 
 /**
  * one-to-one and broadcast edge processor.
+ * Small fragments are coalesced into a task until their total size reaches {@link EdgeConfiguration#getTaskSize()}.
  */
-public class MoveEdgeProcessor implements EdgeProcessor {
+public class MoveEdgeProcessor implements BlockEdgeProcessor {
 
-    private final List<InputBufferFragment> candidates = new ArrayList<>();
+    private final List<BufferBlock> candidates = new ArrayList<>();
+
+    private final long taskSize;
+
+    /**
+     * Creates a new instance.
+     */
+    public MoveEdgeProcessor() {
+        this(new EdgeConfiguration());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param configuration the edge configuration
+     * @since 0.3.5
+     */
+    public MoveEdgeProcessor(EdgeConfiguration configuration) {
+        Arguments.requireNonNull(configuration);
+        this.taskSize = configuration.getTaskSize();
+    }
 
     @Override
     public void add(Iterable<? extends OutputBufferFragment> fragments) {
-        candidates.addAll(extract(fragments));
+        candidates.addAll(wrap(fragments));
+    }
+
+    @Override
+    public void addBlocks(List<BufferBlock> blocks) {
+        candidates.addAll(blocks);
     }
 
     @Override
     public List<InputBufferCursor> process() {
-        return candidates.stream()
-                .map(f -> new InputBufferCursor(Suppliers.supplier(f)))
-                .collect(Collectors.toList());
+        List<InputBufferCursor> results = new ArrayList<>();
+        List<BufferBlock> group = new ArrayList<>();
+        long groupSize = 0;
+        for (BufferBlock block : candidates) {
+            group.add(block);
+            groupSize += block.getSize();
+            if (groupSize >= taskSize) {
+                results.add(toCursor(group));
+                group = new ArrayList<>();
+                groupSize = 0;
+            }
+        }
+        if (group.isEmpty() == false) {
+            results.add(toCursor(group));
+        }
+        return results;
+    }
+
+    private static InputBufferCursor toCursor(List<BufferBlock> group) {
+        return new InputBufferCursor(BufferBlock.supplier(group));
     }
 
-    static List<InputBufferFragment> extract(Iterable<? extends OutputBufferFragment> fragments) {
+    static List<BufferBlock> wrap(Iterable<? extends OutputBufferFragment> fragments) {
         return Lang.let(new ArrayList<>(), it -> {
-            Lang.forEach(fragments, f -> it.add(new InputBufferFragment(
-                    f.getContents(),
-                    f.getEntryOffsets(),
-                    f.getEntryCount())));
+            Lang.forEach(fragments, f -> it.add(BufferBlock.of(f)));
         });
     }
 }
@@ -22,6 +22,7 @@ import java.util.function.Consumer;
 
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Invariants;
+import com.asakusafw.m3bp.mirror.basic.KeyHashes;
 import com.sun.jna.Memory;
 
 /**
@@ -35,6 +36,8 @@ public class OutputBufferFragment {
 
     private final Memory keyLengths;
 
+    private final Memory keyHashes;
+
     private long entryCount;
 
     /**
@@ -44,11 +47,25 @@ public class OutputBufferFragment {
      * @param hasKey whether key length table is required or not
      */
     public OutputBufferFragment(long bufferSize, long maxEntryCount, boolean hasKey) {
+        this(bufferSize, maxEntryCount, hasKey, false);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param bufferSize the buffer size
+     * @param maxEntryCount the max entry count
+     * @param hasKey whether key length table is required or not
+     * @param hasKeyHash whether key hash table is required or not, only available if {@code hasKey} is set
+     * @since 0.3.5
+     */
+    public OutputBufferFragment(long bufferSize, long maxEntryCount, boolean hasKey, boolean hasKeyHash) {
         Arguments.require(bufferSize >= 0);
         Arguments.require(maxEntryCount >= 0);
+        Arguments.require(hasKey || hasKeyHash == false);
         this.contents = new Memory(bufferSize);
         this.entryOffsets = new Memory((maxEntryCount + 1) * Long.BYTES);
         this.keyLengths = hasKey ? new Memory(maxEntryCount * Long.BYTES) : null;
+        this.keyHashes = hasKeyHash && maxEntryCount > 0 ? new Memory(maxEntryCount * Integer.BYTES) : null;
     }
 
     /**
@@ -84,6 +101,25 @@ public class OutputBufferFragment {
         return keyLengths;
     }
 
+    /**
+     * Returns whether this buffer has key hash table or not.
+     * @return {@code true} this buffer has key hash table, otherwise {@code false}
+     * @since 0.3.5
+     */
+    public boolean hasKeyHash() {
+        return keyHashes != null;
+    }
+
+    /**
+     * Returns the key hash table.
+     * @return the key hash table
+     * @since 0.3.5
+     */
+    public Memory getKeyHashes() {
+        Invariants.requireNonNull(keyHashes);
+        return keyHashes;
+    }
+
     /**
      * Returns the entry count.
      * @return the entry count
@@ -114,6 +150,23 @@ public class OutputBufferFragment {
         return buffer;
     }
 
+    /**
+     * Returns the hash code of the key contents.
+     * If this buffer does not have the key hash table, this computes it from the key contents.
+     * @param index the target entry index
+     * @return the key hash code
+     * @since 0.3.5
+     * @see KeyHashes
+     */
+    public int getKeyHash(long index) {
+        Arguments.require(index >= 0);
+        Arguments.require(index < entryCount);
+        if (keyHashes != null) {
+            return keyHashes.getInt(index * Integer.BYTES);
+        }
+        return KeyHashes.hash(getKey(index));
+    }
+
     /**
      * Returns the value contents.
      * @param index the target entry index
@@ -15,108 +15,422 @@
  */
 package com.asakusafw.m3bp.mirror.jna;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Lang;
 import com.asakusafw.lang.utils.common.Optionals;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 
 /**
  * Scatter-Gather edge processor.
+ * If the upstream fragments exceed the memory budget, they are sorted and spilled out into temporary files,
+ * and then the resulting input cursors merge them lazily.
+ * If {@link Partitioning#RANGE range partitioning} is enabled, this samples keys from all upstream fragments
+ * and computes split points from their {@link SortKeyEncoder binary comparable form}, and then
+ * partitions records only after all upstreams were added.
+ * If the value comparator is a {@link SchemaBufferComparator}, records are sorted by their
+ * {@link SortKeyEncoder binary comparable sort keys} instead of invoking the comparator.
+ * While partitioning records, this also collects {@link EdgeStatistics statistics} to reveal skewed keys.
+ * @see EdgeConfiguration#getMemoryBudget()
+ * @see EdgeConfiguration#getHotKeyCount()
  */
 public class ScatterGatherProcessor implements EdgeProcessor {
 
+    static final Logger LOG = LoggerFactory.getLogger(ScatterGatherProcessor.class);
+
     static final int MAX_RECORD_COUNT = 1023;
 
     static final int BUFFER_SIZE_THREASHOLD = 250 * 1024;
 
+    static final long MAX_SPILL_SIZE = Integer.MAX_VALUE / 2;
+
+    static final int SPILL_BUFFER_SIZE = 256 * 1024;
+
+    static final int SAMPLES_PER_PARTITION = 100;
+
+    private static final long SAMPLE_SEED = 6502;
+
     private final int partitions;
 
-    private final Comparator<BufferEntry> comparator;
+    private final ValueComparatorSchema rangeKeySchema;
+
+    private final SortKeyEncoder rangeKeys;
+
+    private final Comparator<Entry> comparator;
+
+    private final ValueComparatorSchema sortKeySchema;
+
+    private final SortKeyEncoder sortKeys;
+
+    private final long spillThreshold;
+
+    private final File spillDirectory;
+
+    private final EdgeStatistics statistics;
 
     private final List<OutputBufferFragment> upstreams = new ArrayList<>();
 
+    private final List<SpillFile> spills = new ArrayList<>();
+
+    private long upstreamBytes = 0;
+
+    private final List<byte[]> samples = new ArrayList<>();
+
+    private final Random random = new Random(SAMPLE_SEED);
+
+    private long sampledRecords = 0;
+
+    private byte[][] bounds;
+
     /**
      * Creates a new instance.
      * @param partitions the number of partitions
      * @param comparator the value comparator
      */
     public ScatterGatherProcessor(int partitions, BufferComparator comparator) {
+        this(partitions, comparator, new EdgeConfiguration());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param partitions the number of partitions
+     * @param comparator the value comparator
+     * @param configuration the edge configuration
+     * @since 0.3.5
+     */
+    public ScatterGatherProcessor(int partitions, BufferComparator comparator, EdgeConfiguration configuration) {
+        this(partitions, Partitioning.HASH, comparator, configuration);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param partitions the number of partitions
+     * @param partitioning the partitioning strategy
+     * @param comparator the value comparator
+     * @param configuration the edge configuration
+     * @since 0.3.5
+     */
+    public ScatterGatherProcessor(
+            int partitions, Partitioning partitioning,
+            BufferComparator comparator, EdgeConfiguration configuration) {
+        this(partitions, partitioning, null, comparator, configuration);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param partitions the number of partitions
+     * @param partitioning the partitioning strategy
+     * @param keySchema the schema of the serialized keys, which is required for {@link Partitioning#RANGE}
+     *     (nullable)
+     * @param comparator the value comparator
+     * @param configuration the edge configuration
+     * @since 0.3.5
+     */
+    public ScatterGatherProcessor(
+            int partitions, Partitioning partitioning, ValueComparatorSchema keySchema,
+            BufferComparator comparator, EdgeConfiguration configuration) {
         Arguments.require(partitions > 0);
+        Arguments.requireNonNull(partitioning);
+        Arguments.requireNonNull(configuration);
         this.partitions = partitions;
-        this.comparator = Optionals.of(comparator)
-                .<Comparator<BufferEntry>>map(ComparatorAdapter::new)
-                .orElse(KeyComparator.INSTANCE);
+        Comparator<Entry> base;
+        if (comparator instanceof SchemaBufferComparator) {
+            this.sortKeySchema = ((SchemaBufferComparator) comparator).getSchema();
+            this.sortKeys = new SortKeyEncoder(sortKeySchema);
+            base = SortKeyComparator.INSTANCE;
+        } else {
+            this.sortKeySchema = null;
+            this.sortKeys = null;
+            base = Optionals.of(comparator)
+                    .<Comparator<Entry>>map(ComparatorAdapter::new)
+                    .orElse(KeyComparator.INSTANCE);
+        }
+        if (partitioning == Partitioning.RANGE && keySchema == null) {
+            LOG.warn("range partitioning requires the key schema, uses hash partitioning instead");
+        }
+        if (partitioning == Partitioning.RANGE && keySchema != null) {
+            this.rangeKeySchema = keySchema;
+            this.rangeKeys = new SortKeyEncoder(keySchema);
+            this.comparator = new RangeKeyComparator(base);
+        } else {
+            this.rangeKeySchema = null;
+            this.rangeKeys = null;
+            this.comparator = base;
+        }
+        long memoryBudget = configuration.getMemoryBudget();
+        // never spills out if the budget is not specified, but each spilled segment must be mappable
+        this.spillThreshold = memoryBudget == Long.MAX_VALUE
+                ? Long.MAX_VALUE
+                : Math.min(memoryBudget, MAX_SPILL_SIZE);
+        this.spillDirectory = configuration.getSpillDirectory();
+        this.statistics = new EdgeStatistics(partitions, configuration.getHotKeyCount());
+    }
+
+    /**
+     * Returns the statistics of records which have been partitioned.
+     * They are complete only after {@link #process()} was invoked.
+     * @return the statistics
+     * @since 0.3.5
+     */
+    public synchronized EdgeStatistics getStatistics() {
+        return statistics;
+    }
+
+    long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    synchronized int getSpillCount() {
+        return spills.size();
     }
 
     @Override
-    public void add(Iterable<? extends OutputBufferFragment> fragments) {
+    public synchronized void add(Iterable<? extends OutputBufferFragment> fragments) {
         Arguments.requireNonNull(fragments);
-        fragments.forEach(upstreams::add);
+        for (OutputBufferFragment fragment : fragments) {
+            upstreams.add(fragment);
+            upstreamBytes += getSize(fragment);
+            if (rangeKeys != null) {
+                sample(fragment);
+            }
+            if (upstreamBytes >= spillThreshold) {
+                spill();
+            }
+        }
     }
 
     @Override
-    public List<InputBufferCursor> process() {
+    public synchronized List<InputBufferCursor> process() {
+        if (rangeKeys != null) {
+            bounds = computeBounds(samples, partitions);
+            for (int i = 0, n = spills.size(); i < n; i++) {
+                spills.set(i, spills.get(i).split(partitions, this::getPartition, statistics));
+            }
+        }
         List<List<BufferEntry>> entries = toEntries(upstreams);
         return Lang.let(new ArrayList<>(), it -> {
-            for (List<BufferEntry> partition : entries) {
-                it.add(toInputBuffer(partition));
-                partition.clear();
+            for (int partitionIndex = 0; partitionIndex < partitions; partitionIndex++) {
+                List<Run> runs = new ArrayList<>();
+                for (SpillFile spill : spills) {
+                    // each run is consumed on its own thread, and the encoders are not thread-safe
+                    runs.add(spill.open(partitionIndex, newEncoder(sortKeySchema), newEncoder(rangeKeySchema)));
+                }
+                runs.add(new MemoryRun(entries.get(partitionIndex)));
+                Run run = runs.size() == 1 ? runs.get(0) : new MergeRun(runs, comparator);
+                it.add(new InputBufferBuilder(run).build());
             }
         });
     }
 
-    private List<List<BufferEntry>> toEntries(Iterable<? extends OutputBufferFragment> fragments) {
+    private static SortKeyEncoder newEncoder(ValueComparatorSchema schema) {
+        return schema == null ? null : new SortKeyEncoder(schema);
+    }
+
+    private void sample(OutputBufferFragment fragment) {
+        // reservoir sampling over all upstream records
+        int capacity = partitions * SAMPLES_PER_PARTITION;
+        for (long entryIndex = 0, n = fragment.getEntryCount(); entryIndex < n; entryIndex++) {
+            long seen = sampledRecords++;
+            if (seen < capacity) {
+                samples.add(rangeKeys.encode(new BufferEntry(fragment, entryIndex).getKey()));
+            } else {
+                long index = (long) (random.nextDouble() * (seen + 1));
+                if (index < capacity) {
+                    samples.set((int) index, rangeKeys.encode(new BufferEntry(fragment, entryIndex).getKey()));
+                }
+            }
+        }
+    }
+
+    private void spill() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("spilling scatter-gather records: fragments={}, size={}, spills={}", //$NON-NLS-1$
+                    upstreams.size(),
+                    upstreamBytes,
+                    spills.size());
+        }
+        if (rangeKeys != null) {
+            // ranges are not available until all upstreams are sampled
+            spills.add(SpillFile.write(spillDirectory, Collections.singletonList(toSortedEntries(upstreams))));
+        } else {
+            spills.add(SpillFile.write(spillDirectory, toEntries(upstreams)));
+        }
+        upstreams.clear();
+        upstreamBytes = 0;
+    }
+
+    private static long getSize(OutputBufferFragment fragment) {
+        long size = fragment.getContents().size() + fragment.getEntryOffsets().size();
+        if (fragment.hasKey()) {
+            size += fragment.getKeyLengths().size();
+        }
+        if (fragment.hasKeyHash()) {
+            size += fragment.getKeyHashes().size();
+        }
+        return size;
+    }
+
+    private List<List<BufferEntry>> toEntries(List<? extends OutputBufferFragment> fragments) {
+        assert rangeKeys == null || bounds != null;
         List<List<BufferEntry>> entries = Lang.let(new ArrayList<>(), it -> {
             Lang.repeat(partitions, () -> it.add(new ArrayList<>()));
         });
         Lang.forEach(fragments, fragment -> {
             for (long entryIndex = 0, n = fragment.getEntryCount(); entryIndex < n; entryIndex++) {
-                BufferEntry entry = new BufferEntry(fragment, entryIndex);
-                int partitionIndex = (entry.getKeyHash() & Integer.MAX_VALUE) % partitions;
-                entries.get(partitionIndex).add(entry);
+                BufferEntry entry = newEntry(fragment, entryIndex);
+                int partition = entry.rangeKey == null
+                        ? (entry.getKeyHash() & Integer.MAX_VALUE) % partitions
+                        : findRange(bounds, entry.rangeKey);
+                statistics.add(partition, entry.getKey(), entry.getSize());
+                entries.get(partition).add(entry);
             }
         });
         Lang.forEach(entries, entry -> Collections.sort(entry, comparator));
         return entries;
     }
 
-    private InputBufferCursor toInputBuffer(List<BufferEntry> entries) {
-        return Lang.let(new InputBufferBuilder(), it -> Lang.forEach(entries, it::add)).build();
+    private List<BufferEntry> toSortedEntries(List<? extends OutputBufferFragment> fragments) {
+        List<BufferEntry> entries = new ArrayList<>();
+        Lang.forEach(fragments, fragment -> {
+            for (long entryIndex = 0, n = fragment.getEntryCount(); entryIndex < n; entryIndex++) {
+                entries.add(newEntry(fragment, entryIndex));
+            }
+        });
+        Collections.sort(entries, comparator);
+        return entries;
+    }
+
+    private BufferEntry newEntry(OutputBufferFragment fragment, long entryIndex) {
+        BufferEntry entry = new BufferEntry(fragment, entryIndex);
+        if (sortKeys != null) {
+            entry.sortKey = sortKeys.encode(entry.getValue());
+        }
+        if (rangeKeys != null) {
+            entry.rangeKey = rangeKeys.encode(entry.getKey());
+        }
+        return entry;
+    }
+
+    private int getPartition(ByteBuffer key) {
+        return findRange(bounds, rangeKeys.encode(key));
+    }
+
+    private static int findRange(byte[][] bounds, byte[] key) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (SortKeyEncoder.compare(bounds[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private byte[][] computeBounds(List<byte[]> keys, int count) {
+        if (keys.isEmpty()) {
+            return new byte[0][];
+        }
+        List<byte[]> sorted = new ArrayList<>(keys);
+        Collections.sort(sorted, SortKeyEncoder::compare);
+        byte[][] results = new byte[count - 1][];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = sorted.get((int) ((long) (i + 1) * sorted.size() / count));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("computed range partition bounds: records={}, samples={}, partitions={}", //$NON-NLS-1$
+                    sampledRecords,
+                    sorted.size(),
+                    count);
+        }
+        return results;
+    }
+
+    /**
+     * A key-value entry.
+     */
+    private interface Entry {
+
+        ByteBuffer getKey();
+
+        ByteBuffer getValue();
+
+        Pointer getValuePointer();
+
+        byte[] getSortKey();
+
+        byte[] getRangeKey();
+    }
+
+    /**
+     * A cursor of sorted {@link Entry entries}.
+     */
+    private interface Run extends Entry {
+
+        boolean next();
     }
 
-    private static class BufferEntry {
+    private static class BufferEntry implements Entry {
 
         final OutputBufferFragment buffer;
 
         final long index;
 
+        byte[] sortKey;
+
+        byte[] rangeKey;
+
         BufferEntry(OutputBufferFragment buffer, long index) {
             this.buffer = buffer;
             this.index = index;
         }
 
         int getKeyHash() {
-            return getKey().hashCode();
+            return buffer.getKeyHash(index);
         }
 
-        ByteBuffer getKey() {
+        long getSize() {
+            long tableIndex = index * Long.BYTES;
+            return buffer.getEntryOffsets().getLong(tableIndex + Long.BYTES)
+                    - buffer.getEntryOffsets().getLong(tableIndex);
+        }
+
+        @Override
+        public ByteBuffer getKey() {
             long tableIndex = index * Long.BYTES;
             long offset = buffer.getEntryOffsets().getLong(tableIndex);
             long length = buffer.getKeyLengths().getLong(tableIndex);
             return buffer.getContents().getByteBuffer(offset, length);
         }
 
-        ByteBuffer getValue() {
+        @Override
+        public ByteBuffer getValue() {
             long tableIndex = index * Long.BYTES;
             long offset = buffer.getEntryOffsets().getLong(tableIndex);
             long keySize = buffer.getKeyLengths().getLong(tableIndex);
@@ -124,16 +438,21 @@ public class ScatterGatherProcessor implements EdgeProcessor {
             return buffer.getContents().getByteBuffer(offset + keySize, nextOffset - offset - keySize);
         }
 
-        Pointer getValuePointer() {
+        @Override
+        public Pointer getValuePointer() {
             long tableIndex = index * Long.BYTES;
             long offset = buffer.getEntryOffsets().getLong(tableIndex) + buffer.getKeyLengths().getLong(tableIndex);
             return Util.add(buffer.getContents(), offset);
         }
 
-        long getValueSize() {
-            long tableIndex = index * Long.BYTES;
-            Memory offsets = buffer.getEntryOffsets();
-            return offsets.getLong(tableIndex + Long.BYTES) - offsets.getLong(tableIndex);
+        @Override
+        public byte[] getSortKey() {
+            return sortKey;
+        }
+
+        @Override
+        public byte[] getRangeKey() {
+            return rangeKey;
         }
 
         @Override
@@ -147,16 +466,330 @@ public class ScatterGatherProcessor implements EdgeProcessor {
         }
     }
 
+    private static final class MemoryRun implements Run {
+
+        private final Iterator<BufferEntry> entries;
+
+        private BufferEntry current;
+
+        MemoryRun(List<BufferEntry> entries) {
+            this.entries = entries.iterator();
+        }
+
+        @Override
+        public boolean next() {
+            if (entries.hasNext()) {
+                current = entries.next();
+                return true;
+            }
+            current = null;
+            return false;
+        }
+
+        @Override
+        public ByteBuffer getKey() {
+            return current.getKey();
+        }
+
+        @Override
+        public ByteBuffer getValue() {
+            return current.getValue();
+        }
+
+        @Override
+        public Pointer getValuePointer() {
+            return current.getValuePointer();
+        }
+
+        @Override
+        public byte[] getSortKey() {
+            return current.getSortKey();
+        }
+
+        @Override
+        public byte[] getRangeKey() {
+            return current.getRangeKey();
+        }
+    }
+
+    private static final class MappedRun implements Run {
+
+        private final ByteBuffer segment;
+
+        private final Pointer base;
+
+        private final SortKeyEncoder sortKeys;
+
+        private final SortKeyEncoder rangeKeys;
+
+        private byte[] sortKey;
+
+        private byte[] rangeKey;
+
+        private int keyOffset;
+
+        private int keyLength;
+
+        private int valueOffset;
+
+        private int valueLength;
+
+        MappedRun(ByteBuffer segment, SortKeyEncoder sortKeys, SortKeyEncoder rangeKeys) {
+            this.segment = segment;
+            this.base = segment.capacity() == 0 ? null : Native.getDirectBufferPointer(segment);
+            this.sortKeys = sortKeys;
+            this.rangeKeys = rangeKeys;
+        }
+
+        @Override
+        public boolean next() {
+            if (segment.hasRemaining() == false) {
+                return false;
+            }
+            keyLength = segment.getInt();
+            valueLength = segment.getInt();
+            keyOffset = segment.position();
+            valueOffset = keyOffset + keyLength;
+            segment.position(valueOffset + valueLength);
+            if (sortKeys != null) {
+                sortKey = sortKeys.encode(getValue());
+            }
+            if (rangeKeys != null) {
+                rangeKey = rangeKeys.encode(getKey());
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer getKey() {
+            return slice(keyOffset, keyLength);
+        }
+
+        @Override
+        public ByteBuffer getValue() {
+            return slice(valueOffset, valueLength);
+        }
+
+        @Override
+        public Pointer getValuePointer() {
+            return Util.add(base, valueOffset);
+        }
+
+        @Override
+        public byte[] getSortKey() {
+            return sortKey;
+        }
+
+        @Override
+        public byte[] getRangeKey() {
+            return rangeKey;
+        }
+
+        private ByteBuffer slice(int offset, int length) {
+            ByteBuffer buffer = segment.duplicate();
+            buffer.limit(offset + length);
+            buffer.position(offset);
+            return buffer.slice();
+        }
+    }
+
+    private static final class MergeRun implements Run {
+
+        private final PriorityQueue<Run> queue;
+
+        private Run current;
+
+        MergeRun(List<? extends Run> runs, Comparator<? super Entry> comparator) {
+            this.queue = new PriorityQueue<>(Math.max(runs.size(), 1), comparator);
+            for (Run run : runs) {
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (current != null && current.next()) {
+                queue.add(current);
+            }
+            current = queue.poll();
+            return current != null;
+        }
+
+        @Override
+        public ByteBuffer getKey() {
+            return current.getKey();
+        }
+
+        @Override
+        public ByteBuffer getValue() {
+            return current.getValue();
+        }
+
+        @Override
+        public Pointer getValuePointer() {
+            return current.getValuePointer();
+        }
+
+        @Override
+        public byte[] getSortKey() {
+            return current.getSortKey();
+        }
+
+        @Override
+        public byte[] getRangeKey() {
+            return current.getRangeKey();
+        }
+    }
+
+    /**
+     * A set of sorted runs, which are stored in a memory-mapped temporary file.
+     */
+    private static final class SpillFile {
+
+        private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+
+        private final ByteBuffer[] segments;
+
+        private SpillFile(ByteBuffer[] segments) {
+            this.segments = segments;
+        }
+
+        static SpillFile write(File directory, List<? extends List<? extends Entry>> partitions) {
+            File file = null;
+            try {
+                file = File.createTempFile("asakusa-m3bp-", ".spill", directory); //$NON-NLS-1$ //$NON-NLS-2$
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long[] offsets = write(channel, partitions);
+                    ByteBuffer[] segments = new ByteBuffer[partitions.size()];
+                    for (int i = 0; i < segments.length; i++) {
+                        long size = offsets[i + 1] - offsets[i];
+                        segments[i] = size == 0 ? EMPTY : channel.map(MapMode.READ_ONLY, offsets[i], size);
+                    }
+                    return new SpillFile(segments);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(MessageFormat.format(
+                        "error occurred while spilling scatter-gather records: {0}",
+                        file), e);
+            } finally {
+                // mapped regions are still available after the file was deleted
+                if (file != null && file.delete() == false) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+
+        private static long[] write(
+                FileChannel channel, List<? extends List<? extends Entry>> partitions) throws IOException {
+            long[] offsets = new long[partitions.size() + 1];
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SPILL_BUFFER_SIZE);
+            long position = 0;
+            for (int i = 0, n = partitions.size(); i < n; i++) {
+                offsets[i] = position;
+                for (Entry entry : partitions.get(i)) {
+                    ByteBuffer key = entry.getKey();
+                    ByteBuffer value = entry.getValue();
+                    if (buffer.remaining() < Integer.BYTES * 2) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putInt(key.remaining());
+                    buffer.putInt(value.remaining());
+                    position += Integer.BYTES * 2 + key.remaining() + value.remaining();
+                    write(channel, buffer, key);
+                    write(channel, buffer, value);
+                }
+            }
+            flush(channel, buffer);
+            offsets[partitions.size()] = position;
+            return offsets;
+        }
+
+        private static void write(FileChannel channel, ByteBuffer buffer, ByteBuffer contents) throws IOException {
+            if (contents.remaining() > buffer.remaining()) {
+                flush(channel, buffer);
+                if (contents.remaining() > buffer.remaining()) {
+                    while (contents.hasRemaining()) {
+                        channel.write(contents);
+                    }
+                    return;
+                }
+            }
+            buffer.put(contents);
+        }
+
+        private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        SpillFile split(int partitions, ToIntFunction<ByteBuffer> partitioner, EdgeStatistics statistics) {
+            assert segments.length == 1;
+            ByteBuffer[] results = new ByteBuffer[partitions];
+            ByteBuffer segment = segments[0].duplicate();
+            int current = 0;
+            int start = 0;
+            while (segment.hasRemaining()) {
+                int offset = segment.position();
+                int keyLength = segment.getInt();
+                int valueLength = segment.getInt();
+                ByteBuffer key = slice(segment, segment.position(), keyLength);
+                segment.position(segment.position() + keyLength + valueLength);
+                int partition = partitioner.applyAsInt(key);
+                // records are sorted by their range keys
+                assert partition >= current;
+                for (; current < partition; current++) {
+                    results[current] = slice(segment, start, offset - start);
+                    start = offset;
+                }
+                statistics.add(partition, key, keyLength + valueLength);
+            }
+            for (int end = segment.limit(); current < partitions; current++) {
+                results[current] = slice(segment, start, end - start);
+                start = end;
+            }
+            return new SpillFile(results);
+        }
+
+        private static ByteBuffer slice(ByteBuffer segment, int offset, int length) {
+            if (length == 0) {
+                return EMPTY;
+            }
+            ByteBuffer buffer = segment.duplicate();
+            buffer.limit(offset + length);
+            buffer.position(offset);
+            return buffer.slice();
+        }
+
+        Run open(int partitionIndex, SortKeyEncoder sortKeys, SortKeyEncoder rangeKeys) {
+            return new MappedRun(segments[partitionIndex].duplicate(), sortKeys, rangeKeys);
+        }
+    }
+
+    /**
+     * Builds {@link InputBufferFragment} from sorted entries on demand.
+     */
     private static class InputBufferBuilder {
 
+        final Run source;
+
         final LinkedList<InputBufferFragment> resultKeys = new LinkedList<>();
 
         final LinkedList<InputBufferFragment> resultValues = new LinkedList<>();
 
-        final List<BufferEntry> entries = new ArrayList<>();
+        final List<ByteBuffer> keys = new ArrayList<>();
+
+        final List<ByteBuffer> values = new ArrayList<>();
 
         final BitSet keyBreakIndices = new BitSet(MAX_RECORD_COUNT);
 
+        boolean pending;
+
         ByteBuffer lastKey = null;
 
         int records = 0;
@@ -165,38 +798,52 @@ public class ScatterGatherProcessor implements EdgeProcessor {
 
         int valueSize = 0;
 
-        InputBufferBuilder() {
-            return;
+        InputBufferBuilder(Run source) {
+            this.source = source;
+            this.pending = source.next();
         }
 
-        void add(BufferEntry entry) {
-            ByteBuffer currentKey = entry.getKey();
-            if (currentKey.equals(lastKey) == false) {
-                if (records >= MAX_RECORD_COUNT
-                        || keySize >= BUFFER_SIZE_THREASHOLD
-                        || valueSize >= BUFFER_SIZE_THREASHOLD) {
-                    flush();
-                }
-                lastKey = currentKey;
-                keyBreakIndices.set(entries.size());
-                records++;
-                keySize += currentKey.remaining();
+        InputBufferCursor build() {
+            return new InputBufferCursor(() -> poll(resultKeys), () -> poll(resultValues));
+        }
+
+        private InputBufferFragment poll(LinkedList<InputBufferFragment> results) {
+            if (results.isEmpty()) {
+                fill();
             }
-            valueSize += (int) entry.getValueSize();
-            entries.add(entry);
+            return results.poll();
         }
 
-        InputBufferCursor build() {
-            if (entries.isEmpty() == false) {
+        private void fill() {
+            while (pending) {
+                ByteBuffer currentKey = source.getKey();
+                if (currentKey.equals(lastKey) == false) {
+                    if (records >= MAX_RECORD_COUNT
+                            || keySize >= BUFFER_SIZE_THREASHOLD
+                            || valueSize >= BUFFER_SIZE_THREASHOLD) {
+                        break;
+                    }
+                    lastKey = currentKey;
+                    keyBreakIndices.set(values.size());
+                    keys.add(currentKey);
+                    records++;
+                    keySize += currentKey.remaining();
+                }
+                ByteBuffer currentValue = source.getValue();
+                valueSize += currentValue.remaining();
+                values.add(currentValue);
+                pending = source.next();
+            }
+            if (values.isEmpty() == false) {
                 flush();
             }
-            return new InputBufferCursor(resultKeys::poll, resultValues::poll);
         }
 
         private void flush() {
             resultKeys.add(buildKeys());
             resultValues.add(buildValues());
-            entries.clear();
+            keys.clear();
+            values.clear();
             keyBreakIndices.clear();
             lastKey = null;
             records = 0;
@@ -210,11 +857,8 @@ public class ScatterGatherProcessor implements EdgeProcessor {
             ByteBuffer contentsBuf = contents.getByteBuffer(0, contents.size());
             ByteBuffer offsetsBuf = offsets.getByteBuffer(0, offsets.size());
             offsetsBuf.putLong(0);
-
-            List<BufferEntry> es = entries;
-            BitSet bs = keyBreakIndices;
-            for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1)) {
-                contentsBuf.put(es.get(i).getKey());
+            for (ByteBuffer key : keys) {
+                contentsBuf.put(key.duplicate());
                 offsetsBuf.putLong(contentsBuf.position());
             }
             return new InputBufferFragment(contents, offsets, records);
@@ -226,32 +870,65 @@ public class ScatterGatherProcessor implements EdgeProcessor {
             ByteBuffer contentsBuf = contents.getByteBuffer(0, contents.size());
             ByteBuffer offsetsBuf = offsets.getByteBuffer(0, offsets.size());
 
-            List<BufferEntry> es = entries;
+            List<ByteBuffer> vs = values;
             BitSet bs = keyBreakIndices;
             assert bs.get(0);
-            for (int i = 0, n = es.size(); i < n; i++) {
+            for (int i = 0, n = vs.size(); i < n; i++) {
                 if (bs.get(i)) {
                     offsetsBuf.putLong(contentsBuf.position());
                 }
-                contentsBuf.put(es.get(i).getValue());
+                contentsBuf.put(vs.get(i).duplicate());
             }
             offsetsBuf.putLong(contentsBuf.position());
             return new InputBufferFragment(contents, offsets, records);
         }
     }
 
-    private enum KeyComparator implements Comparator<BufferEntry> {
+    private enum KeyComparator implements Comparator<Entry> {
 
         INSTANCE,
         ;
 
         @Override
-        public int compare(BufferEntry o1, BufferEntry o2) {
+        public int compare(Entry o1, Entry o2) {
             return o1.getKey().compareTo(o2.getKey());
         }
     }
 
-    private static class ComparatorAdapter implements Comparator<BufferEntry> {
+    private enum SortKeyComparator implements Comparator<Entry> {
+
+        INSTANCE,
+        ;
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            int diff = o1.getKey().compareTo(o2.getKey());
+            if (diff != 0) {
+                return diff;
+            }
+            return SortKeyEncoder.compare(o1.getSortKey(), o2.getSortKey());
+        }
+    }
+
+    private static class RangeKeyComparator implements Comparator<Entry> {
+
+        private final Comparator<? super Entry> base;
+
+        RangeKeyComparator(Comparator<? super Entry> base) {
+            this.base = base;
+        }
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            int diff = SortKeyEncoder.compare(o1.getRangeKey(), o2.getRangeKey());
+            if (diff != 0) {
+                return diff;
+            }
+            return base.compare(o1, o2);
+        }
+    }
+
+    private static class ComparatorAdapter implements Comparator<Entry> {
 
         private final BufferComparator valueComparator;
 
@@ -260,7 +937,7 @@ public class ScatterGatherProcessor implements EdgeProcessor {
         }
 
         @Override
-        public int compare(BufferEntry o1, BufferEntry o2) {
+        public int compare(Entry o1, Entry o2) {
             int diff = o1.getKey().compareTo(o2.getKey());
             if (diff != 0) {
                 return diff;
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema.Field;
+import com.sun.jna.Pointer;
+
+/**
+ * An implementation of {@link BufferComparator} which interprets {@link ValueComparatorSchema}.
+ * @since 0.3.5
+ */
+public class SchemaBufferComparator implements BufferComparator {
+
+    private static final byte NULL_HEADER = 0;
+
+    private static final byte DECIMAL_PLUS_MASK = 1 << 1;
+
+    private static final byte DECIMAL_COMPACT_MASK = 1 << 2;
+
+    private static final byte COMPACT_INT_HEAD_MIN = Byte.MIN_VALUE + 4;
+
+    private final ValueComparatorSchema schema;
+
+    private final Field[] fields;
+
+    /**
+     * Creates a new instance.
+     * @param schema the target schema
+     */
+    public SchemaBufferComparator(ValueComparatorSchema schema) {
+        Arguments.requireNonNull(schema);
+        this.schema = schema;
+        List<Field> list = schema.getFields();
+        this.fields = list.toArray(new Field[list.size()]);
+    }
+
+    /**
+     * Creates a new instance from the value comparator name.
+     * @param name the value comparator name
+     * @return the created instance
+     * @throws IllegalArgumentException if the name does not represent a valid schema
+     * @see ValueComparatorSchema#isSchema(String)
+     */
+    public static SchemaBufferComparator of(String name) {
+        return new SchemaBufferComparator(ValueComparatorSchema.parse(name));
+    }
+
+    /**
+     * Returns the comparator schema.
+     * @return the comparator schema
+     */
+    public ValueComparatorSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public boolean compare(Pointer a, Pointer b) {
+        Cursor ca = new Cursor(a);
+        Cursor cb = new Cursor(b);
+        for (Field field : fields) {
+            int diff = compare(field, ca, cb);
+            if (diff != 0) {
+                return field.isAscendant() ? diff < 0 : diff > 0;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(Field field, Cursor a, Cursor b) {
+        switch (field.getType()) {
+        case BOOLEAN:
+            return Byte.compare(a.readByte(), b.readByte());
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            return compareNumeric(field, a, b);
+        case DECIMAL:
+            return compareDecimal(a, b);
+        case DATE:
+            return compareUnsigned(a.readInt(), b.readInt());
+        case DATE_TIME:
+            return compareUnsigned(a.readLong(), b.readLong());
+        case STRING:
+            return compareString(a, b);
+        default:
+            throw new AssertionError(field);
+        }
+    }
+
+    private static int compareNumeric(Field field, Cursor a, Cursor b) {
+        boolean nullA = a.readByte() == NULL_HEADER;
+        boolean nullB = b.readByte() == NULL_HEADER;
+        if (nullA || nullB) {
+            return compareNull(nullA, nullB);
+        }
+        switch (field.getType()) {
+        case BYTE:
+            return Byte.compare(a.readByte(), b.readByte());
+        case SHORT:
+            return Short.compare(a.readShort(), b.readShort());
+        case INT:
+            return Integer.compare(a.readInt(), b.readInt());
+        case LONG:
+            return Long.compare(a.readLong(), b.readLong());
+        case FLOAT:
+            return compareValue(a.readFloat(), b.readFloat());
+        case DOUBLE:
+            return compareValue(a.readDouble(), b.readDouble());
+        default:
+            throw new AssertionError(field);
+        }
+    }
+
+    private static int compareValue(double a, double b) {
+        // compatible with native comparators, instead of Double.compare()
+        if (a == b) {
+            return 0;
+        }
+        return a < b ? -1 : +1;
+    }
+
+    private static int compareUnsigned(long a, long b) {
+        if (a < 0 || b < 0) {
+            return compareNull(a < 0, b < 0);
+        }
+        return Long.compare(a, b);
+    }
+
+    private static int compareNull(boolean nullA, boolean nullB) {
+        if (nullA) {
+            return nullB ? 0 : -1;
+        }
+        return +1;
+    }
+
+    private static int compareString(Cursor a, Cursor b) {
+        long lengthA = a.readCompactInt();
+        long lengthB = b.readCompactInt();
+        if (lengthA < 0 || lengthB < 0) {
+            return compareNull(lengthA < 0, lengthB < 0);
+        }
+        long length = Math.min(lengthA, lengthB);
+        for (long i = 0; i < length; i++) {
+            int diff = Integer.compare(
+                    a.pointer.getByte(a.offset + i) & 0xff,
+                    b.pointer.getByte(b.offset + i) & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        a.offset += lengthA;
+        b.offset += lengthB;
+        return Long.compare(lengthA, lengthB);
+    }
+
+    private static int compareDecimal(Cursor a, Cursor b) {
+        byte headA = a.readByte();
+        byte headB = b.readByte();
+        if (headA == NULL_HEADER || headB == NULL_HEADER) {
+            return compareNull(headA == NULL_HEADER, headB == NULL_HEADER);
+        }
+        boolean plusA = (headA & DECIMAL_PLUS_MASK) != 0;
+        boolean plusB = (headB & DECIMAL_PLUS_MASK) != 0;
+        if (plusA != plusB) {
+            return plusA ? +1 : -1;
+        }
+        BigDecimal valueA = a.readDecimalMagnitude((headA & DECIMAL_COMPACT_MASK) != 0);
+        BigDecimal valueB = b.readDecimalMagnitude((headB & DECIMAL_COMPACT_MASK) != 0);
+        int diff = valueA.compareTo(valueB);
+        return plusA ? diff : -diff;
+    }
+
+    private static final class Cursor {
+
+        final Pointer pointer;
+
+        long offset;
+
+        Cursor(Pointer pointer) {
+            this.pointer = pointer;
+        }
+
+        byte readByte() {
+            byte result = pointer.getByte(offset);
+            offset += Byte.BYTES;
+            return result;
+        }
+
+        short readShort() {
+            short result = pointer.getShort(offset);
+            offset += Short.BYTES;
+            return result;
+        }
+
+        int readInt() {
+            int result = pointer.getInt(offset);
+            offset += Integer.BYTES;
+            return result;
+        }
+
+        long readLong() {
+            long result = pointer.getLong(offset);
+            offset += Long.BYTES;
+            return result;
+        }
+
+        float readFloat() {
+            float result = pointer.getFloat(offset);
+            offset += Float.BYTES;
+            return result;
+        }
+
+        double readDouble() {
+            double result = pointer.getDouble(offset);
+            offset += Double.BYTES;
+            return result;
+        }
+
+        long readCompactInt() {
+            byte head = readByte();
+            if (head >= COMPACT_INT_HEAD_MIN) {
+                return head;
+            }
+            switch (COMPACT_INT_HEAD_MIN - head) {
+            case 1:
+                return readByte();
+            case 2:
+                return readShort();
+            case 3:
+                return readInt();
+            case 4:
+                return readLong();
+            default:
+                throw new IllegalStateException();
+            }
+        }
+
+        BigDecimal readDecimalMagnitude(boolean compact) {
+            int scale = (int) readCompactInt();
+            long unscaled = readCompactInt();
+            if (compact) {
+                return new BigDecimal(BigInteger.valueOf(unscaled), scale);
+            }
+            byte[] bytes = pointer.getByteArray(offset, (int) unscaled);
+            offset += unscaled;
+            return new BigDecimal(new BigInteger(1, bytes), scale);
+        }
+    }
+}
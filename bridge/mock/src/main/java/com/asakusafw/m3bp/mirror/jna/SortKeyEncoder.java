@@ -0,0 +1,294 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema.Field;
+
+/**
+ * Encodes the ordering fields of serialized values into binary comparable sort keys.
+ * <p>
+ * For the encoded sort keys {@code a} and {@code b}, {@link #compare(byte[], byte[]) compare(a, b)}
+ * (unsigned lexicographic order) returns the same sign as the generic comparator of the source schema,
+ * so that records can be sorted without invoking any value comparator functions.
+ * </p>
+ * <p>
+ * Each field is encoded as following, and all bytes of the field are inverted if it is descendant:
+ * </p>
+ * <ul>
+ * <li> {@code null} - a single {@code 0x00} </li>
+ * <li> {@code boolean} - the value byte with the sign bit flipped </li>
+ * <li> integral numbers - {@code 0x01} and then the big-endian value with the sign bit flipped </li>
+ * <li> floating point numbers - {@code 0x01} and then the big-endian IEEE 754 bits, whose all bits are flipped for
+ *      negative values, or only the sign bit is flipped for the others </li>
+ * <li> {@code date}, {@code date_time} - {@code 0x01} and then the big-endian value </li>
+ * <li> {@code string} - {@code 0x01}, and then the contents where {@code 0x00} is escaped into
+ *      {@code 0x00 0xff}, and then the terminator {@code 0x00 0x00} </li>
+ * <li> {@code decimal} - the sign ({@code 0x01} - negative, {@code 0x02} - zero, {@code 0x03} - positive),
+ *      and then for non-zero values, the adjusted exponent and the significant digits (terminated by
+ *      {@code 0x00}) of the absolute value, which are inverted for negative values </li>
+ * </ul>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ * @since 0.3.5
+ */
+public class SortKeyEncoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 64;
+
+    private static final byte NULL_HEADER = 0;
+
+    private static final byte DECIMAL_PLUS_MASK = 1 << 1;
+
+    private static final byte DECIMAL_COMPACT_MASK = 1 << 2;
+
+    private static final byte COMPACT_INT_HEAD_MIN = Byte.MIN_VALUE + 4;
+
+    private static final byte NULL_MARK = 0x00;
+
+    private static final byte PRESENT_MARK = 0x01;
+
+    private static final byte DECIMAL_NEGATIVE = 0x01;
+
+    private static final byte DECIMAL_ZERO = 0x02;
+
+    private static final byte DECIMAL_POSITIVE = 0x03;
+
+    private final Field[] fields;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    private int length;
+
+    /**
+     * Creates a new instance.
+     * @param schema the source schema
+     */
+    public SortKeyEncoder(ValueComparatorSchema schema) {
+        Arguments.requireNonNull(schema);
+        List<Field> list = schema.getFields();
+        this.fields = list.toArray(new Field[list.size()]);
+    }
+
+    /**
+     * Encodes the ordering fields of the serialized value.
+     * @param value the serialized value, which starts with the ordering fields
+     * @return the encoded sort key
+     */
+    public byte[] encode(ByteBuffer value) {
+        Arguments.requireNonNull(value);
+        ByteBuffer input = value.duplicate().order(ByteOrder.nativeOrder());
+        length = 0;
+        for (Field field : fields) {
+            int start = length;
+            encode(field, input);
+            if (field.isAscendant() == false) {
+                for (int i = start; i < length; i++) {
+                    buffer[i] = (byte) ~buffer[i];
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Compares two sort keys in unsigned lexicographic order.
+     * @param a the first sort key
+     * @param b the second sort key
+     * @return the comparison result
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return (a[i] & 0xff) - (b[i] & 0xff);
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private void encode(Field field, ByteBuffer input) {
+        switch (field.getType()) {
+        case BOOLEAN:
+            write(input.get() ^ 0x80);
+            break;
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            encodeNumeric(field, input);
+            break;
+        case DATE:
+            encodeUnsigned(input.getInt(), Integer.BYTES);
+            break;
+        case DATE_TIME:
+            encodeUnsigned(input.getLong(), Long.BYTES);
+            break;
+        case STRING:
+            encodeString(input);
+            break;
+        case DECIMAL:
+            encodeDecimal(input);
+            break;
+        default:
+            throw new AssertionError(field);
+        }
+    }
+
+    private void encodeNumeric(Field field, ByteBuffer input) {
+        if (input.get() == NULL_HEADER) {
+            write(NULL_MARK);
+            return;
+        }
+        write(PRESENT_MARK);
+        switch (field.getType()) {
+        case BYTE:
+            writeBigEndian(input.get() ^ Byte.MIN_VALUE, Byte.BYTES);
+            break;
+        case SHORT:
+            writeBigEndian(input.getShort() ^ Short.MIN_VALUE, Short.BYTES);
+            break;
+        case INT:
+            writeBigEndian(input.getInt() ^ Integer.MIN_VALUE, Integer.BYTES);
+            break;
+        case LONG:
+            writeBigEndian(input.getLong() ^ Long.MIN_VALUE, Long.BYTES);
+            break;
+        case FLOAT: {
+            // +0.0 == -0.0 in the native comparators
+            float value = input.getFloat();
+            int bits = Float.floatToIntBits(value == 0f ? 0f : value);
+            writeBigEndian(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE, Integer.BYTES);
+            break;
+        }
+        case DOUBLE: {
+            double value = input.getDouble();
+            long bits = Double.doubleToLongBits(value == 0d ? 0d : value);
+            writeBigEndian(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE, Long.BYTES);
+            break;
+        }
+        default:
+            throw new AssertionError(field);
+        }
+    }
+
+    private void encodeUnsigned(long value, int bytes) {
+        if (value < 0) {
+            write(NULL_MARK);
+        } else {
+            write(PRESENT_MARK);
+            writeBigEndian(value, bytes);
+        }
+    }
+
+    private void encodeString(ByteBuffer input) {
+        long size = readCompactInt(input);
+        if (size < 0) {
+            write(NULL_MARK);
+            return;
+        }
+        write(PRESENT_MARK);
+        for (long i = 0; i < size; i++) {
+            byte b = input.get();
+            write(b);
+            if (b == 0) {
+                write(0xff);
+            }
+        }
+        write(0);
+        write(0);
+    }
+
+    private void encodeDecimal(ByteBuffer input) {
+        byte head = input.get();
+        if (head == NULL_HEADER) {
+            write(NULL_MARK);
+            return;
+        }
+        int scale = (int) readCompactInt(input);
+        long unscaled = readCompactInt(input);
+        BigInteger magnitude;
+        if ((head & DECIMAL_COMPACT_MASK) != 0) {
+            magnitude = BigInteger.valueOf(unscaled);
+        } else {
+            byte[] bytes = new byte[(int) unscaled];
+            input.get(bytes);
+            magnitude = new BigInteger(1, bytes);
+        }
+        if (magnitude.signum() == 0) {
+            write(DECIMAL_ZERO);
+            return;
+        }
+        boolean plus = (head & DECIMAL_PLUS_MASK) != 0;
+        write(plus ? DECIMAL_POSITIVE : DECIMAL_NEGATIVE);
+        int start = length;
+        BigDecimal value = new BigDecimal(magnitude, scale).stripTrailingZeros();
+        writeBigEndian((value.precision() - value.scale()) ^ Integer.MIN_VALUE, Integer.BYTES);
+        String digits = value.unscaledValue().toString();
+        for (int i = 0, n = digits.length(); i < n; i++) {
+            write(digits.charAt(i));
+        }
+        write(0);
+        if (plus == false) {
+            for (int i = start; i < length; i++) {
+                buffer[i] = (byte) ~buffer[i];
+            }
+        }
+    }
+
+    private static long readCompactInt(ByteBuffer input) {
+        byte head = input.get();
+        if (head >= COMPACT_INT_HEAD_MIN) {
+            return head;
+        }
+        switch (COMPACT_INT_HEAD_MIN - head) {
+        case 1:
+            return input.get();
+        case 2:
+            return input.getShort();
+        case 3:
+            return input.getInt();
+        case 4:
+            return input.getLong();
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    private void writeBigEndian(long value, int bytes) {
+        for (int i = bytes - 1; i >= 0; i--) {
+            write((int) (value >>> (i * Byte.SIZE)));
+        }
+    }
+
+    private void write(int value) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) value;
+    }
+}
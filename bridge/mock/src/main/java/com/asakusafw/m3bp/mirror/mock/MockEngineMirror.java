@@ -24,14 +24,17 @@ import org.slf4j.LoggerFactory;
 
 import com.asakusafw.dag.api.processor.ProcessorContext;
 import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror;
 import com.asakusafw.m3bp.mirror.EngineMirror;
 import com.asakusafw.m3bp.mirror.FlowGraphMirror;
 import com.asakusafw.m3bp.mirror.basic.BasicConfigurationMirror;
 import com.asakusafw.m3bp.mirror.basic.BasicFlowGraphMirror;
 import com.asakusafw.m3bp.mirror.jna.BufferComparator;
+import com.asakusafw.m3bp.mirror.jna.EdgeConfiguration;
 import com.asakusafw.m3bp.mirror.jna.FlowGraphExecutor;
 import com.asakusafw.m3bp.mirror.jna.NativeFunctionLoader;
+import com.asakusafw.m3bp.mirror.jna.SchemaBufferComparator;
 
 /**
  * Mock implementation of {@link EngineMirror}.
@@ -46,6 +49,8 @@ public class MockEngineMirror implements EngineMirror {
 
     private final NativeFunctionLoader library;
 
+    private final EdgeConfiguration edgeConfiguration = new EdgeConfiguration();
+
     /**
      * Creates a new instance.
      * @param library the library file
@@ -66,6 +71,15 @@ public class MockEngineMirror implements EngineMirror {
         return graph;
     }
 
+    /**
+     * Returns the edge configuration.
+     * @return the edge configuration
+     * @since 0.3.5
+     */
+    public EdgeConfiguration getEdgeConfiguration() {
+        return edgeConfiguration;
+    }
+
     /**
      * Returns a comparator.
      * @param name the comparator name
@@ -74,6 +88,9 @@ public class MockEngineMirror implements EngineMirror {
      */
     public BufferComparator getComparator(String name) {
         Arguments.requireNonNull(name);
+        if (ValueComparatorSchema.isSchema(name)) {
+            return SchemaBufferComparator.of(name);
+        }
         if (library == null) {
             throw new NoSuchElementException(name);
         }
@@ -90,7 +107,8 @@ public class MockEngineMirror implements EngineMirror {
         new FlowGraphExecutor(
                 context,
                 graph, configuration,
-                library == null ? null : library::getComparator).run();
+                library == null ? null : library::getComparator,
+                edgeConfiguration).run();
     }
 
     @Override
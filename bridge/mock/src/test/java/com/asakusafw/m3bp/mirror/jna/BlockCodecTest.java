@@ -0,0 +1,107 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link BlockCodec}.
+ */
+public class BlockCodecTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        byte[] source = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+        assertThat(restore(source), is(source));
+    }
+
+    /**
+     * repetitive contents.
+     */
+    @Test
+    public void repetitive() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            buf.append("record-").append(i % 100).append(',');
+        }
+        byte[] source = buf.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = new byte[BlockCodec.getMaxCompressedLength(source.length)];
+        int size = BlockCodec.compress(source, 0, source.length, compressed, 0);
+        assertThat(size, lessThan(source.length / 4));
+        assertThat(restore(source), is(source));
+    }
+
+    /**
+     * long runs of a byte.
+     */
+    @Test
+    public void runs() {
+        byte[] source = new byte[100_000];
+        Arrays.fill(source, 10_000, 90_000, (byte) 1);
+        assertThat(restore(source), is(source));
+    }
+
+    /**
+     * random contents.
+     */
+    @Test
+    public void random() {
+        Random random = new Random(6502);
+        for (int length : new int[] { 1, 4, 12, 13, 100, 65_536, 200_000 }) {
+            byte[] source = new byte[length];
+            random.nextBytes(source);
+            assertThat(restore(source), is(source));
+        }
+    }
+
+    /**
+     * empty contents.
+     */
+    @Test
+    public void empty() {
+        assertThat(restore(new byte[0]), is(new byte[0]));
+    }
+
+    /**
+     * broken contents.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void broken() {
+        byte[] source = "Hello, world! Hello, world! Hello, world!".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = new byte[BlockCodec.getMaxCompressedLength(source.length)];
+        int size = BlockCodec.compress(source, 0, source.length, compressed, 0);
+        BlockCodec.decompress(compressed, 0, size - 1, new byte[source.length], 0, source.length);
+    }
+
+    private static byte[] restore(byte[] source) {
+        byte[] compressed = new byte[BlockCodec.getMaxCompressedLength(source.length) + 3];
+        int size = BlockCodec.compress(source, 0, source.length, compressed, 3);
+        assertThat(size, lessThanOrEqualTo(BlockCodec.getMaxCompressedLength(source.length)));
+        byte[] restored = new byte[source.length];
+        BlockCodec.decompress(compressed, 3, size, restored, 0, restored.length);
+        return restored;
+    }
+}
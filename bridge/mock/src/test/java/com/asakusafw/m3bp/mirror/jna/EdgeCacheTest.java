@@ -0,0 +1,150 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link EdgeCache}.
+ */
+public class EdgeCacheTest {
+
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
+    /**
+     * store and restore values.
+     * @throws Exception if failed
+     */
+    @Test
+    public void values() throws Exception {
+        OutputBufferFragment fragment = BufferUtil.output(12,
+                b -> b.putInt(100),
+                b -> b.putInt(200),
+                b -> b.putInt(300));
+        List<OutputBufferFragment> restored = restore(fragment);
+        assertThat(restored, hasSize(1));
+        OutputBufferFragment result = restored.get(0);
+        assertThat(result.hasKey(), is(false));
+        assertThat(result.getEntryCount(), is(3L));
+        assertThat(result.getValue(0).getInt(), is(100));
+        assertThat(result.getValue(1).getInt(), is(200));
+        assertThat(result.getValue(2).getInt(), is(300));
+    }
+
+    /**
+     * store and restore key-value pairs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void pairs() throws Exception {
+        OutputBufferFragment fragment = BufferUtil.outputWithKeys(16,
+                b -> b.putInt(1),
+                b -> b.putInt(100),
+                b -> b.putInt(2),
+                b -> b.putInt(200));
+        List<OutputBufferFragment> restored = restore(fragment, fragment);
+        assertThat(restored, hasSize(2));
+        for (OutputBufferFragment result : restored) {
+            assertThat(result.hasKey(), is(true));
+            assertThat(result.getEntryCount(), is(2L));
+            assertThat(result.getKey(0), is(fragment.getKey(0)));
+            assertThat(result.getValue(0), is(fragment.getValue(0)));
+            assertThat(result.getKey(1), is(fragment.getKey(1)));
+            assertThat(result.getValue(1), is(fragment.getValue(1)));
+        }
+    }
+
+    /**
+     * empty fragments are not stored.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty() throws Exception {
+        List<OutputBufferFragment> restored = restore(new OutputBufferFragment(1, 1, false));
+        assertThat(restored, hasSize(0));
+    }
+
+    /**
+     * record digests.
+     * @throws Exception if failed
+     */
+    @Test
+    public void digest() throws Exception {
+        EdgeCache.RecordDigest d0 = new EdgeCache.RecordDigest();
+        d0.add(BufferUtil.output(12,
+                b -> b.putInt(100),
+                b -> b.putInt(200),
+                b -> b.putInt(300)));
+
+        // order insensitive
+        EdgeCache.RecordDigest d1 = new EdgeCache.RecordDigest();
+        d1.add(BufferUtil.output(4, b -> b.putInt(300)));
+        d1.add(BufferUtil.output(8,
+                b -> b.putInt(200),
+                b -> b.putInt(100)));
+        assertThat(d1.get(), is(d0.get()));
+
+        // changed contents
+        EdgeCache.RecordDigest d2 = new EdgeCache.RecordDigest();
+        d2.add(BufferUtil.output(12,
+                b -> b.putInt(100),
+                b -> b.putInt(200),
+                b -> b.putInt(301)));
+        assertThat(d2.get(), is(not(d0.get())));
+
+        // changed key boundaries
+        EdgeCache.RecordDigest k0 = new EdgeCache.RecordDigest();
+        k0.add(BufferUtil.outputWithKeys(16, b -> b.putLong(1L), b -> b.putLong(2L)));
+        EdgeCache.RecordDigest k1 = new EdgeCache.RecordDigest();
+        k1.add(BufferUtil.outputWithKeys(16, b -> b.putInt(1), b -> b.putInt(0).putLong(2L)));
+        assertThat(k1.get(), is(not(k0.get())));
+    }
+
+    private List<OutputBufferFragment> restore(OutputBufferFragment... fragments) throws Exception {
+        File file = temporary.newFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            for (OutputBufferFragment fragment : fragments) {
+                EdgeCache.write(channel, fragment);
+            }
+        }
+        List<OutputBufferFragment> results = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (true) {
+                OutputBufferFragment fragment = EdgeCache.read(channel, file);
+                if (fragment == null) {
+                    break;
+                }
+                results.add(fragment);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asakusafw.m3bp.mirror.jna.EdgeStatistics.KeyFrequency;
+
+/**
+ * Test for {@link EdgeStatistics}.
+ */
+public class EdgeStatisticsTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        EdgeStatistics stats = new EdgeStatistics(2, 0);
+        stats.add(0, key(1), 10);
+        stats.add(1, key(2), 20);
+        stats.add(1, key(3), 30);
+        assertThat(stats.getPartitionRecords(), is(new long[] { 1, 2 }));
+        assertThat(stats.getPartitionBytes(), is(new long[] { 10, 50 }));
+        assertThat(stats.getTotalRecords(), is(3L));
+        assertThat(stats.getSkew(), closeTo(4.0 / 3.0, 0.001));
+        assertThat(stats.getHotKeys(), hasSize(0));
+    }
+
+    /**
+     * empty statistics.
+     */
+    @Test
+    public void empty() {
+        EdgeStatistics stats = new EdgeStatistics(4, 4);
+        assertThat(stats.getTotalRecords(), is(0L));
+        assertThat(stats.getSkew(), is(1.0));
+        assertThat(stats.getHotKeys(), hasSize(0));
+    }
+
+    /**
+     * track hot keys among many distinct keys.
+     */
+    @Test
+    public void hot_keys() {
+        EdgeStatistics stats = new EdgeStatistics(1, 2);
+        for (int i = 0; i < 10_000; i++) {
+            stats.add(0, key(i % 4 == 0 ? -1 : i % 8 == 1 ? -2 : i), 1);
+        }
+        List<KeyFrequency> hotKeys = stats.getHotKeys();
+        assertThat(hotKeys, hasSize(2));
+        assertThat(hotKeys.get(0).getKey().getInt(), is(-1));
+        assertThat(hotKeys.get(1).getKey().getInt(), is(-2));
+        assertThat(hotKeys.get(0).getCount(), is(lessThanOrEqualTo(2500L)));
+        assertThat(hotKeys.get(0).getCount(), is(greaterThan(hotKeys.get(1).getCount())));
+    }
+
+    /**
+     * keys must be copied.
+     */
+    @Test
+    public void copy_keys() {
+        EdgeStatistics stats = new EdgeStatistics(1, 1);
+        ByteBuffer buffer = key(1);
+        stats.add(0, buffer, 1);
+        buffer.putInt(0, 2);
+        assertThat(stats.getHotKeys().get(0).getKey().getInt(), is(1));
+    }
+
+    private static ByteBuffer key(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+}
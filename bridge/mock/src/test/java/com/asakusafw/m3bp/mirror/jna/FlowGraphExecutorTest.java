@@ -28,7 +28,9 @@ import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.asakusafw.dag.api.processor.GroupReader;
 import com.asakusafw.dag.api.processor.ObjectReader;
@@ -57,6 +59,12 @@ public class FlowGraphExecutorTest {
 
     final BasicConfigurationMirror conf = new BasicConfigurationMirror();
 
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
     /**
      * simple case.
      * @throws Exception if failed
@@ -134,6 +142,101 @@ public class FlowGraphExecutorTest {
         BroadcastConsumer.OUTPUT.clear();
     }
 
+    /**
+     * restores cached edge outputs.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cache() throws Exception {
+        Generator.INPUT.clear();
+        Relay.COUNT.set(0);
+        Consumer.OUTPUT.clear();
+
+        BasicFlowGraphMirror graph = new BasicFlowGraphMirror();
+
+        VertexMirror generator = graph.addVertex("generator", Descriptors.newVertex(Generator.class));
+        VertexMirror relay = graph.addVertex("relay", Descriptors.newVertex(Relay.class));
+        VertexMirror consumer = graph.addVertex("consumer", Descriptors.newVertex(Consumer.class));
+
+        graph.addEdge(
+                generator.addOutput("out", Descriptors.newOneToOneEdge(StringSerDe.class)),
+                relay.addInput("in", Descriptors.newOneToOneEdge(StringSerDe.class)));
+        graph.addEdge(
+                relay.addOutput("out", Descriptors.newOneToOneEdge(StringSerDe.class)),
+                consumer.addInput("in", Descriptors.newOneToOneEdge(StringSerDe.class)));
+
+        EdgeConfiguration edges = new EdgeConfiguration()
+                .withCacheDirectory(temporary.newFolder())
+                .withCacheTag("a");
+
+        Collections.addAll(Generator.INPUT, "A", "B", "C");
+        new FlowGraphExecutor(root, graph, conf, null, edges).run();
+        assertThat(Consumer.OUTPUT, containsInAnyOrder("A", "B", "C"));
+        assertThat(Relay.COUNT.get(), is(3));
+
+        // restores the previous outputs of relay
+        Relay.COUNT.set(0);
+        Consumer.OUTPUT.clear();
+        Generator.INPUT.clear();
+        Collections.addAll(Generator.INPUT, "C", "B", "A");
+        new FlowGraphExecutor(root, graph, conf, null, edges).run();
+        assertThat(Consumer.OUTPUT, containsInAnyOrder("A", "B", "C"));
+        assertThat(Relay.COUNT.get(), is(0));
+
+        // the input is changed
+        Consumer.OUTPUT.clear();
+        Generator.INPUT.clear();
+        Collections.addAll(Generator.INPUT, "D");
+        new FlowGraphExecutor(root, graph, conf, null, edges).run();
+        assertThat(Consumer.OUTPUT, containsInAnyOrder("D"));
+        assertThat(Relay.COUNT.get(), is(1));
+
+        // the cache tag is changed
+        Relay.COUNT.set(0);
+        Consumer.OUTPUT.clear();
+        new FlowGraphExecutor(root, graph, conf, null, edges.withCacheTag("b")).run();
+        assertThat(Consumer.OUTPUT, containsInAnyOrder("D"));
+        assertThat(Relay.COUNT.get(), is(1));
+
+        Generator.INPUT.clear();
+        Relay.COUNT.set(0);
+        Consumer.OUTPUT.clear();
+    }
+
+    /**
+     * cacheable vertices.
+     */
+    @Test
+    public void cacheable() {
+        BasicFlowGraphMirror graph = new BasicFlowGraphMirror();
+
+        VertexMirror v0 = graph.addVertex("v0", Descriptors.newVertex(Generator.class));
+        VertexMirror v1 = graph.addVertex("v1", Descriptors.newVertex(Relay.class));
+        VertexMirror v2 = graph.addVertex("v2", Descriptors.newVertex(Consumer.class));
+        VertexMirror v3 = graph.addVertex("v3", Descriptors.newVertex(Relay.class));
+        VertexMirror v4 = graph.addVertex("v4", Descriptors.newVertex(Consumer.class));
+        graph.addEdge(
+                v0.addOutput("out", Descriptors.newOneToOneEdge(StringSerDe.class)),
+                v1.addInput("in", Descriptors.newOneToOneEdge(StringSerDe.class)));
+        graph.addEdge(
+                v1.addOutput("out", Descriptors.newOneToOneEdge(StringSerDe.class)),
+                v2.addInput("in", Descriptors.newOneToOneEdge(StringSerDe.class)));
+        graph.addEdge(
+                v0.addOutput("barrier", Descriptors.newVoidEdge()),
+                v3.addInput("barrier", Descriptors.newVoidEdge()));
+        graph.addEdge(
+                v3.addOutput("out", Descriptors.newOneToOneEdge(StringSerDe.class)),
+                v4.addInput("in", Descriptors.newOneToOneEdge(StringSerDe.class)));
+
+        // source
+        assertThat(FlowGraphExecutor.isCacheable(v0), is(false));
+        assertThat(FlowGraphExecutor.isCacheable(v1), is(true));
+        // sink
+        assertThat(FlowGraphExecutor.isCacheable(v2), is(false));
+        // depends on side effects
+        assertThat(FlowGraphExecutor.isCacheable(v3), is(false));
+    }
+
     /**
      * word count.
      * @throws Exception if failed
@@ -188,6 +291,18 @@ public class FlowGraphExecutorTest {
         assertThat(results, hasEntry("hello2", 1));
     }
 
+    /**
+     * max entry count w/ record size hints.
+     */
+    @Test
+    public void max_entry_count() {
+        assertThat(FlowGraphExecutor.getMaxEntryCount(1024 * 1024, 1000, 0), is(1000L));
+        assertThat(FlowGraphExecutor.getMaxEntryCount(1024 * 1024, 1000, 16), is(131072L));
+        assertThat(FlowGraphExecutor.getMaxEntryCount(1024 * 1024, 1000, 4096), is(512L));
+        assertThat(FlowGraphExecutor.getMaxEntryCount(1024 * 1024, 1000, 1024 * 1024 * 1024), is(16L));
+        assertThat(FlowGraphExecutor.getMaxEntryCount(1024, 1000, 1), is(1024L));
+    }
+
     private Map<String, Integer> wordcount(String[] l1, String[] l2) throws IOException, InterruptedException {
         WcMap.TEXT.clear();
         WcMap2.TEXT2.clear();
@@ -273,6 +388,27 @@ public class FlowGraphExecutorTest {
         }
     }
 
+    /**
+     * Relay vertex.
+     */
+    public static class Relay implements VertexProcessor {
+
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public TaskProcessor createTaskProcessor() throws IOException, InterruptedException {
+            return context -> {
+                try (ObjectReader reader = (ObjectReader) context.getInput("in");
+                        ObjectWriter writer = (ObjectWriter) context.getOutput("out")) {
+                    while (reader.nextObject()) {
+                        COUNT.incrementAndGet();
+                        writer.putObject(reader.getObject());
+                    }
+                }
+            };
+        }
+    }
+
     /**
      * Consumer vertex.
      */
@@ -18,9 +18,13 @@ package com.asakusafw.m3bp.mirror.jna;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 
 import org.junit.Test;
 
@@ -67,6 +71,83 @@ public class MoveEdgeProcessorTest {
         assertThat(collect(inputs), containsInAnyOrder(100, 200, 300, 400, 500, 600));
     }
 
+    /**
+     * coalesces small buffers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void coalesce() throws Exception {
+        MoveEdgeProcessor proc = new MoveEdgeProcessor(new EdgeConfiguration().withTaskSize(8));
+        proc.add(BufferUtil.output(4, b -> b.putInt(100)));
+        proc.add(BufferUtil.output(4, b -> b.putInt(200)));
+        proc.add(BufferUtil.output(12, b -> b.putInt(300), b -> b.putInt(400), b -> b.putInt(500)));
+        proc.add(BufferUtil.output(4, b -> b.putInt(600)));
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(3));
+        assertThat(collect(inputs), contains(100, 200, 300, 400, 500, 600));
+    }
+
+    /**
+     * compressed buffers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compressed() throws Exception {
+        List<OutputBufferFragment> fragments = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<Consumer<ByteBuffer>> entries = new ArrayList<>();
+            for (int j = 0; j < 1000; j++) {
+                int value = j % 10;
+                entries.add(b -> b.putInt(value));
+                expected.add(value);
+            }
+            @SuppressWarnings("unchecked")
+            Consumer<ByteBuffer>[] array = entries.toArray(new Consumer[entries.size()]);
+            fragments.add(BufferUtil.output(entries.size() * 4, array));
+        }
+        List<BufferBlock> blocks = new ArrayList<>();
+        for (OutputBufferFragment fragment : fragments) {
+            BufferBlock block = BufferBlock.compress(fragment);
+            assertThat(block.isCompressed(), is(true));
+            assertThat(block.getSize(), is(4000L));
+            assertThat(block.getFootprint(), lessThan(BufferBlock.of(fragment).getFootprint() / 2));
+            blocks.add(block);
+        }
+        MoveEdgeProcessor proc = new MoveEdgeProcessor(new EdgeConfiguration().withTaskSize(6000));
+        proc.addBlocks(blocks);
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(2));
+        assertThat(collect(inputs), is(expected));
+    }
+
+    /**
+     * incompressible buffers.
+     * @throws Exception if failed
+     */
+    @Test
+    public void incompressible() throws Exception {
+        Random random = new Random(6502);
+        int[] values = random.ints(64).toArray();
+        BufferBlock block = BufferBlock.compress(BufferUtil.output(256, b -> {
+            for (int value : values) {
+                b.putInt(value);
+            }
+        }));
+        assertThat(block.isCompressed(), is(false));
+
+        MoveEdgeProcessor proc = new MoveEdgeProcessor();
+        proc.addBlocks(Arrays.asList(block));
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(1));
+        ByteBuffer restored = ByteBuffer.allocate(256).order(ByteOrder.nativeOrder());
+        BufferUtil.collect(inputs.get(0), b -> restored.put(b));
+        restored.flip();
+        for (int value : values) {
+            assertThat(restored.getInt(), is(value));
+        }
+    }
+
     private List<Integer> collect(List<InputBufferCursor> inputs) {
         List<Integer> results = new ArrayList<>();
         inputs.stream().forEach(c -> BufferUtil.collect(c, b -> {
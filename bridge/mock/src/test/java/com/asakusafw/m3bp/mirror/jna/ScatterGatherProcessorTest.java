@@ -19,14 +19,23 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 import com.sun.jna.Pointer;
 
 /**
@@ -41,6 +50,12 @@ public class ScatterGatherProcessorTest {
         }
     };
 
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
     /**
      * simple case.
      */
@@ -186,6 +201,295 @@ public class ScatterGatherProcessorTest {
         }
     }
 
+    /**
+     * spill out upstreams.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill() throws Exception {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(1, INT_COMPARATOR, new EdgeConfiguration()
+                .withMemoryBudget(1)
+                .withSpillDirectory(temporary.newFolder()));
+        proc.add(output(new int[] {
+                1, 101,
+                2, 200,
+        }));
+        proc.add(output(new int[] {
+                2, 201,
+                3, 300,
+                1, 100,
+        }));
+        proc.add(output(new int[] {
+                3, 301,
+                4, 400,
+                1, 102,
+        }));
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(1));
+        assertThat(proc.getSpillCount(), is(greaterThan(0)));
+
+        Map<Integer, List<Integer>> map = collect(inputs.get(0));
+        assertThat(map.keySet(), containsInAnyOrder(1, 2, 3, 4));
+        assertThat(map, hasEntry(equalTo(1), contains(100, 101, 102)));
+        assertThat(map, hasEntry(equalTo(2), contains(200, 201)));
+        assertThat(map, hasEntry(equalTo(3), contains(300, 301)));
+        assertThat(map, hasEntry(equalTo(4), contains(400)));
+    }
+
+    /**
+     * never spill out upstreams without memory budget.
+     */
+    @Test
+    public void spill_unlimited() {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(1, INT_COMPARATOR);
+        assertThat(proc.getSpillThreshold(), is(Long.MAX_VALUE));
+        for (int i = 0; i < 1000; i++) {
+            proc.add(output(new int[] {
+                    i % 10, i,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(proc.getSpillCount(), is(0));
+
+        Map<Integer, List<Integer>> map = collect(inputs.get(0));
+        assertThat(map.keySet(), hasSize(10));
+    }
+
+    /**
+     * spill threshold never exceeds the max segment size.
+     */
+    @Test
+    public void spill_threshold() {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(1, INT_COMPARATOR, new EdgeConfiguration()
+                .withMemoryBudget(Long.MAX_VALUE - 1));
+        assertThat(proc.getSpillThreshold(), is(ScatterGatherProcessor.MAX_SPILL_SIZE));
+    }
+
+    /**
+     * spill out upstreams with multiple partitions.
+     * @throws Exception if failed
+     */
+    @Test
+    public void spill_partitions() throws Exception {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(3, null, new EdgeConfiguration()
+                .withMemoryBudget(256)
+                .withSpillDirectory(temporary.newFolder()));
+        for (int i = 0; i < 100; i++) {
+            proc.add(output(new int[] {
+                    i % 10, i,
+                    i % 7, i,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(3));
+
+        Map<Integer, List<Integer>> map = new HashMap<>();
+        for (InputBufferCursor input : inputs) {
+            Map<Integer, List<Integer>> partition = collect(input);
+            for (Integer key : partition.keySet()) {
+                assertThat(map, not(hasKey(key)));
+            }
+            map.putAll(partition);
+        }
+        assertThat(map.keySet(), containsInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        int total = 0;
+        for (List<Integer> values : map.values()) {
+            total += values.size();
+        }
+        assertThat(total, is(200));
+    }
+
+    /**
+     * range partitioning.
+     */
+    @Test
+    public void range_partitions() {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(
+                3, Partitioning.RANGE, ValueComparatorSchema.parse("@a+"), null, new EdgeConfiguration());
+        for (int i = 0; i < 100; i++) {
+            proc.add(output(new int[] {
+                    (i * 37) % 100, i,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(3));
+
+        int last = -1;
+        int total = 0;
+        for (InputBufferCursor input : inputs) {
+            Map<Integer, List<Integer>> partition = collect(input);
+            assertThat("probably partitioned", partition.keySet(), is(not(empty())));
+            for (Integer key : partition.keySet()) {
+                assertThat(key, is(greaterThan(last)));
+            }
+            last = Collections.max(partition.keySet());
+            total += partition.size();
+        }
+        assertThat(total, is(100));
+    }
+
+    /**
+     * range partitioning with spilled upstreams, which keys are sampled from all fragments.
+     * @throws Exception if failed
+     */
+    @Test
+    public void range_partitions_spill() throws Exception {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(
+                4, Partitioning.RANGE, ValueComparatorSchema.parse("@a+"), INT_COMPARATOR, new EdgeConfiguration()
+                    .withMemoryBudget(256)
+                    .withSpillDirectory(temporary.newFolder()));
+        // the first fragments only contain small keys
+        for (int i = 0; i < 1000; i++) {
+            proc.add(output(new int[] {
+                    i * 10, i,
+                    i * 10, -i,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(4));
+
+        int last = -1;
+        int total = 0;
+        for (InputBufferCursor input : inputs) {
+            Map<Integer, List<Integer>> partition = collect(input);
+            assertThat("balanced", partition.size(), is(greaterThan(100)));
+            for (Map.Entry<Integer, List<Integer>> entry : partition.entrySet()) {
+                assertThat(entry.getKey(), is(greaterThan(last)));
+                assertThat(entry.getValue(), contains(-entry.getKey() / 10, entry.getKey() / 10));
+            }
+            last = Collections.max(partition.keySet());
+            total += partition.size();
+        }
+        assertThat(total, is(1000));
+        EdgeStatistics stats = proc.getStatistics();
+        assertThat(stats.getTotalRecords(), is(2000L));
+    }
+
+    /**
+     * range partitioning without key schema.
+     */
+    @Test
+    public void range_partitions_fallback() {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(
+                3, Partitioning.RANGE, null, new EdgeConfiguration());
+        for (int i = 0; i < 100; i++) {
+            proc.add(output(new int[] {
+                    i, i,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(3));
+
+        int total = 0;
+        for (InputBufferCursor input : inputs) {
+            total += collect(input).size();
+        }
+        assertThat(total, is(100));
+    }
+
+    /**
+     * sort by binary comparable sort keys.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sort_keys() throws Exception {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(1, SchemaBufferComparator.of("@a-"),
+                new EdgeConfiguration()
+                    .withMemoryBudget(1)
+                    .withSpillDirectory(temporary.newFolder()));
+        proc.add(output(new int[] {
+                1, 101,
+                2, 200,
+        }));
+        proc.add(output(new int[] {
+                2, -1,
+                1, 100,
+                1, 102,
+        }));
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(1));
+
+        Map<Integer, List<Integer>> map = collect(inputs.get(0));
+        assertThat(map.keySet(), containsInAnyOrder(1, 2));
+        assertThat(map, hasEntry(equalTo(1), contains(102, 101, 100)));
+        assertThat(map, hasEntry(equalTo(2), contains(200, -1)));
+    }
+
+    /**
+     * reads spilled partitions with binary comparable sort keys in parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void sort_keys_parallel() throws Exception {
+        int partitions = 8;
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(partitions, SchemaBufferComparator.of("@a-"),
+                new EdgeConfiguration()
+                    .withMemoryBudget(64 * 1024)
+                    .withSpillDirectory(temporary.newFolder()));
+        for (int i = 0; i < 20000; i++) {
+            proc.add(output(new int[] {
+                    i % 20, i,
+                    (i * 7) % 20, i + 20000,
+            }));
+        }
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(partitions));
+
+        ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<Map<Integer, List<Integer>>>> futures = new ArrayList<>();
+            for (InputBufferCursor input : inputs) {
+                futures.add(executor.submit(() -> collect(input)));
+            }
+            Map<Integer, List<Integer>> map = new HashMap<>();
+            for (Future<Map<Integer, List<Integer>>> future : futures) {
+                map.putAll(future.get());
+            }
+            assertThat(map.keySet(), hasSize(20));
+            int total = 0;
+            for (List<Integer> values : map.values()) {
+                List<Integer> sorted = new ArrayList<>(values);
+                Collections.sort(sorted, Collections.reverseOrder());
+                assertThat(values, is(sorted));
+                total += values.size();
+            }
+            assertThat(total, is(40000));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * collect statistics.
+     */
+    @Test
+    public void statistics() {
+        ScatterGatherProcessor proc = new ScatterGatherProcessor(2, null, new EdgeConfiguration()
+                .withHotKeyCount(1));
+        proc.add(output(new int[] {
+                1, 100,
+                1, 101,
+                2, 200,
+                1, 102,
+                3, 300,
+                1, 103,
+        }));
+        List<InputBufferCursor> inputs = proc.process();
+        assertThat(inputs, hasSize(2));
+
+        EdgeStatistics stats = proc.getStatistics();
+        assertThat(stats.getTotalRecords(), is(6L));
+        long[] records = stats.getPartitionRecords();
+        assertThat(records[0] + records[1], is(6L));
+        long[] bytes = stats.getPartitionBytes();
+        assertThat(bytes[0] + bytes[1], is(6L * Integer.BYTES * 2));
+
+        List<EdgeStatistics.KeyFrequency> hotKeys = stats.getHotKeys();
+        assertThat(hotKeys, hasSize(1));
+        assertThat(hotKeys.get(0).getKey().order(ByteOrder.nativeOrder()).getInt(), is(1));
+        assertThat(hotKeys.get(0).getCount(), is(greaterThan(0L)));
+    }
+
     private OutputBufferFragment output(int... keyValuePairs) {
         List<Consumer<ByteBuffer>> consumers = new ArrayList<>();
         for (int i = 0; i < keyValuePairs.length; i += 2) {
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
+
+/**
+ * Test for {@link SchemaBufferComparator}.
+ */
+public class SchemaBufferComparatorTest {
+
+    /**
+     * simple case.
+     */
+    @Test
+    public void simple() {
+        BufferComparator cmp = SchemaBufferComparator.of("@i+");
+        assertThat(comparing(cmp, b -> putInt(b, 100), b -> putInt(b, 100)), is(0));
+        assertThat(comparing(cmp, b -> putInt(b, 100), b -> putInt(b, 101)), is(-1));
+        assertThat(comparing(cmp, b -> putInt(b, -1), b -> putInt(b, 1)), is(-1));
+        assertThat(comparing(cmp, b -> b.put((byte) 0), b -> putInt(b, Integer.MIN_VALUE)), is(-1));
+    }
+
+    /**
+     * descendant order.
+     */
+    @Test
+    public void descendant() {
+        BufferComparator cmp = SchemaBufferComparator.of("@l-");
+        assertThat(comparing(cmp, b -> b.put((byte) 1).putLong(1), b -> b.put((byte) 1).putLong(2)), is(+1));
+        assertThat(comparing(cmp, b -> b.put((byte) 0), b -> b.put((byte) 1).putLong(2)), is(+1));
+    }
+
+    /**
+     * multiple fields.
+     */
+    @Test
+    public void multiple() {
+        BufferComparator cmp = SchemaBufferComparator.of("@i+c-");
+        assertThat(comparing(cmp,
+                b -> putString(putInt(b, 1), "a"),
+                b -> putString(putInt(b, 1), "b")), is(+1));
+        assertThat(comparing(cmp,
+                b -> putString(putInt(b, 1), "a"),
+                b -> putString(putInt(b, 2), "b")), is(-1));
+        assertThat(comparing(cmp,
+                b -> putString(putInt(b, 1), "ab"),
+                b -> putString(putInt(b, 1), "a")), is(-1));
+    }
+
+    /**
+     * string fields.
+     */
+    @Test
+    public void string() {
+        BufferComparator cmp = SchemaBufferComparator.of("@c+");
+        assertThat(comparing(cmp, b -> putString(b, "abc"), b -> putString(b, "abc")), is(0));
+        assertThat(comparing(cmp, b -> putString(b, "abc"), b -> putString(b, "abd")), is(-1));
+        assertThat(comparing(cmp, b -> putString(b, "a"), b -> putString(b, "あ")), is(-1));
+        assertThat(comparing(cmp, b -> b.put((byte) -1), b -> putString(b, "")), is(-1));
+    }
+
+    /**
+     * decimal fields.
+     */
+    @Test
+    public void decimal() {
+        BufferComparator cmp = SchemaBufferComparator.of("@n+");
+        // 1.00 vs 1
+        assertThat(comparing(cmp, b -> putDecimal(b, true, 2, 100), b -> putDecimal(b, true, 0, 1)), is(0));
+        // -2 vs 1
+        assertThat(comparing(cmp, b -> putDecimal(b, false, 0, 2), b -> putDecimal(b, true, 0, 1)), is(-1));
+        // -2 vs -1
+        assertThat(comparing(cmp, b -> putDecimal(b, false, 0, 2), b -> putDecimal(b, false, 0, 1)), is(-1));
+        // huge vs 1.5
+        BigInteger huge = BigInteger.TEN.pow(30);
+        assertThat(comparing(cmp, b -> putDecimal(b, true, 1, 15), b -> putDecimal(b, huge)), is(-1));
+        // null vs 0
+        assertThat(comparing(cmp, b -> b.put((byte) 0), b -> putDecimal(b, true, 0, 0)), is(-1));
+    }
+
+    /**
+     * parses schema.
+     */
+    @Test
+    public void schema() {
+        ValueComparatorSchema schema = ValueComparatorSchema.parse("@z+b-s+i-l+f-d+n-a+t-c+");
+        assertThat(schema.getFields(), hasSize(11));
+        assertThat(schema.getFields().get(7).getType(), is(ValueComparatorSchema.Type.DECIMAL));
+        assertThat(schema.getFields().get(7).isAscendant(), is(false));
+        assertThat(schema.getName(), is("@z+b-s+i-l+f-d+n-a+t-c+"));
+    }
+
+    /**
+     * parses invalid schema.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void schema_invalid() {
+        ValueComparatorSchema.parse("@i*");
+    }
+
+    private static int comparing(BufferComparator cmp, Consumer<ByteBuffer> a, Consumer<ByteBuffer> b) {
+        ByteBuffer ba = alloc(a);
+        ByteBuffer bb = alloc(b);
+        if (cmp.compare(ba, bb)) {
+            assertThat(cmp.compare(bb, ba), is(false));
+            return -1;
+        } else if (cmp.compare(bb, ba)) {
+            return +1;
+        } else {
+            return 0;
+        }
+    }
+
+    private static ByteBuffer alloc(Consumer<ByteBuffer> action) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(256).order(ByteOrder.nativeOrder());
+        action.accept(buf);
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer putInt(ByteBuffer buf, int value) {
+        return buf.put((byte) 1).putInt(value);
+    }
+
+    private static ByteBuffer putString(ByteBuffer buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return buf.put((byte) bytes.length).put(bytes);
+    }
+
+    private static ByteBuffer putDecimal(ByteBuffer buf, boolean plus, int scale, int unscaled) {
+        return buf.put((byte) (1 | 1 << 2 | (plus ? 1 << 1 : 0))).put((byte) scale).put((byte) unscaled);
+    }
+
+    private static ByteBuffer putDecimal(ByteBuffer buf, BigInteger unscaled) {
+        byte[] bytes = unscaled.toByteArray();
+        return buf.put((byte) (1 | 1 << 1)).put((byte) 0).put((byte) bytes.length).put(bytes);
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jna;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link SortKeyEncoder}.
+ */
+public class SortKeyEncoderTest {
+
+    /**
+     * integral numbers.
+     */
+    @Test
+    public void integral() {
+        Random random = new Random(6502);
+        List<Consumer<ByteBuffer>> values = new ArrayList<>();
+        values.add(b -> b.put((byte) 0));
+        for (int i = 0; i < 100; i++) {
+            long value = random.nextBoolean() ? random.nextLong() : random.nextInt(10) - 5;
+            values.add(b -> b.put((byte) 1).putLong(value));
+        }
+        check("@l+", values);
+        check("@l-", values);
+    }
+
+    /**
+     * floating point numbers.
+     */
+    @Test
+    public void floating_point() {
+        List<Consumer<ByteBuffer>> values = new ArrayList<>();
+        values.add(b -> b.put((byte) 0));
+        for (double value : new double[] {
+                0d, -0d, 1d, -1d, 0.5, -0.5, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.MIN_VALUE, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+        }) {
+            values.add(b -> b.put((byte) 1).putDouble(value));
+        }
+        check("@d+", values);
+        check("@d-", values);
+    }
+
+    /**
+     * strings.
+     */
+    @Test
+    public void string() {
+        List<Consumer<ByteBuffer>> values = new ArrayList<>();
+        values.add(b -> b.put((byte) -1));
+        for (String value : new String[] {
+                "", "a", "ab", "b", "a\0", "a\0b", "\0", "\u00ff", "\u3042",
+        }) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            values.add(b -> b.put((byte) bytes.length).put(bytes));
+        }
+        check("@c+", values);
+        check("@c-", values);
+    }
+
+    /**
+     * decimals.
+     */
+    @Test
+    public void decimal() {
+        List<Consumer<ByteBuffer>> values = new ArrayList<>();
+        values.add(b -> b.put((byte) 0));
+        for (String value : new String[] {
+                "0", "0.00", "1", "1.0", "1.5", "1.55", "10", "9.9", "-1", "-1.5", "-1.55", "-10", "0.001",
+                "123456789012345678901234567890",
+                "-123456789012345678901234567890",
+        }) {
+            BigDecimal decimal = new BigDecimal(value);
+            values.add(b -> putDecimal(b, decimal));
+        }
+        check("@n+", values);
+        check("@n-", values);
+    }
+
+    /**
+     * multiple fields.
+     */
+    @Test
+    public void multiple() {
+        List<Consumer<ByteBuffer>> values = new ArrayList<>();
+        for (int i = -2; i <= 2; i++) {
+            int v = i;
+            for (String s : new String[] { "", "a", "b" }) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                values.add(b -> b.put((byte) 1).putInt(v).put((byte) bytes.length).put(bytes));
+            }
+        }
+        check("@i+c-", values);
+        check("@i-c+", values);
+    }
+
+    private static void check(String schema, List<Consumer<ByteBuffer>> values) {
+        SchemaBufferComparator comparator = SchemaBufferComparator.of(schema);
+        SortKeyEncoder encoder = new SortKeyEncoder(comparator.getSchema());
+        for (Consumer<ByteBuffer> a : values) {
+            for (Consumer<ByteBuffer> b : values) {
+                ByteBuffer ba = alloc(a);
+                ByteBuffer bb = alloc(b);
+                int expected = comparator.compare(ba, bb) ? -1 : comparator.compare(bb, ba) ? +1 : 0;
+                int actual = Integer.signum(SortKeyEncoder.compare(encoder.encode(ba), encoder.encode(bb)));
+                assertThat(String.format("%s: %s <=> %s", schema, ba, bb), actual, is(expected));
+            }
+        }
+    }
+
+    private static ByteBuffer alloc(Consumer<ByteBuffer> action) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(256).order(ByteOrder.nativeOrder());
+        action.accept(buf);
+        buf.flip();
+        return buf;
+    }
+
+    private static void putDecimal(ByteBuffer buf, BigDecimal value) {
+        byte head = (byte) (1 | (value.signum() >= 0 ? 1 << 1 : 0));
+        byte[] bytes = value.unscaledValue().abs().toByteArray();
+        buf.put(head).put((byte) value.scale()).put((byte) bytes.length).put(bytes);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#ifndef COMPARATOR_HPP
+#define COMPARATOR_HPP
+
+#include <functional>
+#include <string>
+
+namespace asakusafw {
+namespace jni {
+
+/**
+ * The prefix of value comparator names which represent a comparator schema.
+ * This must be as same as com.asakusafw.m3bp.descriptor.ValueComparatorSchema.PREFIX.
+ */
+static constexpr char SCHEMA_COMPARATOR_PREFIX = '@';
+
+/**
+ * Returns whether or not the value comparator name represents a comparator schema.
+ */
+inline bool is_schema_comparator(std::string const& name) {
+    return !name.empty() && name[0] == SCHEMA_COMPARATOR_PREFIX;
+}
+
+/**
+ * Builds a generic value comparator from the comparator schema.
+ * Throws std::invalid_argument if the schema is not valid.
+ */
+std::function<bool(void const*, void const*)> build_schema_comparator(std::string const& name);
+
+}  // namespace jni
+}  // namespace asakusafw
+
+#endif // COMPARATOR_HPP
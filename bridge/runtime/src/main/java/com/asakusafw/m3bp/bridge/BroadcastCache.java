@@ -0,0 +1,201 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.bridge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dag.api.processor.ObjectReader;
+import com.asakusafw.lang.utils.common.Invariants;
+import com.asakusafw.m3bp.mirror.PortMirror;
+
+/**
+ * Shares the contents of each broadcast edge between its downstream inputs in the same process.
+ * <p>
+ * The first downstream input which opens a broadcast edge decodes all of its objects, and the other downstream
+ * inputs reuse the decoded objects instead of decoding them again, so that the lookup tables built from the edge
+ * refer to just one copy of the objects.
+ * The shared objects are released after all downstream inputs have opened the edge,
+ * or when this cache is {@link #close() closed} at the end of the flow graph execution,
+ * even if some downstream inputs were not opened.
+ * Broadcast objects must not be modified by their consumers.
+ * </p>
+ * @since 0.3.5
+ */
+public final class BroadcastCache implements AutoCloseable {
+
+    static final Logger LOG = LoggerFactory.getLogger(BroadcastCache.class);
+
+    private final Map<PortMirror, Entry> entries = new HashMap<>();
+
+    private boolean closed;
+
+    /**
+     * Creates a new instance.
+     */
+    public BroadcastCache() {
+        return;
+    }
+
+    /**
+     * Returns whether or not the contents of the given broadcast input can be shared.
+     * @param input the downstream input port
+     * @return {@code true} if it can be shared, otherwise {@code false}
+     */
+    static boolean isSupported(PortMirror input) {
+        return input.getOpposites().size() == 1
+                && input.getOpposites().iterator().next().getOpposites().size() >= 2;
+    }
+
+    /**
+     * Opens a broadcast input.
+     * @param input the downstream input port
+     * @param loader the loader of the broadcast contents, which is called only if the contents are not yet loaded
+     * @return the reader of the broadcast contents
+     * @throws IOException if I/O error was occurred while loading the contents
+     * @throws InterruptedException if interrupted while loading the contents
+     */
+    ObjectReader open(PortMirror input, Loader loader) throws IOException, InterruptedException {
+        PortMirror upstream = input.getOpposites().iterator().next();
+        Entry entry;
+        synchronized (entries) {
+            Invariants.require(closed == false);
+            entry = entries.get(upstream);
+            if (entry == null) {
+                entry = new Entry(upstream.getOpposites());
+                entries.put(upstream, entry);
+            }
+        }
+        List<Object> objects = entry.acquire(input, loader);
+        synchronized (entries) {
+            if (entry.isDrained() && entries.get(upstream) == entry) {
+                LOG.debug("releasing shared broadcast contents: {}", upstream); //$NON-NLS-1$
+                entries.remove(upstream);
+            }
+        }
+        return new ListReader(objects);
+    }
+
+    /**
+     * Returns the number of broadcast edges whose contents are retained in this cache.
+     * @return the number of retained edges
+     */
+    int getRetainedCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Releases all shared contents, including ones which some downstream inputs have never opened.
+     */
+    @Override
+    public void close() {
+        synchronized (entries) {
+            if (entries.isEmpty() == false) {
+                LOG.debug("releasing rest shared broadcast contents: {}", entries.keySet()); //$NON-NLS-1$
+            }
+            entries.clear();
+            closed = true;
+        }
+    }
+
+    /**
+     * Loads broadcast contents.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        /**
+         * Returns a reader of the broadcast contents.
+         * @return the reader
+         * @throws IOException if I/O error was occurred while opening the reader
+         * @throws InterruptedException if interrupted while opening the reader
+         */
+        ObjectReader open() throws IOException, InterruptedException;
+    }
+
+    private static final class Entry {
+
+        private final Set<PortMirror> pending;
+
+        private List<Object> objects;
+
+        Entry(Set<? extends PortMirror> consumers) {
+            this.pending = new HashSet<>(consumers);
+        }
+
+        synchronized List<Object> acquire(PortMirror input, Loader loader) throws IOException, InterruptedException {
+            if (objects == null) {
+                List<Object> results = new ArrayList<>();
+                try (ObjectReader reader = loader.open()) {
+                    while (reader.nextObject()) {
+                        results.add(reader.getObject());
+                    }
+                }
+                LOG.debug("loaded shared broadcast contents: {} ({} objects)", input, results.size()); //$NON-NLS-1$
+                objects = Collections.unmodifiableList(results);
+            }
+            pending.remove(input);
+            return objects;
+        }
+
+        synchronized boolean isDrained() {
+            return pending.isEmpty();
+        }
+    }
+
+    private static final class ListReader implements ObjectReader {
+
+        private final List<Object> objects;
+
+        private int index = -1;
+
+        ListReader(List<Object> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public boolean nextObject() {
+            if (index + 1 < objects.size()) {
+                index++;
+                return true;
+            }
+            index = objects.size();
+            return false;
+        }
+
+        @Override
+        public Object getObject() {
+            assert 0 <= index && index < objects.size();
+            return objects.get(index);
+        }
+
+        @Override
+        public void close() {
+            return;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.asakusafw.m3bp.mirror.PageDataInput;
 
 /**
  * M3BP bridge implementation of {@link ObjectReader}.
+ * Each object is deserialized lazily on {@link #getObject()}, so that skipped records are never decoded.
  */
 public class ValueReaderBridge implements ObjectReader {
 
@@ -36,6 +37,8 @@ public class ValueReaderBridge implements ObjectReader {
 
     private Object next = null;
 
+    private boolean pending = false;
+
     /**
      * Creates a new instance.
      * @param reader the reader
@@ -51,17 +54,17 @@ public class ValueReaderBridge implements ObjectReader {
 
     @Override
     public boolean nextObject() throws IOException, InterruptedException {
-        if (values.next()) {
-            next = deserialzier.deserialize(values);
-            return true;
-        } else {
-            next = null;
-            return false;
-        }
+        next = null;
+        pending = values.next();
+        return pending;
     }
 
     @Override
     public Object getObject() throws IOException, InterruptedException {
+        if (pending) {
+            next = deserialzier.deserialize(values);
+            pending = false;
+        }
         assert next != null;
         return next;
     }
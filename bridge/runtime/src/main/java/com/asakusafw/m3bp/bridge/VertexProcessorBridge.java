@@ -43,6 +43,7 @@ import com.asakusafw.lang.utils.common.InterruptibleIo;
 import com.asakusafw.lang.utils.common.Invariants;
 import com.asakusafw.lang.utils.common.Optionals;
 import com.asakusafw.m3bp.mirror.InputReaderMirror;
+import com.asakusafw.m3bp.mirror.Movement;
 import com.asakusafw.m3bp.mirror.OutputWriterMirror;
 import com.asakusafw.m3bp.mirror.PortMirror;
 import com.asakusafw.m3bp.mirror.TaskMirror;
@@ -53,10 +54,19 @@ import com.asakusafw.m3bp.mirror.VertexMirror;
  */
 public class VertexProcessorBridge {
 
+    /**
+     * The configuration key of whether or not the decoded contents of each broadcast edge are shared between
+     * its downstream vertices in the same process.
+     * @since 0.3.5
+     */
+    public static final String KEY_BROADCAST_SHARING = "com.asakusafw.m3bp.broadcast.share"; //$NON-NLS-1$
+
     static final Logger LOG = LoggerFactory.getLogger(VertexProcessorBridge.class);
 
     private final VertexMirror vertexMirror;
 
+    private final BroadcastCache broadcasts;
+
     private final AtomicReference<Driver> driver = new AtomicReference<>();
 
     /**
@@ -64,8 +74,20 @@ public class VertexProcessorBridge {
      * @param vertexMirror the vertex mirror
      */
     public VertexProcessorBridge(VertexMirror vertexMirror) {
+        this(vertexMirror, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param vertexMirror the vertex mirror
+     * @param broadcasts the shared broadcast contents in the current flow graph execution,
+     *     or {@code null} to disable sharing them
+     * @since 0.3.5
+     */
+    public VertexProcessorBridge(VertexMirror vertexMirror, BroadcastCache broadcasts) {
         Arguments.requireNonNull(vertexMirror);
         this.vertexMirror = vertexMirror;
+        this.broadcasts = broadcasts;
     }
 
     /**
@@ -83,7 +105,7 @@ public class VertexProcessorBridge {
                     vertexMirror,
                     task));
         }
-        Driver d = new Driver(context, vertexMirror, task);
+        Driver d = new Driver(context, vertexMirror, broadcasts, task);
         if (driver.compareAndSet(null, d) == false) {
             LOG.warn(MessageFormat.format(
                     "multiple initialization: {0}",
@@ -216,13 +238,17 @@ public class VertexProcessorBridge {
 
         private final ProcessorContextDecorator decorator;
 
+        private final BroadcastCache broadcasts;
+
         Driver(
                 ProcessorContext context,
-                VertexMirror vertex, TaskMirror task) throws IOException, InterruptedException {
+                VertexMirror vertex, BroadcastCache broadcasts,
+                TaskMirror task) throws IOException, InterruptedException {
             this.vertexMirror = vertex;
+            this.broadcasts = broadcasts;
             this.decorator = context.getResource(ProcessorContextDecorator.class)
                     .orElse(ProcessorContextDecorator.NULL);
-            VertexProcessorContext c = decorator.bless(new VertexContext(context, vertexMirror, task));
+            VertexProcessorContext c = decorator.bless(new VertexContext(context, vertexMirror, broadcasts, task));
             this.vertexProcessor = vertexMirror.newProcessor(c.getClassLoader());
             this.vertexLabel = vertexProcessor.toString();
             if (LOG.isDebugEnabled()) {
@@ -292,7 +318,7 @@ public class VertexProcessorBridge {
                             info));
                 }
             }
-            TaskProcessorContext c = decorator.bless(new TaskContext(context, vertexMirror, task, info));
+            TaskProcessorContext c = decorator.bless(new TaskContext(context, vertexMirror, broadcasts, task, info));
             p.run(c);
         }
 
@@ -339,9 +365,12 @@ public class VertexProcessorBridge {
 
         final TaskMirror task;
 
-        AbstractContext(ProcessorContext root, VertexMirror vertex, TaskMirror task) {
+        private final BroadcastCache broadcasts;
+
+        AbstractContext(ProcessorContext root, VertexMirror vertex, BroadcastCache broadcasts, TaskMirror task) {
             this.root = root;
             this.vertex = vertex;
+            this.broadcasts = broadcasts;
             this.task = task;
         }
 
@@ -362,6 +391,15 @@ public class VertexProcessorBridge {
             } else if (port.hasValue()) {
                 // value only
                 ClassLoader loader = getClassLoader();
+                if (port.getMovement() == Movement.BROADCAST
+                        && broadcasts != null
+                        && isBroadcastSharingEnabled()
+                        && BroadcastCache.isSupported(port)) {
+                    return broadcasts.open(port, () -> {
+                        InputReaderMirror reader = task.input(port.getId());
+                        return new ValueReaderBridge(reader, port.newValueSerDe(loader));
+                    });
+                }
                 InputReaderMirror reader = task.input(port.getId());
                 return new ValueReaderBridge(reader, port.newValueSerDe(loader));
             } else {
@@ -373,6 +411,13 @@ public class VertexProcessorBridge {
             }
         }
 
+        private boolean isBroadcastSharingEnabled() {
+            return root.getProperty(KEY_BROADCAST_SHARING)
+                    .map(String::trim)
+                    .map(Boolean::parseBoolean)
+                    .orElse(true);
+        }
+
         @Override
         public EdgeWriter getOutput(String name) throws IOException, InterruptedException {
             PortMirror port = vertex.getOutput(name);
@@ -401,8 +446,8 @@ public class VertexProcessorBridge {
             extends AbstractContext
             implements VertexProcessorContext {
 
-        VertexContext(ProcessorContext root, VertexMirror vertex, TaskMirror task) {
-            super(root, vertex, task);
+        VertexContext(ProcessorContext root, VertexMirror vertex, BroadcastCache broadcasts, TaskMirror task) {
+            super(root, vertex, broadcasts, task);
         }
 
         @Override
@@ -419,8 +464,10 @@ public class VertexProcessorBridge {
 
         private final String id;
 
-        TaskContext(ProcessorContext root, VertexMirror vertex, TaskMirror task, TaskInfo info) {
-            super(root, vertex, task);
+        TaskContext(
+                ProcessorContext root, VertexMirror vertex, BroadcastCache broadcasts,
+                TaskMirror task, TaskInfo info) {
+            super(root, vertex, broadcasts, task);
             this.info = info;
             this.id = String.format("%s-%s-%s", //$NON-NLS-1$
                     vertex.getName(),
@@ -15,6 +15,9 @@
  */
 package com.asakusafw.m3bp.descriptor;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.asakusafw.dag.api.common.DataComparator;
 import com.asakusafw.dag.api.common.KeyValueSerDe;
 import com.asakusafw.dag.api.common.SupplierInfo;
@@ -25,6 +28,7 @@ import com.asakusafw.dag.api.model.basic.BasicEdgeDescriptor.Movement;
 import com.asakusafw.dag.api.processor.VertexProcessor;
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Optionals;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
 
 /**
  * Provides descriptors for operations on M3BP.
@@ -83,6 +87,34 @@ public final class Descriptors {
         return new M3bpEdgeDescriptor(Movement.ONE_TO_ONE, serde, null, null);
     }
 
+    /**
+     * Creates a new one-to-one {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newOneToOneEdge(SupplierInfo serde, long recordSizeHint) {
+        return newOneToOneEdge(serde, recordSizeHint, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new one-to-one {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newOneToOneEdge(
+            SupplierInfo serde, long recordSizeHint, List<String> prunedProperties) {
+        Arguments.requireNonNull(serde);
+        Arguments.requireNonNull(prunedProperties);
+        return new M3bpEdgeDescriptor(
+                Movement.ONE_TO_ONE, serde, null, null, Partitioning.HASH, recordSizeHint, prunedProperties);
+    }
+
     /**
      * Creates a new broadcast {@link EdgeDescriptor}.
      * @param serde the ser/de class
@@ -103,6 +135,34 @@ public final class Descriptors {
         return new M3bpEdgeDescriptor(Movement.BROADCAST, serde, null, null);
     }
 
+    /**
+     * Creates a new broadcast {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newBroadcastEdge(SupplierInfo serde, long recordSizeHint) {
+        return newBroadcastEdge(serde, recordSizeHint, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new broadcast {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newBroadcastEdge(
+            SupplierInfo serde, long recordSizeHint, List<String> prunedProperties) {
+        Arguments.requireNonNull(serde);
+        Arguments.requireNonNull(prunedProperties);
+        return new M3bpEdgeDescriptor(
+                Movement.BROADCAST, serde, null, null, Partitioning.HASH, recordSizeHint, prunedProperties);
+    }
+
     /**
      * Creates a new scatter-gather {@link EdgeDescriptor}.
      * @param serde the ser/de class
@@ -136,4 +196,82 @@ public final class Descriptors {
         Arguments.requireNonNull(serde);
         return new M3bpEdgeDescriptor(Movement.SCATTER_GATHER, serde, comparator, comparatorName);
     }
+
+    /**
+     * Creates a new scatter-gather {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param comparator the Java value comparator class
+     * @param comparatorName the native value comparator function name
+     * @param partitioning the partitioning strategy
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newScatterGatherEdge(
+            SupplierInfo serde, SupplierInfo comparator, String comparatorName,
+            Partitioning partitioning) {
+        Arguments.requireNonNull(serde);
+        Arguments.requireNonNull(partitioning);
+        return new M3bpEdgeDescriptor(Movement.SCATTER_GATHER, serde, comparator, comparatorName, partitioning);
+    }
+
+    /**
+     * Creates a new scatter-gather {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param comparator the Java value comparator class
+     * @param comparatorName the native value comparator function name
+     * @param partitioning the partitioning strategy
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newScatterGatherEdge(
+            SupplierInfo serde, SupplierInfo comparator, String comparatorName,
+            Partitioning partitioning, long recordSizeHint) {
+        return newScatterGatherEdge(
+                serde, comparator, comparatorName, partitioning, recordSizeHint, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new scatter-gather {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param comparator the Java value comparator class
+     * @param comparatorName the native value comparator function name
+     * @param partitioning the partitioning strategy
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newScatterGatherEdge(
+            SupplierInfo serde, SupplierInfo comparator, String comparatorName,
+            Partitioning partitioning, long recordSizeHint, List<String> prunedProperties) {
+        return newScatterGatherEdge(
+                serde, comparator, comparatorName, partitioning, null, recordSizeHint, prunedProperties);
+    }
+
+    /**
+     * Creates a new scatter-gather {@link EdgeDescriptor}.
+     * @param serde the ser/de class
+     * @param comparator the Java value comparator class
+     * @param comparatorName the native value comparator function name
+     * @param partitioning the partitioning strategy
+     * @param keySchemaName the {@link ValueComparatorSchema} name of the serialized keys (nullable)
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @return the created descriptor
+     * @since 0.3.5
+     */
+    public static M3bpEdgeDescriptor newScatterGatherEdge(
+            SupplierInfo serde, SupplierInfo comparator, String comparatorName,
+            Partitioning partitioning, String keySchemaName,
+            long recordSizeHint, List<String> prunedProperties) {
+        Arguments.requireNonNull(serde);
+        Arguments.requireNonNull(partitioning);
+        Arguments.requireNonNull(prunedProperties);
+        return new M3bpEdgeDescriptor(
+                Movement.SCATTER_GATHER, serde, comparator, comparatorName,
+                partitioning, keySchemaName, recordSizeHint, prunedProperties);
+    }
 }
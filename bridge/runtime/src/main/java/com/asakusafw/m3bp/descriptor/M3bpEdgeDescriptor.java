@@ -15,6 +15,9 @@
  */
 package com.asakusafw.m3bp.descriptor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import com.asakusafw.dag.api.common.KeyValueSerDe;
@@ -33,6 +36,14 @@ public class M3bpEdgeDescriptor extends BasicEdgeDescriptor {
 
     private final String valueComparatorName;
 
+    private final Partitioning partitioning;
+
+    private final long recordSizeHint;
+
+    private final List<String> prunedProperties;
+
+    private final String keySchemaName;
+
     /**
      * Creates a new instance.
      * @param movement the movement type
@@ -43,9 +54,94 @@ public class M3bpEdgeDescriptor extends BasicEdgeDescriptor {
     public M3bpEdgeDescriptor(
             Movement movement, SupplierInfo serde,
             SupplierInfo comparator, String valueComparatorName) {
+        this(movement, serde, comparator, valueComparatorName, Partitioning.HASH);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param movement the movement type
+     * @param serde the supplier of {@link ValueSerDe} or {@link KeyValueSerDe}
+     * @param comparator the pure-Java value comparator (nullable)
+     * @param valueComparatorName the value comparator function name (nullable)
+     * @param partitioning the partitioning strategy of scatter-gather edges
+     * @since 0.3.5
+     */
+    public M3bpEdgeDescriptor(
+            Movement movement, SupplierInfo serde,
+            SupplierInfo comparator, String valueComparatorName,
+            Partitioning partitioning) {
+        this(movement, serde, comparator, valueComparatorName, partitioning, 0L);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param movement the movement type
+     * @param serde the supplier of {@link ValueSerDe} or {@link KeyValueSerDe}
+     * @param comparator the pure-Java value comparator (nullable)
+     * @param valueComparatorName the value comparator function name (nullable)
+     * @param partitioning the partitioning strategy of scatter-gather edges
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @since 0.3.5
+     */
+    public M3bpEdgeDescriptor(
+            Movement movement, SupplierInfo serde,
+            SupplierInfo comparator, String valueComparatorName,
+            Partitioning partitioning, long recordSizeHint) {
+        this(movement, serde, comparator, valueComparatorName, partitioning, recordSizeHint,
+                Collections.emptyList());
+    }
+
+    /**
+     * Creates a new instance.
+     * @param movement the movement type
+     * @param serde the supplier of {@link ValueSerDe} or {@link KeyValueSerDe}
+     * @param comparator the pure-Java value comparator (nullable)
+     * @param valueComparatorName the value comparator function name (nullable)
+     * @param partitioning the partitioning strategy of scatter-gather edges
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @since 0.3.5
+     */
+    public M3bpEdgeDescriptor(
+            Movement movement, SupplierInfo serde,
+            SupplierInfo comparator, String valueComparatorName,
+            Partitioning partitioning, long recordSizeHint,
+            List<String> prunedProperties) {
+        this(movement, serde, comparator, valueComparatorName, partitioning, null, recordSizeHint,
+                prunedProperties);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param movement the movement type
+     * @param serde the supplier of {@link ValueSerDe} or {@link KeyValueSerDe}
+     * @param comparator the pure-Java value comparator (nullable)
+     * @param valueComparatorName the value comparator function name (nullable)
+     * @param partitioning the partitioning strategy of scatter-gather edges
+     * @param keySchemaName the {@link ValueComparatorSchema} name of the serialized keys,
+     *     which is required to honor {@link Partitioning#RANGE} (nullable)
+     * @param recordSizeHint the expected serialized size of each record in bytes, or {@code 0} if it is unknown
+     * @param prunedProperties the {@code ValueOption} accessor names of properties which are not used in
+     *     the downstream vertices
+     * @since 0.3.5
+     */
+    public M3bpEdgeDescriptor(
+            Movement movement, SupplierInfo serde,
+            SupplierInfo comparator, String valueComparatorName,
+            Partitioning partitioning, String keySchemaName, long recordSizeHint,
+            List<String> prunedProperties) {
         super(movement, serde, comparator);
         Arguments.require((comparator == null) == (valueComparatorName == null));
+        Arguments.requireNonNull(partitioning);
+        Arguments.require(keySchemaName == null || ValueComparatorSchema.isSchema(keySchemaName));
+        Arguments.require(recordSizeHint >= 0L);
+        Arguments.requireNonNull(prunedProperties);
         this.valueComparatorName = valueComparatorName;
+        this.partitioning = partitioning;
+        this.keySchemaName = keySchemaName;
+        this.recordSizeHint = recordSizeHint;
+        this.prunedProperties = Collections.unmodifiableList(new ArrayList<>(prunedProperties));
     }
 
     /**
@@ -56,11 +152,58 @@ public class M3bpEdgeDescriptor extends BasicEdgeDescriptor {
         return valueComparatorName;
     }
 
+    /**
+     * Returns the partitioning strategy.
+     * This is only meaningful for scatter-gather edges.
+     * @return the partitioning strategy
+     * @since 0.3.5
+     */
+    public Partitioning getPartitioning() {
+        // may be null if this was deserialized from an older version
+        return partitioning == null ? Partitioning.HASH : partitioning;
+    }
+
+    /**
+     * Returns the {@link ValueComparatorSchema} name of the serialized keys.
+     * Engines use it to compare keys in their natural order, to compute {@link Partitioning#RANGE ranges}.
+     * @return the schema name, or {@code null} if it is not available
+     * @since 0.3.5
+     */
+    public String getKeySchemaName() {
+        return keySchemaName;
+    }
+
+    /**
+     * Returns the expected serialized size of each record, including its key.
+     * Engines may use this to size the output buffers of individual ports.
+     * @return the expected record size in bytes, or {@code 0} if it is unknown
+     * @since 0.3.5
+     */
+    public long getRecordSizeHint() {
+        return recordSizeHint;
+    }
+
+    /**
+     * Returns the {@code ValueOption} accessor names of properties which are not used in the downstream vertices.
+     * Serializers may drop contents of these properties, and then the deserialized objects have {@code null}
+     * in them.
+     * @return the accessor names, or an empty list if all properties must be kept
+     * @since 0.3.5
+     */
+    public List<String> getPrunedProperties() {
+        // may be null if this was deserialized from an older version
+        return prunedProperties == null ? Collections.emptyList() : prunedProperties;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = super.hashCode();
         result = prime * result + Objects.hashCode(valueComparatorName);
+        result = prime * result + getPartitioning().hashCode();
+        result = prime * result + Objects.hashCode(keySchemaName);
+        result = prime * result + Long.hashCode(recordSizeHint);
+        result = prime * result + getPrunedProperties().hashCode();
         return result;
     }
 
@@ -77,6 +220,30 @@ public class M3bpEdgeDescriptor extends BasicEdgeDescriptor {
         }
         M3bpEdgeDescriptor other = (M3bpEdgeDescriptor) obj;
         return super.equals(other)
-                && Objects.equals(valueComparatorName, other.valueComparatorName);
+                && Objects.equals(valueComparatorName, other.valueComparatorName)
+                && getPartitioning() == other.getPartitioning()
+                && Objects.equals(keySchemaName, other.keySchemaName)
+                && recordSizeHint == other.recordSizeHint
+                && getPrunedProperties().equals(other.getPrunedProperties());
+    }
+
+    /**
+     * Represents a partitioning strategy of scatter-gather edges.
+     * @since 0.3.5
+     */
+    public enum Partitioning {
+
+        /**
+         * Distributes groups by their key hash.
+         */
+        HASH,
+
+        /**
+         * Distributes groups by ranges of their keys, which are computed from samples.
+         * Each partition only contains keys which are greater than ones in the preceding partitions.
+         * This requires {@link M3bpEdgeDescriptor#getKeySchemaName() the key schema}.
+         * Note that, the native engine does not support this strategy and treats it as {@link #HASH}.
+         */
+        RANGE,
     }
 }
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.descriptor;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.asakusafw.lang.utils.common.Arguments;
+
+/**
+ * A schema of generic value comparators.
+ * <p>
+ * Value comparators which are described by a schema do not require any application specific native libraries:
+ * both the native engine and the Java engine compare the serialized values by interpreting the schema.
+ * The schema is encoded into the value comparator name: it starts with {@link #PREFIX}, and then each field
+ * is represented as a pair of its {@link Type#getCode() type code} and its direction
+ * ({@code '+'} - ascendant, or {@code '-'} - descendant).
+ * For example, {@code "@i+c-"} compares {@code int} fields in ascendant order, and then compares {@code string}
+ * fields in descendant order.
+ * </p>
+ * @since 0.3.5
+ */
+public final class ValueComparatorSchema {
+
+    /**
+     * The prefix of value comparator names which represent a schema.
+     */
+    public static final String PREFIX = "@"; //$NON-NLS-1$
+
+    static final char ASCENDANT = '+';
+
+    static final char DESCENDANT = '-';
+
+    private final List<Field> fields;
+
+    /**
+     * Creates a new instance.
+     * @param fields the comparison fields
+     */
+    public ValueComparatorSchema(List<Field> fields) {
+        Arguments.requireNonNull(fields);
+        this.fields = Arguments.freeze(fields);
+    }
+
+    /**
+     * Returns whether or not the given value comparator name represents a schema.
+     * @param name the value comparator name (nullable)
+     * @return {@code true} if it represents a schema, otherwise {@code false}
+     */
+    public static boolean isSchema(String name) {
+        return name != null && name.startsWith(PREFIX);
+    }
+
+    /**
+     * Parses a value comparator name.
+     * @param name the value comparator name
+     * @return the parsed schema
+     * @throws IllegalArgumentException if the name does not represent a valid schema
+     * @see #isSchema(String)
+     */
+    public static ValueComparatorSchema parse(String name) {
+        Arguments.requireNonNull(name);
+        if (isSchema(name) == false || (name.length() - PREFIX.length()) % 2 != 0) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "invalid value comparator schema: {0}",
+                    name));
+        }
+        List<Field> results = new ArrayList<>();
+        for (int i = PREFIX.length(); i < name.length(); i += 2) {
+            Type type = Type.fromCode(name.charAt(i));
+            char direction = name.charAt(i + 1);
+            if (type == null || (direction != ASCENDANT && direction != DESCENDANT)) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "invalid value comparator schema: {0}",
+                        name));
+            }
+            results.add(new Field(type, direction == ASCENDANT));
+        }
+        return new ValueComparatorSchema(results);
+    }
+
+    /**
+     * Returns the comparison fields.
+     * @return the comparison fields
+     */
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the value comparator name which represents this schema.
+     * @return the value comparator name
+     */
+    public String getName() {
+        StringBuilder buf = new StringBuilder(PREFIX);
+        for (Field field : fields) {
+            buf.append(field.type.code);
+            buf.append(field.ascendant ? ASCENDANT : DESCENDANT);
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return fields.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        ValueComparatorSchema other = (ValueComparatorSchema) obj;
+        return fields.equals(other.fields);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Represents a comparison field.
+     * @since 0.3.5
+     */
+    public static final class Field {
+
+        private final Type type;
+
+        private final boolean ascendant;
+
+        /**
+         * Creates a new instance.
+         * @param type the field type
+         * @param ascendant {@code true} if the field is ascendant, or {@code false} if it is descendant
+         */
+        public Field(Type type, boolean ascendant) {
+            Arguments.requireNonNull(type);
+            this.type = type;
+            this.ascendant = ascendant;
+        }
+
+        /**
+         * Returns the field type.
+         * @return the field type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns whether or not the field is ascendant.
+         * @return {@code true} if the field is ascendant, or {@code false} if it is descendant
+         */
+        public boolean isAscendant() {
+            return ascendant;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, ascendant);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            Field other = (Field) obj;
+            return type == other.type && ascendant == other.ascendant;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%s", type, ascendant ? ASCENDANT : DESCENDANT); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Represents a type of comparison fields.
+     * @since 0.3.5
+     */
+    public enum Type {
+
+        /**
+         * {@code boolean} (code: {@code 'z'}).
+         */
+        BOOLEAN('z'),
+
+        /**
+         * {@code byte} (code: {@code 'b'}).
+         */
+        BYTE('b'),
+
+        /**
+         * {@code short} (code: {@code 's'}).
+         */
+        SHORT('s'),
+
+        /**
+         * {@code int} (code: {@code 'i'}).
+         */
+        INT('i'),
+
+        /**
+         * {@code long} (code: {@code 'l'}).
+         */
+        LONG('l'),
+
+        /**
+         * {@code float} (code: {@code 'f'}).
+         */
+        FLOAT('f'),
+
+        /**
+         * {@code double} (code: {@code 'd'}).
+         */
+        DOUBLE('d'),
+
+        /**
+         * {@code decimal} (code: {@code 'n'}).
+         */
+        DECIMAL('n'),
+
+        /**
+         * {@code date} (code: {@code 'a'}).
+         */
+        DATE('a'),
+
+        /**
+         * {@code date_time} (code: {@code 't'}).
+         */
+        DATE_TIME('t'),
+
+        /**
+         * {@code string} (code: {@code 'c'}).
+         */
+        STRING('c'),
+        ;
+
+        final char code;
+
+        Type(char code) {
+            this.code = code;
+        }
+
+        /**
+         * Returns the type code.
+         * @return the type code
+         */
+        public char getCode() {
+            return code;
+        }
+
+        static Type fromCode(char code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+}
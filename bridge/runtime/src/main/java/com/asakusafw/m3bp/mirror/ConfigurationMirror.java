@@ -144,6 +144,14 @@ public interface ConfigurationMirror {
          * Uses Unsafe to access to the edge buffers.
          */
         UNSAFE,
+
+        /**
+         * Uses native ordered direct buffers to access to the edge buffers.
+         * Unlike {@link #NIO}, each input buffer is mapped into a single view,
+         * and this does not require Unsafe API unlike {@link #UNSAFE}.
+         * @since 0.3.5
+         */
+        DIRECT,
     }
 
     /**
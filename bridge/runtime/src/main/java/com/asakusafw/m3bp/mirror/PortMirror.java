@@ -19,11 +19,13 @@ import java.util.Set;
 
 import com.asakusafw.dag.api.common.KeyValueSerDe;
 import com.asakusafw.dag.api.common.ValueSerDe;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 
 /**
  * A mirror of M3BP {@code InputPort} and {@code OutputPort}.
  * @since 0.1.0
- * @version 0.2.0
+ * @version 0.3.5
  */
 public interface PortMirror {
 
@@ -80,6 +82,33 @@ public interface PortMirror {
      */
     String getValueComparatorName();
 
+    /**
+     * Returns the partitioning strategy of scatter-gather edges.
+     * @return the partitioning strategy
+     * @since 0.3.5
+     */
+    default Partitioning getPartitioning() {
+        return Partitioning.HASH;
+    }
+
+    /**
+     * Returns the {@link ValueComparatorSchema} name of the serialized keys on this port.
+     * @return the schema name, or {@code null} if it is not available
+     * @since 0.3.5
+     */
+    default String getKeySchemaName() {
+        return null;
+    }
+
+    /**
+     * Returns the expected serialized size of each record on this port, including its key.
+     * @return the expected record size in bytes, or {@code 0} if it is unknown
+     * @since 0.3.5
+     */
+    default long getRecordSizeHint() {
+        return 0L;
+    }
+
     /**
      * Returns whether this port has key or not.
      * @return {@code true} if this port has key, otherwise {@code false}
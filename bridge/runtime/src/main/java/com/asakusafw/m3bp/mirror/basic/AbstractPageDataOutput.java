@@ -24,6 +24,8 @@ import com.asakusafw.m3bp.mirror.PageDataOutput;
 
 /**
  * An abstract implementation of {@link PageDataOutput}.
+ * If the key hash table is given, this also records {@link KeyHashes#hash(ByteBuffer, int, int) hash code}
+ * of each key just after the key was written.
  */
 public abstract class AbstractPageDataOutput extends NioDataBuffer implements PageDataOutput {
 
@@ -43,6 +45,10 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
 
     private ByteBuffer keyLengths = EMPTY_BUFFER;
 
+    private int keyHashesStart = 0;
+
+    private ByteBuffer keyHashes = EMPTY_BUFFER;
+
     private int currentLimit;
 
     private int currentEntryStart;
@@ -91,6 +97,15 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
         return keyLengths;
     }
 
+    /**
+     * Returns the key hash codes.
+     * @return the key hash codes
+     * @since 0.3.5
+     */
+    protected final ByteBuffer getKeyHashesBuffer() {
+        return keyHashes;
+    }
+
     /**
      * Returns the entry offsets.
      * @return the entry offsets
@@ -109,6 +124,22 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
     public final void reset(
             long newBase,
             ByteBuffer newContents, ByteBuffer newEntryOffsets, ByteBuffer newKeyLengths) {
+        reset(newBase, newContents, newEntryOffsets, newKeyLengths, null);
+    }
+
+    /**
+     * Resets the buffer contents.
+     * @param newBase the base address of the contents buffer
+     * @param newContents the contents buffer
+     * @param newEntryOffsets the entry offsets buffer
+     * @param newKeyLengths the key lengths buffer (optional)
+     * @param newKeyHashes the key hash codes buffer, each element is a 32-bit integer (optional)
+     * @since 0.3.5
+     */
+    public final void reset(
+            long newBase,
+            ByteBuffer newContents, ByteBuffer newEntryOffsets, ByteBuffer newKeyLengths,
+            ByteBuffer newKeyHashes) {
         Arguments.requireNonNull(newContents);
         Arguments.requireNonNull(newEntryOffsets);
         this.base = newBase;
@@ -118,6 +149,8 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
         this.entryOffsetsStart = newEntryOffsets.position();
         this.keyLengths = newKeyLengths == null ? EMPTY_BUFFER : newKeyLengths;
         this.keyLengthsStart = newKeyLengths == null ? EMPTY_BUFFER.position() : newKeyLengths.position();
+        this.keyHashes = newKeyHashes == null ? EMPTY_BUFFER : newKeyHashes;
+        this.keyHashesStart = newKeyHashes == null ? EMPTY_BUFFER.position() : newKeyHashes.position();
         this.currentLimit = newContents.position() + (int) (newContents.remaining() * flushFactor);
         this.currentEntryStart = newContents.position();
         this.firstPage = true;
@@ -125,6 +158,9 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
         if (newKeyLengths != null) {
             this.restEntries = Math.min(this.restEntries, newKeyLengths.remaining() / Long.BYTES);
         }
+        if (newKeyHashes != null) {
+            this.restEntries = Math.min(this.restEntries, newKeyHashes.remaining() / Integer.BYTES);
+        }
     }
 
     /**
@@ -140,6 +176,7 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
         contents.flip().position(contentsStart);
         entryOffsets.flip().position(entryOffsetsStart);
         keyLengths.flip().position(keyLengthsStart);
+        keyHashes.flip().position(keyHashesStart);
         doFlush(endOfOutput);
     }
 
@@ -153,6 +190,7 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
      * @see #getContentsBuffer()
      * @see #getEntryOffsetsBuffer()
      * @see #getKeyLengthsBuffer()
+     * @see #getKeyHashesBuffer()
      */
     protected void doFlush(boolean endOfOutput) throws IOException {
         return;
@@ -162,6 +200,10 @@ public abstract class AbstractPageDataOutput extends NioDataBuffer implements Pa
     public void endKey() throws IOException {
         int length = contents.position() - currentEntryStart;
         keyLengths.putLong(length);
+        if (keyHashes != EMPTY_BUFFER) {
+            // the key bytes are still hot in cache here
+            keyHashes.putInt(KeyHashes.hash(contents, currentEntryStart, length));
+        }
     }
 
     @Override
@@ -30,6 +30,7 @@ import com.asakusafw.dag.api.common.ValueSerDe;
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Invariants;
 import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
 import com.asakusafw.m3bp.mirror.Movement;
 import com.asakusafw.m3bp.mirror.PortMirror;
 
@@ -53,7 +54,7 @@ public abstract class AbstractPortMirror implements PortMirror {
         Arguments.requireNonNull(loader);
         Invariants.require(hasKey() == false);
         Invariants.require(hasValue());
-        return (ValueSerDe) getSerDe(loader);
+        return PrunedSerDes.wrap((ValueSerDe) getSerDe(loader), getDescriptor().getPrunedProperties());
     }
 
     @Override
@@ -61,7 +62,9 @@ public abstract class AbstractPortMirror implements PortMirror {
         Arguments.requireNonNull(loader);
         Invariants.require(hasKey());
         Invariants.require(hasValue());
-        return (KeyValueSerDe) getDescriptor().getSerDe().newInstance(loader).get();
+        return PrunedSerDes.wrap(
+                (KeyValueSerDe) getDescriptor().getSerDe().newInstance(loader).get(),
+                getDescriptor().getPrunedProperties());
     }
 
     private Object getSerDe(ClassLoader loader) {
@@ -78,6 +81,21 @@ public abstract class AbstractPortMirror implements PortMirror {
         return getDescriptor().getValueComparatorName();
     }
 
+    @Override
+    public Partitioning getPartitioning() {
+        return getDescriptor().getPartitioning();
+    }
+
+    @Override
+    public String getKeySchemaName() {
+        return getDescriptor().getKeySchemaName();
+    }
+
+    @Override
+    public long getRecordSizeHint() {
+        return getDescriptor().getRecordSizeHint();
+    }
+
     @Override
     public Movement getMovement() {
         return Movement.of(getDescriptor().getMovement());
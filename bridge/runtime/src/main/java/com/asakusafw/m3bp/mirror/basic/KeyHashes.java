@@ -0,0 +1,109 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.basic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Computes hash codes of serialized keys.
+ * This uses 32-bit xxHash, which is faster and better distributed than {@link ByteBuffer#hashCode()}.
+ * @since 0.3.5
+ */
+public final class KeyHashes {
+
+    private static final int PRIME1 = 0x9e3779b1;
+
+    private static final int PRIME2 = 0x85ebca77;
+
+    private static final int PRIME3 = 0xc2b2ae3d;
+
+    private static final int PRIME4 = 0x27d4eb2f;
+
+    private static final int PRIME5 = 0x165667b1;
+
+    private static final int SEED = 0;
+
+    private KeyHashes() {
+        return;
+    }
+
+    /**
+     * Returns the hash code of the remaining contents in the given buffer.
+     * @param buffer the target buffer
+     * @return the hash code
+     */
+    public static int hash(ByteBuffer buffer) {
+        return hash(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Returns the hash code of the given range in the buffer.
+     * This does not change the buffer position.
+     * @param buffer the target buffer
+     * @param offset the offset in the buffer
+     * @param length the number of bytes
+     * @return the hash code
+     */
+    public static int hash(ByteBuffer buffer, int offset, int length) {
+        boolean swap = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int index = offset;
+        int limit = offset + length;
+        int h;
+        if (length >= 16) {
+            int v1 = SEED + PRIME1 + PRIME2;
+            int v2 = SEED + PRIME2;
+            int v3 = SEED;
+            int v4 = SEED - PRIME1;
+            for (int last = limit - 16; index <= last; index += 16) {
+                v1 = round(v1, getInt(buffer, index, swap));
+                v2 = round(v2, getInt(buffer, index + 4, swap));
+                v3 = round(v3, getInt(buffer, index + 8, swap));
+                v4 = round(v4, getInt(buffer, index + 12, swap));
+            }
+            h = Integer.rotateLeft(v1, 1)
+                    + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12)
+                    + Integer.rotateLeft(v4, 18);
+        } else {
+            h = SEED + PRIME5;
+        }
+        h += length;
+        for (int last = limit - 4; index <= last; index += 4) {
+            h += getInt(buffer, index, swap) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+        }
+        for (; index < limit; index++) {
+            h += (buffer.get(index) & 0xff) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+        }
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int round(int acc, int input) {
+        return Integer.rotateLeft(acc + input * PRIME2, 13) * PRIME1;
+    }
+
+    private static int getInt(ByteBuffer buffer, int index, boolean swap) {
+        int value = buffer.getInt(index);
+        return swap ? Integer.reverseBytes(value) : value;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.basic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.asakusafw.dag.api.common.KeyValueSerDe;
+import com.asakusafw.dag.api.common.ValueSerDe;
+import com.asakusafw.lang.utils.common.Arguments;
+
+/**
+ * Ser/De wrappers which drop contents of unused properties before serializing objects.
+ * @see com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor#getPrunedProperties()
+ */
+final class PrunedSerDes {
+
+    private static final String METHOD_COPY = "copyFrom"; //$NON-NLS-1$
+
+    private static final String METHOD_SET_NULL = "setNull"; //$NON-NLS-1$
+
+    private static final MethodType TYPE_CONSUMER = MethodType.methodType(void.class, Object.class);
+
+    private static final MethodType TYPE_RUNNABLE = MethodType.methodType(void.class);
+
+    private PrunedSerDes() {
+        return;
+    }
+
+    /**
+     * Wraps the value ser/de.
+     * @param delegate the original ser/de
+     * @param properties the {@code ValueOption} accessor names of the pruned properties
+     * @return the wrapped ser/de
+     */
+    static ValueSerDe wrap(ValueSerDe delegate, List<String> properties) {
+        Arguments.requireNonNull(delegate);
+        Arguments.requireNonNull(properties);
+        if (properties.isEmpty()) {
+            return delegate;
+        }
+        Pruner pruner = new Pruner(properties);
+        return new ValueSerDe() {
+            @Override
+            public void serialize(Object object, DataOutput output) throws IOException, InterruptedException {
+                delegate.serialize(pruner.prune(object), output);
+            }
+            @Override
+            public Object deserialize(DataInput input) throws IOException, InterruptedException {
+                return delegate.deserialize(input);
+            }
+        };
+    }
+
+    /**
+     * Wraps the key-value ser/de.
+     * Note that, the keys are never pruned.
+     * @param delegate the original ser/de
+     * @param properties the {@code ValueOption} accessor names of the pruned properties
+     * @return the wrapped ser/de
+     */
+    static KeyValueSerDe wrap(KeyValueSerDe delegate, List<String> properties) {
+        Arguments.requireNonNull(delegate);
+        Arguments.requireNonNull(properties);
+        if (properties.isEmpty()) {
+            return delegate;
+        }
+        Pruner pruner = new Pruner(properties);
+        return new KeyValueSerDe() {
+            @Override
+            public void serializeKey(Object object, DataOutput output) throws IOException, InterruptedException {
+                delegate.serializeKey(object, output);
+            }
+            @Override
+            public void serializeValue(Object object, DataOutput output) throws IOException, InterruptedException {
+                delegate.serializeValue(pruner.prune(object), output);
+            }
+            @Override
+            public Object deserializePair(
+                    DataInput keyInput, DataInput valueInput) throws IOException, InterruptedException {
+                return delegate.deserializePair(keyInput, valueInput);
+            }
+        };
+    }
+
+    /**
+     * Copies objects into a buffer, and then sets {@code null} into the pruned properties of the buffer.
+     * This never modifies the original objects, because they may be still used in the upstream operators.
+     * <p>
+     * The property objects of the buffer are resolved only once for each data model class, and the copy and
+     * the following {@code setNull()} calls are composed into a single method handle.
+     * This requires that {@code copyFrom()} keeps the property objects of the buffer, as the generated data
+     * models do.
+     * </p>
+     */
+    static final class Pruner {
+
+        private final List<String> properties;
+
+        private Class<?> modelClass;
+
+        private Object buffer;
+
+        private MethodHandle action;
+
+        Pruner(List<String> properties) {
+            this.properties = properties;
+        }
+
+        Object prune(Object object) throws IOException {
+            if (object.getClass() != modelClass) {
+                prepare(object.getClass());
+            }
+            try {
+                action.invokeExact(object);
+            } catch (Error | RuntimeException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IOException(t);
+            }
+            return buffer;
+        }
+
+        private void prepare(Class<?> aClass) throws IOException {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            try {
+                Object newBuffer = aClass.newInstance();
+                List<MethodHandle> steps = new ArrayList<>();
+                steps.add(lookup.unreflect(aClass.getMethod(METHOD_COPY, aClass))
+                        .bindTo(newBuffer)
+                        .asType(TYPE_CONSUMER));
+                for (String name : properties) {
+                    Method getter = aClass.getMethod(name);
+                    Object property = getter.invoke(newBuffer);
+                    if (property == null) {
+                        throw new IOException(MessageFormat.format(
+                                "failed to prepare property pruning: {0}#{1}() returns null",
+                                aClass.getName(),
+                                name));
+                    }
+                    Method setNull = getter.getReturnType().getMethod(METHOD_SET_NULL);
+                    steps.add(MethodHandles.dropArguments(
+                            lookup.unreflect(setNull).bindTo(property).asType(TYPE_RUNNABLE),
+                            0, Object.class));
+                }
+                MethodHandle newAction = steps.get(steps.size() - 1);
+                for (int i = steps.size() - 2; i >= 0; i--) {
+                    newAction = MethodHandles.foldArguments(newAction, steps.get(i));
+                }
+                this.buffer = newBuffer;
+                this.action = newAction;
+                this.modelClass = aClass;
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(MessageFormat.format(
+                        "failed to prepare property pruning: {0}",
+                        aClass.getName()), e);
+            }
+        }
+    }
+}
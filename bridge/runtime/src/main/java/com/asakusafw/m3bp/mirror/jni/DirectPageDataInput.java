@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jni;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.asakusafw.m3bp.mirror.PageDataInput;
+import com.asakusafw.m3bp.mirror.basic.AbstractPageDataInput;
+
+/**
+ * An implementation of {@link PageDataInput} which directly reads a native ordered direct buffer.
+ */
+class DirectPageDataInput extends AbstractPageDataInput {
+
+    private static final int SMALL_PAGE_THRESHOLD = Long.BYTES * 4;
+
+    private static final boolean IS_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0).order(ByteOrder.nativeOrder());
+
+    private final long dataPtr;
+
+    DirectPageDataInput(long dataPtr, ByteBuffer contents, ByteBuffer entryOffsets) {
+        this.dataPtr = dataPtr;
+        reset(0, contents, entryOffsets);
+    }
+
+    /**
+     * Returns whether or not the given region can be mapped into a single buffer.
+     * @param length the region length in bytes
+     * @return {@code true} if it can be mapped, otherwise {@code false}
+     */
+    static boolean isMappable(long length) {
+        return 0 <= length && length <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns a view of the given native region.
+     * @param ptr the region address
+     * @param length the region length in bytes
+     * @return the native ordered view
+     */
+    static ByteBuffer map(long ptr, long length) {
+        assert isMappable(length);
+        if (length == 0) {
+            return EMPTY.duplicate().order(ByteOrder.nativeOrder());
+        }
+        return NativeBufferUtil.getView(ptr, (int) length);
+    }
+
+    @Override
+    public int comparePage(PageDataInput target) {
+        DirectPageDataInput other = (DirectPageDataInput) target;
+        ByteBuffer a = getContentsBuffer();
+        ByteBuffer b = other.getContentsBuffer();
+        int aLength = a.remaining();
+        int bLength = b.remaining();
+        int prefixLength = Math.min(aLength, bLength);
+        int diff;
+        if (prefixLength <= SMALL_PAGE_THRESHOLD) {
+            diff = compareRegionSmall(a, a.position(), b, b.position(), prefixLength);
+        } else {
+            diff = NativeBufferUtil.compare(
+                    dataPtr + a.position(),
+                    other.dataPtr + b.position(),
+                    prefixLength);
+        }
+        if (diff != 0) {
+            return diff;
+        }
+        return Integer.compare(aLength, bLength);
+    }
+
+    private static int compareRegionSmall(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset, int length) {
+        int offset = 0;
+        for (int n = length - Long.BYTES; offset <= n; offset += Long.BYTES) {
+            long aValue = a.getLong(aOffset + offset);
+            long bValue = b.getLong(bOffset + offset);
+            if (aValue != bValue) {
+                return compareLong(aValue, bValue);
+            }
+        }
+        for (int n = length; offset < n; offset++) {
+            int diff = (a.get(aOffset + offset) & 0xff) - (b.get(bOffset + offset) & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareLong(long a, long b) {
+        if (IS_BIG_ENDIAN) {
+            return Long.compareUnsigned(a, b);
+        }
+        return Long.compareUnsigned(Long.reverseBytes(a), Long.reverseBytes(b));
+    }
+}
@@ -35,6 +35,7 @@ import com.asakusafw.dag.api.processor.ProcessorContext;
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Invariants;
 import com.asakusafw.lang.utils.common.Optionals;
+import com.asakusafw.m3bp.bridge.BroadcastCache;
 import com.asakusafw.m3bp.bridge.VertexProcessorBridge;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror;
 import com.asakusafw.m3bp.mirror.ConfigurationMirror.BufferAccessMode;
@@ -47,7 +48,7 @@ import com.asakusafw.m3bp.mirror.unsafe.UnsafeUtil;
 /**
  * JNI bridge of {@link EngineMirror}.
  * @since 0.1.0
- * @version 0.2.1
+ * @version 0.3.5
  */
 public class EngineMirrorImpl implements EngineMirror, NativeMirror {
 
@@ -104,6 +105,8 @@ public class EngineMirrorImpl implements EngineMirror, NativeMirror {
 
     private final ConcurrentMap<Pointer, VertexProcessorBridge> runningBridges = new ConcurrentHashMap<>();
 
+    private final AtomicReference<BroadcastCache> runningBroadcasts = new AtomicReference<>(null);
+
     private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(() -> ThreadState.UNMANAGED);
 
     /**
@@ -144,11 +147,13 @@ public class EngineMirrorImpl implements EngineMirror, NativeMirror {
                     context));
         }
         threadState.set(ThreadState.MAIN);
-        try {
+        try (BroadcastCache broadcasts = new BroadcastCache()) {
             runningBridges.clear();
+            runningBroadcasts.set(broadcasts);
             run0(getPointer().getAddress());
         } finally {
             runningBridges.clear();
+            runningBroadcasts.set(null);
             runningContext.set(null);
             threadState.set(ThreadState.UNMANAGED);
         }
@@ -325,7 +330,7 @@ public class EngineMirrorImpl implements EngineMirror, NativeMirror {
     VertexProcessorBridge getBridge(Pointer vertexMirror, boolean initial) {
         VertexMirror vertex = toVertexMirror(vertexMirror);
         if (initial) {
-            VertexProcessorBridge bridge = new VertexProcessorBridge(vertex);
+            VertexProcessorBridge bridge = new VertexProcessorBridge(vertex, runningBroadcasts.get());
             if (runningBridges.putIfAbsent(vertexMirror, bridge) != null) {
                 throw new IllegalStateException(MessageFormat.format(
                         "reinitialized vertex processor: {0}", //$NON-NLS-1$
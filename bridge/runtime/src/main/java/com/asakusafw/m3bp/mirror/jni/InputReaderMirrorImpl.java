@@ -16,6 +16,7 @@
 package com.asakusafw.m3bp.mirror.jni;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 
 import org.slf4j.Logger;
@@ -28,7 +29,7 @@ import com.asakusafw.m3bp.mirror.PageDataInput;
 /**
  * JNI bridge of {@link InputReaderMirror}.
  * @since 0.1.0
- * @version 0.2.1
+ * @version 0.3.5
  */
 public class InputReaderMirrorImpl implements InputReaderMirror, NativeMirror {
 
@@ -46,16 +47,23 @@ public class InputReaderMirrorImpl implements InputReaderMirror, NativeMirror {
 
     final Pointer reference;
 
-    private final Input key;
+    private final boolean direct;
 
-    private final Input value;
+    private final PageDataInput key;
+
+    private final PageDataInput value;
 
     private boolean closed = false;
 
     InputReaderMirrorImpl(Pointer reference) {
+        this(reference, false);
+    }
+
+    InputReaderMirrorImpl(Pointer reference, boolean direct) {
         Arguments.requireNonNull(reference);
         boolean hasKey = hasKey0(reference.getAddress());
         this.reference = reference;
+        this.direct = direct;
         this.key = hasKey ? initialize(true) : null;
 
         // Note: without key, values are in key_buffer (not in value_buffer)
@@ -88,12 +96,23 @@ public class InputReaderMirrorImpl implements InputReaderMirror, NativeMirror {
         }
     }
 
-    private Input initialize(boolean isKey) {
+    private PageDataInput initialize(boolean isKey) {
         getInputBufferFragment0(reference.getAddress(), isKey, values);
         long bufferPtr = values[INDEX_BUFFER_PTR];
         long offsetTableBegin = values[INDEX_OFFSET_TABLE_PTR];
         long recordCount = values[INDEX_RECORD_COUNT];
         long offsetTableEnd = offsetTableBegin + (recordCount == 0 ? 0 : (recordCount + 1) * Long.BYTES);
+        if (direct && DirectPageDataInput.isMappable(offsetTableEnd - offsetTableBegin)) {
+            ByteBuffer offsets = DirectPageDataInput.map(offsetTableBegin, offsetTableEnd - offsetTableBegin);
+            long contentsSize = recordCount == 0 ? 0 : offsets.getLong(offsets.limit() - Long.BYTES);
+            if (DirectPageDataInput.isMappable(contentsSize)) {
+                return new DirectPageDataInput(bufferPtr, DirectPageDataInput.map(bufferPtr, contentsSize), offsets);
+            }
+            // falls back to the chunked input
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("input buffer is too large to map: {} bytes", contentsSize); //$NON-NLS-1$
+            }
+        }
         return new Input(bufferPtr, offsetTableBegin, offsetTableEnd);
     }
 
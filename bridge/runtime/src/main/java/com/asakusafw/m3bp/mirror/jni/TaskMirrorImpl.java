@@ -28,7 +28,7 @@ import com.asakusafw.m3bp.mirror.TaskMirror;
 /**
  * JNI bridge of {@link TaskMirror}.
  * @since 0.1.0
- * @version 0.1.2
+ * @version 0.3.5
  */
 public class TaskMirrorImpl implements TaskMirror, NativeMirror {
 
@@ -36,13 +36,13 @@ public class TaskMirrorImpl implements TaskMirror, NativeMirror {
 
     private final ConfigurationMirror configuration;
 
-    private final boolean unsafe;
+    private final BufferAccessMode bufferAccessMode;
 
     TaskMirrorImpl(Pointer reference, ConfigurationMirror configuration) {
         Arguments.requireNonNull(reference);
         this.reference = reference;
         this.configuration = configuration;
-        this.unsafe = configuration.getBufferAccessMode() == BufferAccessMode.UNSAFE;
+        this.bufferAccessMode = configuration.getBufferAccessMode();
     }
 
     @Override
@@ -64,10 +64,15 @@ public class TaskMirrorImpl implements TaskMirror, NativeMirror {
     public InputReaderMirror input(Identifier id) {
         Arguments.requireNonNull(id);
         Pointer ref = new Pointer(input0(getPointer().getAddress(), id.getValue()));
-        if (unsafe) {
+        switch (bufferAccessMode) {
+        case UNSAFE:
             return new InputReaderMirrorUnsafe(ref);
-        } else {
+        case DIRECT:
+            return new InputReaderMirrorImpl(ref, true);
+        case NIO:
             return new InputReaderMirrorImpl(ref);
+        default:
+            throw new AssertionError(bufferAccessMode);
         }
     }
 
@@ -76,9 +81,10 @@ public class TaskMirrorImpl implements TaskMirror, NativeMirror {
         ConfigurationMirror conf = configuration;
         Arguments.requireNonNull(id);
         Pointer ref = new Pointer(output0(getPointer().getAddress(), id.getValue()));
-        if (unsafe) {
+        if (bufferAccessMode == BufferAccessMode.UNSAFE) {
             return new OutputWriterMirrorUnsafe(ref, conf.getOutputBufferFlushFactor());
         } else {
+            // outputs are always written into native ordered direct buffers
             return new OutputWriterMirrorImpl(ref, conf.getOutputBufferFlushFactor());
         }
     }
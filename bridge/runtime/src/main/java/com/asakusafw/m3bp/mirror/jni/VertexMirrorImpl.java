@@ -17,8 +17,12 @@ package com.asakusafw.m3bp.mirror.jni;
 
 import java.text.MessageFormat;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
 import com.asakusafw.m3bp.descriptor.M3bpVertexDescriptor;
 import com.asakusafw.m3bp.mirror.Identifier;
 import com.asakusafw.m3bp.mirror.Movement;
@@ -31,6 +35,8 @@ import com.asakusafw.m3bp.mirror.basic.AbstractVertexMirror;
  */
 public class VertexMirrorImpl extends AbstractVertexMirror implements NativeMirror {
 
+    static final Logger LOG = LoggerFactory.getLogger(VertexMirrorImpl.class);
+
     private final String name;
 
     private final Pointer reference;
@@ -77,6 +83,12 @@ public class VertexMirrorImpl extends AbstractVertexMirror implements NativeMirr
     @Override
     protected PortMirror createOutput(
             Identifier portId, String portName, String portTag, M3bpEdgeDescriptor portDescriptor) {
+        if (portDescriptor.getPartitioning() == Partitioning.RANGE) {
+            LOG.warn(MessageFormat.format(
+                    "native engine does not support range partitioning, uses hash partitioning instead: {0}.{1}",
+                    getName(),
+                    portName));
+        }
         Pointer ref = new Pointer(createOutput0(
                 getPointer().getAddress(),
                 portId.getValue(),
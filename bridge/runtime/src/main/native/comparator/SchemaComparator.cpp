@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+#include "comparator.hpp"
+#include "serde.hpp"
+#include <cstdint>
+#include <stdexcept>
+#include <utility>
+#include <vector>
+
+namespace asakusafw {
+namespace jni {
+
+using namespace asakusafw::serde;
+
+using CompareFunc = int(std::int8_t *&, std::int8_t *&);
+
+static CompareFunc* resolve_field(char code) {
+    switch (code) {
+    case 'z': return &compare_boolean;
+    case 'b': return &compare_byte;
+    case 's': return &compare_short;
+    case 'i': return &compare_int;
+    case 'l': return &compare_long;
+    case 'f': return &compare_float;
+    case 'd': return &compare_double;
+    case 'n': return &compare_decimal;
+    case 'a': return &compare_date;
+    case 't': return &compare_date_time;
+    case 'c': return &compare_string;
+    default: return nullptr;
+    }
+}
+
+std::function<bool(void const*, void const*)> build_schema_comparator(std::string const& name) {
+    if (!is_schema_comparator(name) || (name.size() - 1) % 2 != 0) {
+        throw std::invalid_argument("invalid comparator schema: " + name);
+    }
+    // (compare function, is ascendant)
+    std::vector<std::pair<CompareFunc*, bool>> fields;
+    fields.reserve((name.size() - 1) / 2);
+    for (std::size_t i = 1; i < name.size(); i += 2) {
+        auto *func = resolve_field(name[i]);
+        auto direction = name[i + 1];
+        if (!func || (direction != '+' && direction != '-')) {
+            throw std::invalid_argument("invalid comparator schema: " + name);
+        }
+        fields.emplace_back(func, direction == '+');
+    }
+    return [fields](void const* _a, void const* _b) -> bool {
+        auto *a = static_cast<std::int8_t*>(const_cast<void*>(_a));
+        auto *b = static_cast<std::int8_t*>(const_cast<void*>(_b));
+        for (auto const& field : fields) {
+            int diff = field.first(a, b);
+            if (diff != 0) {
+                return field.second ? diff < 0 : diff > 0;
+            }
+        }
+        return false;
+    };
+}
+
+}  // namespace jni
+}  // namespace asakusafw
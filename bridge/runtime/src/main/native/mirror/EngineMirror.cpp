@@ -17,6 +17,7 @@
 #include "util.hpp"
 #include "jniutil.hpp"
 #include "adapter.hpp"
+#include "comparator.hpp"
 #include <memory>
 #include <stdexcept>
 #include <dlfcn.h>
@@ -59,6 +60,10 @@ ValueComparatorType EngineMirror::load_comparator(std::string const& name) {
         // no-op
         return { nullptr };
     }
+    if (is_schema_comparator(name)) {
+        // generic comparator which does not require the application library
+        return build_schema_comparator(name);
+    }
     if (!m_library) {
         throw std::runtime_error("value comparator library is not specified");
     }
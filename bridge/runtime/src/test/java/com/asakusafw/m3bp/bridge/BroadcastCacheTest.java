@@ -0,0 +1,173 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.bridge;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.asakusafw.dag.api.processor.ObjectReader;
+import com.asakusafw.m3bp.mirror.PortMirror;
+
+/**
+ * Test for {@link BroadcastCache}.
+ */
+public class BroadcastCacheTest {
+
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        Set<PortMirror> downstreams = new LinkedHashSet<>();
+        PortMirror upstream = port(downstreams);
+        PortMirror a = port(Collections.singleton(upstream));
+        PortMirror b = port(Collections.singleton(upstream));
+        downstreams.add(a);
+        downstreams.add(b);
+
+        BroadcastCache cache = new BroadcastCache();
+        assertThat(BroadcastCache.isSupported(a), is(true));
+        List<Object> r0 = read(cache.open(a, () -> reader("A", "B", "C")));
+        assertThat(cache.getRetainedCount(), is(1));
+        List<Object> r1 = read(cache.open(b, () -> reader("X")));
+        assertThat(r0, contains("A", "B", "C"));
+        assertThat(r1, contains("A", "B", "C"));
+        for (int i = 0; i < r0.size(); i++) {
+            assertThat(r1.get(i), is(sameInstance(r0.get(i))));
+        }
+        assertThat(loaded.get(), is(1));
+
+        // released after all downstreams have opened it
+        assertThat(cache.getRetainedCount(), is(0));
+        List<Object> r2 = read(cache.open(a, () -> reader("D")));
+        assertThat(r2, contains("D"));
+        assertThat(loaded.get(), is(2));
+    }
+
+    /**
+     * contents are released when the cache is closed, even if some downstreams have never opened them.
+     * @throws Exception if failed
+     */
+    @Test
+    public void close() throws Exception {
+        Set<PortMirror> downstreams = new LinkedHashSet<>();
+        PortMirror upstream = port(downstreams);
+        PortMirror a = port(Collections.singleton(upstream));
+        PortMirror b = port(Collections.singleton(upstream));
+        downstreams.add(a);
+        downstreams.add(b);
+
+        BroadcastCache cache = new BroadcastCache();
+        List<Object> r0 = read(cache.open(a, () -> reader("A", "B", "C")));
+        assertThat(r0, contains("A", "B", "C"));
+        assertThat(cache.getRetainedCount(), is(1));
+
+        cache.close();
+        assertThat(cache.getRetainedCount(), is(0));
+
+        // the next execution never sees the previous contents
+        try (BroadcastCache next = new BroadcastCache()) {
+            List<Object> r1 = read(next.open(b, () -> reader("D")));
+            assertThat(r1, contains("D"));
+            assertThat(loaded.get(), is(2));
+        }
+    }
+
+    /**
+     * broadcast edges with a single downstream are not shared.
+     */
+    @Test
+    public void single() {
+        Set<PortMirror> downstreams = new LinkedHashSet<>();
+        PortMirror upstream = port(downstreams);
+        PortMirror a = port(Collections.singleton(upstream));
+        downstreams.add(a);
+        assertThat(BroadcastCache.isSupported(a), is(false));
+    }
+
+    private static PortMirror port(Set<PortMirror> opposites) {
+        return (PortMirror) Proxy.newProxyInstance(
+                PortMirror.class.getClassLoader(),
+                new Class<?>[] { PortMirror.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getOpposites":
+                        return opposites;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return "port@" + Integer.toHexString(System.identityHashCode(proxy));
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private ObjectReader reader(Object... values) {
+        loaded.incrementAndGet();
+        Iterator<Object> iter = Arrays.asList(values).iterator();
+        return new ObjectReader() {
+
+            private Object current;
+
+            @Override
+            public boolean nextObject() {
+                if (iter.hasNext()) {
+                    current = iter.next();
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public Object getObject() {
+                return current;
+            }
+
+            @Override
+            public void close() {
+                return;
+            }
+        };
+    }
+
+    private static List<Object> read(ObjectReader reader) throws Exception {
+        List<Object> results = new ArrayList<>();
+        try (ObjectReader r = reader) {
+            while (r.nextObject()) {
+                results.add(r.getObject());
+            }
+        }
+        return results;
+    }
+}
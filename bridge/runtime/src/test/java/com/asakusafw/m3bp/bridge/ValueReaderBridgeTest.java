@@ -73,6 +73,27 @@ public class ValueReaderBridgeTest {
         }
     }
 
+    /**
+     * skip entries.
+     * @throws Exception if failed
+     */
+    @Test
+    public void skip_entries() throws Exception {
+        try (ValueReaderBridge bridge = new ValueReaderBridge(
+                new MockInputReaderMirror(new MockPageDataInput(
+                        bytes(1, 2, 3),
+                        ints(0, 4, 8, 12))),
+                new IntSerDe())) {
+            assertThat(bridge.nextObject(), is(true));
+            assertThat(bridge.nextObject(), is(true));
+            assertThat(bridge.getObject(), is(2));
+            assertThat(bridge.getObject(), is(2));
+
+            assertThat(bridge.nextObject(), is(true));
+            assertThat(bridge.nextObject(), is(false));
+        }
+    }
+
     /**
      * empty entries.
      * @throws Exception if failed
@@ -248,6 +248,40 @@ public class AbstractPageDataOutputTest {
         assertThat(out.getKeyLengths(), is(new int[] { 1 }));
     }
 
+    /**
+     * w/ key hash codes.
+     * @throws Exception if failed
+     */
+    @Test
+    public void key_hash() throws Exception {
+        AtomicBoolean flushed = new AtomicBoolean(false);
+        AbstractPageDataOutput out = new AbstractPageDataOutput() {
+            @Override
+            protected void doFlush(boolean end) throws IOException {
+                flushed.set(true);
+                ByteBuffer hashes = getKeyHashesBuffer();
+                assertThat(hashes.remaining(), is(Integer.BYTES * 2));
+                assertThat(hashes.getInt(), is(KeyHashes.hash(ByteBuffer.wrap(new byte[] { 1, 2, }))));
+                assertThat(hashes.getInt(), is(KeyHashes.hash(ByteBuffer.wrap(new byte[] { 3, }))));
+            }
+        };
+        out.reset(0,
+                ByteBuffer.allocate(100),
+                ByteBuffer.allocate(3 * Long.BYTES),
+                ByteBuffer.allocate(2 * Long.BYTES),
+                ByteBuffer.allocate(2 * Integer.BYTES));
+        out.write(1);
+        out.write(2);
+        out.endKey();
+        out.write(10);
+        out.endPage();
+        out.write(3);
+        out.endKey();
+        out.write(20);
+        out.endPage();
+        assertThat(flushed.get(), is(true));
+    }
+
     /**
      * flush by exceeding content size.
      * @throws Exception if failed
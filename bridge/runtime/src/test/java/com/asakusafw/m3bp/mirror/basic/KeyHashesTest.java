@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.basic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link KeyHashes}.
+ */
+public class KeyHashesTest {
+
+    /**
+     * empty contents.
+     */
+    @Test
+    public void empty() {
+        assertThat(KeyHashes.hash(ByteBuffer.allocate(0)), is(0x02cc5d05));
+    }
+
+    /**
+     * short contents.
+     */
+    @Test
+    public void short_contents() {
+        assertThat(KeyHashes.hash(bytes("a")), is(0x550d7456));
+        assertThat(KeyHashes.hash(bytes("abc")), is(0x32d153ff));
+    }
+
+    /**
+     * long contents.
+     */
+    @Test
+    public void long_contents() {
+        assertThat(KeyHashes.hash(bytes("Nobody inspects the spammish repetition")), is(0xe2293b2f));
+    }
+
+    /**
+     * byte order must not affect the results.
+     */
+    @Test
+    public void byte_order() {
+        ByteBuffer big = bytes("Hello, world!!!!!!!");
+        ByteBuffer little = bytes("Hello, world!!!!!!!").order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(KeyHashes.hash(big), is(KeyHashes.hash(little)));
+    }
+
+    /**
+     * hash in range.
+     */
+    @Test
+    public void range() {
+        ByteBuffer buffer = bytes("__abc__");
+        assertThat(KeyHashes.hash(buffer, 2, 3), is(KeyHashes.hash(bytes("abc"))));
+        assertThat(buffer.position(), is(0));
+    }
+
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
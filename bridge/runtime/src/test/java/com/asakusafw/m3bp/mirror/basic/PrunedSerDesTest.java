@@ -0,0 +1,260 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.basic;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.asakusafw.dag.api.common.KeyValueSerDe;
+import com.asakusafw.dag.api.common.ValueSerDe;
+
+/**
+ * Test for {@link PrunedSerDes}.
+ */
+public class PrunedSerDesTest {
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        ValueSerDe serde = PrunedSerDes.wrap((ValueSerDe) new Model.SerDe(), Arrays.asList("getValueOption"));
+        Model model = new Model(1, "Hello, world!");
+        Model restored = (Model) serde.deserialize(input(output -> serde.serialize(model, output)));
+        assertThat(restored.keyOption.value, is("1"));
+        assertThat(restored.valueOption.value, is(nullValue()));
+
+        // must not modify the original object
+        assertThat(model.valueOption.value, is("Hello, world!"));
+    }
+
+    /**
+     * w/o pruned properties.
+     */
+    @Test
+    public void nothing() {
+        ValueSerDe serde = new Model.SerDe();
+        assertThat(PrunedSerDes.wrap(serde, Collections.emptyList()), is(sameInstance(serde)));
+    }
+
+    /**
+     * key-value ser/de w/o pruned properties.
+     */
+    @Test
+    public void key_value_nothing() {
+        KeyValueSerDe serde = new Model.SerDe();
+        assertThat(PrunedSerDes.wrap(serde, Collections.emptyList()), is(sameInstance(serde)));
+    }
+
+    /**
+     * the pruning buffer is reused between records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void multiple() throws Exception {
+        ValueSerDe serde = PrunedSerDes.wrap((ValueSerDe) new Model.SerDe(), Arrays.asList("getValueOption"));
+        for (int i = 0; i < 3; i++) {
+            Model model = new Model(i, "Hello" + i);
+            Model restored = (Model) serde.deserialize(input(output -> serde.serialize(model, output)));
+            assertThat(restored.keyOption.value, is(String.valueOf(i)));
+            assertThat(restored.valueOption.value, is(nullValue()));
+            assertThat(model.valueOption.value, is("Hello" + i));
+        }
+    }
+
+    /**
+     * pruned properties shrink the serialized records.
+     * @throws Exception if failed
+     */
+    @Test
+    public void shrink() throws Exception {
+        ValueSerDe origin = new Model.SerDe();
+        ValueSerDe serde = PrunedSerDes.wrap(origin, Arrays.asList("getValueOption"));
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            buf.append("Hello, world!");
+        }
+        Model model = new Model(1, buf.toString());
+        int original = size(output -> origin.serialize(model, output));
+        int pruned = size(output -> serde.serialize(model, output));
+        assertThat(pruned, is(lessThan(original - buf.length())));
+    }
+
+    /**
+     * key-value ser/de never prunes keys.
+     * @throws Exception if failed
+     */
+    @Test
+    public void key_value() throws Exception {
+        KeyValueSerDe serde = PrunedSerDes.wrap(
+                (KeyValueSerDe) new Model.SerDe(),
+                Arrays.asList("getKeyOption", "getValueOption"));
+        Model model = new Model(1, "Hello, world!");
+        DataInput key = input(output -> serde.serializeKey(model, output));
+        DataInput value = input(output -> serde.serializeValue(model, output));
+        Model restored = (Model) serde.deserializePair(key, value);
+        assertThat(restored.keyOption.value, is("1"));
+        assertThat(restored.valueOption.value, is(nullValue()));
+    }
+
+    private static int size(Writer writer) throws IOException, InterruptedException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(buffer)) {
+            writer.write(output);
+        }
+        return buffer.size();
+    }
+
+    private static DataInput input(Writer writer) throws IOException, InterruptedException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(buffer)) {
+            writer.write(output);
+        }
+        return new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutput output) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A mock option.
+     */
+    public static class Option {
+
+        String value;
+
+        /**
+         * Sets {@code null}.
+         * @return this
+         */
+        public Option setNull() {
+            value = null;
+            return this;
+        }
+    }
+
+    /**
+     * A mock data model.
+     */
+    public static class Model {
+
+        final Option keyOption = new Option();
+
+        final Option valueOption = new Option();
+
+        /**
+         * Creates a new instance.
+         */
+        public Model() {
+            return;
+        }
+
+        Model(int key, String value) {
+            keyOption.value = String.valueOf(key);
+            valueOption.value = value;
+        }
+
+        /**
+         * Copies the contents.
+         * @param other the source object
+         */
+        public void copyFrom(Model other) {
+            keyOption.value = other.keyOption.value;
+            valueOption.value = other.valueOption.value;
+        }
+
+        /**
+         * Returns the key.
+         * @return the key
+         */
+        public Option getKeyOption() {
+            return keyOption;
+        }
+
+        /**
+         * Returns the value.
+         * @return the value
+         */
+        public Option getValueOption() {
+            return valueOption;
+        }
+
+        /**
+         * Ser/De for {@link Model}.
+         */
+        public static class SerDe implements ValueSerDe, KeyValueSerDe {
+
+            @Override
+            public void serialize(Object object, DataOutput output) throws IOException {
+                Model model = (Model) object;
+                write(model.keyOption, output);
+                write(model.valueOption, output);
+            }
+
+            @Override
+            public Object deserialize(DataInput input) throws IOException {
+                Model model = new Model();
+                read(model.keyOption, input);
+                read(model.valueOption, input);
+                return model;
+            }
+
+            @Override
+            public void serializeKey(Object object, DataOutput output) throws IOException {
+                write(((Model) object).keyOption, output);
+            }
+
+            @Override
+            public void serializeValue(Object object, DataOutput output) throws IOException {
+                write(((Model) object).valueOption, output);
+            }
+
+            @Override
+            public Object deserializePair(DataInput keyInput, DataInput valueInput) throws IOException {
+                Model model = new Model();
+                read(model.keyOption, keyInput);
+                read(model.valueOption, valueInput);
+                return model;
+            }
+
+            private static void write(Option option, DataOutput output) throws IOException {
+                output.writeBoolean(option.value != null);
+                if (option.value != null) {
+                    output.writeUTF(option.value);
+                }
+            }
+
+            private static void read(Option option, DataInput input) throws IOException {
+                option.value = input.readBoolean() ? input.readUTF() : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.mirror.jni;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+
+/**
+ * Test for {@code DirectPageDataInput}.
+ */
+public class DirectPageDataInputTest {
+
+    /**
+     * Checks native library is enabled.
+     */
+    @ClassRule
+    public static final NativeEnabled NATIVE = new NativeEnabled();
+
+    /**
+     * simple case.
+     * @throws Exception if failed
+     */
+    @Test
+    public void simple() throws Exception {
+        DirectPageDataInput in = create(new byte[][] {
+            { 0, 0, 0x01, 0x02, 0x03, 0x04, (byte) 0x89 },
+        });
+        assertThat(in.next(), is(true));
+        assertThat(in.readShort(), is((short) 0));
+        in.skipBytes(4);
+        assertThat(in.readUnsignedByte(), is(0x89));
+        assertThat(in.hasRemaining(), is(false));
+        assertThat(in.next(), is(false));
+    }
+
+    /**
+     * w/ empty contents.
+     * @throws Exception if failed
+     */
+    @Test
+    public void empty_contents() throws Exception {
+        DirectPageDataInput in = create(new byte[0][]);
+        assertThat(in.next(), is(false));
+    }
+
+    /**
+     * multiple pages.
+     * @throws Exception if failed
+     */
+    @Test
+    public void multi_pages() throws Exception {
+        DirectPageDataInput in = create(new byte[][] {
+            { 1, },
+            { 2, 3, },
+            {},
+        });
+        assertThat(in.next(), is(true));
+        assertThat(in.readByte(), is((byte) 1));
+        assertThat(in.hasRemaining(), is(false));
+
+        assertThat(in.next(), is(true));
+        assertThat(in.readByte(), is((byte) 2));
+        in.rewind();
+        assertThat(in.readByte(), is((byte) 2));
+        assertThat(in.readByte(), is((byte) 3));
+        assertThat(in.hasRemaining(), is(false));
+
+        assertThat(in.next(), is(true));
+        assertThat(in.hasRemaining(), is(false));
+        assertThat(in.next(), is(false));
+    }
+
+    /**
+     * compare small pages.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compare_small() throws Exception {
+        assertThat(compare(bytes(1, 2, 3), bytes(1, 2, 3)), is(0));
+        assertThat(compare(bytes(1, 2, 3), bytes(1, 2, 4)), lessThan(0));
+        assertThat(compare(bytes(1, 2, 3), bytes(1, 2)), greaterThan(0));
+        assertThat(compare(bytes(0x7f), bytes(0x80)), lessThan(0));
+        assertThat(compare(bytes(0, 0, 0, 0, 0, 0, 0, 1, 0), bytes(1, 0, 0, 0, 0, 0, 0, 0, 0)), lessThan(0));
+        assertThat(compare(bytes(1, 0, 0, 0, 0, 0, 0, 0, 0), bytes(0, 0, 0, 0, 0, 0, 0, 1, 0)), greaterThan(0));
+    }
+
+    /**
+     * compare large pages.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compare_large() throws Exception {
+        byte[] a = new byte[100];
+        byte[] b = new byte[100];
+        assertThat(compare(a, b), is(0));
+        b[90] = (byte) 0x80;
+        assertThat(compare(a, b), lessThan(0));
+        assertThat(compare(b, a), greaterThan(0));
+        assertThat(compare(a, Arrays.copyOf(a, 99)), greaterThan(0));
+    }
+
+    /**
+     * compare pages after reading their prefix.
+     * @throws Exception if failed
+     */
+    @Test
+    public void compare_rest() throws Exception {
+        DirectPageDataInput a = create(new byte[][] { bytes(1, 2, 3) });
+        DirectPageDataInput b = create(new byte[][] { bytes(9, 2, 3) });
+        assertThat(a.next(), is(true));
+        assertThat(b.next(), is(true));
+        assertThat(a.comparePage(b), lessThan(0));
+        a.skipBytes(1);
+        b.skipBytes(1);
+        assertThat(a.comparePage(b), is(0));
+    }
+
+    private static int compare(byte[] a, byte[] b) throws Exception {
+        DirectPageDataInput aIn = create(new byte[][] { a });
+        DirectPageDataInput bIn = create(new byte[][] { b });
+        assertThat(aIn.next(), is(true));
+        assertThat(bIn.next(), is(true));
+        return aIn.comparePage(bIn);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] results = new byte[values.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (byte) values[i];
+        }
+        return results;
+    }
+
+    private static DirectPageDataInput create(byte[][] pages) {
+        int size = Arrays.stream(pages).mapToInt(it -> it.length).sum();
+        ByteBuffer data = ByteBuffer.allocateDirect(size)
+                .order(ByteOrder.nativeOrder());
+        ByteBuffer entries = ByteBuffer.allocateDirect(pages.length == 0 ? 0 : Long.BYTES * (pages.length + 1))
+                .order(ByteOrder.nativeOrder());
+        if (pages.length > 0) {
+            entries.putLong(0);
+        }
+        for (byte[] bytes : pages) {
+            data.put(bytes);
+            entries.putLong(data.position());
+        }
+        data.clear();
+        entries.clear();
+        return new DirectPageDataInput(NativeBufferUtil.getAddress(data), data, entries);
+    }
+}
@@ -111,6 +111,9 @@ public class EngineMirrorImplTest {
                     Assume.assumeTrue(UnsafeUtil.isAvailable());
                     c.withBufferAccessMode(BufferAccessMode.UNSAFE);
                 }},
+                { "direct", (Consumer<ConfigurationMirror>) c -> {
+                    c.withBufferAccessMode(BufferAccessMode.DIRECT);
+                }},
         });
     }
 
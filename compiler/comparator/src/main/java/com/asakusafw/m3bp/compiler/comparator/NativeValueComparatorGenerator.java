@@ -70,7 +70,7 @@ public class NativeValueComparatorGenerator implements Io {
 
     static final Charset ENCODE = StandardCharsets.UTF_8;
 
-    private static final Location ATTACHED_BASE = Location.of("com/asakusafw/m3bp/compiler/comparator/native"); //$NON-NLS-1$
+    private static final Location ATTACHED_BASE = Location.of("com/asakusafw/m3bp/serde/native"); //$NON-NLS-1$
 
     private static final Location HEADER_FILE_BASE = ATTACHED_BASE.append("include"); //$NON-NLS-1$
 
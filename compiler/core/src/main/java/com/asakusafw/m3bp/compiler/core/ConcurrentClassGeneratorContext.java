@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+import com.asakusafw.dag.compiler.codegen.ClassGeneratorContext;
+import com.asakusafw.dag.compiler.model.ClassData;
+import com.asakusafw.lang.compiler.api.DataModelLoader;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.utils.common.Arguments;
+
+/**
+ * A thread-safe {@link ClassGeneratorContext}.
+ * Each cached class is generated only once even if it is requested from multiple threads at the same time.
+ * Classes which are {@link #reserve(Runnable) reserved} before generation are named by their reservation order,
+ * so that their names do not depend on the thread scheduling.
+ */
+class ConcurrentClassGeneratorContext implements ClassGeneratorContext {
+
+    private final ClassGeneratorContext delegate;
+
+    private final String classNamePrefix;
+
+    private final ConcurrentMap<Object, FutureTask<ClassDescription>> cache = new ConcurrentHashMap<>();
+
+    private final Map<Object, Integer> reservations = new HashMap<>();
+
+    private final ThreadLocal<Reservation> current = new ThreadLocal<>();
+
+    private volatile boolean reserving;
+
+    /**
+     * Creates a new instance.
+     * @param delegate the delegate context
+     * @param classNamePrefix the class name prefix of reserved classes
+     */
+    ConcurrentClassGeneratorContext(ClassGeneratorContext delegate, String classNamePrefix) {
+        Arguments.requireNonNull(delegate);
+        Arguments.requireNonNull(classNamePrefix);
+        this.delegate = delegate;
+        this.classNamePrefix = classNamePrefix;
+    }
+
+    /**
+     * Reserves the cached classes which are requested in the given action.
+     * The action runs on the current thread, and the cached classes are not generated in it.
+     * This must be invoked before the reserved classes are requested from other threads.
+     * @param action the action which requests the target classes
+     */
+    synchronized void reserve(Runnable action) {
+        Arguments.requireNonNull(action);
+        reserving = true;
+        try {
+            action.run();
+        } finally {
+            reserving = false;
+        }
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return delegate.getClassLoader();
+    }
+
+    @Override
+    public DataModelLoader getDataModelLoader() {
+        return delegate.getDataModelLoader();
+    }
+
+    @Override
+    public ClassDescription getClassName(String category, String hint) {
+        Reservation reservation = current.get();
+        if (reservation != null) {
+            return reservation.next(category, hint);
+        }
+        synchronized (this) {
+            return delegate.getClassName(category, hint);
+        }
+    }
+
+    @Override
+    public synchronized ClassDescription addClassFile(ClassData data) {
+        return delegate.addClassFile(data);
+    }
+
+    @Override
+    public ClassDescription cache(Object key, Supplier<? extends ClassData> generator) {
+        if (reserving) {
+            synchronized (this) {
+                reservations.putIfAbsent(key, reservations.size());
+            }
+            return new ClassDescription(classNamePrefix + "Reserved"); //$NON-NLS-1$
+        }
+        FutureTask<ClassDescription> task = new FutureTask<>(() -> generate(key, generator));
+        FutureTask<ClassDescription> cached = cache.putIfAbsent(key, task);
+        if (cached == null) {
+            cached = task;
+            task.run();
+        }
+        try {
+            return cached.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private ClassDescription generate(Object key, Supplier<? extends ClassData> generator) {
+        Integer index;
+        synchronized (this) {
+            index = reservations.get(key);
+        }
+        if (index == null) {
+            return addClassFile(generator.get());
+        }
+        Reservation parent = current.get();
+        current.set(new Reservation(index));
+        try {
+            return addClassFile(generator.get());
+        } finally {
+            if (parent == null) {
+                current.remove();
+            } else {
+                current.set(parent);
+            }
+        }
+    }
+
+    private final class Reservation {
+
+        private final int index;
+
+        private int count;
+
+        Reservation(int index) {
+            this.index = index;
+        }
+
+        ClassDescription next(String category, String hint) {
+            StringBuilder buf = new StringBuilder();
+            buf.append(classNamePrefix);
+            buf.append(category);
+            buf.append('.');
+            buf.append(hint);
+            buf.append("_r").append(index); //$NON-NLS-1$
+            if (count > 0) {
+                buf.append('_').append(count);
+            }
+            count++;
+            return new ClassDescription(buf.toString());
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dag.api.model.basic.BasicEdgeDescriptor.Movement;
+import com.asakusafw.dag.compiler.planner.SubPlanOutputInfo;
+import com.asakusafw.lang.compiler.api.DataModelLoader;
+import com.asakusafw.lang.compiler.api.reference.DataModelReference;
+import com.asakusafw.lang.compiler.api.reference.PropertyReference;
+import com.asakusafw.lang.compiler.model.PropertyName;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.description.ImmediateDescription;
+import com.asakusafw.lang.compiler.model.description.TypeDescription;
+import com.asakusafw.lang.compiler.model.description.ValueDescription;
+import com.asakusafw.lang.compiler.model.graph.Group;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorInput;
+import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.model.graph.UserOperator;
+import com.asakusafw.lang.compiler.planning.Plan;
+import com.asakusafw.lang.compiler.planning.SubPlan;
+import com.asakusafw.vocabulary.operator.Extract;
+import com.asakusafw.vocabulary.operator.MasterBranch;
+import com.asakusafw.vocabulary.operator.MasterCheck;
+import com.asakusafw.vocabulary.operator.MasterJoinUpdate;
+
+/**
+ * Analyzes which data model properties are used by the downstream operators of each edge.
+ * <p>
+ * The analysis is conservative: an edge keeps all properties unless every downstream operator input is
+ * the input of {@code Extract}, or the master input of {@code MasterJoinUpdate}, {@code MasterBranch}, or
+ * {@code MasterCheck} without master selection, and the operator method only passes the input object to its
+ * property accessors.
+ * The grouping and ordering properties of each edge are always used.
+ * </p>
+ */
+final class EdgePropertyUsage {
+
+    static final Logger LOG = LoggerFactory.getLogger(EdgePropertyUsage.class);
+
+    private static final String ELEMENT_SELECTION = "selection"; //$NON-NLS-1$
+
+    private static final Set<ClassDescription> MASTER_OPERATORS = new HashSet<>(Arrays.asList(
+            new ClassDescription(MasterJoinUpdate.class.getName()),
+            new ClassDescription(MasterBranch.class.getName()),
+            new ClassDescription(MasterCheck.class.getName())));
+
+    private static final ClassDescription EXTRACT_OPERATOR = new ClassDescription(Extract.class.getName());
+
+    private static final EdgePropertyUsage EMPTY = new EdgePropertyUsage(Collections.emptyMap());
+
+    private final Map<List<Object>, Set<PropertyName>> usage;
+
+    private EdgePropertyUsage(Map<List<Object>, Set<PropertyName>> usage) {
+        this.usage = usage;
+    }
+
+    /**
+     * Returns an empty instance, which reports that all properties are used.
+     * @return an empty instance
+     */
+    static EdgePropertyUsage empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Analyzes the plan.
+     * @param loader the data model loader
+     * @param classLoader the class loader of the operator classes
+     * @param plan the target plan
+     * @return the analyzed information
+     */
+    static EdgePropertyUsage analyze(DataModelLoader loader, ClassLoader classLoader, Plan plan) {
+        Map<List<Object>, Set<PropertyName>> results = new HashMap<>();
+        Set<List<Object>> unknown = new HashSet<>();
+        Analyzer analyzer = new Analyzer(loader, classLoader);
+        for (SubPlan sub : plan.getElements()) {
+            for (SubPlan.Output output : sub.getOutputs()) {
+                SubPlanOutputInfo info = output.getAttribute(SubPlanOutputInfo.class);
+                if (info == null) {
+                    continue;
+                }
+                TypeDescription dataType = output.getOperator().getDataType();
+                List<Object> key;
+                switch (info.getOutputType()) {
+                case VALUE:
+                    key = key(Movement.ONE_TO_ONE, dataType, null);
+                    break;
+                case KEY_VALUE:
+                    key = key(Movement.SCATTER_GATHER, dataType, info.getGroup());
+                    break;
+                case BROADCAST:
+                    key = key(Movement.BROADCAST, dataType, null);
+                    break;
+                default:
+                    continue;
+                }
+                if (unknown.contains(key)) {
+                    continue;
+                }
+                Set<PropertyName> used = analyzer.analyze(output, info.getGroup());
+                if (used == null) {
+                    unknown.add(key);
+                    results.remove(key);
+                } else {
+                    results.computeIfAbsent(key, k -> new LinkedHashSet<>()).addAll(used);
+                }
+            }
+        }
+        return new EdgePropertyUsage(results);
+    }
+
+    /**
+     * Returns the properties which are used in the downstream operators of one-to-one edges.
+     * @param dataType the data type
+     * @return the used properties, or {@code null} if all properties may be used
+     */
+    Set<PropertyName> getOneToOne(TypeDescription dataType) {
+        return usage.get(key(Movement.ONE_TO_ONE, dataType, null));
+    }
+
+    /**
+     * Returns the properties which are used in the downstream operators of scatter-gather edges.
+     * @param dataType the data type
+     * @param group the edge grouping
+     * @return the used properties, or {@code null} if all properties may be used
+     */
+    Set<PropertyName> getScatterGather(TypeDescription dataType, Group group) {
+        return usage.get(key(Movement.SCATTER_GATHER, dataType, group));
+    }
+
+    /**
+     * Returns the properties which are used in the downstream operators of broadcast edges.
+     * @param dataType the data type
+     * @return the used properties, or {@code null} if all properties may be used
+     */
+    Set<PropertyName> getBroadcast(TypeDescription dataType) {
+        return usage.get(key(Movement.BROADCAST, dataType, null));
+    }
+
+    private static List<Object> key(Movement movement, TypeDescription dataType, Group group) {
+        return Arrays.asList(movement, dataType, group);
+    }
+
+    /**
+     * Returns the name of the {@code ValueOption} accessor method of the property.
+     * @param name the property name
+     * @return the accessor method name
+     */
+    static String getOptionAccessorName(PropertyName name) {
+        return "get" + capitalize(name.toMemberName()) + "Option"; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static final class Analyzer {
+
+        private final DataModelLoader loader;
+
+        private final ClassLoader classLoader;
+
+        Analyzer(DataModelLoader loader, ClassLoader classLoader) {
+            this.loader = loader;
+            this.classLoader = classLoader;
+        }
+
+        Set<PropertyName> analyze(SubPlan.Output output, Group group) {
+            Set<PropertyName> results = new LinkedHashSet<>();
+            if (group != null) {
+                results.addAll(group.getGrouping());
+                group.getOrdering().forEach(o -> results.add(o.getPropertyName()));
+            }
+            for (SubPlan.Input downstream : output.getOpposites()) {
+                if (collect(downstream.getOperator(), results) == false) {
+                    return null;
+                }
+            }
+            return results;
+        }
+
+        private boolean collect(Operator source, Set<PropertyName> results) {
+            for (OperatorOutput port : source.getOutputs()) {
+                for (OperatorInput consumer : port.getOpposites()) {
+                    Operator owner = consumer.getOwner();
+                    switch (owner.getOperatorKind()) {
+                    case MARKER:
+                        if (collect(owner, results) == false) {
+                            return false;
+                        }
+                        break;
+                    case USER: {
+                        Set<PropertyName> used = analyze((UserOperator) owner, consumer);
+                        if (used == null) {
+                            return false;
+                        }
+                        results.addAll(used);
+                        break;
+                    }
+                    default:
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private Set<PropertyName> analyze(UserOperator operator, OperatorInput port) {
+            ClassDescription annotation = operator.getAnnotation().getDeclaringClass();
+            if (operator.getInputs().indexOf(port) != 0) {
+                return null;
+            }
+            if (MASTER_OPERATORS.contains(annotation)) {
+                if (hasSelection(operator) || port.getGroup() == null) {
+                    return null;
+                }
+            } else if (annotation.equals(EXTRACT_OPERATOR) == false) {
+                return null;
+            }
+            Method method;
+            try {
+                method = operator.getMethod().resolve(classLoader);
+            } catch (ReflectiveOperationException e) {
+                LOG.debug("failed to resolve operator method: {}", operator, e);
+                return null;
+            }
+            DataModelReference model = loader.load(port.getDataType());
+            Map<String, PropertyName> accessors = new HashMap<>();
+            for (PropertyReference property : model.getProperties()) {
+                String member = capitalize(property.getName().toMemberName());
+                for (String name : new String[] {
+                        "get" + member, //$NON-NLS-1$
+                        "get" + member + "Option", //$NON-NLS-1$ //$NON-NLS-2$
+                        "get" + member + "AsString", //$NON-NLS-1$ //$NON-NLS-2$
+                        "is" + member, //$NON-NLS-1$
+                }) {
+                    accessors.put(name, property.getName());
+                }
+            }
+            Set<PropertyName> results = analyze(method, 0, accessors);
+            if (results != null && port.getGroup() != null) {
+                results.addAll(port.getGroup().getGrouping());
+                port.getGroup().getOrdering().forEach(o -> results.add(o.getPropertyName()));
+            }
+            return results;
+        }
+
+        private static boolean hasSelection(UserOperator operator) {
+            ValueDescription selection = operator.getAnnotation().getElements().get(ELEMENT_SELECTION);
+            if (selection == null) {
+                return false;
+            }
+            if (selection instanceof ImmediateDescription) {
+                Object value = ((ImmediateDescription) selection).getValue();
+                return value != null && String.valueOf(value).isEmpty() == false;
+            }
+            return true;
+        }
+
+        private Set<PropertyName> analyze(Method method, int parameterIndex, Map<String, PropertyName> accessors) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                // the operator method is never invoked
+                return new LinkedHashSet<>();
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                return null;
+            }
+            int slot = 1;
+            Class<?>[] parameters = method.getParameterTypes();
+            for (int i = 0; i < parameterIndex; i++) {
+                slot += Type.getType(parameters[i]).getSize();
+            }
+            String path = method.getDeclaringClass().getName().replace('.', '/') + ".class"; //$NON-NLS-1$
+            try (InputStream input = classLoader.getResourceAsStream(path)) {
+                if (input == null) {
+                    return null;
+                }
+                ParameterUsageVisitor visitor = new ParameterUsageVisitor(
+                        method.getName(), Type.getMethodDescriptor(method), slot, accessors);
+                new ClassReader(input).accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                return visitor.getResults();
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("failed to analyze operator method: {}", method, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Collects property accessors invoked on a method parameter.
+     * The parameter is available only if each load of it is directly followed by a property accessor invocation.
+     */
+    private static final class ParameterUsageVisitor extends ClassVisitor {
+
+        private final String methodName;
+
+        private final String methodDescriptor;
+
+        final int slot;
+
+        final Map<String, PropertyName> accessors;
+
+        final Set<PropertyName> results = new LinkedHashSet<>();
+
+        boolean found;
+
+        boolean escaped;
+
+        ParameterUsageVisitor(
+                String methodName, String methodDescriptor,
+                int slot, Map<String, PropertyName> accessors) {
+            super(Opcodes.ASM5);
+            this.methodName = methodName;
+            this.methodDescriptor = methodDescriptor;
+            this.slot = slot;
+            this.accessors = accessors;
+        }
+
+        Set<PropertyName> getResults() {
+            return found && escaped == false ? results : null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                int access, String name, String desc, String signature, String[] exceptions) {
+            if (name.equals(methodName) == false || desc.equals(methodDescriptor) == false) {
+                return null;
+            }
+            found = true;
+            return new MethodVisitor(Opcodes.ASM5) {
+
+                private boolean loaded;
+
+                private void escape() {
+                    if (loaded) {
+                        escaped = true;
+                        loaded = false;
+                    }
+                }
+
+                @Override
+                public void visitVarInsn(int opcode, int var) {
+                    escape();
+                    if (var == slot) {
+                        if (opcode == Opcodes.ALOAD) {
+                            loaded = true;
+                        } else {
+                            escaped = true;
+                        }
+                    }
+                }
+
+                @Override
+                public void visitIincInsn(int var, int increment) {
+                    escape();
+                    if (var == slot) {
+                        escaped = true;
+                    }
+                }
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                    if (loaded
+                            && (opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE)
+                            && Type.getArgumentTypes(desc).length == 0
+                            && accessors.containsKey(name)) {
+                        results.add(accessors.get(name));
+                        loaded = false;
+                        return;
+                    }
+                    escape();
+                }
+
+                @Override
+                public void visitInsn(int opcode) {
+                    escape();
+                }
+
+                @Override
+                public void visitIntInsn(int opcode, int operand) {
+                    escape();
+                }
+
+                @Override
+                public void visitTypeInsn(int opcode, String type) {
+                    escape();
+                }
+
+                @Override
+                public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                    escape();
+                }
+
+                @Override
+                public void visitInvokeDynamicInsn(
+                        String name, String desc, Handle bsm, Object... bsmArgs) {
+                    escape();
+                }
+
+                @Override
+                public void visitJumpInsn(int opcode, Label label) {
+                    escape();
+                }
+
+                @Override
+                public void visitLabel(Label label) {
+                    escape();
+                }
+
+                @Override
+                public void visitLdcInsn(Object cst) {
+                    escape();
+                }
+
+                @Override
+                public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                    escape();
+                }
+
+                @Override
+                public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                    escape();
+                }
+
+                @Override
+                public void visitMultiANewArrayInsn(String desc, int dims) {
+                    escape();
+                }
+
+                @Override
+                public void visitEnd() {
+                    escape();
+                }
+            };
+        }
+    }
+}
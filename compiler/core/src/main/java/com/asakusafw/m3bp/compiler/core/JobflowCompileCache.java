@@ -0,0 +1,767 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.dag.compiler.codegen.ClassGeneratorContext;
+import com.asakusafw.dag.compiler.flow.DataFlowGenerator;
+import com.asakusafw.dag.compiler.planner.DagPlanning;
+import com.asakusafw.lang.compiler.api.JobflowProcessor;
+import com.asakusafw.lang.compiler.common.Location;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.description.ReifiableTypeDescription;
+import com.asakusafw.lang.compiler.model.description.TypeDescription;
+import com.asakusafw.lang.compiler.model.graph.CoreOperator;
+import com.asakusafw.lang.compiler.model.graph.ExternalInput;
+import com.asakusafw.lang.compiler.model.graph.ExternalOutput;
+import com.asakusafw.lang.compiler.model.graph.ExternalPort;
+import com.asakusafw.lang.compiler.model.graph.FlowOperator;
+import com.asakusafw.lang.compiler.model.graph.Group;
+import com.asakusafw.lang.compiler.model.graph.Groups;
+import com.asakusafw.lang.compiler.model.graph.Jobflow;
+import com.asakusafw.lang.compiler.model.graph.Operator;
+import com.asakusafw.lang.compiler.model.graph.OperatorArgument;
+import com.asakusafw.lang.compiler.model.graph.OperatorInput;
+import com.asakusafw.lang.compiler.model.graph.OperatorOutput;
+import com.asakusafw.lang.compiler.model.graph.OperatorPort;
+import com.asakusafw.lang.compiler.model.graph.UserOperator;
+import com.asakusafw.lang.compiler.model.info.ExternalPortInfo;
+import com.asakusafw.lang.utils.common.Arguments;
+import com.asakusafw.lang.utils.common.Invariants;
+import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
+
+/**
+ * A cache of generated artifacts of individual jobflows.
+ * <p>
+ * Each entry is keyed by a fingerprint of the jobflow operator graph, the related classes (data models and
+ * operator classes), the compiler options, and the compiler libraries.
+ * It contains the side effects of the code generation phase: the generated class files and resource files,
+ * the registered external inputs and outputs, the native value comparator requests, and the serialized
+ * {@code GraphInfo}. They are replayed on the later compilations, and the native libraries are re-created
+ * from the native build cache.
+ * The execution planning phase always runs, so that its side effects and the inspection output are not lost.
+ * </p>
+ * <p>
+ * If the code generation phase has any other side effects, for example, adding tasks or using compiler extensions
+ * other than {@link NativeValueComparatorExtension}, the jobflow is never cached.
+ * </p>
+ * @since 0.3.5
+ */
+final class JobflowCompileCache {
+
+    static final Logger LOG = LoggerFactory.getLogger(JobflowCompileCache.class);
+
+    private static final String FORMAT_VERSION = "2"; //$NON-NLS-1$
+
+    private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private static final String PATH_CLASSES = "classes"; //$NON-NLS-1$
+
+    private static final String PATH_RESOURCES = "resources"; //$NON-NLS-1$
+
+    private static final String PATH_GRAPH = "graph.bin"; //$NON-NLS-1$
+
+    private static final String PATH_COMPARATORS = "comparators.txt"; //$NON-NLS-1$
+
+    private static final String PATH_EXTERNAL_PORTS = "external.txt"; //$NON-NLS-1$
+
+    private static final String CLASS_FILE_EXTENSION = ".class"; //$NON-NLS-1$
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private static final String LIST_SEPARATOR = ","; //$NON-NLS-1$
+
+    private static final String KIND_INPUT = "input"; //$NON-NLS-1$
+
+    private static final String KIND_OUTPUT = "output"; //$NON-NLS-1$
+
+    /**
+     * The classes which represent the compiler libraries.
+     */
+    private static final Class<?>[] COMPILER_CLASSES = {
+            JobflowCompileCache.class,
+            NativeValueComparatorExtension.class,
+            DataFlowGenerator.class,
+            DagPlanning.class,
+            ClassGeneratorContext.class,
+            JobflowProcessor.class,
+    };
+
+    private static final Map<String, String> LOCATION_DIGESTS = new ConcurrentHashMap<>();
+
+    private final File directory;
+
+    /**
+     * Creates a new instance.
+     * @param directory the cache directory
+     */
+    JobflowCompileCache(File directory) {
+        Arguments.requireNonNull(directory);
+        this.directory = directory;
+    }
+
+    /**
+     * Loads a cached snapshot.
+     * @param key the cache key
+     * @return the cached snapshot, or {@code null} if it is not cached
+     */
+    Snapshot load(String key) {
+        File entry = new File(directory, key);
+        if (entry.isDirectory() == false) {
+            return null;
+        }
+        try {
+            Snapshot snapshot = new Snapshot();
+            load(entry.toPath().resolve(PATH_CLASSES), snapshot.classes);
+            for (Map.Entry<String, byte[]> e : snapshot.classes.entrySet()) {
+                Invariants.require(e.getKey().endsWith(CLASS_FILE_EXTENSION));
+            }
+            load(entry.toPath().resolve(PATH_RESOURCES), snapshot.resources);
+            snapshot.graph = Files.readAllBytes(entry.toPath().resolve(PATH_GRAPH));
+            snapshot.comparators.addAll(readLines(entry.toPath().resolve(PATH_COMPARATORS)));
+            snapshot.externals.addAll(readLines(entry.toPath().resolve(PATH_EXTERNAL_PORTS)));
+            return snapshot;
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to load jobflow compile cache: {0}",
+                    entry), e);
+            return null;
+        }
+    }
+
+    private static void load(Path base, Map<String, byte[]> destination) throws IOException {
+        try (Stream<Path> stream = Files.walk(base)) {
+            for (Path file : stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                String name = base.relativize(file).toString().replace(File.separatorChar, '/');
+                destination.put(name, Files.readAllBytes(file));
+            }
+        }
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .filter(s -> s.isEmpty() == false)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stores a snapshot.
+     * @param key the cache key
+     * @param snapshot the snapshot
+     */
+    void store(String key, Snapshot snapshot) {
+        Arguments.requireNonNull(key);
+        Arguments.requireNonNull(snapshot);
+        Invariants.requireNonNull(snapshot.graph);
+        if (snapshot.unsupported.isEmpty() == false) {
+            LOG.debug("jobflow compile cache is not available: {} (side effects={})", key, snapshot.unsupported);
+            return;
+        }
+        File entry = new File(directory, key);
+        if (entry.exists()) {
+            return;
+        }
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temporary = Files.createTempDirectory(directory.toPath(), key + "-"); //$NON-NLS-1$
+            store(temporary.resolve(PATH_CLASSES), snapshot.classes);
+            store(temporary.resolve(PATH_RESOURCES), snapshot.resources);
+            Files.write(temporary.resolve(PATH_GRAPH), snapshot.graph);
+            Files.write(temporary.resolve(PATH_COMPARATORS), snapshot.comparators, StandardCharsets.UTF_8);
+            Files.write(temporary.resolve(PATH_EXTERNAL_PORTS), snapshot.externals, StandardCharsets.UTF_8);
+            Files.move(temporary, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+            LOG.debug("stored jobflow compile cache: {}", entry);
+        } catch (IOException e) {
+            // the other process may store the same entry
+            LOG.warn(MessageFormat.format(
+                    "failed to store jobflow compile cache: {0}",
+                    entry), e);
+        } finally {
+            if (temporary != null) {
+                delete(temporary.toFile());
+            }
+        }
+    }
+
+    private static void store(Path base, Map<String, byte[]> contents) throws IOException {
+        Files.createDirectories(base);
+        for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+            Path file = base.resolve(e.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, e.getValue());
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.delete() == false && file.exists()) {
+            LOG.debug("failed to delete: {}", file);
+        }
+    }
+
+    /**
+     * Computes the cache key of the jobflow.
+     * @param context the current context
+     * @param source the target jobflow
+     * @return the cache key
+     */
+    static String fingerprint(JobflowProcessor.Context context, Jobflow source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        Fingerprint fingerprint = new Fingerprint(digest);
+        fingerprint.put(FORMAT_VERSION);
+        for (File location : getCompilerLocations()) {
+            fingerprint.put(location);
+        }
+        fingerprint.put(context.getBatchId());
+        fingerprint.put(source.getFlowId());
+        fingerprint.put(context.getOptions().getRuntimeWorkingDirectory());
+        new TreeMap<>(context.getOptions().getProperties("")).forEach((k, v) -> { //$NON-NLS-1$
+            // the cache location does not affect the generated artifacts
+            if (k.equals(M3bpJobflowProcessor.KEY_CODEGEN_CACHE) == false) {
+                fingerprint.put(k);
+                fingerprint.put(v);
+            }
+        });
+
+        List<Operator> operators = new ArrayList<>(source.getOperatorGraph().getOperators());
+        long base = operators.stream().mapToLong(Operator::getOriginalSerialNumber).min().orElse(0L);
+        operators.sort(Comparator.comparingLong(Operator::getOriginalSerialNumber));
+        Set<ClassDescription> classes = new TreeSet<>(Comparator.comparing(ClassDescription::getBinaryName));
+        for (Operator operator : operators) {
+            fingerprint.put(operator.getOriginalSerialNumber() - base);
+            describe(fingerprint, classes, operator);
+            for (OperatorInput port : operator.getInputs()) {
+                describe(fingerprint, classes, port);
+                fingerprint.put(String.valueOf(port.getGroup()));
+                port.getOpposites().stream()
+                        .map(p -> (p.getOwner().getOriginalSerialNumber() - base) + "." + p.getName()) //$NON-NLS-1$
+                        .sorted()
+                        .forEachOrdered(fingerprint::put);
+            }
+            for (OperatorOutput port : operator.getOutputs()) {
+                describe(fingerprint, classes, port);
+            }
+            for (OperatorArgument argument : operator.getArguments()) {
+                fingerprint.put(argument.getName());
+                fingerprint.put(String.valueOf(argument.getValue()));
+            }
+            operator.getConstraints().stream()
+                    .map(String::valueOf)
+                    .sorted()
+                    .forEachOrdered(fingerprint::put);
+        }
+        ClassLoader loader = context.getClassLoader();
+        for (ClassDescription aClass : classes) {
+            fingerprint.put(aClass.getBinaryName());
+            fingerprint.put(loader, aClass);
+        }
+        return fingerprint.toHexString();
+    }
+
+    private static Set<File> getCompilerLocations() {
+        Set<File> results = new LinkedHashSet<>();
+        for (Class<?> aClass : COMPILER_CLASSES) {
+            CodeSource source = aClass.getProtectionDomain().getCodeSource();
+            URL location = source == null ? null : source.getLocation();
+            if (location == null || location.getProtocol().equals("file") == false) { //$NON-NLS-1$
+                throw new IllegalStateException(MessageFormat.format(
+                        "failed to detect the compiler library: {0} ({1})",
+                        aClass.getName(),
+                        location));
+            }
+            try {
+                results.add(new File(location.toURI()));
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return results;
+    }
+
+    private static void describe(Fingerprint fingerprint, Set<ClassDescription> classes, Operator operator) {
+        fingerprint.put(operator.getOperatorKind().name());
+        switch (operator.getOperatorKind()) {
+        case CORE:
+            fingerprint.put(((CoreOperator) operator).getCoreOperatorKind().name());
+            break;
+        case USER: {
+            UserOperator op = (UserOperator) operator;
+            fingerprint.put(String.valueOf(op.getAnnotation()));
+            fingerprint.put(String.valueOf(op.getMethod()));
+            classes.add(op.getMethod().getDeclaringClass());
+            classes.add(op.getImplementationClass());
+            break;
+        }
+        case FLOW: {
+            FlowOperator op = (FlowOperator) operator;
+            classes.add(op.getDescriptionClass());
+            break;
+        }
+        case INPUT:
+            describe(fingerprint, classes, (ExternalInput) operator);
+            break;
+        case OUTPUT:
+            describe(fingerprint, classes, (ExternalOutput) operator);
+            break;
+        default:
+            fingerprint.put(operator.getClass().getName());
+            break;
+        }
+    }
+
+    private static void describe(Fingerprint fingerprint, Set<ClassDescription> classes, ExternalPort port) {
+        fingerprint.put(port.getName());
+        ExternalPortInfo info = port.getInfo();
+        if (info != null) {
+            fingerprint.put(info.getModuleName());
+            fingerprint.put(String.valueOf(info.getContents()));
+            classes.add(info.getDescriptionClass());
+            classes.add(info.getDataModelClass());
+        }
+    }
+
+    private static void describe(Fingerprint fingerprint, Set<ClassDescription> classes, OperatorPort port) {
+        fingerprint.put(port.getName());
+        TypeDescription type = port.getDataType();
+        fingerprint.put(String.valueOf(type));
+        ReifiableTypeDescription erasure = type.getErasure();
+        if (erasure instanceof ClassDescription) {
+            classes.add((ClassDescription) erasure);
+        }
+    }
+
+    private static final class Fingerprint {
+
+        private final MessageDigest digest;
+
+        Fingerprint(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        void put(long value) {
+            put(String.valueOf(value));
+        }
+
+        void put(String value) {
+            byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+            put(bytes.length);
+            digest.update(bytes);
+        }
+
+        void put(int value) {
+            digest.update(new byte[] {
+                    (byte) (value >>> 24),
+                    (byte) (value >>> 16),
+                    (byte) (value >>> 8),
+                    (byte) value,
+            });
+        }
+
+        void put(File location) {
+            put(location.getName());
+            String key = MessageFormat.format(
+                    "{0}:{1}:{2}", //$NON-NLS-1$
+                    location.getAbsolutePath(),
+                    String.valueOf(location.length()),
+                    String.valueOf(location.lastModified()));
+            String contents = LOCATION_DIGESTS.computeIfAbsent(key, k -> digest(location));
+            put(contents);
+        }
+
+        private static String digest(File location) {
+            Fingerprint fingerprint;
+            try {
+                fingerprint = new Fingerprint(MessageDigest.getInstance(DIGEST_ALGORITHM));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            Path base = location.toPath();
+            try (Stream<Path> stream = Files.walk(base)) {
+                for (Path path : stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    fingerprint.put(base.relativize(path).toString().replace(File.separatorChar, '/'));
+                    try (InputStream input = Files.newInputStream(path)) {
+                        fingerprint.put(input);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(MessageFormat.format(
+                        "failed to read the compiler library: {0}",
+                        location), e);
+            }
+            return fingerprint.toHexString();
+        }
+
+        void put(ClassLoader loader, ClassDescription aClass) {
+            String path = aClass.getBinaryName().replace('.', '/') + CLASS_FILE_EXTENSION;
+            try (InputStream input = loader.getResourceAsStream(path)) {
+                if (input == null) {
+                    put(-1);
+                    return;
+                }
+                put(input);
+            } catch (IOException e) {
+                throw new IllegalStateException(MessageFormat.format(
+                        "failed to read class file: {0}",
+                        path), e);
+            }
+        }
+
+        void put(InputStream input) throws IOException {
+            byte[] buf = new byte[4096];
+            while (true) {
+                int read = input.read(buf);
+                if (read < 0) {
+                    break;
+                }
+                digest.update(buf, 0, read);
+            }
+        }
+
+        String toHexString() {
+            StringBuilder buf = new StringBuilder();
+            for (byte b : digest.digest()) {
+                buf.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+            }
+            return buf.toString();
+        }
+    }
+
+    /**
+     * A snapshot of generated artifacts of a jobflow.
+     */
+    static final class Snapshot {
+
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+        final Map<String, byte[]> resources = new LinkedHashMap<>();
+
+        final List<String> comparators = new ArrayList<>();
+
+        final List<String> externals = new ArrayList<>();
+
+        final Set<String> unsupported = new TreeSet<>();
+
+        byte[] graph;
+
+        synchronized void addClass(ClassDescription aClass, byte[] contents) {
+            classes.put(aClass.getBinaryName() + CLASS_FILE_EXTENSION, contents);
+        }
+
+        synchronized void addResource(Location location, byte[] contents) {
+            resources.put(location.toPath(), contents);
+        }
+
+        synchronized void addExternal(String... fields) {
+            externals.add(String.join(String.valueOf(FIELD_SEPARATOR), fields));
+        }
+
+        synchronized void addUnsupported(String effect) {
+            unsupported.add(effect);
+        }
+
+        void addComparator(TypeDescription type, Group group, String name) {
+            assert Thread.holdsLock(this);
+            StringBuilder buf = new StringBuilder();
+            buf.append(((ClassDescription) type.getErasure()).getBinaryName());
+            buf.append(FIELD_SEPARATOR);
+            buf.append(group.getGrouping().stream()
+                    .map(p -> p.toName())
+                    .collect(Collectors.joining(LIST_SEPARATOR)));
+            buf.append(FIELD_SEPARATOR);
+            buf.append(group.getOrdering().stream()
+                    .map(o -> (o.getDirection() == Group.Direction.ASCENDANT ? "+" : "-") //$NON-NLS-1$ //$NON-NLS-2$
+                            + o.getPropertyName().toName())
+                    .collect(Collectors.joining(LIST_SEPARATOR)));
+            buf.append(FIELD_SEPARATOR);
+            buf.append(name == null ? "" : name); //$NON-NLS-1$
+            comparators.add(buf.toString());
+        }
+
+        /**
+         * Returns a {@link NativeValueComparatorExtension} which records comparator requests into this snapshot.
+         * Each request is recorded together with its result atomically, so that the requests are replayed in the
+         * same order as the comparator names were assigned.
+         * @param delegate the original extension
+         * @return the recording extension
+         */
+        NativeValueComparatorExtension record(NativeValueComparatorExtension delegate) {
+            return (type, group) -> {
+                synchronized (this) {
+                    String name = delegate.addComparator(type, group);
+                    addComparator(type, group, name);
+                    return name;
+                }
+            };
+        }
+
+        /**
+         * Returns a {@link JobflowProcessor.Context} which records side effects into this snapshot.
+         * @param delegate the original context
+         * @param source the target jobflow
+         * @return the recording context
+         */
+        JobflowProcessor.Context record(JobflowProcessor.Context delegate, Jobflow source) {
+            return (JobflowProcessor.Context) Proxy.newProxyInstance(
+                    JobflowProcessor.Context.class.getClassLoader(),
+                    new Class<?>[] { JobflowProcessor.Context.class },
+                    new RecordingContext(delegate, source, this));
+        }
+
+        /**
+         * Replays the recorded side effects.
+         * @param context the target context
+         * @param source the target jobflow
+         */
+        void replay(JobflowProcessor.Context context, Jobflow source) {
+            classes.forEach((k, v) -> {
+                String binaryName = k.substring(0, k.length() - CLASS_FILE_EXTENSION.length());
+                ClassDescription aClass = new ClassDescription(binaryName);
+                try (OutputStream output = context.addClassFile(aClass)) {
+                    output.write(v);
+                } catch (IOException e) {
+                    throw new IllegalStateException(MessageFormat.format(
+                            "error occurred while restoring a class file: {0}",
+                            aClass.getBinaryName()), e);
+                }
+            });
+            resources.forEach((k, v) -> {
+                Location location = Location.of(k);
+                try (OutputStream output = context.addResourceFile(location)) {
+                    output.write(v);
+                } catch (IOException e) {
+                    throw new IllegalStateException(MessageFormat.format(
+                            "error occurred while restoring a resource file: {0}",
+                            location), e);
+                }
+            });
+            for (String line : externals) {
+                List<String> fields = Arrays.asList(line.split(String.valueOf(FIELD_SEPARATOR), -1));
+                Invariants.require(fields.size() >= 2);
+                String kind = fields.get(0);
+                String name = fields.get(1);
+                if (kind.equals(KIND_INPUT)) {
+                    ExternalInput port = Invariants.requireNonNull(findPort(source, ExternalInput.class, name));
+                    context.addExternalInput(name, port.getInfo());
+                } else if (kind.equals(KIND_OUTPUT)) {
+                    ExternalOutput port = Invariants.requireNonNull(findPort(source, ExternalOutput.class, name));
+                    context.addExternalOutput(name, port.getInfo(), fields.subList(2, fields.size()));
+                } else {
+                    throw new IllegalStateException(line);
+                }
+            }
+            NativeValueComparatorExtension extension = Invariants.requireNonNull(
+                    context.getExtension(NativeValueComparatorExtension.class));
+            for (String line : comparators) {
+                String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+                Invariants.require(fields.length == 4);
+                Group group = Groups.parse(split(fields[1]), split(fields[2]));
+                String name = extension.addComparator(new ClassDescription(fields[0]), group);
+                if (fields[3].equals(name == null ? "" : name) == false) { //$NON-NLS-1$
+                    throw new IllegalStateException(MessageFormat.format(
+                            "inconsistent value comparator name: {0} (expected: {1})",
+                            name, fields[3]));
+                }
+            }
+        }
+
+        private static List<String> split(String value) {
+            if (value.isEmpty()) {
+                return new ArrayList<>();
+            }
+            return Arrays.asList(value.split(LIST_SEPARATOR));
+        }
+    }
+
+    static <T extends ExternalPort> T findPort(Jobflow source, Class<T> type, String name) {
+        return source.getOperatorGraph().getOperators().stream()
+                .filter(type::isInstance)
+                .map(type::cast)
+                .filter(p -> p.getName().equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static final class RecordingContext implements InvocationHandler {
+
+        private final JobflowProcessor.Context delegate;
+
+        private final Jobflow source;
+
+        private final Snapshot snapshot;
+
+        RecordingContext(JobflowProcessor.Context delegate, Jobflow source, Snapshot snapshot) {
+            this.delegate = delegate;
+            this.source = source;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "addClassFile": { //$NON-NLS-1$
+                ClassDescription aClass = (ClassDescription) args[0];
+                OutputStream output = (OutputStream) delegate(method, args);
+                return new RecordingOutputStream(output, b -> snapshot.addClass(aClass, b));
+            }
+            case "addResourceFile": { //$NON-NLS-1$
+                Location location = (Location) args[0];
+                OutputStream output = (OutputStream) delegate(method, args);
+                return new RecordingOutputStream(output, b -> snapshot.addResource(location, b));
+            }
+            case "addExternalInput": { //$NON-NLS-1$
+                String name = (String) args[0];
+                ExternalInput port = findPort(source, ExternalInput.class, name);
+                if (port != null && Objects.equals(port.getInfo(), args[1])) {
+                    snapshot.addExternal(KIND_INPUT, name);
+                } else {
+                    snapshot.addUnsupported(method.getName());
+                }
+                return delegate(method, args);
+            }
+            case "addExternalOutput": { //$NON-NLS-1$
+                String name = (String) args[0];
+                ExternalOutput port = findPort(source, ExternalOutput.class, name);
+                if (port != null && Objects.equals(port.getInfo(), args[1])) {
+                    List<String> fields = new ArrayList<>();
+                    fields.add(KIND_OUTPUT);
+                    fields.add(name);
+                    ((Collection<?>) args[2]).forEach(p -> fields.add(String.valueOf(p)));
+                    snapshot.addExternal(fields.toArray(new String[fields.size()]));
+                } else {
+                    snapshot.addUnsupported(method.getName());
+                }
+                return delegate(method, args);
+            }
+            case "getExtension": { //$NON-NLS-1$
+                Class<?> type = (Class<?>) args[0];
+                Object extension = delegate(method, args);
+                if (extension == null) {
+                    return null;
+                } else if (type == NativeValueComparatorExtension.class) {
+                    return snapshot.record((NativeValueComparatorExtension) extension);
+                }
+                // side effects through other extensions cannot be replayed
+                snapshot.addUnsupported(MessageFormat.format(
+                        "{0}({1})", //$NON-NLS-1$
+                        method.getName(),
+                        type.getName()));
+                return extension;
+            }
+            default:
+                if (method.getName().startsWith("add") //$NON-NLS-1$
+                        || method.getName().startsWith("register")) { //$NON-NLS-1$
+                    snapshot.addUnsupported(method.getName());
+                }
+                return delegate(method, args);
+            }
+        }
+
+        private Object delegate(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class RecordingOutputStream extends FilterOutputStream {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private final Consumer<byte[]> callback;
+
+        private boolean closed;
+
+        RecordingOutputStream(OutputStream output, Consumer<byte[]> callback) {
+            super(output);
+            this.callback = callback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            super.close();
+            callback.accept(buffer.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.DataModelLoader;
+import com.asakusafw.lang.compiler.api.reference.DataModelReference;
+import com.asakusafw.lang.compiler.api.reference.PropertyReference;
+import com.asakusafw.lang.compiler.model.PropertyName;
+import com.asakusafw.lang.compiler.model.description.Descriptions;
+import com.asakusafw.lang.compiler.model.description.TypeDescription;
+import com.asakusafw.lang.compiler.model.graph.Group;
+import com.asakusafw.lang.utils.common.Lang;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Resolves {@link ValueComparatorSchema} of the serialized group keys on scatter-gather edges.
+ */
+final class KeySchemaResolver {
+
+    static final Logger LOG = LoggerFactory.getLogger(KeySchemaResolver.class);
+
+    private static final Map<TypeDescription, ValueComparatorSchema.Type> TYPES = Lang.let(new HashMap<>(), m -> {
+        m.put(Descriptions.typeOf(BooleanOption.class), ValueComparatorSchema.Type.BOOLEAN);
+        m.put(Descriptions.typeOf(ByteOption.class), ValueComparatorSchema.Type.BYTE);
+        m.put(Descriptions.typeOf(ShortOption.class), ValueComparatorSchema.Type.SHORT);
+        m.put(Descriptions.typeOf(IntOption.class), ValueComparatorSchema.Type.INT);
+        m.put(Descriptions.typeOf(LongOption.class), ValueComparatorSchema.Type.LONG);
+        m.put(Descriptions.typeOf(FloatOption.class), ValueComparatorSchema.Type.FLOAT);
+        m.put(Descriptions.typeOf(DoubleOption.class), ValueComparatorSchema.Type.DOUBLE);
+        m.put(Descriptions.typeOf(DecimalOption.class), ValueComparatorSchema.Type.DECIMAL);
+        m.put(Descriptions.typeOf(DateOption.class), ValueComparatorSchema.Type.DATE);
+        m.put(Descriptions.typeOf(DateTimeOption.class), ValueComparatorSchema.Type.DATE_TIME);
+        m.put(Descriptions.typeOf(StringOption.class), ValueComparatorSchema.Type.STRING);
+    });
+
+    private KeySchemaResolver() {
+        return;
+    }
+
+    /**
+     * Returns the schema of the serialized group keys.
+     * Each key property is serialized in the order of {@link Group#getGrouping()}, and compared in ascendant order.
+     * @param loader the data model loader
+     * @param dataType the data type
+     * @param group the grouping information
+     * @return the schema name, or {@code null} if the keys are empty or contain unsupported properties
+     */
+    static String resolve(DataModelLoader loader, TypeDescription dataType, Group group) {
+        if (group.getGrouping().isEmpty()) {
+            return null;
+        }
+        DataModelReference model = loader.load(dataType);
+        List<ValueComparatorSchema.Field> fields = new ArrayList<>();
+        for (PropertyName name : group.getGrouping()) {
+            PropertyReference property = model.findProperty(name);
+            ValueComparatorSchema.Type type = property == null ? null : TYPES.get(property.getType());
+            if (type == null) {
+                LOG.debug("unsupported key property: {}.{}", dataType, name);
+                return null;
+            }
+            fields.add(new ValueComparatorSchema.Field(type, true));
+        }
+        return new ValueComparatorSchema(fields).getName();
+    }
+}
@@ -15,6 +15,15 @@
  */
 package com.asakusafw.m3bp.compiler.core;
 
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.asakusafw.dag.api.common.SupplierInfo;
 import com.asakusafw.dag.api.model.EdgeDescriptor;
 import com.asakusafw.dag.api.model.VertexDescriptor;
@@ -23,6 +32,8 @@ import com.asakusafw.dag.compiler.codegen.DataComparatorGenerator;
 import com.asakusafw.dag.compiler.codegen.KeyValueSerDeGenerator;
 import com.asakusafw.dag.compiler.codegen.ValueSerDeGenerator;
 import com.asakusafw.dag.compiler.flow.DagDescriptorFactory;
+import com.asakusafw.lang.compiler.api.reference.PropertyReference;
+import com.asakusafw.lang.compiler.model.PropertyName;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
 import com.asakusafw.lang.compiler.model.description.TypeDescription;
 import com.asakusafw.lang.compiler.model.graph.Group;
@@ -30,27 +41,61 @@ import com.asakusafw.lang.utils.common.Arguments;
 import com.asakusafw.lang.utils.common.Optionals;
 import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
 import com.asakusafw.m3bp.descriptor.Descriptors;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
 
 /**
  * Provides descriptors of DAG API.
  * @since 0.2.0
+ * @version 0.3.5
  */
 public class M3bpDescriptorFactory implements DagDescriptorFactory {
 
+    static final Logger LOG = LoggerFactory.getLogger(M3bpDescriptorFactory.class);
+
     private final ClassGeneratorContext context;
 
     private final NativeValueComparatorExtension nativeComparators;
 
+    private final Partitioning partitioning;
+
+    private final EdgePropertyUsage propertyUsage;
+
     /**
      * Creates a new instance.
      * @param context the current context
      * @param nativeComparators the native value comparator provider
      */
     public M3bpDescriptorFactory(ClassGeneratorContext context, NativeValueComparatorExtension nativeComparators) {
+        this(context, nativeComparators, Partitioning.HASH);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param context the current context
+     * @param nativeComparators the native value comparator provider
+     * @param partitioning the partitioning strategy of scatter-gather edges
+     * @since 0.3.5
+     */
+    public M3bpDescriptorFactory(
+            ClassGeneratorContext context,
+            NativeValueComparatorExtension nativeComparators,
+            Partitioning partitioning) {
+        this(context, nativeComparators, partitioning, EdgePropertyUsage.empty());
+    }
+
+    M3bpDescriptorFactory(
+            ClassGeneratorContext context,
+            NativeValueComparatorExtension nativeComparators,
+            Partitioning partitioning,
+            EdgePropertyUsage propertyUsage) {
         Arguments.requireNonNull(context);
         Arguments.requireNonNull(nativeComparators);
+        Arguments.requireNonNull(partitioning);
+        Arguments.requireNonNull(propertyUsage);
         this.context = context;
         this.nativeComparators = nativeComparators;
+        this.partitioning = partitioning;
+        this.propertyUsage = propertyUsage;
     }
 
     @Override
@@ -67,14 +112,22 @@ public class M3bpDescriptorFactory implements DagDescriptorFactory {
     public EdgeDescriptor newOneToOneEdge(TypeDescription dataType, ClassDescription serde) {
         Arguments.requireNonNull(dataType);
         Arguments.requireNonNull(serde);
-        return Descriptors.newOneToOneEdge(toSupplier(serde));
+        Set<PropertyName> used = propertyUsage.getOneToOne(dataType);
+        return Descriptors.newOneToOneEdge(
+                toSupplier(serde),
+                estimate(dataType, null, used),
+                getPrunedProperties(dataType, used));
     }
 
     @Override
     public EdgeDescriptor newBroadcastEdge(TypeDescription dataType, ClassDescription serde) {
         Arguments.requireNonNull(dataType);
         Arguments.requireNonNull(serde);
-        return Descriptors.newBroadcastEdge(toSupplier(serde));
+        Set<PropertyName> used = propertyUsage.getBroadcast(dataType);
+        return Descriptors.newBroadcastEdge(
+                toSupplier(serde),
+                estimate(dataType, null, used),
+                getPrunedProperties(dataType, used));
     }
 
     @Override
@@ -87,7 +140,24 @@ public class M3bpDescriptorFactory implements DagDescriptorFactory {
                 .map(M3bpDescriptorFactory::toSupplier)
                 .orElse(null);
         String comparatorName = nativeComparators.addComparator(dataType, group);
-        return Descriptors.newScatterGatherEdge(toSupplier(serde), comparatorInfo, comparatorName);
+        Set<PropertyName> used = propertyUsage.getScatterGather(dataType, group);
+        Partitioning edgePartitioning = partitioning;
+        String keySchemaName = null;
+        if (partitioning == Partitioning.RANGE) {
+            keySchemaName = KeySchemaResolver.resolve(context.getDataModelLoader(), dataType, group);
+            if (keySchemaName == null) {
+                LOG.warn(MessageFormat.format(
+                        "range partitioning is not available for the group keys, uses hash partitioning instead: "
+                        + "{0}{1}",
+                        dataType,
+                        group));
+                edgePartitioning = Partitioning.HASH;
+            }
+        }
+        return Descriptors.newScatterGatherEdge(
+                toSupplier(serde), comparatorInfo, comparatorName, edgePartitioning, keySchemaName,
+                estimate(dataType, group, used),
+                getPrunedProperties(dataType, used));
     }
 
     @Override
@@ -112,6 +182,21 @@ public class M3bpDescriptorFactory implements DagDescriptorFactory {
         return newScatterGatherEdge(dataType, serde, group);
     }
 
+    private long estimate(TypeDescription dataType, Group group, Set<PropertyName> used) {
+        return RecordSizeEstimator.estimate(context.getDataModelLoader(), dataType, group, used);
+    }
+
+    private List<String> getPrunedProperties(TypeDescription dataType, Set<PropertyName> used) {
+        if (used == null) {
+            return Collections.emptyList();
+        }
+        return context.getDataModelLoader().load(dataType).getProperties().stream()
+                .map(PropertyReference::getName)
+                .filter(p -> used.contains(p) == false)
+                .map(EdgePropertyUsage::getOptionAccessorName)
+                .collect(Collectors.toList());
+    }
+
     private static SupplierInfo toSupplier(ClassDescription aClass) {
         return SupplierInfo.of(aClass.getBinaryName());
     }
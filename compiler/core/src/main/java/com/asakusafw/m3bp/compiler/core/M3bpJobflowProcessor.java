@@ -15,21 +15,38 @@
  */
 package com.asakusafw.m3bp.compiler.core;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.asakusafw.dag.api.model.GraphInfo;
 import com.asakusafw.dag.compiler.codegen.ApplicationGenerator;
+import com.asakusafw.dag.compiler.codegen.ClassGeneratorContext;
 import com.asakusafw.dag.compiler.codegen.CleanupStageClientGenerator;
 import com.asakusafw.dag.compiler.flow.DataFlowGenerator;
 import com.asakusafw.dag.compiler.flow.adapter.ClassGeneratorContextAdapter;
 import com.asakusafw.dag.compiler.model.ClassData;
 import com.asakusafw.dag.compiler.planner.DagPlanning;
+import com.asakusafw.dag.compiler.planner.SubPlanOutputInfo;
 import com.asakusafw.lang.compiler.api.Exclusive;
 import com.asakusafw.lang.compiler.api.JobflowProcessor;
 import com.asakusafw.lang.compiler.api.reference.CommandToken;
@@ -40,15 +57,18 @@ import com.asakusafw.lang.compiler.common.Location;
 import com.asakusafw.lang.compiler.hadoop.HadoopCommandRequired;
 import com.asakusafw.lang.compiler.inspection.InspectionExtension;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.description.TypeDescription;
 import com.asakusafw.lang.compiler.model.graph.Jobflow;
 import com.asakusafw.lang.compiler.model.info.JobflowInfo;
 import com.asakusafw.lang.compiler.planning.Plan;
 import com.asakusafw.lang.compiler.planning.PlanDetail;
+import com.asakusafw.lang.compiler.planning.SubPlan;
 import com.asakusafw.lang.utils.common.Action;
 import com.asakusafw.lang.utils.common.Invariants;
 import com.asakusafw.m3bp.compiler.common.M3bpPackage;
 import com.asakusafw.m3bp.compiler.common.M3bpTask;
 import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
+import com.asakusafw.m3bp.descriptor.M3bpEdgeDescriptor.Partitioning;
 
 /**
  * An implementation of {@link JobflowProcessor} for M3BP.
@@ -65,8 +85,23 @@ public class M3bpJobflowProcessor implements JobflowProcessor {
 
     static final String KEY_CODEGEN = KEY_PREFIX + "codegen"; //$NON-NLS-1$
 
+    static final String KEY_PARTITIONING = KEY_PREFIX + "partitioning"; //$NON-NLS-1$
+
+    static final String KEY_CODEGEN_PARALLELISM = KEY_CODEGEN + ".parallelism"; //$NON-NLS-1$
+
+    static final String KEY_CODEGEN_CACHE = KEY_CODEGEN + ".cache"; //$NON-NLS-1$
+
+    static final String KEY_CODEGEN_PRUNING = KEY_CODEGEN + ".pruning"; //$NON-NLS-1$
+
     @Override
     public void process(Context context, Jobflow source) throws IOException {
+        JobflowCompileCache cache = getCompileCache(context);
+        String key = null;
+        JobflowCompileCache.Snapshot cached = null;
+        if (cache != null) {
+            key = JobflowCompileCache.fingerprint(context, source);
+            cached = cache.load(key);
+        }
         LOG.debug("computing execution plan: {}", source.getFlowId());
         Plan plan = plan(context, source);
         try {
@@ -74,10 +109,26 @@ public class M3bpJobflowProcessor implements JobflowProcessor {
                 LOG.info("code generation was skipped: {} ({}=true)", source.getFlowId(), KEY_CODEGEN);
                 return;
             }
-            LOG.debug("generating vertices: {}", source.getFlowId());
-            GraphInfo graph = generateGraph(context, source, plan);
+            byte[] contents;
+            if (cached != null) {
+                LOG.info("reusing compiled artifacts: {} ({})", source.getFlowId(), key);
+                cached.replay(context, source);
+                contents = cached.graph;
+            } else {
+                JobflowCompileCache.Snapshot snapshot = cache == null ? null : new JobflowCompileCache.Snapshot();
+                LOG.debug("generating vertices: {}", source.getFlowId());
+                GraphInfo graph = generateGraph(
+                        snapshot == null ? context : snapshot.record(context, source),
+                        source, plan);
+                contents = save(graph);
+                if (snapshot != null) {
+                    snapshot.graph = contents;
+                    cache.store(key, snapshot);
+                }
+            }
             LOG.debug("generating application entry: {}", source.getFlowId());
-            addApplication(context, source, graph);
+            addGraph(context, source, contents);
+            addApplication(context, source);
             LOG.debug("generating cleanup : {}", source.getFlowId());
             addCleanup(context, source);
         } finally {
@@ -87,22 +138,188 @@ public class M3bpJobflowProcessor implements JobflowProcessor {
         }
     }
 
+    private static JobflowCompileCache getCompileCache(JobflowProcessor.Context context) {
+        String value = context.getOptions().get(KEY_CODEGEN_CACHE, null);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return new JobflowCompileCache(new File(value.trim()));
+    }
+
     private static Plan plan(Context context, Jobflow source) {
         PlanDetail detail = DagPlanning.plan(context, source);
         return detail.getPlan();
     }
 
-    private static GraphInfo generateGraph(JobflowProcessor.Context context, JobflowInfo info, Plan plan) {
-        ClassGeneratorContextAdapter cgContext = new ClassGeneratorContextAdapter(context, M3bpPackage.CLASS_PREFIX);
+    private static GraphInfo generateGraph(
+            JobflowProcessor.Context context, JobflowInfo info, Plan plan) {
+        int parallelism = getCodegenParallelism(context);
+        ClassGeneratorContext cgContext = new ClassGeneratorContextAdapter(context, M3bpPackage.CLASS_PREFIX);
         NativeValueComparatorExtension comparators = Invariants.requireNonNull(
                 context.getExtension(NativeValueComparatorExtension.class));
-        M3bpDescriptorFactory descriptors = new M3bpDescriptorFactory(cgContext, comparators);
+        ConcurrentClassGeneratorContext concurrent = null;
+        if (parallelism > 1) {
+            concurrent = new ConcurrentClassGeneratorContext(cgContext, M3bpPackage.CLASS_PREFIX);
+            cgContext = concurrent;
+        }
+        EdgePropertyUsage propertyUsage = EdgePropertyUsage.empty();
+        if (context.getOptions().get(KEY_CODEGEN_PRUNING, true)) {
+            LOG.debug("analyzing property usage: {}", info.getFlowId());
+            propertyUsage = EdgePropertyUsage.analyze(
+                    cgContext.getDataModelLoader(), context.getClassLoader(), plan);
+        }
+        M3bpDescriptorFactory descriptors = new M3bpDescriptorFactory(
+                cgContext, comparators, getPartitioning(context), propertyUsage);
+        if (concurrent != null) {
+            LOG.debug("generating edges in parallel: {} (parallelism={})", info.getFlowId(), parallelism);
+            generateEdges(concurrent, descriptors, comparators, plan, parallelism);
+        }
         return DataFlowGenerator.generate(context, cgContext, descriptors, info, plan);
     }
 
-    private static void addApplication(JobflowProcessor.Context context, JobflowInfo info, GraphInfo graph) {
+    /**
+     * Generates edge descriptors and their classes ahead of {@link DataFlowGenerator}.
+     * The generated classes are cached in the class generator context, and they are reused when
+     * {@link DataFlowGenerator} requires the same edges later.
+     * The native value comparators are registered in the plan order before generating edges in parallel,
+     * so that their names and the generated native sources do not depend on the thread scheduling.
+     * Similarly, the edge classes are reserved in the plan order to decide their names.
+     */
+    private static void generateEdges(
+            ConcurrentClassGeneratorContext context,
+            M3bpDescriptorFactory descriptors, NativeValueComparatorExtension comparators,
+            Plan plan, int parallelism) {
+        List<Supplier<?>> tasks = new ArrayList<>();
+        for (SubPlan sub : plan.getElements()) {
+            for (SubPlan.Output output : sub.getOutputs()) {
+                SubPlanOutputInfo info = output.getAttribute(SubPlanOutputInfo.class);
+                if (info == null) {
+                    continue;
+                }
+                TypeDescription dataType = output.getOperator().getDataType();
+                switch (info.getOutputType()) {
+                case VALUE:
+                    tasks.add(() -> descriptors.newOneToOneEdge(dataType));
+                    break;
+                case BROADCAST:
+                    tasks.add(() -> descriptors.newBroadcastEdge(dataType));
+                    break;
+                case KEY_VALUE:
+                    comparators.addComparator(dataType, info.getGroup());
+                    tasks.add(() -> descriptors.newScatterGatherEdge(dataType, info.getGroup()));
+                    break;
+                default:
+                    // other edges are generated by DataFlowGenerator
+                    break;
+                }
+            }
+        }
+        context.reserve(() -> tasks.forEach(Supplier::get));
+        int threads = runAll(tasks.stream()
+                .map(task -> (Callable<?>) task::get)
+                .collect(Collectors.toList()), parallelism);
+        LOG.debug("generated {} edge(s) on {} thread(s)", tasks.size(), threads);
+    }
+
+    /**
+     * Runs the tasks in parallel.
+     * @param tasks the tasks
+     * @param parallelism the max number of threads
+     * @return the number of threads which actually ran the tasks
+     */
+    static int runAll(List<? extends Callable<?>> tasks, int parallelism) {
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        List<Callable<Object>> wrapped = new ArrayList<>();
+        for (Callable<?> task : tasks) {
+            wrapped.add(() -> {
+                workers.add(Thread.currentThread());
+                return task.call();
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "m3bp-codegen"); //$NON-NLS-1$
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Future<?> future : executor.invokeAll(wrapped)) {
+                future.get();
+            }
+            return workers.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int getCodegenParallelism(JobflowProcessor.Context context) {
+        String value = context.getOptions().get(KEY_CODEGEN_PARALLELISM, null);
+        if (value == null || value.trim().isEmpty()) {
+            return 1;
+        }
+        try {
+            int parallelism = Integer.parseInt(value.trim());
+            if (parallelism >= 1) {
+                return parallelism;
+            }
+        } catch (NumberFormatException e) {
+            LOG.trace("invalid number", e);
+        }
+        throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                "compiler option \"{0}\" must be a positive integer: {1}",
+                KEY_CODEGEN_PARALLELISM,
+                value));
+    }
+
+    private static Partitioning getPartitioning(JobflowProcessor.Context context) {
+        String value = context.getOptions().get(KEY_PARTITIONING, Partitioning.HASH.name());
+        try {
+            Partitioning partitioning = Partitioning.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+            if (partitioning == Partitioning.RANGE) {
+                LOG.warn(MessageFormat.format(
+                        "compiler option \"{0}={1}\" applies to all scatter-gather edges, "
+                        + "but only the Java engine honors it (the native engine uses hash partitioning)",
+                        KEY_PARTITIONING,
+                        value));
+            }
+            return partitioning;
+        } catch (IllegalArgumentException e) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "invalid compiler option \"{0}\" (must be one of {1}): {2}",
+                    KEY_PARTITIONING,
+                    Stream.of(Partitioning.values())
+                            .map(v -> v.name().toLowerCase(Locale.ENGLISH))
+                            .collect(Collectors.joining(", ")), //$NON-NLS-1$
+                    value), e);
+        }
+    }
+
+    private static byte[] save(GraphInfo graph) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            GraphInfo.save(buffer, graph);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void addGraph(JobflowProcessor.Context context, JobflowInfo info, byte[] contents) {
         LOG.debug("storing GraphInfo ({}): {}", info.getFlowId(), M3bpPackage.PATH_GRAPH_INFO);
-        add(context, M3bpPackage.PATH_GRAPH_INFO, output -> GraphInfo.save(output, graph));
+        add(context, M3bpPackage.PATH_GRAPH_INFO, output -> output.write(contents));
+    }
+
+    private static void addApplication(JobflowProcessor.Context context, JobflowInfo info) {
         ClassDescription application = add(context, new ApplicationGenerator().generate(
                 M3bpPackage.PATH_GRAPH_INFO,
                 new ClassDescription(M3bpPackage.CLASS_APPLICATION)));
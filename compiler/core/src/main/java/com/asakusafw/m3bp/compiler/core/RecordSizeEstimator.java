@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.asakusafw.lang.compiler.api.DataModelLoader;
+import com.asakusafw.lang.compiler.api.reference.DataModelReference;
+import com.asakusafw.lang.compiler.api.reference.PropertyReference;
+import com.asakusafw.lang.compiler.model.PropertyName;
+import com.asakusafw.lang.compiler.model.description.Descriptions;
+import com.asakusafw.lang.compiler.model.description.TypeDescription;
+import com.asakusafw.lang.compiler.model.graph.Group;
+import com.asakusafw.lang.utils.common.Lang;
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
+
+/**
+ * Estimates the serialized size of records on edges.
+ */
+final class RecordSizeEstimator {
+
+    static final Logger LOG = LoggerFactory.getLogger(RecordSizeEstimator.class);
+
+    /**
+     * The typical serialized size of variable length properties, like strings.
+     */
+    static final long VARIABLE_SIZE = 32;
+
+    /**
+     * The typical serialized size of pruned properties, which are always {@code null}.
+     */
+    static final long PRUNED_SIZE = 1;
+
+    private static final Map<TypeDescription, Long> SIZES = Lang.let(new HashMap<>(), m -> {
+        // null flag + value
+        m.put(Descriptions.typeOf(BooleanOption.class), 2L);
+        m.put(Descriptions.typeOf(ByteOption.class), 2L);
+        m.put(Descriptions.typeOf(ShortOption.class), 3L);
+        m.put(Descriptions.typeOf(IntOption.class), 5L);
+        m.put(Descriptions.typeOf(LongOption.class), 9L);
+        m.put(Descriptions.typeOf(FloatOption.class), 5L);
+        m.put(Descriptions.typeOf(DoubleOption.class), 9L);
+        // negative values represent null
+        m.put(Descriptions.typeOf(DateOption.class), 4L);
+        m.put(Descriptions.typeOf(DateTimeOption.class), 8L);
+        // head + compact scale + compact unscaled value
+        m.put(Descriptions.typeOf(DecimalOption.class), 8L);
+        // compact length + contents
+        m.put(Descriptions.typeOf(StringOption.class), 1L + VARIABLE_SIZE);
+    });
+
+    private RecordSizeEstimator() {
+        return;
+    }
+
+    /**
+     * Returns the expected serialized size of the records.
+     * @param loader the data model loader
+     * @param dataType the data type
+     * @param group the grouping information, or {@code null} if the records do not have any keys
+     * @return the expected record size in bytes, or {@code 0} if it is unknown
+     */
+    static long estimate(DataModelLoader loader, TypeDescription dataType, Group group) {
+        return estimate(loader, dataType, group, null);
+    }
+
+    /**
+     * Returns the expected serialized size of the records.
+     * @param loader the data model loader
+     * @param dataType the data type
+     * @param group the grouping information, or {@code null} if the records do not have any keys
+     * @param used the properties which are kept on the edge, or {@code null} if all properties are kept
+     * @return the expected record size in bytes, or {@code 0} if it is unknown
+     */
+    static long estimate(DataModelLoader loader, TypeDescription dataType, Group group, Set<PropertyName> used) {
+        DataModelReference model;
+        try {
+            model = loader.load(dataType);
+        } catch (RuntimeException e) {
+            LOG.trace("failed to load data model: {}", dataType, e);
+            return 0L;
+        }
+        long total = 0L;
+        for (PropertyReference property : model.getProperties()) {
+            if (used == null || used.contains(property.getName())) {
+                total += estimate(property);
+            } else {
+                total += PRUNED_SIZE;
+            }
+        }
+        if (group != null) {
+            for (PropertyName name : group.getGrouping()) {
+                PropertyReference property = model.findProperty(name);
+                if (property != null) {
+                    total += estimate(property);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long estimate(PropertyReference property) {
+        Long size = SIZES.get(property.getType());
+        return size == null ? VARIABLE_SIZE : size;
+    }
+}
@@ -15,7 +15,9 @@
  */
 package com.asakusafw.m3bp.compiler.core.extension;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -23,6 +25,16 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -33,6 +45,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +54,7 @@ import org.slf4j.LoggerFactory;
 import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.api.DataModelLoader;
 import com.asakusafw.lang.compiler.api.reference.DataModelReference;
+import com.asakusafw.lang.compiler.api.reference.PropertyReference;
 import com.asakusafw.lang.compiler.common.Diagnostic;
 import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.common.Location;
@@ -47,6 +62,7 @@ import com.asakusafw.lang.compiler.core.JobflowCompiler.Context;
 import com.asakusafw.lang.compiler.core.adapter.DataModelLoaderAdapter;
 import com.asakusafw.lang.compiler.core.basic.AbstractCompilerParticipant;
 import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.description.Descriptions;
 import com.asakusafw.lang.compiler.model.description.ReifiableTypeDescription;
 import com.asakusafw.lang.compiler.model.description.TypeDescription;
 import com.asakusafw.lang.compiler.model.description.TypeDescription.TypeKind;
@@ -67,12 +83,33 @@ import com.asakusafw.m3bp.compiler.common.CommandPath;
 import com.asakusafw.m3bp.compiler.common.CommandRunner;
 import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
 import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorGenerator;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
+import com.asakusafw.runtime.value.BooleanOption;
+import com.asakusafw.runtime.value.ByteOption;
+import com.asakusafw.runtime.value.DateOption;
+import com.asakusafw.runtime.value.DateTimeOption;
+import com.asakusafw.runtime.value.DecimalOption;
+import com.asakusafw.runtime.value.DoubleOption;
+import com.asakusafw.runtime.value.FloatOption;
+import com.asakusafw.runtime.value.IntOption;
+import com.asakusafw.runtime.value.LongOption;
+import com.asakusafw.runtime.value.ShortOption;
+import com.asakusafw.runtime.value.StringOption;
 
 /**
  * A compiler participant for enabling {@link NativeValueComparatorExtension}.
  *
  * <h3> compiler options </h3>
  * <ul>
+ * <li> {@code m3bp.native.comparator} (optional)
+ *   <ul>
+ *   <li> the kind of value comparators </li>
+ *   <li> {@code generated} - generates application specific native comparators and builds them </li>
+ *   <li> {@code schema} - uses generic comparators which interpret the comparator schema in their names,
+ *        and never requires any native toolchains </li>
+ *   <li> <em>default value</em>: {@code generated} </li>
+ *   </ul>
+ * </li>
  * <li> {@code m3bp.native.path} (optional)
  *   <ul>
  *   <li> the custom command search path (separated by command separator) </li>
@@ -91,7 +128,38 @@ import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorGenerator;
  *   <li> <em>default value</em>: {@code make} </li>
  *   </ul>
  * </li>
+ * <li> {@code m3bp.native.make.jobs} (optional)
+ *   <ul>
+ *   <li> the number of parallel MAKE jobs </li>
+ *   <li> <em>default value</em>: the number of available processors </li>
+ *   </ul>
+ * </li>
+ * <li> {@code m3bp.native.cache} (optional)
+ *   <ul>
+ *   <li> the build cache directory, or empty to disable the build cache </li>
+ *   <li> <em>default value</em>: (empty) </li>
+ *   </ul>
+ * </li>
  * </ul>
+ *
+ * <h3> build cache </h3>
+ * <p>
+ * The generated native libraries are stored into the build cache directory, and they are keyed by digest of
+ * their source files, the build commands, the C++ compiler and its version, and the CMake options.
+ * The supporting sources, which are common to every library, are also built once into a static archive and
+ * reused in the later builds.
+ * </p>
+ * <p>
+ * The build cache directory must be owned by the current user, and must not be writable by any other users.
+ * Otherwise, the build cache is disabled.
+ * </p>
+ *
+ * <h3> schema comparators </h3>
+ * <p>
+ * If {@code m3bp.native.comparator} is {@code schema}, this never generates any native libraries.
+ * Instead, each comparator name describes its {@link ValueComparatorSchema}, and the runtime builds
+ * a generic comparator from it.
+ * </p>
  */
 public class NativeValueComparatorParticipant extends AbstractCompilerParticipant {
 
@@ -109,6 +177,36 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
      */
     public static final String KEY_MAKE = KEY_PREFIX + "make";
 
+    /**
+     * The compiler option key of the number of parallel {@code make} jobs.
+     * @since 0.3.5
+     */
+    public static final String KEY_MAKE_JOBS = KEY_MAKE + ".jobs";
+
+    /**
+     * The compiler option key of build cache directory.
+     * @since 0.3.5
+     */
+    public static final String KEY_CACHE = KEY_PREFIX + "cache";
+
+    /**
+     * The compiler option key of the kind of value comparators.
+     * @since 0.3.5
+     */
+    public static final String KEY_COMPARATOR = KEY_PREFIX + "comparator";
+
+    /**
+     * The compiler option value of {@link #KEY_COMPARATOR} for generating native comparators.
+     * @since 0.3.5
+     */
+    public static final String COMPARATOR_GENERATED = "generated";
+
+    /**
+     * The compiler option value of {@link #KEY_COMPARATOR} for using generic schema comparators.
+     * @since 0.3.5
+     */
+    public static final String COMPARATOR_SCHEMA = "schema";
+
     /**
      * The compiler option key of custom command search path.
      */
@@ -131,6 +229,16 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
 
     private static final String OPT_CMAKE_BUILD_TYPE = "CMAKE_BUILD_TYPE";
 
+    private static final String OPT_CMAKE_CXX_COMPILER = "CMAKE_CXX_COMPILER";
+
+    private static final String ENV_CXX = "CXX"; //$NON-NLS-1$
+
+    private static final String[] DEFAULT_CXX = {
+            "c++", //$NON-NLS-1$
+            "g++", //$NON-NLS-1$
+            "clang++", //$NON-NLS-1$
+    };
+
     /**
      * The default CMake build type.
      */
@@ -146,6 +254,8 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
 
     static final Location PATH_BUILD_DIR = Location.of("build");
 
+    static final Location PATH_SUPPORT_DIR = Location.of("support"); //$NON-NLS-1$
+
     static final Location PATH_SOURCE = PATH_SOURCE_DIR.append("application.cpp");
 
     static final Location PATH_OUTPUT_BASE = Location.of("com/asakusafw/m3bp/generated/native");
@@ -158,6 +268,27 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
         s.add("application.dll");
     });
 
+    private static final Set<String> SUPPORT_ARTIFACT_NAME = Lang.let(new HashSet<>(), s -> {
+        s.add("libsupport.a");
+        s.add("support.lib");
+    });
+
+    private static final String OPT_SUPPORT_LIBRARY = "ASAKUSA_SUPPORT_LIBRARY";
+
+    private static final String CACHE_PREFIX_APPLICATION = "application-"; //$NON-NLS-1$
+
+    private static final String CACHE_PREFIX_SUPPORT = "support-"; //$NON-NLS-1$
+
+    private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+    private static final String[] TOOLCHAIN_ENV = {
+            "CC", //$NON-NLS-1$
+            "CXX", //$NON-NLS-1$
+            "CFLAGS", //$NON-NLS-1$
+            "CXXFLAGS", //$NON-NLS-1$
+            "LDFLAGS", //$NON-NLS-1$
+    };
+
     private static final String[] FILE_CMAKE_LISTS = {
             "cmake_minimum_required(VERSION 2.8)",
             "if (POLICY CMP0069)",
@@ -165,9 +296,19 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
             "endif()",
             "project(all CXX)",
             "set(CMAKE_SKIP_RPATH ON)",
-            "file(GLOB NATIVE \"src/*.cpp\")",
             "include_directories(\"include\")",
+            "if (ASAKUSA_SUPPORT_LIBRARY)",
+            "  add_library(support STATIC IMPORTED)",
+            "  set_target_properties(support PROPERTIES IMPORTED_LOCATION \"${ASAKUSA_SUPPORT_LIBRARY}\")",
+            "else()",
+            "  file(GLOB SUPPORT \"support/*.cpp\")",
+            "  add_library(support STATIC ${SUPPORT})",
+            "  set_target_properties(support PROPERTIES POSITION_INDEPENDENT_CODE ON)",
+            "  set_target_properties(support PROPERTIES COMPILE_FLAGS \"-std=c++11 -Wall\")",
+            "endif()",
+            "file(GLOB NATIVE \"src/*.cpp\")",
             "add_library(application SHARED ${NATIVE})",
+            "target_link_libraries(application support)",
             "set_target_properties(application PROPERTIES INTERPROCEDURAL_OPTIMIZATION ON)",
             "set_target_properties(application PROPERTIES COMPILE_FLAGS \"-std=c++11 -Wall\")",
             "if (WIN32)",
@@ -194,6 +335,10 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
 
     static NativeValueComparatorExtension createExtension(
             CompilerOptions options, FileContainer working, DataModelLoader loader) {
+        if (isSchemaComparator(options)) {
+            LOG.debug("using schema comparators");
+            return new SchemaSupport(loader);
+        }
         CommandPath path = getCommandPath(options);
         File cmake = getCmakeCommand(options, path);
         LOG.debug("cmake: {}", cmake);
@@ -204,10 +349,102 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
         Map<String, String> cmakeOptions = getCmakeOptions(options);
         LOG.debug("cmake options: {}", cmake);
 
-        Support extension = new Support(loader, working, cmake, make, cmakeOptions);
+        int makeJobs = getMakeJobs(options);
+        LOG.debug("make jobs: {}", makeJobs);
+
+        File cxx = getCxxCommand(cmakeOptions, path);
+        LOG.debug("c++ compiler: {}", cxx);
+
+        File cache = getCacheDirectory(options);
+        LOG.debug("build cache: {}", cache);
+
+        Support extension = new Support(new Conf(
+                loader, working, cmake, make, cxx, cmakeOptions, makeJobs, cache));
         return extension;
     }
 
+    private static boolean isSchemaComparator(CompilerOptions options) {
+        String value = options.get(KEY_COMPARATOR, COMPARATOR_GENERATED).trim();
+        if (value.isEmpty() || value.equals(COMPARATOR_GENERATED)) {
+            return false;
+        } else if (value.equals(COMPARATOR_SCHEMA)) {
+            return true;
+        }
+        throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                "compiler option \"{0}\" must be one of '{'{1}, {2}'}': {3}",
+                KEY_COMPARATOR,
+                COMPARATOR_GENERATED,
+                COMPARATOR_SCHEMA,
+                value));
+    }
+
+    private static int getMakeJobs(CompilerOptions options) {
+        String value = options.get(KEY_MAKE_JOBS, null);
+        if (value == null || value.trim().isEmpty()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int jobs = Integer.parseInt(value.trim());
+            if (jobs >= 1) {
+                return jobs;
+            }
+        } catch (NumberFormatException e) {
+            LOG.trace("invalid number", e);
+        }
+        throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                "compiler option \"{0}\" must be a positive integer: {1}",
+                KEY_MAKE_JOBS,
+                value));
+    }
+
+    private static File getCacheDirectory(CompilerOptions options) {
+        String value = options.get(KEY_CACHE, null);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        File directory = new File(value.trim()).getAbsoluteFile();
+        if (isPrivateDirectory(directory) == false) {
+            return null;
+        }
+        return directory;
+    }
+
+    static boolean isPrivateDirectory(File directory) {
+        // other users must not be able to plant native libraries into our build cache
+        Path path = directory.toPath();
+        try {
+            Files.createDirectories(path);
+            UserPrincipal owner = Files.getOwner(path);
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name")); //$NON-NLS-1$
+            if (owner.equals(user) == false) {
+                LOG.warn(MessageFormat.format(
+                        "native build cache is disabled because it is not owned by the current user: {0} ({1})",
+                        directory,
+                        owner.getName()));
+                return false;
+            }
+            PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+            if (view != null) {
+                Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+                if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                        || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                    LOG.warn(MessageFormat.format(
+                            "native build cache is disabled because it is writable by other users: {0} ({1})",
+                            directory,
+                            PosixFilePermissions.toString(permissions)));
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn(MessageFormat.format(
+                    "native build cache is disabled because its owner is not available: {0}",
+                    directory), e);
+            return false;
+        }
+    }
+
     private static Map<String, String> getCmakeOptions(CompilerOptions options) {
         Map<String, String> results = new LinkedHashMap<>();
         options.getProperties(KEY_CMAKE_OPTION_PREFIX).forEach((k, v) -> {
@@ -218,6 +455,9 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
     }
 
     static boolean processExtension(NativeValueComparatorExtension extension, FileContainer output) {
+        if (extension instanceof SchemaSupport) {
+            return true;
+        }
         if (extension instanceof Support) {
             Conf conf = null;
             try (Support s = (Support) extension) {
@@ -226,30 +466,230 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
                 }
             }
             if (conf != null) {
-                process(conf.base, conf.cmake, conf.make, conf.cmakeOptions, output);
+                process(conf, output);
             }
             return true;
         }
         return false;
     }
 
-    static void process(
-            FileContainer project,
-            File cmake, File make,
-            Map<String, String> cmakeOptions,
-            FileContainer output) {
+    static void process(Conf conf, FileContainer output) {
+        FileContainer project = conf.base;
         genCmakeLists(project);
 
+        String applicationKey = null;
+        String supportKey = null;
+        File support = null;
+        if (conf.cache != null) {
+            String toolchain = digestToolchain(conf);
+            applicationKey = digest(toolchain, project,
+                    PATH_CMAKE_LISTS, PATH_HEADER_DIR, PATH_SUPPORT_DIR, PATH_SOURCE_DIR);
+            File cached = findCache(conf.cache, CACHE_PREFIX_APPLICATION + applicationKey, ARTIFACT_NAME);
+            if (cached != null) {
+                LOG.debug("reusing cached native library: {}", cached);
+                copyArtifact(cached, output);
+                return;
+            }
+            supportKey = digest(toolchain, project, PATH_HEADER_DIR, PATH_SUPPORT_DIR);
+            support = findCache(conf.cache, CACHE_PREFIX_SUPPORT + supportKey, SUPPORT_ARTIFACT_NAME);
+            if (support != null) {
+                LOG.debug("reusing cached support library: {}", support);
+            }
+        }
+
         List<String> cmakeArgs = new ArrayList<>();
         cmakeArgs.add(project.getBasePath().getAbsolutePath());
         cmakeArgs.add("-G");
         cmakeArgs.add("Unix Makefiles");
-        cmakeOptions.forEach((k, v) -> cmakeArgs.add(String.format("-D%s=%s", k, v)));
-        CommandRunner.run(cmake, project.toFile(PATH_BUILD_DIR), cmakeArgs.stream().toArray(String[]::new));
+        conf.cmakeOptions.forEach((k, v) -> cmakeArgs.add(String.format("-D%s=%s", k, v)));
+        if (support != null) {
+            cmakeArgs.add(String.format("-D%s=%s", OPT_SUPPORT_LIBRARY, support.getAbsolutePath()));
+        }
+        CommandRunner.run(conf.cmake, project.toFile(PATH_BUILD_DIR), cmakeArgs.stream().toArray(String[]::new));
 
-        CommandRunner.run(make, project.toFile(PATH_BUILD_DIR));
+        CommandRunner.run(conf.make, project.toFile(PATH_BUILD_DIR), String.format("-j%d", conf.makeJobs));
 
         copyArtifact(project, output);
+
+        if (conf.cache != null) {
+            File build = project.toFile(PATH_BUILD_DIR);
+            storeCache(conf.cache, CACHE_PREFIX_APPLICATION + applicationKey, findFile(build, ARTIFACT_NAME));
+            if (support == null) {
+                storeCache(conf.cache, CACHE_PREFIX_SUPPORT + supportKey, findFile(build, SUPPORT_ARTIFACT_NAME));
+            }
+        }
+    }
+
+    private static String digestToolchain(Conf conf) {
+        List<String> elements = new ArrayList<>();
+        elements.add(System.getProperty("os.name")); //$NON-NLS-1$
+        elements.add(System.getProperty("os.arch")); //$NON-NLS-1$
+        for (File command : new File[] { conf.cmake, conf.make, conf.cxx }) {
+            if (command == null) {
+                elements.add(""); //$NON-NLS-1$
+                continue;
+            }
+            elements.add(command.getAbsolutePath());
+            elements.add(String.valueOf(command.length()));
+            elements.add(String.valueOf(command.lastModified()));
+        }
+        elements.add(Optionals.of(conf.cxx).map(NativeValueComparatorParticipant::getVersion).orElse("")); //$NON-NLS-1$
+        for (String name : TOOLCHAIN_ENV) {
+            elements.add(name + '=' + Optionals.of(System.getenv(name)).orElse("")); //$NON-NLS-1$
+        }
+        conf.cmakeOptions.forEach((k, v) -> elements.add(k + '=' + v));
+        MessageDigest digest = newDigest();
+        for (String element : elements) {
+            digest.update(String.valueOf(element).getBytes(ENCODING));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String getVersion(File command) {
+        ProcessBuilder builder = new ProcessBuilder(command.getPath(), "--version"); //$NON-NLS-1$
+        builder.redirectErrorStream(true);
+        try {
+            Process process = builder.start();
+            try (InputStream input = process.getInputStream()) {
+                process.getOutputStream().close();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] bytes = new byte[256];
+                while (true) {
+                    int read = input.read(bytes);
+                    if (read < 0) {
+                        break;
+                    }
+                    buffer.write(bytes, 0, read);
+                }
+                String output = new String(buffer.toByteArray(), ENCODING);
+                int status = process.waitFor();
+                LOG.debug("version of {} (status={}): {}", command, status, output);
+                return String.format("%d:%s", status, output); //$NON-NLS-1$
+            } finally {
+                process.destroy();
+            }
+        } catch (IOException e) {
+            LOG.debug("failed to detect compiler version: {}", command, e);
+            return ""; //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "interrupted while detecting compiler version: {0}",
+                    command), e);
+        }
+    }
+
+    private static String digest(String toolchain, FileContainer project, Location... locations) {
+        MessageDigest digest = newDigest();
+        digest.update(toolchain.getBytes(ENCODING));
+        for (Location location : locations) {
+            Path base = project.toFile(location).toPath();
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(base)) {
+                files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            } catch (NoSuchFileException e) {
+                LOG.trace("missing source directory", e);
+                continue;
+            } catch (IOException e) {
+                throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                        "error occurred while computing digest of native sources: {0}",
+                        base), e);
+            }
+            for (Path file : files) {
+                String name = base.relativize(file).toString().replace(File.separatorChar, '/');
+                digest.update(String.format("%s/%s", location.toPath(), name).getBytes(ENCODING)); //$NON-NLS-1$
+                digest.update((byte) 0);
+                try {
+                    digest.update(Files.readAllBytes(file));
+                } catch (IOException e) {
+                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                            "error occurred while computing digest of native sources: {0}",
+                            file), e);
+                }
+                digest.update((byte) 0);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(String.format("%02x", b & 0xff)); //$NON-NLS-1$
+        }
+        return buf.toString();
+    }
+
+    private static File findCache(File cache, String key, Set<String> names) {
+        File directory = new File(cache, key);
+        for (String name : names) {
+            File file = new File(directory, name);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static File findFile(File directory, Set<String> names) {
+        try (Stream<Path> stream = Files.walk(directory.toPath())) {
+            return stream
+                    .filter(Files::isRegularFile)
+                    .filter(p -> names.contains(p.getFileName().toString()))
+                    .map(Path::toFile)
+                    .findFirst()
+                    .orElse(null);
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "error occurred while finding native build artifacts: {0}",
+                    directory), e);
+            return null;
+        }
+    }
+
+    private static void storeCache(File cache, String key, File file) {
+        if (file == null) {
+            return;
+        }
+        // the build cache is just an optimization, so that we never fail on storing it
+        Path destination = new File(new File(cache, key), file.getName()).toPath();
+        try {
+            Files.createDirectories(destination.getParent());
+            Path temporary = Files.createTempFile(destination.getParent(), file.getName(), ".tmp"); //$NON-NLS-1$
+            try {
+                Files.copy(file.toPath(), temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE);
+                LOG.debug("stored native build cache: {}", destination);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            LOG.warn(MessageFormat.format(
+                    "failed to store native build cache: {0}",
+                    destination), e);
+        }
+    }
+
+    static void copyArtifact(File artifact, FileContainer output) {
+        Location destination = PATH_OUTPUT_BASE.append(artifact.getName());
+        LOG.debug("copy native lib: {} -> {}",
+                artifact,
+                destination);
+        try (InputStream contents = new FileInputStream(artifact)) {
+            output.addResource(destination, contents);
+        } catch (IOException e) {
+            throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                    "error occurred while copying cached native library: {0}",
+                    artifact), e);
+        }
     }
 
     static void copyArtifact(FileContainer project, FileContainer output) {
@@ -307,6 +747,33 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
         return getCommand(path, options.get(KEY_MAKE, DEFAULT_MAKE));
     }
 
+    static File getCxxCommand(Map<String, String> cmakeOptions, CommandPath path) {
+        // follows how CMake selects the C++ compiler
+        String specified = cmakeOptions.get(OPT_CMAKE_CXX_COMPILER);
+        if (specified == null || specified.trim().isEmpty()) {
+            specified = System.getenv(ENV_CXX);
+        }
+        List<String> candidates = new ArrayList<>();
+        if (specified != null && specified.trim().isEmpty() == false) {
+            candidates.add(specified.trim());
+        } else {
+            Collections.addAll(candidates, DEFAULT_CXX);
+        }
+        for (String candidate : candidates) {
+            File file = new File(candidate);
+            File found = file.isAbsolute() ? file : path.find(candidate);
+            if (found != null && found.isFile()) {
+                try {
+                    return found.toPath().toRealPath().toFile();
+                } catch (IOException e) {
+                    LOG.debug("failed to resolve compiler path: {}", found, e);
+                    return found.getAbsoluteFile();
+                }
+            }
+        }
+        return null;
+    }
+
     static File getCommand(CommandPath path, String command) {
         return Optionals.of(path.find(command))
                 .map(File::getAbsoluteFile)
@@ -336,16 +803,26 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
 
         final File make;
 
+        final File cxx;
+
         final Map<String, String> cmakeOptions;
 
+        final int makeJobs;
+
+        final File cache;
+
         Conf(DataModelLoader loader, FileContainer base,
-                File cmake, File make,
-                Map<String, String> cmakeOptions) {
+                File cmake, File make, File cxx,
+                Map<String, String> cmakeOptions,
+                int makeJobs, File cache) {
             this.loader = loader;
             this.base = base;
             this.cmake = cmake;
             this.make = make;
+            this.cxx = cxx;
             this.cmakeOptions = Arguments.freeze(cmakeOptions);
+            this.makeJobs = makeJobs;
+            this.cache = cache;
         }
     }
 
@@ -357,10 +834,8 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
 
         boolean added = false;
 
-        Support(DataModelLoader loader, FileContainer base,
-                File cmake, File make,
-                Map<String, String> cmakeOptions) {
-            this.conf = new Conf(loader, base, cmake, make, cmakeOptions);
+        Support(Conf conf) {
+            this.conf = conf;
         }
 
         private static final String FORMAT_FUNC = "lt_%s_%d";
@@ -395,7 +870,7 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
         private void defineComparator(ClassDescription type, List<Group.Ordering> orderings, String name) {
             if (generator == null) {
                 NativeValueComparatorGenerator.copyHeaderFiles(conf.base, PATH_HEADER_DIR);
-                NativeValueComparatorGenerator.copySourceFiles(conf.base, PATH_SOURCE_DIR);
+                NativeValueComparatorGenerator.copySourceFiles(conf.base, PATH_SUPPORT_DIR);
                 generator = new NativeValueComparatorGenerator(open());
                 added = true;
             }
@@ -420,4 +895,58 @@ public class NativeValueComparatorParticipant extends AbstractCompilerParticipan
             }
         }
     }
+
+    private static class SchemaSupport implements NativeValueComparatorExtension {
+
+        private static final Map<TypeDescription, ValueComparatorSchema.Type> TYPES = Lang.let(new HashMap<>(), m -> {
+            m.put(Descriptions.typeOf(BooleanOption.class), ValueComparatorSchema.Type.BOOLEAN);
+            m.put(Descriptions.typeOf(ByteOption.class), ValueComparatorSchema.Type.BYTE);
+            m.put(Descriptions.typeOf(ShortOption.class), ValueComparatorSchema.Type.SHORT);
+            m.put(Descriptions.typeOf(IntOption.class), ValueComparatorSchema.Type.INT);
+            m.put(Descriptions.typeOf(LongOption.class), ValueComparatorSchema.Type.LONG);
+            m.put(Descriptions.typeOf(FloatOption.class), ValueComparatorSchema.Type.FLOAT);
+            m.put(Descriptions.typeOf(DoubleOption.class), ValueComparatorSchema.Type.DOUBLE);
+            m.put(Descriptions.typeOf(DecimalOption.class), ValueComparatorSchema.Type.DECIMAL);
+            m.put(Descriptions.typeOf(DateOption.class), ValueComparatorSchema.Type.DATE);
+            m.put(Descriptions.typeOf(DateTimeOption.class), ValueComparatorSchema.Type.DATE_TIME);
+            m.put(Descriptions.typeOf(StringOption.class), ValueComparatorSchema.Type.STRING);
+        });
+
+        private final DataModelLoader loader;
+
+        SchemaSupport(DataModelLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public String addComparator(TypeDescription type, Group grouping) {
+            List<Ordering> ordering = grouping.getOrdering();
+            if (ordering.isEmpty()) {
+                return null;
+            }
+            DataModelReference reference = loader.load(type);
+            List<ValueComparatorSchema.Field> fields = new ArrayList<>();
+            for (Ordering order : ordering) {
+                PropertyReference property = reference.findProperty(order.getPropertyName());
+                if (property == null) {
+                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                            "unknown ordering property \"{1}\" in data model: {0}",
+                            type,
+                            order.getPropertyName()));
+                }
+                ValueComparatorSchema.Type fieldType = TYPES.get(property.getType());
+                if (fieldType == null) {
+                    throw new DiagnosticException(Diagnostic.Level.ERROR, MessageFormat.format(
+                            "schema comparators do not support the type of ordering property \"{1}\": {0} ({2})",
+                            type,
+                            property.getName(),
+                            property.getType()));
+                }
+                fields.add(new ValueComparatorSchema.Field(
+                        fieldType,
+                        order.getDirection() == Group.Direction.ASCENDANT));
+            }
+            return new ValueComparatorSchema(fields).getName();
+        }
+    }
 }
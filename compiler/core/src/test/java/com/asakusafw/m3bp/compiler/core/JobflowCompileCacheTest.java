@@ -0,0 +1,97 @@
+/**
+ * Copyright 2011-2021 Asakusa Framework Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asakusafw.m3bp.compiler.core;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.asakusafw.lang.compiler.api.JobflowProcessor;
+import com.asakusafw.lang.compiler.model.description.ClassDescription;
+import com.asakusafw.lang.compiler.model.graph.Groups;
+import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
+
+/**
+ * Test for {@link JobflowCompileCache}.
+ */
+public class JobflowCompileCacheTest {
+
+    /**
+     * records native value comparator requests.
+     */
+    @Test
+    public void record_comparator() {
+        JobflowCompileCache.Snapshot snapshot = new JobflowCompileCache.Snapshot();
+        JobflowProcessor.Context context = snapshot.record(context(type -> {
+            if (type == NativeValueComparatorExtension.class) {
+                return (NativeValueComparatorExtension) (t, g) -> "cmp";
+            }
+            return null;
+        }), null);
+        NativeValueComparatorExtension extension = context.getExtension(NativeValueComparatorExtension.class);
+        String name = extension.addComparator(
+                new ClassDescription("com.example.Model"),
+                Groups.parse(Arrays.asList("key"), Arrays.asList("+sort")));
+        assertThat(name, is("cmp"));
+        assertThat(snapshot.comparators, hasSize(1));
+        assertThat(snapshot.unsupported, is(empty()));
+    }
+
+    /**
+     * other extensions make the snapshot unavailable.
+     */
+    @Test
+    public void record_unknown_extension() {
+        JobflowCompileCache.Snapshot snapshot = new JobflowCompileCache.Snapshot();
+        Object extension = new Object();
+        JobflowProcessor.Context context = snapshot.record(context(type -> {
+            if (type == Object.class) {
+                return extension;
+            }
+            return null;
+        }), null);
+        assertThat(context.getExtension(Object.class), is(sameInstance(extension)));
+        assertThat(snapshot.unsupported, hasSize(1));
+    }
+
+    /**
+     * missing extensions do not have any side effects.
+     */
+    @Test
+    public void record_missing_extension() {
+        JobflowCompileCache.Snapshot snapshot = new JobflowCompileCache.Snapshot();
+        JobflowProcessor.Context context = snapshot.record(context(type -> null), null);
+        assertThat(context.getExtension(Runnable.class), is(nullValue()));
+        assertThat(snapshot.unsupported, is(empty()));
+    }
+
+    private static JobflowProcessor.Context context(Function<Class<?>, Object> extensions) {
+        return (JobflowProcessor.Context) Proxy.newProxyInstance(
+                JobflowProcessor.Context.class.getClassLoader(),
+                new Class<?>[] { JobflowProcessor.Context.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getExtension")) {
+                        return extensions.apply((Class<?>) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -20,18 +20,29 @@ import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assume;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExternalResource;
+import org.junit.rules.TemporaryFolder;
 
 import com.asakusafw.dag.runtime.testing.MockDataModel;
 import com.asakusafw.dag.runtime.testing.MockKeyValueModel;
@@ -106,6 +117,12 @@ public class M3bpJobflowProcessorTest extends M3bpCompilerTesterRoot {
         }
     };
 
+    /**
+     * temporary folder.
+     */
+    @Rule
+    public final TemporaryFolder temporary = new TemporaryFolder();
+
     final CompilerProfile profile = new CompilerProfile(getClass().getClassLoader());
 
     final TestIoTaskExecutor testio = new TestIoTaskExecutor();
@@ -266,6 +283,164 @@ public class M3bpJobflowProcessorTest extends M3bpCompilerTesterRoot {
                 .connect("op", "out"));
     }
 
+    /**
+     * w/ range partitioning.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cogroup_range_partitioning() throws Exception {
+        profile.forCompilerOptions()
+            .withProperty(M3bpJobflowProcessor.KEY_PARTITIONING, "range");
+        testio.input("t", MockDataModel.class, o -> {
+            o.write(new MockDataModel(0, d(1), "Hello0"));
+            o.write(new MockDataModel(0, d(0), "Hello1"));
+            o.write(new MockDataModel(1000, d(2), "Hello2"));
+            o.write(new MockDataModel(-1, d(0), "Hello3"));
+        });
+        testio.output("t", MockDataModel.class, o -> {
+            assertThat(o, containsInAnyOrder(
+                    new MockDataModel(0, d(0), "Hello1@0"),
+                    new MockDataModel(0, d(1), "Hello0@1"),
+                    new MockDataModel(1000, d(2), "Hello2@0"),
+                    new MockDataModel(-1, d(0), "Hello3@0")));
+        });
+        run(profile, executor, g -> g
+                .input("in", TestInput.of("t", MockDataModel.class))
+                .operator("op", Ops.class, "group", b -> b
+                        .input("in", typeOf(MockDataModel.class), group("key", "+sort"))
+                        .output("out", typeOf(MockDataModel.class))
+                        .build())
+                .output("out", TestOutput.of("t", MockDataModel.class))
+                .connect("in", "op")
+                .connect("op", "out"));
+    }
+
+    /**
+     * w/ parallel code generation.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cogroup_parallel_codegen() throws Exception {
+        File cache = temporary.newFolder();
+        profile.forCompilerOptions()
+            .withProperty(M3bpJobflowProcessor.KEY_CODEGEN_PARALLELISM, "4")
+            .withProperty(NativeValueComparatorParticipant.KEY_CACHE, cache.getAbsolutePath());
+        List<Map<String, List<Byte>>> artifacts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // keeps the generated artifacts of each compilation
+            File artifact = temporary.newFolder();
+            profile.forCompilerOptions()
+                .withProperty(M3bpJobflowProcessor.KEY_CODEGEN_CACHE, artifact.getAbsolutePath());
+            testio.input("t", MockDataModel.class, o -> {
+                o.write(new MockDataModel(0, d(1), "Hello0"));
+                o.write(new MockDataModel(0, d(0), "Hello1"));
+                o.write(new MockDataModel(1, d(2), "Hello2"));
+            });
+            testio.output("t", MockDataModel.class, o -> {
+                assertThat(o, containsInAnyOrder(
+                        new MockDataModel(0, d(0), "Hello1@0@1"),
+                        new MockDataModel(0, d(1), "Hello0@1@0"),
+                        new MockDataModel(1, d(2), "Hello2@0@0")));
+            });
+            /*
+             * [In] -> [CoGroup(+sort)] -> [CoGroup(-sort)] -> [Out]
+             */
+            run(profile, executor, g -> g
+                    .input("in", TestInput.of("t", MockDataModel.class))
+                    .operator("op0", Ops.class, "group", b -> b
+                            .input("in", typeOf(MockDataModel.class), group("key", "+sort"))
+                            .output("out", typeOf(MockDataModel.class))
+                            .build())
+                    .operator("op1", Ops.class, "group", b -> b
+                            .input("in", typeOf(MockDataModel.class), group("key", "-sort"))
+                            .output("out", typeOf(MockDataModel.class))
+                            .build())
+                    .output("out", TestOutput.of("t", MockDataModel.class))
+                    .connect("in", "op0")
+                    .connect("op0", "op1")
+                    .connect("op1", "out"));
+            artifacts.add(collect(artifact));
+        }
+        // the generated classes must not depend on the thread scheduling
+        assertThat(artifacts.get(0).isEmpty(), is(false));
+        assertThat(artifacts.get(1), is(artifacts.get(0)));
+        assertThat(artifacts.get(2), is(artifacts.get(0)));
+        // the native build cache is keyed by the generated sources
+        assertThat(cache.list((d, n) -> n.startsWith("application-")), arrayWithSize(1));
+    }
+
+    /**
+     * runs code generation tasks in parallel.
+     * @throws Exception if failed
+     */
+    @Test
+    public void run_parallel() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(4);
+        List<Callable<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> barrier.await(10, TimeUnit.SECONDS));
+        }
+        assertThat(M3bpJobflowProcessor.runAll(tasks, 4), is(4));
+    }
+
+    /**
+     * w/ jobflow compile cache.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cogroup_compile_cache() throws Exception {
+        File cache = temporary.newFolder();
+        for (int i = 0; i < 2; i++) {
+            compileCogroup(cache);
+            assertThat(cache.list(), arrayWithSize(1));
+        }
+        // the cached artifacts must be same as ones from a fresh compilation
+        File fresh = temporary.newFolder();
+        compileCogroup(fresh);
+        assertThat(fresh.list(), arrayWithSize(1));
+        assertThat(fresh.list()[0], is(cache.list()[0]));
+        assertThat(collect(fresh), is(collect(cache)));
+    }
+
+    private void compileCogroup(File cache) {
+        profile.forCompilerOptions()
+            .withProperty(M3bpJobflowProcessor.KEY_CODEGEN_CACHE, cache.getAbsolutePath());
+        testio.input("t", MockDataModel.class, o -> {
+            o.write(new MockDataModel(0, d(1), "Hello0"));
+            o.write(new MockDataModel(0, d(0), "Hello1"));
+            o.write(new MockDataModel(1, d(2), "Hello2"));
+        });
+        testio.output("t", MockDataModel.class, o -> {
+            assertThat(o, containsInAnyOrder(
+                    new MockDataModel(0, d(0), "Hello1@0"),
+                    new MockDataModel(0, d(1), "Hello0@1"),
+                    new MockDataModel(1, d(2), "Hello2@0")));
+        });
+        run(profile, executor, g -> g
+                .input("in", TestInput.of("t", MockDataModel.class))
+                .operator("op", Ops.class, "group", b -> b
+                        .input("in", typeOf(MockDataModel.class), group("key", "+sort"))
+                        .output("out", typeOf(MockDataModel.class))
+                        .build())
+                .output("out", TestOutput.of("t", MockDataModel.class))
+                .connect("in", "op")
+                .connect("op", "out"));
+    }
+
+    private static Map<String, List<Byte>> collect(File base) throws IOException {
+        Map<String, List<Byte>> results = new TreeMap<>();
+        try (Stream<Path> stream = Files.walk(base.toPath())) {
+            for (Path path : stream.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                List<Byte> bytes = new ArrayList<>();
+                for (byte b : Files.readAllBytes(path)) {
+                    bytes.add(b);
+                }
+                results.put(base.toPath().relativize(path).toString(), bytes);
+            }
+        }
+        return results;
+    }
+
     /**
      * w/ broadcast operator.
      * @throws Exception if failed
@@ -574,6 +749,47 @@ public class M3bpJobflowProcessorTest extends M3bpCompilerTesterRoot {
                 .connect("op.missed", "out1"));
     }
 
+    /**
+     * join w/ pruned master properties.
+     * @throws Exception if failed
+     */
+    @Test
+    public void join_pruning() throws Exception {
+        testio.input("in0", MockKeyValueModel.class, o -> {
+            o.write(new MockKeyValueModel(0, "Hello0"));
+            o.write(new MockKeyValueModel(1, "Hello1"));
+            o.write(new MockKeyValueModel(2, "Hello2"));
+        });
+        testio.input("in1", MockDataModel.class, o -> {
+            o.write(new MockDataModel(0, d(1), "A"));
+            o.write(new MockDataModel(1, d(2), "B"));
+        });
+        testio.output("out0", MockKeyValueModel.class, o -> {
+            assertThat(o, containsInAnyOrder(
+                    new MockKeyValueModel(0, "Hello0@A"),
+                    new MockKeyValueModel(1, "Hello1@B")));
+        });
+        testio.output("out1", MockKeyValueModel.class, o -> {
+            assertThat(o, containsInAnyOrder(
+                    new MockKeyValueModel(2, "Hello2")));
+        });
+        run(profile, executor, g -> g
+                .input("in0", TestInput.of("in0", MockKeyValueModel.class))
+                .input("in1", TestInput.of("in1", MockDataModel.class, DataSize.LARGE))
+                .operator("op", Ops.class, "join_value", b -> b
+                        .input("mst", typeOf(MockDataModel.class), group("key"))
+                        .input("tx", typeOf(MockKeyValueModel.class), group("key"))
+                        .output("joined", typeOf(MockKeyValueModel.class))
+                        .output("missed", typeOf(MockKeyValueModel.class))
+                        .build())
+                .output("out0", TestOutput.of("out0", MockKeyValueModel.class))
+                .output("out1", TestOutput.of("out1", MockKeyValueModel.class))
+                .connect("in0", "op.tx")
+                .connect("in1", "op.mst")
+                .connect("op.joined", "out0")
+                .connect("op.missed", "out1"));
+    }
+
     /**
      * self join w/ broadcast.
      * @throws Exception if failed
@@ -754,6 +970,13 @@ public class M3bpJobflowProcessorTest extends M3bpCompilerTesterRoot {
             tx.setValue(tx.getValue() + "@" + mst.getValue());
         }
 
+        @MasterJoinUpdate
+        public void join_value(
+                @Key(group = "key") MockDataModel mst,
+                @Key(group = "key") MockKeyValueModel tx) {
+            tx.setValue(tx.getValue() + "@" + mst.getValue());
+        }
+
         @Fold(partialAggregation = PartialAggregation.TOTAL)
         public void aggregate(@Key(group = "key") MockDataModel a, MockDataModel b) {
             a.setSort(a.getSort().add(b.getSort()));
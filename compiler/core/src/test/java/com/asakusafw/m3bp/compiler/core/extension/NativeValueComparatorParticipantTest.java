@@ -23,6 +23,9 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -37,6 +40,7 @@ import com.asakusafw.dag.runtime.io.ValueOptionSerDe;
 import com.asakusafw.dag.runtime.testing.MockDataModel;
 import com.asakusafw.lang.compiler.api.CompilerOptions;
 import com.asakusafw.lang.compiler.api.testing.MockDataModelLoader;
+import com.asakusafw.lang.compiler.common.DiagnosticException;
 import com.asakusafw.lang.compiler.model.description.Descriptions;
 import com.asakusafw.lang.compiler.model.graph.Group;
 import com.asakusafw.lang.compiler.model.graph.Groups;
@@ -44,8 +48,10 @@ import com.asakusafw.lang.compiler.packaging.FileContainer;
 import com.asakusafw.lang.utils.common.Action;
 import com.asakusafw.m3bp.compiler.common.CommandPath;
 import com.asakusafw.m3bp.compiler.comparator.NativeValueComparatorExtension;
+import com.asakusafw.m3bp.descriptor.ValueComparatorSchema;
 import com.asakusafw.m3bp.mirror.jna.BufferComparator;
 import com.asakusafw.m3bp.mirror.jna.NativeFunctionLoader;
+import com.asakusafw.m3bp.mirror.jna.SchemaBufferComparator;
 import com.asakusafw.runtime.value.IntOption;
 import com.asakusafw.runtime.value.ValueOption;
 
@@ -97,6 +103,91 @@ public class NativeValueComparatorParticipantTest {
         });
     }
 
+    /**
+     * w/ build cache.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cache() throws Exception {
+        File cache = privateFolder("rwx------");
+        options.withProperty(NativeValueComparatorParticipant.KEY_CACHE, cache.getPath());
+        for (int i = 0; i < 2; i++) {
+            loading(MockDataModel.class, group("+key"), c -> {
+                ByteBuffer a = serialize(new IntOption(100));
+                ByteBuffer x = serialize(new IntOption(101));
+                assertThat(comparing(c, a, x), is(lessThan(0)));
+            });
+        }
+        assertThat(cache.list(), is(arrayWithSize(2)));
+    }
+
+    /**
+     * w/ build cache which is writable by other users.
+     * @throws Exception if failed
+     */
+    @Test
+    public void cache_shared() throws Exception {
+        File cache = privateFolder("rwxrwxrwx");
+        options.withProperty(NativeValueComparatorParticipant.KEY_CACHE, cache.getPath());
+        loading(MockDataModel.class, group("+key"), c -> {
+            ByteBuffer a = serialize(new IntOption(100));
+            ByteBuffer x = serialize(new IntOption(101));
+            assertThat(comparing(c, a, x), is(lessThan(0)));
+        });
+        assertThat(NativeValueComparatorParticipant.isPrivateDirectory(cache), is(false));
+        assertThat(cache.list(), is(arrayWithSize(0)));
+    }
+
+    /**
+     * w/ schema comparators.
+     * @throws Exception if failed
+     */
+    @Test
+    public void schema() throws Exception {
+        options.withProperty(
+                NativeValueComparatorParticipant.KEY_COMPARATOR,
+                NativeValueComparatorParticipant.COMPARATOR_SCHEMA);
+        AtomicReference<String> name = new AtomicReference<>();
+        FileContainer dst = building(e -> {
+            name.set(e.addComparator(Descriptions.typeOf(MockDataModel.class), group("+key")));
+        });
+        assertThat(ValueComparatorSchema.isSchema(name.get()), is(true));
+        String libname = System.mapLibraryName(NativeValueComparatorParticipant.ARTIFACCT_LIB_NAME);
+        assertThat(dst.toFile(NativeValueComparatorParticipant.PATH_OUTPUT_BASE.append(libname)).exists(), is(false));
+
+        BufferComparator c = SchemaBufferComparator.of(name.get());
+        ByteBuffer a = serialize(new IntOption(100));
+        ByteBuffer b = serialize(new IntOption(100));
+        ByteBuffer x = serialize(new IntOption(101));
+        assertThat(comparing(c, a, b), is(0));
+        assertThat(comparing(c, a, x), is(lessThan(0)));
+    }
+
+    /**
+     * w/ schema comparators - unknown property.
+     * @throws Exception if failed
+     */
+    @Test(expected = DiagnosticException.class)
+    public void schema_unknown_property() throws Exception {
+        options.withProperty(
+                NativeValueComparatorParticipant.KEY_COMPARATOR,
+                NativeValueComparatorParticipant.COMPARATOR_SCHEMA);
+        NativeValueComparatorExtension extension = NativeValueComparatorParticipant.createExtension(
+                options.build(),
+                new FileContainer(temporary.newFolder()),
+                new MockDataModelLoader(getClass().getClassLoader()));
+        extension.addComparator(Descriptions.typeOf(MockDataModel.class), group("+missing"));
+    }
+
+    private File privateFolder(String permissions) throws IOException {
+        File folder = temporary.newFolder();
+        Assume.assumeThat(
+                Files.getFileAttributeView(folder.toPath(), PosixFileAttributeView.class),
+                is(notNullValue()));
+        Files.setPosixFilePermissions(folder.toPath(), PosixFilePermissions.fromString(permissions));
+        return folder;
+    }
+
     private static Group group(String... expressions) {
         List<String> grouping = new ArrayList<>();
         List<String> ordering = new ArrayList<>();
@@ -20,7 +20,7 @@ import org.gradle.api.Project
 /**
  * An extension object for {@code asakusafwOrgnizer.m3bp}.
  * @since 0.1.0
- * @version 0.3.0
+ * @version 0.3.5
  */
 class AsakusafwOrganizerM3bpExtension {
 
@@ -52,6 +52,18 @@ class AsakusafwOrganizerM3bpExtension {
      */
     boolean useSystemNativeDependencies
 
+    /**
+     * Configuration whether the M3BP launcher uses application class-data sharing (AppCDS) archives or not.
+     * If this is enabled, the first launch of each jobflow generates an archive into {@code $ASAKUSA_HOME/m3bp/appcds},
+     * and the succeeding launches use it. This requires Java 13 or later on the runtime environment.
+     * <dl>
+     *   <dt> Default value: </dt>
+     *     <dd> {@code false} </dd>
+     * </dl>
+     * @since 0.3.5
+     */
+    boolean appCdsEnabled
+
     /**
      * NOP since {@code 0.3.0}.
      * @deprecated Use {@code asakusafwOrganizer.hadoop.embed} instead.
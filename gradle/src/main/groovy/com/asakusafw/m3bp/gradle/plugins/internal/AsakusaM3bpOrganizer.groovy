@@ -31,6 +31,10 @@ import com.asakusafw.m3bp.gradle.plugins.AsakusafwOrganizerM3bpExtension
  */
 class AsakusaM3bpOrganizer extends AbstractOrganizer {
 
+    private static final String APPCDS_DISABLED = '# export ASAKUSA_M3BP_APPCDS='
+
+    private static final String APPCDS_ENABLED = 'export ASAKUSA_M3BP_APPCDS="${ASAKUSA_M3BP_APPCDS:-$_ROOT/appcds}"'
+
     private final AsakusafwOrganizerM3bpExtension extension
 
     /**
@@ -102,6 +106,16 @@ class AsakusaM3bpOrganizer extends AbstractOrganizer {
                         filesMatching('**/m3bp/bin/execute') { FileCopyDetails f ->
                             f.setMode(0755)
                         }
+                        filesMatching('**/m3bp/bin/daemon') { FileCopyDetails f ->
+                            f.setMode(0755)
+                        }
+                        filesMatching('**/m3bp/conf/env.sh') { FileCopyDetails f ->
+                            if (extension.isAppCdsEnabled()) {
+                                f.filter { String line ->
+                                    line == APPCDS_DISABLED ? APPCDS_ENABLED : line
+                                }
+                            }
+                        }
                     }
                 }
                 into('m3bp/lib') {
@@ -65,6 +65,7 @@ class AsakusaM3bpOrganizerPlugin implements Plugin<Project> {
             enabled = { true }
             nativeEnabled = { true }
             useSystemNativeDependencies = { false }
+            appCdsEnabled = { false }
         }
         PluginUtils.injectVersionProperty(convention.m3bp, { base.featureVersion })
     }
@@ -84,6 +85,7 @@ class AsakusaM3bpOrganizerPlugin implements Plugin<Project> {
             enabled = { parent.enabled }
             nativeEnabled = { parent.nativeEnabled }
             useSystemNativeDependencies = { parent.useSystemNativeDependencies }
+            appCdsEnabled = { parent.appCdsEnabled }
         }
         PluginUtils.injectVersionProperty(extension, { base.featureVersion })
 
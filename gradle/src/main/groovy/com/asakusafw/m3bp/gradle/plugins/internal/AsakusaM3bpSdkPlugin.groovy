@@ -28,7 +28,7 @@ import com.asakusafw.gradle.tasks.internal.ResolutionUtils
 /**
  * A Gradle sub plug-in for Asakusa on M3BP SDK.
  * @since 0.1.0
- * @version 0.3.0
+ * @version 0.3.5
  * @see AsakusaM3bpSdkBasePlugin
  */
 class AsakusaM3bpSdkPlugin implements Plugin<Project> {
@@ -44,6 +44,8 @@ class AsakusaM3bpSdkPlugin implements Plugin<Project> {
             'com.asakusafw.runtime.directio.api.DirectIo' : 'com.asakusafw.bridge.directio.api.DirectIo',
     ]
 
+    private static final String KEY_AGGREGATION_DEFAULT = 'operator.aggregation.default'
+
     private Project project
 
     private AsakusafwCompilerExtension extension
@@ -71,6 +73,8 @@ class AsakusaM3bpSdkPlugin implements Plugin<Project> {
             extension.compilerProperties.put((String) "redirector.rule.${k}", v)
         }
         extension.compilerProperties.put('javac.version', { sdk.javac.sourceCompatibility.toString() })
+        // partially aggregates records of associative operators before they are shuffled
+        extension.compilerProperties.put(KEY_AGGREGATION_DEFAULT, 'partial')
         PluginUtils.injectVersionProperty(extension, { base.featureVersion })
     }
 
@@ -68,6 +68,7 @@ class AsakusaM3bpOrganizerPluginTest {
         assert extension.enabled == true
         assert extension.nativeEnabled == true
         assert extension.useSystemNativeDependencies == false
+        assert extension.appCdsEnabled == false
 
         assert root.profiles.dev.m3bp.enabled == true
         assert root.profiles.prod.m3bp.enabled == true
@@ -113,6 +114,12 @@ class AsakusaM3bpOrganizerPluginTest {
             // ok
         }
         assert root.profiles.testing.m3bp.enabled == false
+
+        extension.appCdsEnabled = true
+        assert root.profiles.dev.m3bp.appCdsEnabled == true
+        root.profiles.dev.m3bp.appCdsEnabled = false
+        assert root.profiles.dev.m3bp.appCdsEnabled == false
+        assert root.profiles.prod.m3bp.appCdsEnabled == true
     }
 
     /**
@@ -86,6 +86,7 @@ class AsakusaM3bpSdkPluginTest {
         assert props['redirector.rule.com.asakusafw.runtime.core.BatchContext'] == 'com.asakusafw.m3bp.custom.M3bpBatchContext'
         assert props['redirector.rule.com.asakusafw.runtime.core.Report'] == 'com.asakusafw.bridge.api.Report'
         assert props['redirector.rule.com.asakusafw.runtime.directio.api.DirectIo'] == 'com.asakusafw.bridge.directio.api.DirectIo'
+        assert props['operator.aggregation.default'] == 'partial'
     }
 
     /**